@@ -2,8 +2,10 @@ package edu.cit.btts;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class BttsApplication {
 
 	public static void main(String[] args) {
@@ -1,13 +1,19 @@
 package edu.cit.btts.config;
 
+import edu.cit.btts.model.Role;
 import edu.cit.btts.service.JwtUserDetailsService;
+import edu.cit.btts.service.TokenRevocationList;
+import edu.cit.btts.service.TokenVersionRegistry;
 import edu.cit.btts.util.JwtUtil;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -15,16 +21,39 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.Collections;
 
+/**
+ * Authenticates requests that carry a JWT as a Bearer token.
+ *
+ * With jwt.stateless-authentication (the default) the principal and its authority are built from the
+ * token's verified claims, so a request costs no user lookup. A role change is enforced through the token
+ * version claim, checked against the in-memory TokenVersionRegistry. Tokens without the claims (issued
+ * before they were added), and every token when the mode is off, are checked against the database.
+ * Single tokens revoked before their expiry are turned away through TokenRevocationList, whose Bloom
+ * filter settles the check in memory for almost every request.
+ */
 @Component
 public class JwtRequestFilter extends OncePerRequestFilter {
 
+	// Returned for a token whose version is outdated; it must not fall back to the database check
+	private static final UserDetails STALE_TOKEN = new org.springframework.security.core.userdetails.User(
+					"stale", "", Collections.emptyList());
+
 	private final JwtUserDetailsService jwtUserDetailsService;
 	private final JwtUtil jwtUtil;
+	private final TokenVersionRegistry tokenVersionRegistry;
+	private final TokenRevocationList tokenRevocationList;
+	private final boolean statelessAuthentication;
 
-	public JwtRequestFilter(JwtUserDetailsService jwtUserDetailsService, JwtUtil jwtUtil) {
+	public JwtRequestFilter(JwtUserDetailsService jwtUserDetailsService, JwtUtil jwtUtil,
+	                        TokenVersionRegistry tokenVersionRegistry, TokenRevocationList tokenRevocationList,
+	                        @Value("${jwt.stateless-authentication:true}") boolean statelessAuthentication) {
 		this.jwtUserDetailsService = jwtUserDetailsService;
 		this.jwtUtil = jwtUtil;
+		this.tokenVersionRegistry = tokenVersionRegistry;
+		this.tokenRevocationList = tokenRevocationList;
+		this.statelessAuthentication = statelessAuthentication;
 	}
 
 	@Override
@@ -34,17 +63,24 @@ public class JwtRequestFilter extends OncePerRequestFilter {
 		final String requestTokenHeader = request.getHeader("Authorization");
 
 		String username = null;
-		String jwtToken = null;
+		JwtUtil.VerifiedToken verifiedToken = null;
 
 		// JWT Token is in the form "Bearer token". Remove Bearer word and get only the Token
 		if (requestTokenHeader != null && requestTokenHeader.startsWith("Bearer ")) {
-			jwtToken = requestTokenHeader.substring(7);
+			String jwtToken = requestTokenHeader.substring(7);
 			try {
-				username = jwtUtil.extractUsername(jwtToken);
+				// Parsed and verified once; every check below reads from the result
+				verifiedToken = jwtUtil.verify(jwtToken);
+				// A revoked token (e.g. signed out) is still validly signed, but no longer accepted
+				if (verifiedToken.getId() == null || !tokenRevocationList.isRevoked(verifiedToken.getId())) {
+					username = verifiedToken.getSubject();
+				}
 			} catch (IllegalArgumentException e) {
-				System.out.println("Unable to get JWT Token");
+				logger.debug("Unable to get JWT Token");
 			} catch (ExpiredJwtException e) {
-				System.out.println("JWT Token has expired");
+				logger.debug("JWT Token has expired");
+			} catch (JwtException e) {
+				logger.warn("JWT Token is malformed or badly signed: " + e.getMessage());
 			}
 		} else {
 			logger.warn("JWT Token does not begin with Bearer String");
@@ -53,10 +89,13 @@ public class JwtRequestFilter extends OncePerRequestFilter {
 		// Once we get the token validate it.
 		if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
 
-			UserDetails userDetails = this.jwtUserDetailsService.loadUserByUsername(username);
+			UserDetails userDetails = statelessAuthentication ? userDetailsFromClaims(verifiedToken) : null;
+			if (userDetails == null) {
+				userDetails = this.jwtUserDetailsService.loadUserByUsername(username);
+			}
 
 			// if token is valid configure Spring Security to manually set authentication
-			if (jwtUtil.validateToken(jwtToken, userDetails)) {
+			if (userDetails != STALE_TOKEN && jwtUtil.validateToken(verifiedToken, userDetails)) {
 
 				UsernamePasswordAuthenticationToken usernamePasswordAuthenticationToken = new UsernamePasswordAuthenticationToken(
 								userDetails, null, userDetails.getAuthorities());
@@ -69,4 +108,24 @@ public class JwtRequestFilter extends OncePerRequestFilter {
 		}
 		chain.doFilter(request, response);
 	}
+
+	// The principal described by the token's claims, STALE_TOKEN if the user's role changed since it was
+	// issued, or null if the token lacks the claims (or the version table is not loaded yet)
+	private UserDetails userDetailsFromClaims(JwtUtil.VerifiedToken token) {
+		String role = token.getRole();
+		Long userId = token.getUserId();
+		Integer version = token.getTokenVersion();
+		if (role == null || userId == null || version == null || !tokenVersionRegistry.isLoaded()) {
+			return null;
+		}
+		if (!tokenVersionRegistry.isCurrent(userId, version)) {
+			return STALE_TOKEN;
+		}
+		try {
+			return new org.springframework.security.core.userdetails.User(token.getSubject(), "",
+							Collections.singletonList(new SimpleGrantedAuthority(Role.valueOf(role).getAuthorityName())));
+		} catch (IllegalArgumentException e) {
+			return STALE_TOKEN; // A role that no longer exists
+		}
+	}
 }
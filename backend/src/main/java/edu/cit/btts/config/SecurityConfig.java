@@ -1,5 +1,6 @@
 package edu.cit.btts.config;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
@@ -34,7 +35,9 @@ public class SecurityConfig {
       .csrf(csrf -> csrf.disable()) // Disable CSRF for stateless API
       .cors(cors -> cors.configurationSource(corsConfigurationSource())) // Enable CORS
       .authorizeHttpRequests(authorize -> authorize
+        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll() // Completion of already authorized async requests (e.g. SSE streams)
         .requestMatchers("/api/auth/google").permitAll() // Allow Google login endpoint without authentication
+        .requestMatchers("/api/auth/refresh").permitAll() // The refresh token is the credential here
         .requestMatchers("/api/user/**").permitAll() // Allow user endpoints for testing
         .requestMatchers("/api/admin/**").hasRole("TRANSIT_ADMIN") // Define role-based access for other endpoints
         .requestMatchers("/api/ticket-staff/**").hasRole("TICKET_STAFF")
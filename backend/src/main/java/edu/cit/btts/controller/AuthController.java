@@ -2,14 +2,19 @@ package edu.cit.btts.controller;
 
 import edu.cit.btts.dto.AuthResponse;
 import edu.cit.btts.dto.GoogleLoginRequest;
+import edu.cit.btts.dto.TokenRefreshRequest;
 import edu.cit.btts.model.User;
 import edu.cit.btts.service.GoogleTokenVerifierService;
 import edu.cit.btts.service.JwtUserDetailsService;
+import edu.cit.btts.service.RefreshTokenService;
+import edu.cit.btts.service.TokenRevocationList;
 import edu.cit.btts.util.JwtUtil;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
@@ -22,13 +27,19 @@ public class AuthController {
   private final GoogleTokenVerifierService googleTokenVerifierService;
   private final JwtUtil jwtUtil;
   private final JwtUserDetailsService jwtUserDetailsService;
+  private final RefreshTokenService refreshTokenService;
+  private final TokenRevocationList tokenRevocationList;
 
   public AuthController(GoogleTokenVerifierService googleTokenVerifierService,
                         JwtUtil jwtUtil,
-                        JwtUserDetailsService jwtUserDetailsService) {
+                        JwtUserDetailsService jwtUserDetailsService,
+                        RefreshTokenService refreshTokenService,
+                        TokenRevocationList tokenRevocationList) {
     this.googleTokenVerifierService = googleTokenVerifierService;
     this.jwtUtil = jwtUtil;
     this.jwtUserDetailsService = jwtUserDetailsService;
+    this.refreshTokenService = refreshTokenService;
+    this.tokenRevocationList = tokenRevocationList;
   }
 
   @PostMapping("/google")
@@ -63,11 +74,11 @@ public class AuthController {
         System.out.println("New user registered: " + email);
       }
 
-      // Generate your custom JWT for the user
-      UserDetails userDetails = jwtUserDetailsService.loadUserByUsername(email);
-      String token = jwtUtil.generateToken(userDetails);
+      // Generate your custom JWT for the user (already loaded above), and a refresh token to renew it with
+      String token = jwtUtil.generateToken(user);
+      String refreshToken = refreshTokenService.issue(user);
 
-      return ResponseEntity.ok(new AuthResponse(token, user));
+      return ResponseEntity.ok(new AuthResponse(token, refreshToken, user));
 
     } catch (GeneralSecurityException | IOException e) {
       System.err.println("Error verifying Google ID Token: " + e.getMessage());
@@ -80,4 +91,29 @@ public class AuthController {
       return ResponseEntity.status(500).body("An internal server error occurred.");
     }
   }
+
+  // Renews an expired access token without going back to Google; the refresh token is spent and replaced
+  @PostMapping("/refresh")
+  public ResponseEntity<?> refresh(@Valid @RequestBody TokenRefreshRequest request) {
+    try {
+      return ResponseEntity.ok(refreshTokenService.refresh(request.getRefreshToken()));
+    } catch (ResponseStatusException e) {
+      return ResponseEntity.status(e.getStatusCode()).body(e.getReason());
+    }
+  }
+
+  // Signs out: the access token is revoked until it expires, and so is the refresh token if one is sent
+  @PostMapping("/logout")
+  public ResponseEntity<?> logout(@RequestHeader(HttpHeaders.AUTHORIZATION) String authorization,
+                                  @RequestBody(required = false) TokenRefreshRequest request) {
+    // Only reached with a valid Bearer token (see SecurityConfig)
+    JwtUtil.VerifiedToken token = jwtUtil.verify(authorization.substring(7));
+    if (token.getId() != null) {
+      tokenRevocationList.revoke(token.getId(), token.getUserId(), token.getExpiration());
+    }
+    if (request != null && request.getRefreshToken() != null) {
+      refreshTokenService.revoke(request.getRefreshToken());
+    }
+    return ResponseEntity.noContent().build();
+  }
 }
@@ -0,0 +1,128 @@
+package edu.cit.btts.controller;
+
+import edu.cit.btts.dto.ApiResponse;
+import edu.cit.btts.dto.BusPositionDTO;
+import edu.cit.btts.dto.PositionIngestResponse;
+import edu.cit.btts.service.BusPositionTracker;
+import edu.cit.btts.service.LivePositionBroadcaster;
+import edu.cit.btts.service.PositionHistoryStore;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/positions")
+public class BusPositionController {
+
+  private static final int MAX_HISTORY_LIMIT = 100_000;
+
+  private final BusPositionTracker busPositionTracker;
+  private final PositionHistoryStore positionHistoryStore;
+  private final LivePositionBroadcaster livePositionBroadcaster;
+
+  public BusPositionController(BusPositionTracker busPositionTracker,
+                               PositionHistoryStore positionHistoryStore,
+                               LivePositionBroadcaster livePositionBroadcaster) {
+    this.busPositionTracker = busPositionTracker;
+    this.positionHistoryStore = positionHistoryStore;
+    this.livePositionBroadcaster = livePositionBroadcaster;
+  }
+
+  /**
+   * Records a batch of GPS samples from on-board devices.
+   * The body is a JSON array of {busId, timestamp (epoch ms), latitude, longitude, speed (km/h), heading (degrees)}.
+   * Accessible by TRANSIT_ADMIN and TICKET_STAFF (the devices sign in as staff).
+   *
+   * @param request The HTTP request, whose body is streamed into the position buffers.
+   * @return ResponseEntity with the PositionIngestResponse.
+   */
+  @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+  @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF')")
+  public ResponseEntity<ApiResponse> ingestPositions(HttpServletRequest request) throws IOException {
+    PositionIngestResponse result = busPositionTracker.ingest(request.getInputStream());
+    return ResponseEntity.ok(new ApiResponse(true, result.getAccepted() + " position(s) recorded.", result));
+  }
+
+  /**
+   * Retrieves the latest position of a bus.
+   * Accessible by TRANSIT_ADMIN, TICKET_STAFF, and PASSENGER.
+   *
+   * @param busId The ID of the bus.
+   * @return ResponseEntity with the BusPositionDTO.
+   */
+  @GetMapping("/bus/{busId}")
+  @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF', 'PASSENGER')")
+  public ResponseEntity<BusPositionDTO> getLatestPosition(@PathVariable Long busId) {
+    BusPositionDTO position = busPositionTracker.getLatestPosition(busId);
+    if (position == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No position reported yet for bus ID: " + busId);
+    }
+    return ResponseEntity.ok(position);
+  }
+
+  /**
+   * Retrieves the most recent positions of a bus, newest first.
+   * Accessible by TRANSIT_ADMIN and TICKET_STAFF.
+   *
+   * @param busId The ID of the bus.
+   * @param limit Maximum number of positions.
+   * @return ResponseEntity with the BusPositionDTOs.
+   */
+  @GetMapping("/bus/{busId}/recent")
+  @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF')")
+  public ResponseEntity<List<BusPositionDTO>> getRecentPositions(@PathVariable Long busId,
+                                                                 @RequestParam(defaultValue = "100") int limit) {
+    return ResponseEntity.ok(busPositionTracker.getRecentPositions(busId, limit));
+  }
+
+  /**
+   * Retrieves the recorded positions of a bus in a time range, oldest first (for replay and delay analysis).
+   * Accessible by TRANSIT_ADMIN and TICKET_STAFF.
+   *
+   * @param busId The ID of the bus.
+   * @param from Start of the range, epoch milliseconds (inclusive).
+   * @param to End of the range, epoch milliseconds (inclusive).
+   * @param limit Maximum number of positions (at most 100000).
+   * @return ResponseEntity with the BusPositionDTOs.
+   */
+  @GetMapping("/bus/{busId}/history")
+  @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF')")
+  public ResponseEntity<List<BusPositionDTO>> getPositionHistory(@PathVariable Long busId,
+                                                                 @RequestParam long from,
+                                                                 @RequestParam long to,
+                                                                 @RequestParam(defaultValue = "10000") int limit) {
+    if (limit < 1 || limit > MAX_HISTORY_LIMIT) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be between 1 and " + MAX_HISTORY_LIMIT + ".");
+    }
+    return ResponseEntity.ok(positionHistoryStore.read(busId, from, to, limit));
+  }
+
+  /**
+   * Live positions of the bus running a trip, as Server-Sent Events: a "position" event (a BusPositionDTO)
+   * with the latest known position, then at most one per update interval while the bus moves.
+   * Accessible by TRANSIT_ADMIN, TICKET_STAFF, and PASSENGER.
+   */
+  @GetMapping(value = "/trip/{tripId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF', 'PASSENGER')")
+  public SseEmitter streamTripPositions(@PathVariable Long tripId) {
+    return livePositionBroadcaster.subscribeToTrip(tripId);
+  }
+
+  /**
+   * Live positions of the bus running a route's trip, as Server-Sent Events (see streamTripPositions).
+   * Accessible by TRANSIT_ADMIN, TICKET_STAFF, and PASSENGER.
+   */
+  @GetMapping(value = "/route/{routeId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF', 'PASSENGER')")
+  public SseEmitter streamRoutePositions(@PathVariable Long routeId) {
+    return livePositionBroadcaster.subscribeToRoute(routeId);
+  }
+}
@@ -1,16 +1,28 @@
 package edu.cit.btts.controller;
 
 import edu.cit.btts.dto.ApiResponse; // Make sure this import points to your non-generic ApiResponse
+import edu.cit.btts.dto.BulkPaymentStatusRequest;
+import edu.cit.btts.dto.PaymentClaimResponse;
 import edu.cit.btts.dto.PaymentRequest;
 import edu.cit.btts.dto.PaymentResponse;
+import edu.cit.btts.dto.PaymentStatusUpdateResult;
 import edu.cit.btts.model.PaymentStatus;
+import edu.cit.btts.model.PaymentType;
+import edu.cit.btts.service.IdempotencyService;
 import edu.cit.btts.service.PaymentService;
+import edu.cit.btts.service.ReceiptStore;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
 import java.util.List;
 
 @RestController
@@ -18,9 +30,13 @@ import java.util.List;
 public class PaymentController {
 
   private final PaymentService paymentService;
+  private final IdempotencyService idempotencyService;
+  private final ReceiptStore receiptStore;
 
-  public PaymentController(PaymentService paymentService) {
+  public PaymentController(PaymentService paymentService, IdempotencyService idempotencyService, ReceiptStore receiptStore) {
     this.paymentService = paymentService;
+    this.idempotencyService = idempotencyService;
+    this.receiptStore = receiptStore;
   }
 
   /**
@@ -29,13 +45,42 @@ public class PaymentController {
    * Passengers can record their own payments.
    *
    * @param request The PaymentRequest DTO.
+   * @param idempotencyKey Optional Idempotency-Key; a retry with the same key gets the original response.
    * @return A ResponseEntity with the created PaymentResponse.
    */
   @PostMapping
   @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF', 'PASSENGER')")
-  public ResponseEntity<ApiResponse> createPayment(@Valid @RequestBody PaymentRequest request) { 
-    PaymentResponse payment = paymentService.createPayment(request);
-    return new ResponseEntity<>(new ApiResponse(true, "Payment recorded successfully.", payment), HttpStatus.CREATED); 
+  public ResponseEntity<ApiResponse> createPayment(@Valid @RequestBody PaymentRequest request,
+                                                   @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+    return idempotencyService.execute(idempotencyKey, "POST /api/payments", request, () -> {
+      PaymentResponse payment = paymentService.createPayment(request);
+      return new ResponseEntity<>(new ApiResponse(true, "Payment recorded successfully.", payment), HttpStatus.CREATED);
+    });
+  }
+
+  /**
+   * Records a new payment for a ticket from a multipart request: a "request" part with the payment data
+   * (JSON, without onlineReceipt) and an optional "receipt" part with the receipt file, which is streamed
+   * to the receipt store.
+   * Accessible by ADMIN, STAFF, and PASSENGER roles.
+   *
+   * @param request The PaymentRequest DTO.
+   * @param receipt The online receipt file (required for ONLINE payments).
+   * @param idempotencyKey Optional Idempotency-Key; a retry with the same key gets the original response.
+   * @return A ResponseEntity with the created PaymentResponse.
+   */
+  @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+  @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF', 'PASSENGER')")
+  public ResponseEntity<ApiResponse> createPaymentMultipart(@Valid @RequestPart("request") PaymentRequest request,
+                                                            @RequestPart(value = "receipt", required = false) MultipartFile receipt,
+                                                            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+    ReceiptStore.StoredReceipt storedReceipt = (request.getType() == PaymentType.ONLINE && receipt != null && !receipt.isEmpty())
+            ? receiptStore.store(receipt) : null;
+    Object fingerprint = (storedReceipt != null) ? List.of(request, storedReceipt.getDigest()) : request;
+    return idempotencyService.execute(idempotencyKey, "POST /api/payments", fingerprint, () -> {
+      PaymentResponse payment = paymentService.createPayment(request, storedReceipt);
+      return new ResponseEntity<>(new ApiResponse(true, "Payment recorded successfully.", payment), HttpStatus.CREATED);
+    });
   }
 
   /**
@@ -52,6 +97,41 @@ public class PaymentController {
     return ResponseEntity.ok(new ApiResponse(true, "Payment retrieved successfully.", payment));
   }
 
+  /**
+   * Downloads the online receipt of a payment, with support for byte ranges and ETag revalidation.
+   * ADMIN and STAFF can view any receipt. Passengers can only view their own receipts.
+   *
+   * @param id The ID of the payment.
+   * @param variant "original" (default), "normalized" (downscaled JPEG for reviewing) or "thumbnail".
+   */
+  @GetMapping("/{id}/receipt")
+  @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF', 'PASSENGER')")
+  public void getReceipt(@PathVariable Long id,
+                         @RequestParam(defaultValue = "original") String variant,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String derived = switch (variant) {
+      case "original" -> null;
+      case ReceiptStore.NORMALIZED, ReceiptStore.THUMBNAIL -> variant;
+      default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown receipt variant: " + variant);
+    };
+    receiptStore.send(paymentService.getReceipt(id), derived, request, response);
+  }
+
+  /**
+   * Replaces the online receipt of a pending payment. The request body is the receipt file itself and is
+   * streamed to the receipt store.
+   * ADMIN and STAFF can replace any receipt. Passengers can only replace their own receipts.
+   *
+   * @param id The ID of the payment.
+   * @return A ResponseEntity with the updated PaymentResponse.
+   */
+  @PutMapping("/{id}/receipt")
+  @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF', 'PASSENGER')")
+  public ResponseEntity<ApiResponse> replaceReceipt(@PathVariable Long id, HttpServletRequest request) throws IOException {
+    PaymentResponse payment = paymentService.replaceReceipt(id, request.getInputStream());
+    return ResponseEntity.ok(new ApiResponse(true, "Payment receipt replaced successfully.", payment));
+  }
+
   /**
    * Retrieves all payments in the system.
    * Accessible only by ADMIN and STAFF roles.
@@ -86,6 +166,49 @@ public class PaymentController {
         return ResponseEntity.ok(new ApiResponse(true, "Payments with status " + status + " retrieved successfully.", payments));
     }
 
+  /**
+   * Claims the next pending payments for review, oldest first. Each reviewer gets payments no other
+   * reviewer holds, for one lease period; renew the claim to keep a payment longer.
+   * Accessible only by ADMIN and STAFF roles.
+   *
+   * @param limit How many payments to claim (default 10).
+   * @return A ResponseEntity with the claimed payments and the lease expiry.
+   */
+  @PostMapping("/claims")
+  @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF')")
+  public ResponseEntity<ApiResponse> claimPendingPayments(@RequestParam(defaultValue = "10") int limit) {
+    PaymentClaimResponse claim = paymentService.claimPendingPayments(limit);
+    return ResponseEntity.ok(new ApiResponse(true, claim.getPayments().size() + " payment(s) claimed for review.", claim));
+  }
+
+  /**
+   * Extends the caller's claim on a payment by another lease period.
+   * Accessible only by ADMIN and STAFF roles.
+   *
+   * @param id The ID of the claimed payment.
+   * @return A ResponseEntity with the payment and the new lease expiry.
+   */
+  @PutMapping("/{id}/claim")
+  @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF')")
+  public ResponseEntity<ApiResponse> renewClaim(@PathVariable Long id) {
+    PaymentClaimResponse claim = paymentService.renewClaim(id);
+    return ResponseEntity.ok(new ApiResponse(true, "Payment claim renewed.", claim));
+  }
+
+  /**
+   * Gives up the caller's claim on a payment, returning it to the review queue.
+   * Accessible only by ADMIN and STAFF roles.
+   *
+   * @param id The ID of the claimed payment.
+   * @return A ResponseEntity indicating success.
+   */
+  @DeleteMapping("/{id}/claim")
+  @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF')")
+  public ResponseEntity<ApiResponse> releaseClaim(@PathVariable Long id) {
+    paymentService.releaseClaim(id);
+    return ResponseEntity.ok(new ApiResponse(true, "Payment claim released.", null));
+  }
+
   /**
    * Updates the status of a payment (e.g., from PENDING to APPROVED).
    * Accessible only by ADMIN and STAFF roles.
@@ -103,6 +226,22 @@ public class PaymentController {
     return ResponseEntity.ok(new ApiResponse(true, "Payment status updated successfully.", updatedPayment)); 
   }
 
+  /**
+   * Updates the status of many payments in one request, with the same rules as the single update.
+   * Each item succeeds or fails on its own.
+   * Accessible only by ADMIN and STAFF roles.
+   *
+   * @param request The (paymentId, status) pairs.
+   * @return A ResponseEntity with one result per item, in request order.
+   */
+  @PatchMapping("/status")
+  @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF')")
+  public ResponseEntity<ApiResponse> updatePaymentStatuses(@Valid @RequestBody BulkPaymentStatusRequest request) {
+    List<PaymentStatusUpdateResult> results = paymentService.updatePaymentStatuses(request.getUpdates());
+    long updated = results.stream().filter(PaymentStatusUpdateResult::isSuccess).count();
+    return ResponseEntity.ok(new ApiResponse(true, updated + " of " + results.size() + " payment status update(s) applied.", results));
+  }
+
   /**
    * Deletes a payment.
    * Accessible only by ADMIN and STAFF roles.
@@ -2,8 +2,10 @@ package edu.cit.btts.controller;
 
 import edu.cit.btts.dto.ApiResponse;
 import edu.cit.btts.dto.RouteDTO;
+import edu.cit.btts.dto.RouteWaypointDTO;
 import edu.cit.btts.service.RouteService; // Import the new RouteService
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Size;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -80,6 +82,36 @@ public class RouteController {
         return ResponseEntity.ok(new ApiResponse(true, "Route updated successfully.", updatedRoute));
     }
 
+    /**
+     * Retrieves the path of a Route (its waypoints, in travel order).
+     * Accessible by TRANSIT_ADMIN, TICKET_STAFF, and PASSENGER.
+     *
+     * @param id The ID of the route.
+     * @return List of RouteWaypointDTOs.
+     */
+    @GetMapping("/{id}/waypoints")
+    @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF', 'PASSENGER')")
+    public ResponseEntity<List<RouteWaypointDTO>> getWaypoints(@PathVariable Long id) {
+        return ResponseEntity.ok(routeService.getWaypoints(id));
+    }
+
+    /**
+     * Replaces the path of a Route, used for live ETAs of its trip.
+     * Accessible only by TRANSIT_ADMIN.
+     *
+     * @param id The ID of the route.
+     * @param waypoints The waypoints, in travel order; name the origin, stops and destination.
+     * @return ResponseEntity with the new waypoints and success message.
+     */
+    @PutMapping("/{id}/waypoints")
+    @PreAuthorize("hasRole('TRANSIT_ADMIN')")
+    public ResponseEntity<ApiResponse> updateWaypoints(@PathVariable Long id,
+                                                       @RequestBody @Size(min = 2, max = 1000, message = "A route path needs 2 to 1000 waypoints")
+                                                       List<@Valid RouteWaypointDTO> waypoints) {
+        List<RouteWaypointDTO> updated = routeService.updateWaypoints(id, waypoints);
+        return ResponseEntity.ok(new ApiResponse(true, "Route path updated successfully.", updated));
+    }
+
     /**
      * Deletes a Route by its ID.
      * Accessible only by TRANSIT_ADMIN.
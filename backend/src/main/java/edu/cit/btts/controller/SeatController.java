@@ -2,10 +2,14 @@ package edu.cit.btts.controller;
 
 import edu.cit.btts.dto.ApiResponse;
 import edu.cit.btts.dto.SeatDTO;
+import edu.cit.btts.dto.SeatMapResponse;
 import edu.cit.btts.service.SeatService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize; // Assuming you have security
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
@@ -25,4 +29,29 @@ public class SeatController {
         List<SeatDTO> seats = seatService.getSeatsByTripId(tripId);
         return ResponseEntity.ok(new ApiResponse(true, "Seats for Trip ID " + tripId + " retrieved successfully.", seats));
     }
+
+    /**
+     * Compact seat map for polling clients: one 2-bit status per cell (see SeatMapResponse).
+     * Sent with an ETag; a request whose If-None-Match still matches gets 304 Not Modified with no body.
+     */
+    @GetMapping("/by-trip/{tripId}/map")
+    @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF', 'PASSENGER')")
+    public ResponseEntity<SeatMapResponse> getSeatMapByTripId(@PathVariable Long tripId) {
+        SeatMapResponse seatMap = seatService.getSeatMapByTripId(tripId);
+        // Spring answers 304 itself when If-None-Match matches this ETag, skipping serialization
+        return ResponseEntity.ok()
+                .eTag(seatMap.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .body(seatMap);
+    }
+
+    /**
+     * Live seat changes of a trip as Server-Sent Events: a "snapshot" event with the compact seat map,
+     * then one "seat" event (a SeatDTO, status null if the seat was removed) per committed change.
+     */
+    @GetMapping(value = "/by-trip/{tripId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF', 'PASSENGER')")
+    public SseEmitter streamSeatChanges(@PathVariable Long tripId) {
+        return seatService.subscribeToSeatChanges(tripId);
+    }
 }
\ No newline at end of file
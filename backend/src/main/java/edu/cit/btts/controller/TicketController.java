@@ -1,18 +1,23 @@
 package edu.cit.btts.controller;
 
 import edu.cit.btts.dto.ApiResponse;
+import edu.cit.btts.dto.GroupTicketRequest;
 import edu.cit.btts.dto.TicketRequest;
 import edu.cit.btts.dto.TicketResponse;
 import edu.cit.btts.dto.TicketUpdateRequest;
+import edu.cit.btts.service.IdempotencyService;
+import edu.cit.btts.service.ReceiptStore;
 import edu.cit.btts.service.TicketService;
 import edu.cit.btts.repository.UserRepository; // Needed for fetching user in getMyTickets (if not using custom UserDetails)
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails; // Or your custom UserDetails type
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
@@ -23,10 +28,14 @@ public class TicketController {
 
   private final TicketService ticketService;
   private final UserRepository userRepository; // Inject if you need to fetch User ID from username
+  private final IdempotencyService idempotencyService;
+  private final ReceiptStore receiptStore;
 
-  public TicketController(TicketService ticketService, UserRepository userRepository) {
+  public TicketController(TicketService ticketService, UserRepository userRepository, IdempotencyService idempotencyService, ReceiptStore receiptStore) {
     this.ticketService = ticketService;
     this.userRepository = userRepository;
+    this.idempotencyService = idempotencyService;
+    this.receiptStore = receiptStore;
   }
 
   /**
@@ -34,13 +43,17 @@ public class TicketController {
      * Accessible by ADMIN, STAFF, and PASSENGER roles.
      *
      * @param request The ticket creation request data.
+     * @param idempotencyKey Optional Idempotency-Key; a retry with the same key gets the original response.
      * @return ResponseEntity with the created TicketResponse.
      */
     @PostMapping("/cash") // Specific endpoint for cash payments
     @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF')")
-    public ResponseEntity<ApiResponse> createTicketCash(@Valid @RequestBody TicketRequest request) {
-        TicketResponse ticket = ticketService.createTicketForCash(request);
-        return new ResponseEntity<>(new ApiResponse(true, "Ticket created successfully with cash payment.", ticket), HttpStatus.CREATED);
+    public ResponseEntity<ApiResponse> createTicketCash(@Valid @RequestBody TicketRequest request,
+                                                        @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, "POST /api/tickets/cash", request, () -> {
+            TicketResponse ticket = ticketService.createTicketForCash(request);
+            return new ResponseEntity<>(new ApiResponse(true, "Ticket created successfully with cash payment.", ticket), HttpStatus.CREATED);
+        });
     }
 
     /**
@@ -48,13 +61,100 @@ public class TicketController {
      * Accessible by ADMIN, STAFF, and PASSENGER roles.
      *
      * @param request The ticket creation request data.
+     * @param idempotencyKey Optional Idempotency-Key; a retry with the same key gets the original response.
      * @return ResponseEntity with the created TicketResponse.
      */
     @PostMapping("/online") // Specific endpoint for online payments
     @PreAuthorize("hasAnyRole('PASSENGER')")
-    public ResponseEntity<ApiResponse> createTicketOnline(@Valid @RequestBody TicketRequest request) {
-        TicketResponse ticket = ticketService.createTicketForOnline(request);
-        return new ResponseEntity<>(new ApiResponse(true, "Ticket created successfully with online payment.", ticket), HttpStatus.CREATED);
+    public ResponseEntity<ApiResponse> createTicketOnline(@Valid @RequestBody TicketRequest request,
+                                                          @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, "POST /api/tickets/online", request, () -> {
+            TicketResponse ticket = ticketService.createTicketForOnline(request);
+            return new ResponseEntity<>(new ApiResponse(true, "Ticket created successfully with online payment.", ticket), HttpStatus.CREATED);
+        });
+    }
+
+    /**
+     * Creates a new Ticket and Seat with an ONLINE payment, from a multipart request: a "request" part with
+     * the ticket data (JSON, without onlineReceipt) and a "receipt" part with the receipt file. The receipt
+     * is streamed to the receipt store before the booking starts instead of being decoded from base64.
+     * Accessible by PASSENGER role.
+     *
+     * @param request The ticket creation request data.
+     * @param receipt The online receipt file.
+     * @param idempotencyKey Optional Idempotency-Key; a retry with the same key gets the original response.
+     * @return ResponseEntity with the created TicketResponse.
+     */
+    @PostMapping(value = "/online", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasAnyRole('PASSENGER')")
+    public ResponseEntity<ApiResponse> createTicketOnlineMultipart(@Valid @RequestPart("request") TicketRequest request,
+                                                                   @RequestPart("receipt") MultipartFile receipt,
+                                                                   @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        ReceiptStore.StoredReceipt storedReceipt = receiptStore.store(receipt);
+        // The receipt's digest stands in for its bytes in the request fingerprint
+        return idempotencyService.execute(idempotencyKey, "POST /api/tickets/online", List.of(request, storedReceipt.getDigest()), () -> {
+            TicketResponse ticket = ticketService.createTicketForOnline(request, storedReceipt);
+            return new ResponseEntity<>(new ApiResponse(true, "Ticket created successfully with online payment.", ticket), HttpStatus.CREATED);
+        });
+    }
+
+    /**
+     * Books several seats of one trip with CASH payment, all or nothing.
+     * Accessible by ADMIN and STAFF roles.
+     *
+     * @param request The group booking request data.
+     * @param idempotencyKey Optional Idempotency-Key; a retry with the same key gets the original response.
+     * @return ResponseEntity with the created TicketResponses.
+     */
+    @PostMapping("/group/cash")
+    @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF')")
+    public ResponseEntity<ApiResponse> createGroupTicketsCash(@Valid @RequestBody GroupTicketRequest request,
+                                                              @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, "POST /api/tickets/group/cash", request, () -> {
+            List<TicketResponse> tickets = ticketService.createGroupTicketsForCash(request);
+            return new ResponseEntity<>(new ApiResponse(true, tickets.size() + " tickets created successfully with cash payment.", tickets), HttpStatus.CREATED);
+        });
+    }
+
+    /**
+     * Books several seats of one trip with ONLINE payment, all or nothing.
+     * Accessible by PASSENGER role.
+     *
+     * @param request The group booking request data.
+     * @param idempotencyKey Optional Idempotency-Key; a retry with the same key gets the original response.
+     * @return ResponseEntity with the created TicketResponses.
+     */
+    @PostMapping("/group/online")
+    @PreAuthorize("hasAnyRole('PASSENGER')")
+    public ResponseEntity<ApiResponse> createGroupTicketsOnline(@Valid @RequestBody GroupTicketRequest request,
+                                                                @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, "POST /api/tickets/group/online", request, () -> {
+            List<TicketResponse> tickets = ticketService.createGroupTicketsForOnline(request);
+            return new ResponseEntity<>(new ApiResponse(true, tickets.size() + " tickets created successfully with online payment.", tickets), HttpStatus.CREATED);
+        });
+    }
+
+    /**
+     * Books several seats of one trip with ONLINE payment, all or nothing, from a multipart request: a
+     * "request" part with the booking data (JSON, without onlineReceipt) and a "receipt" part with the
+     * receipt file, which is streamed to the receipt store.
+     * Accessible by PASSENGER role.
+     *
+     * @param request The group booking request data.
+     * @param receipt The online receipt file.
+     * @param idempotencyKey Optional Idempotency-Key; a retry with the same key gets the original response.
+     * @return ResponseEntity with the created TicketResponses.
+     */
+    @PostMapping(value = "/group/online", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasAnyRole('PASSENGER')")
+    public ResponseEntity<ApiResponse> createGroupTicketsOnlineMultipart(@Valid @RequestPart("request") GroupTicketRequest request,
+                                                                         @RequestPart("receipt") MultipartFile receipt,
+                                                                         @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        ReceiptStore.StoredReceipt storedReceipt = receiptStore.store(receipt);
+        return idempotencyService.execute(idempotencyKey, "POST /api/tickets/group/online", List.of(request, storedReceipt.getDigest()), () -> {
+            List<TicketResponse> tickets = ticketService.createGroupTicketsForOnline(request, storedReceipt);
+            return new ResponseEntity<>(new ApiResponse(true, tickets.size() + " tickets created successfully with online payment.", tickets), HttpStatus.CREATED);
+        });
     }
 
   /**
@@ -1,9 +1,15 @@
 package edu.cit.btts.controller;
 
 import edu.cit.btts.dto.ApiResponse;
+import edu.cit.btts.dto.AvailableSeatCorrection;
+import edu.cit.btts.dto.CacheStats;
 import edu.cit.btts.dto.TripCreateRequest; // New import
+import edu.cit.btts.dto.TripEtaResponse;
+import edu.cit.btts.dto.TripPageResponse;
 import edu.cit.btts.dto.TripUpdateRequest; // New import
 import edu.cit.btts.dto.TripResponse; // New import
+import edu.cit.btts.model.TripStatus;
+import edu.cit.btts.service.TripEtaEngine;
 import edu.cit.btts.service.TripService;
 import jakarta.validation.Valid;
 
@@ -21,9 +27,11 @@ import java.util.List;
 public class TripController {
 
   private final TripService tripService;
+  private final TripEtaEngine tripEtaEngine;
 
-  public TripController(TripService tripService) {
+  public TripController(TripService tripService, TripEtaEngine tripEtaEngine) {
     this.tripService = tripService;
+    this.tripEtaEngine = tripEtaEngine;
   }
 
   /**
@@ -77,6 +85,49 @@ public class TripController {
     return ResponseEntity.ok(new ApiResponse(true, "Trips for " + date + " retrieved successfully.", trips));
   }
 
+  /**
+   * Searches trips page by page, in departure order.
+   * Accessible by TRANSIT_ADMIN, TICKET_STAFF, and PASSENGER.
+   *
+   * @param from Earliest departure date (inclusive, optional).
+   * @param to Latest departure date (inclusive, optional).
+   * @param origin Route origin (optional).
+   * @param destination Route destination (optional).
+   * @param status Trip status (optional).
+   * @param minAvailableSeats Minimum number of available seats (optional).
+   * @param cursor The nextCursor of the previous page; omit for the first page.
+   * @param size Page size, at most 100.
+   * @return ResponseEntity with the TripPageResponse.
+   */
+  @GetMapping("/search")
+  @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF', 'PASSENGER')")
+  public ResponseEntity<ApiResponse> searchTrips(
+          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+          @RequestParam(required = false) String origin,
+          @RequestParam(required = false) String destination,
+          @RequestParam(required = false) TripStatus status,
+          @RequestParam(required = false) Integer minAvailableSeats,
+          @RequestParam(required = false) String cursor,
+          @RequestParam(defaultValue = "20") int size) {
+    TripPageResponse page = tripService.searchTrips(from, to, origin, destination, status, minAvailableSeats, cursor, size);
+    return ResponseEntity.ok(new ApiResponse(true, page.getTrips().size() + " trip(s) retrieved successfully.", page));
+  }
+
+  /**
+   * Retrieves the live ETAs of a boarding or departed trip, from its bus's latest position.
+   * Accessible by TRANSIT_ADMIN, TICKET_STAFF, and PASSENGER.
+   *
+   * @param id The ID of the trip.
+   * @param stop Only the ETA of this stop, e.g. a ticket's drop-off (optional).
+   * @return TripEtaResponse with the ETA and delay of each stop.
+   */
+  @GetMapping("/{id}/eta")
+  @PreAuthorize("hasAnyRole('TRANSIT_ADMIN', 'TICKET_STAFF', 'PASSENGER')")
+  public ResponseEntity<TripEtaResponse> getTripEta(@PathVariable Long id, @RequestParam(required = false) String stop) {
+    return ResponseEntity.ok(tripEtaEngine.getTripEta(id, stop));
+  }
+
   /**
    * Updates an existing Trip.
    * Accessible only by TRANSIT_ADMIN.
@@ -92,6 +143,32 @@ public class TripController {
     return ResponseEntity.ok(new ApiResponse(true, "Trip updated successfully.", updatedTrip));
   }
 
+  /**
+   * Reconciles every trip's available seat counter against its seats, correcting any that drifted.
+   * Accessible only by TRANSIT_ADMIN.
+   *
+   * @return ResponseEntity with the corrections that were made.
+   */
+  @PostMapping("/available-seats/reconcile")
+  @PreAuthorize("hasRole('TRANSIT_ADMIN')")
+  public ResponseEntity<ApiResponse> reconcileAvailableSeats() {
+    List<AvailableSeatCorrection> corrections = tripService.reconcileAvailableSeats();
+    return ResponseEntity.ok(new ApiResponse(true, "Available seats reconciled; " + corrections.size() + " trip(s) corrected.", corrections));
+  }
+
+  /**
+   * Returns hit, miss and eviction counters of the trip caches (trips by ID and trips by date).
+   * Accessible only by TRANSIT_ADMIN.
+   *
+   * @return ResponseEntity with the CacheStats of each cache.
+   */
+  @GetMapping("/cache/stats")
+  @PreAuthorize("hasRole('TRANSIT_ADMIN')")
+  public ResponseEntity<ApiResponse> getCacheStats() {
+    List<CacheStats> stats = tripService.getCacheStats();
+    return ResponseEntity.ok(new ApiResponse(true, "Trip cache statistics retrieved successfully.", stats));
+  }
+
   /**
    * Deletes a Trip by its ID.
    * Accessible only by TRANSIT_ADMIN.
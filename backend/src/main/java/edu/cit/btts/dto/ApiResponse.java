@@ -8,6 +8,8 @@ public class ApiResponse {
     private String message;
     private Object data; // Generic field to hold any data (e.g., a DTO)
 
+    public ApiResponse() {} // For deserializing stored responses
+
     public ApiResponse(boolean success, String message) {
         this.success = success;
         this.message = message;
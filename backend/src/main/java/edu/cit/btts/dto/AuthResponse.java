@@ -8,6 +8,7 @@ public class AuthResponse {
   private String token;
   private User user; // Contains user details including role
   private Role role; // Explicitly include role for convenience on frontend
+  private String refreshToken; // Exchanged at /api/auth/refresh for a new token when this one expires
 
   public AuthResponse(String token, User user) {
     this.token = token;
@@ -15,6 +16,11 @@ public class AuthResponse {
     this.role = user.getRole(); // Set the role from the user object
   }
 
+  public AuthResponse(String token, String refreshToken, User user) {
+    this(token, user);
+    this.refreshToken = refreshToken;
+  }
+
   public String getToken() {
     return token;
   }
@@ -38,4 +44,12 @@ public class AuthResponse {
   public void setRole(Role role) { // Setter for role
     this.role = role;
   }
+
+  public String getRefreshToken() {
+    return refreshToken;
+  }
+
+  public void setRefreshToken(String refreshToken) {
+    this.refreshToken = refreshToken;
+  }
 }
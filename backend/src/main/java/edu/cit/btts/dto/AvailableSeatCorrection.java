@@ -0,0 +1,24 @@
+package edu.cit.btts.dto;
+
+// One trip whose available seat counter was corrected by a reconciliation
+public class AvailableSeatCorrection {
+  private Long tripId;
+  private Integer previousAvailableSeats; // null if the trip had no counter yet
+  private Integer availableSeats;
+
+  public AvailableSeatCorrection() {}
+
+  public AvailableSeatCorrection(Long tripId, Integer previousAvailableSeats, Integer availableSeats) {
+    this.tripId = tripId;
+    this.previousAvailableSeats = previousAvailableSeats;
+    this.availableSeats = availableSeats;
+  }
+
+  // Getters and Setters
+  public Long getTripId() { return tripId; }
+  public void setTripId(Long tripId) { this.tripId = tripId; }
+  public Integer getPreviousAvailableSeats() { return previousAvailableSeats; }
+  public void setPreviousAvailableSeats(Integer previousAvailableSeats) { this.previousAvailableSeats = previousAvailableSeats; }
+  public Integer getAvailableSeats() { return availableSeats; }
+  public void setAvailableSeats(Integer availableSeats) { this.availableSeats = availableSeats; }
+}
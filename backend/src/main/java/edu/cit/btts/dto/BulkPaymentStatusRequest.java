@@ -0,0 +1,16 @@
+package edu.cit.btts.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import java.util.List;
+
+public class BulkPaymentStatusRequest {
+
+  @NotEmpty(message = "Updates cannot be empty")
+  @Valid
+  private List<PaymentStatusUpdateRequest> updates;
+
+  // Getters and Setters
+  public List<PaymentStatusUpdateRequest> getUpdates() { return updates; }
+  public void setUpdates(List<PaymentStatusUpdateRequest> updates) { this.updates = updates; }
+}
@@ -0,0 +1,36 @@
+package edu.cit.btts.dto;
+
+// One GPS sample of a bus
+public class BusPositionDTO {
+  private Long busId;
+  private Long timestamp; // Epoch milliseconds
+  private Double latitude;
+  private Double longitude;
+  private Float speed; // km/h
+  private Float heading; // Degrees clockwise from north
+
+  public BusPositionDTO() {}
+
+  public BusPositionDTO(Long busId, Long timestamp, Double latitude, Double longitude, Float speed, Float heading) {
+    this.busId = busId;
+    this.timestamp = timestamp;
+    this.latitude = latitude;
+    this.longitude = longitude;
+    this.speed = speed;
+    this.heading = heading;
+  }
+
+  // Getters and Setters
+  public Long getBusId() { return busId; }
+  public void setBusId(Long busId) { this.busId = busId; }
+  public Long getTimestamp() { return timestamp; }
+  public void setTimestamp(Long timestamp) { this.timestamp = timestamp; }
+  public Double getLatitude() { return latitude; }
+  public void setLatitude(Double latitude) { this.latitude = latitude; }
+  public Double getLongitude() { return longitude; }
+  public void setLongitude(Double longitude) { this.longitude = longitude; }
+  public Float getSpeed() { return speed; }
+  public void setSpeed(Float speed) { this.speed = speed; }
+  public Float getHeading() { return heading; }
+  public void setHeading(Float heading) { this.heading = heading; }
+}
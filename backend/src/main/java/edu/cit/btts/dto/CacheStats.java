@@ -0,0 +1,40 @@
+package edu.cit.btts.dto;
+
+// Counters of one in-memory cache, for sizing it in production
+public class CacheStats {
+  private String name;
+  private int size;
+  private int maxEntries;
+  private long hits;
+  private long misses;
+  private long evictions; // Entries dropped because the cache was full or they outlived their time to live
+  private long invalidations; // Entries dropped because their data changed
+
+  public CacheStats() {}
+
+  public CacheStats(String name, int size, int maxEntries, long hits, long misses, long evictions, long invalidations) {
+    this.name = name;
+    this.size = size;
+    this.maxEntries = maxEntries;
+    this.hits = hits;
+    this.misses = misses;
+    this.evictions = evictions;
+    this.invalidations = invalidations;
+  }
+
+  // Getters and Setters
+  public String getName() { return name; }
+  public void setName(String name) { this.name = name; }
+  public int getSize() { return size; }
+  public void setSize(int size) { this.size = size; }
+  public int getMaxEntries() { return maxEntries; }
+  public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+  public long getHits() { return hits; }
+  public void setHits(long hits) { this.hits = hits; }
+  public long getMisses() { return misses; }
+  public void setMisses(long misses) { this.misses = misses; }
+  public long getEvictions() { return evictions; }
+  public void setEvictions(long evictions) { this.evictions = evictions; }
+  public long getInvalidations() { return invalidations; }
+  public void setInvalidations(long invalidations) { this.invalidations = invalidations; }
+}
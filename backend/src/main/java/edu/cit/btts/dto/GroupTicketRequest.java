@@ -0,0 +1,91 @@
+package edu.cit.btts.dto;
+
+import edu.cit.btts.model.PaymentType;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Books several seats of one trip for one user in a single request (families, tour groups)
+public class GroupTicketRequest {
+
+  @NotNull(message = "Trip ID cannot be null")
+  @Positive(message = "Trip ID must be positive")
+  private Long tripId;
+
+  @NotNull(message = "User ID cannot be null")
+  @Positive(message = "User ID must be positive")
+  private Long userId; // The passenger buying the tickets
+
+  @NotEmpty(message = "At least one seat is required")
+  @Size(max = 20, message = "A group booking cannot exceed 20 seats")
+  @Valid
+  private List<SeatPositionRequest> seats = new ArrayList<>();
+
+  @NotNull(message = "Fare cannot be null")
+  @Positive(message = "Fare must be a positive value")
+  private Double fare; // Fare per seat
+
+  @NotBlank(message = "Drop-off location cannot be blank")
+  @Size(max = 100, message = "Drop-off location cannot exceed 100 characters")
+  private String dropOff;
+
+  @NotNull(message = "Payment type is required.")
+  private PaymentType paymentType;
+
+  // This will be base64 encoded string if sent via JSON for online payments.
+  // It's optional for cash. Multipart requests leave it out and send the file as the "receipt" part.
+  private byte[] onlineReceipt;
+
+  // Getters and Setters
+  public Long getTripId() {
+    return tripId;
+  }
+
+  public void setTripId(Long tripId) {
+    this.tripId = tripId;
+  }
+
+  public Long getUserId() {
+    return userId;
+  }
+
+  public void setUserId(Long userId) {
+    this.userId = userId;
+  }
+
+  public List<SeatPositionRequest> getSeats() {
+    return seats;
+  }
+
+  public void setSeats(List<SeatPositionRequest> seats) {
+    this.seats = seats != null ? new ArrayList<>(seats) : new ArrayList<>();
+  }
+
+  public Double getFare() {
+    return fare;
+  }
+
+  public void setFare(Double fare) {
+    this.fare = fare;
+  }
+
+  public String getDropOff() {
+    return dropOff;
+  }
+
+  public void setDropOff(String dropOff) {
+    this.dropOff = dropOff;
+  }
+
+  public PaymentType getPaymentType() { return paymentType; }
+  public void setPaymentType(PaymentType paymentType) { this.paymentType = paymentType; }
+
+  public byte[] getOnlineReceipt() { return onlineReceipt; }
+  public void setOnlineReceipt(byte[] onlineReceipt) { this.onlineReceipt = onlineReceipt; }
+}
@@ -0,0 +1,23 @@
+package edu.cit.btts.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Payments handed to one reviewer; renew the claim on each before leaseExpiresAt or others may take it
+public class PaymentClaimResponse {
+  private List<PaymentResponse> payments;
+  private LocalDateTime leaseExpiresAt;
+
+  public PaymentClaimResponse() {}
+
+  public PaymentClaimResponse(List<PaymentResponse> payments, LocalDateTime leaseExpiresAt) {
+    this.payments = payments;
+    this.leaseExpiresAt = leaseExpiresAt;
+  }
+
+  // Getters and Setters
+  public List<PaymentResponse> getPayments() { return payments; }
+  public void setPayments(List<PaymentResponse> payments) { this.payments = payments; }
+  public LocalDateTime getLeaseExpiresAt() { return leaseExpiresAt; }
+  public void setLeaseExpiresAt(LocalDateTime leaseExpiresAt) { this.leaseExpiresAt = leaseExpiresAt; }
+}
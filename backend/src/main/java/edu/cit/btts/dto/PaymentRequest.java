@@ -18,9 +18,8 @@ public class PaymentRequest {
   @NotNull(message = "Payment purpose cannot be null")
   private PaymentPurpose purpose;
 
-  // This will be base64 encoded string if sent via JSON, or raw bytes if multipart form-data.
-  // For simplicity, we'll assume it's a byte array that Spring can map from multipart file.
-  // If you plan to send it as base64 in JSON, you'd make this a String and decode it in service.
+  // This will be base64 encoded string if sent via JSON.
+  // Multipart requests leave it out and send the file as the "receipt" part, which is streamed to storage.
   private byte[] onlineReceipt; // Optional for CASH type
 
   @NotNull(message = "Ticket ID cannot be null")
@@ -13,20 +13,28 @@ public class PaymentResponse {
   private PaymentType type;
   private PaymentPurpose purpose;
   private LocalDateTime date;
-  private byte[] onlineReceipt; // For response, can be encoded to base64 if needed by frontend
+  // The receipt itself is downloaded from receiptUrl (null when the payment has no receipt); image
+  // receipts also have a small preview for lists
+  private String receiptUrl;
+  private String receiptThumbnailUrl;
+  private Long receiptSize;
+  private String receiptContentType;
   private Long ticketId; // Just the ID, or you could embed a TicketResponse DTO if more details are needed
 
   public PaymentResponse() {
   }
 
-  public PaymentResponse(Long id, BigDecimal amount, PaymentStatus status, PaymentType type, PaymentPurpose purpose, LocalDateTime date, byte[] onlineReceipt, Long ticketId) {
+  public PaymentResponse(Long id, BigDecimal amount, PaymentStatus status, PaymentType type, PaymentPurpose purpose, LocalDateTime date, String receiptUrl, String receiptThumbnailUrl, Long receiptSize, String receiptContentType, Long ticketId) {
     this.id = id;
     this.amount = amount;
     this.status = status;
     this.type = type;
     this.purpose = purpose;
     this.date = date;
-    this.onlineReceipt = onlineReceipt;
+    this.receiptUrl = receiptUrl;
+    this.receiptThumbnailUrl = receiptThumbnailUrl;
+    this.receiptSize = receiptSize;
+    this.receiptContentType = receiptContentType;
     this.ticketId = ticketId;
   }
 
@@ -79,12 +87,36 @@ public class PaymentResponse {
     this.date = date;
   }
 
-  public byte[] getOnlineReceipt() {
-    return onlineReceipt;
+  public String getReceiptUrl() {
+    return receiptUrl;
   }
 
-  public void setOnlineReceipt(byte[] onlineReceipt) {
-    this.onlineReceipt = onlineReceipt;
+  public void setReceiptUrl(String receiptUrl) {
+    this.receiptUrl = receiptUrl;
+  }
+
+  public String getReceiptThumbnailUrl() {
+    return receiptThumbnailUrl;
+  }
+
+  public void setReceiptThumbnailUrl(String receiptThumbnailUrl) {
+    this.receiptThumbnailUrl = receiptThumbnailUrl;
+  }
+
+  public Long getReceiptSize() {
+    return receiptSize;
+  }
+
+  public void setReceiptSize(Long receiptSize) {
+    this.receiptSize = receiptSize;
+  }
+
+  public String getReceiptContentType() {
+    return receiptContentType;
+  }
+
+  public void setReceiptContentType(String receiptContentType) {
+    this.receiptContentType = receiptContentType;
   }
 
   public Long getTicketId() {
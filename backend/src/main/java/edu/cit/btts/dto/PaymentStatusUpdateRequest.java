@@ -0,0 +1,29 @@
+package edu.cit.btts.dto;
+
+import edu.cit.btts.model.PaymentStatus;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+
+// One item of a bulk payment status update
+public class PaymentStatusUpdateRequest {
+
+  @NotNull(message = "Payment ID cannot be null")
+  @Positive(message = "Payment ID must be positive")
+  private Long paymentId;
+
+  @NotNull(message = "Status cannot be null")
+  private PaymentStatus status;
+
+  public PaymentStatusUpdateRequest() {}
+
+  public PaymentStatusUpdateRequest(Long paymentId, PaymentStatus status) {
+    this.paymentId = paymentId;
+    this.status = status;
+  }
+
+  // Getters and Setters
+  public Long getPaymentId() { return paymentId; }
+  public void setPaymentId(Long paymentId) { this.paymentId = paymentId; }
+  public PaymentStatus getStatus() { return status; }
+  public void setStatus(PaymentStatus status) { this.status = status; }
+}
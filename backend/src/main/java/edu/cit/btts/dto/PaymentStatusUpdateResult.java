@@ -0,0 +1,34 @@
+package edu.cit.btts.dto;
+
+import edu.cit.btts.model.PaymentStatus;
+
+// The outcome of one item of a bulk payment status update; payment is set on success, error otherwise
+public class PaymentStatusUpdateResult {
+  private Long paymentId;
+  private PaymentStatus requestedStatus;
+  private boolean success;
+  private String error;
+  private PaymentResponse payment;
+
+  public PaymentStatusUpdateResult() {}
+
+  public PaymentStatusUpdateResult(Long paymentId, PaymentStatus requestedStatus, boolean success, String error, PaymentResponse payment) {
+    this.paymentId = paymentId;
+    this.requestedStatus = requestedStatus;
+    this.success = success;
+    this.error = error;
+    this.payment = payment;
+  }
+
+  // Getters and Setters
+  public Long getPaymentId() { return paymentId; }
+  public void setPaymentId(Long paymentId) { this.paymentId = paymentId; }
+  public PaymentStatus getRequestedStatus() { return requestedStatus; }
+  public void setRequestedStatus(PaymentStatus requestedStatus) { this.requestedStatus = requestedStatus; }
+  public boolean isSuccess() { return success; }
+  public void setSuccess(boolean success) { this.success = success; }
+  public String getError() { return error; }
+  public void setError(String error) { this.error = error; }
+  public PaymentResponse getPayment() { return payment; }
+  public void setPayment(PaymentResponse payment) { this.payment = payment; }
+}
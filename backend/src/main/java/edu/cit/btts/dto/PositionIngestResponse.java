@@ -0,0 +1,24 @@
+package edu.cit.btts.dto;
+
+// Outcome of one batch of GPS samples
+public class PositionIngestResponse {
+  private int accepted;
+  private int stale; // Older than the bus's latest sample (e.g. retransmitted)
+  private int rejected; // Unknown bus or invalid values
+
+  public PositionIngestResponse() {}
+
+  public PositionIngestResponse(int accepted, int stale, int rejected) {
+    this.accepted = accepted;
+    this.stale = stale;
+    this.rejected = rejected;
+  }
+
+  // Getters and Setters
+  public int getAccepted() { return accepted; }
+  public void setAccepted(int accepted) { this.accepted = accepted; }
+  public int getStale() { return stale; }
+  public void setStale(int stale) { this.stale = stale; }
+  public int getRejected() { return rejected; }
+  public void setRejected(int rejected) { this.rejected = rejected; }
+}
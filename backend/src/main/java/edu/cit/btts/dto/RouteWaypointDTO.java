@@ -0,0 +1,39 @@
+package edu.cit.btts.dto;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+// A point of a route's path; name is set for the origin, the stops and the destination
+public class RouteWaypointDTO {
+
+  @Size(max = 100, message = "Waypoint name cannot exceed 100 characters")
+  private String name;
+
+  @NotNull(message = "Latitude is required")
+  @DecimalMin(value = "-90", message = "Latitude must be between -90 and 90")
+  @DecimalMax(value = "90", message = "Latitude must be between -90 and 90")
+  private Double latitude;
+
+  @NotNull(message = "Longitude is required")
+  @DecimalMin(value = "-180", message = "Longitude must be between -180 and 180")
+  @DecimalMax(value = "180", message = "Longitude must be between -180 and 180")
+  private Double longitude;
+
+  public RouteWaypointDTO() {}
+
+  public RouteWaypointDTO(String name, Double latitude, Double longitude) {
+    this.name = name;
+    this.latitude = latitude;
+    this.longitude = longitude;
+  }
+
+  // Getters and Setters
+  public String getName() { return name; }
+  public void setName(String name) { this.name = name; }
+  public Double getLatitude() { return latitude; }
+  public void setLatitude(Double latitude) { this.latitude = latitude; }
+  public Double getLongitude() { return longitude; }
+  public void setLongitude(Double longitude) { this.longitude = longitude; }
+}
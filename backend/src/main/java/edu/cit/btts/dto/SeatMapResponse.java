@@ -0,0 +1,58 @@
+package edu.cit.btts.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.List;
+
+/**
+ * Compact seat map of a trip for the seat selection screen.
+ * The grid is sent as one 2-bit status code per cell, row-major (row 1 column 1 first), four cells per
+ * byte starting at the low bits, Base64 encoded. Cells without a seat are reported as OPEN.
+ */
+public class SeatMapResponse {
+
+  // Index in this list = 2-bit code used in cells
+  public static final List<String> STATUS_CODES = List.of("OPEN", "RESERVED", "BOOKED", "UNAVAILABLE");
+
+  private Long tripId;
+  private Integer rowCount;
+  private Integer columnCount;
+  private String rowLabel;
+  private String columnLabel;
+  private List<String> statusCodes;
+  private String cells;
+  @JsonIgnore
+  private String etag; // Sent as the ETag header, not in the body
+
+  public SeatMapResponse() {}
+
+  public SeatMapResponse(Long tripId, Integer rowCount, Integer columnCount, String rowLabel, String columnLabel,
+                         String cells, String etag) {
+    this.tripId = tripId;
+    this.rowCount = rowCount;
+    this.columnCount = columnCount;
+    this.rowLabel = rowLabel;
+    this.columnLabel = columnLabel;
+    this.statusCodes = STATUS_CODES;
+    this.cells = cells;
+    this.etag = etag;
+  }
+
+  // Getters and Setters
+  public Long getTripId() { return tripId; }
+  public void setTripId(Long tripId) { this.tripId = tripId; }
+  public Integer getRowCount() { return rowCount; }
+  public void setRowCount(Integer rowCount) { this.rowCount = rowCount; }
+  public Integer getColumnCount() { return columnCount; }
+  public void setColumnCount(Integer columnCount) { this.columnCount = columnCount; }
+  public String getRowLabel() { return rowLabel; }
+  public void setRowLabel(String rowLabel) { this.rowLabel = rowLabel; }
+  public String getColumnLabel() { return columnLabel; }
+  public void setColumnLabel(String columnLabel) { this.columnLabel = columnLabel; }
+  public List<String> getStatusCodes() { return statusCodes; }
+  public void setStatusCodes(List<String> statusCodes) { this.statusCodes = statusCodes; }
+  public String getCells() { return cells; }
+  public void setCells(String cells) { this.cells = cells; }
+  public String getEtag() { return etag; }
+  public void setEtag(String etag) { this.etag = etag; }
+}
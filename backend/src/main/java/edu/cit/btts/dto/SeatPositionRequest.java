@@ -0,0 +1,41 @@
+package edu.cit.btts.dto;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+
+// A single seat cell (row/column) requested as part of a group booking
+public class SeatPositionRequest {
+
+  @NotNull(message = "Row position cannot be null")
+  @Positive(message = "Row position must be positive")
+  private Integer rowPosition;
+
+  @NotNull(message = "Column position cannot be null")
+  @Positive(message = "Column position must be positive")
+  private Integer columnPosition;
+
+  public SeatPositionRequest() {
+  }
+
+  public SeatPositionRequest(Integer rowPosition, Integer columnPosition) {
+    this.rowPosition = rowPosition;
+    this.columnPosition = columnPosition;
+  }
+
+  // Getters and Setters
+  public Integer getRowPosition() {
+    return rowPosition;
+  }
+
+  public void setRowPosition(Integer rowPosition) {
+    this.rowPosition = rowPosition;
+  }
+
+  public Integer getColumnPosition() {
+    return columnPosition;
+  }
+
+  public void setColumnPosition(Integer columnPosition) {
+    this.columnPosition = columnPosition;
+  }
+}
@@ -0,0 +1,32 @@
+package edu.cit.btts.dto;
+
+// Predicted arrival of a trip's bus at one named waypoint of its route
+public class StopEtaDTO {
+  private String name;
+  private Double distanceMeters; // Along the route, from the origin
+  private Boolean passed;
+  private Long eta; // Epoch milliseconds; null once passed
+  private Long delaySeconds; // Predicted minus planned arrival; negative when ahead
+
+  public StopEtaDTO() {}
+
+  public StopEtaDTO(String name, Double distanceMeters, Boolean passed, Long eta, Long delaySeconds) {
+    this.name = name;
+    this.distanceMeters = distanceMeters;
+    this.passed = passed;
+    this.eta = eta;
+    this.delaySeconds = delaySeconds;
+  }
+
+  // Getters and Setters
+  public String getName() { return name; }
+  public void setName(String name) { this.name = name; }
+  public Double getDistanceMeters() { return distanceMeters; }
+  public void setDistanceMeters(Double distanceMeters) { this.distanceMeters = distanceMeters; }
+  public Boolean getPassed() { return passed; }
+  public void setPassed(Boolean passed) { this.passed = passed; }
+  public Long getEta() { return eta; }
+  public void setEta(Long eta) { this.eta = eta; }
+  public Long getDelaySeconds() { return delaySeconds; }
+  public void setDelaySeconds(Long delaySeconds) { this.delaySeconds = delaySeconds; }
+}
@@ -35,7 +35,7 @@ public class TicketRequest {
   private PaymentType paymentType;
 
   // This will be base64 encoded string if sent via JSON for online payments.
-  // It's optional for cash.
+  // It's optional for cash. Multipart requests leave it out and send the file as the "receipt" part.
   private byte[] onlineReceipt;
 
   // Getters and Setters
@@ -0,0 +1,28 @@
+package edu.cit.btts.dto;
+
+// A renewed access token and the refresh token that replaces the one spent on it
+public class TokenRefreshResponse {
+  private String token;
+  private String refreshToken;
+
+  public TokenRefreshResponse(String token, String refreshToken) {
+    this.token = token;
+    this.refreshToken = refreshToken;
+  }
+
+  public String getToken() {
+    return token;
+  }
+
+  public void setToken(String token) {
+    this.token = token;
+  }
+
+  public String getRefreshToken() {
+    return refreshToken;
+  }
+
+  public void setRefreshToken(String refreshToken) {
+    this.refreshToken = refreshToken;
+  }
+}
@@ -0,0 +1,41 @@
+package edu.cit.btts.dto;
+
+import edu.cit.btts.model.TripStatus;
+
+import java.util.List;
+
+// Live ETAs of an active trip, as of its bus's latest position
+public class TripEtaResponse {
+  private Long tripId;
+  private Long busId;
+  private TripStatus status;
+  private Long updatedAt; // Epoch milliseconds of the position the ETAs are based on; null before the first one
+  private Double distanceTravelledMeters;
+  private List<StopEtaDTO> stops;
+
+  public TripEtaResponse() {}
+
+  public TripEtaResponse(Long tripId, Long busId, TripStatus status, Long updatedAt,
+                         Double distanceTravelledMeters, List<StopEtaDTO> stops) {
+    this.tripId = tripId;
+    this.busId = busId;
+    this.status = status;
+    this.updatedAt = updatedAt;
+    this.distanceTravelledMeters = distanceTravelledMeters;
+    this.stops = stops;
+  }
+
+  // Getters and Setters
+  public Long getTripId() { return tripId; }
+  public void setTripId(Long tripId) { this.tripId = tripId; }
+  public Long getBusId() { return busId; }
+  public void setBusId(Long busId) { this.busId = busId; }
+  public TripStatus getStatus() { return status; }
+  public void setStatus(TripStatus status) { this.status = status; }
+  public Long getUpdatedAt() { return updatedAt; }
+  public void setUpdatedAt(Long updatedAt) { this.updatedAt = updatedAt; }
+  public Double getDistanceTravelledMeters() { return distanceTravelledMeters; }
+  public void setDistanceTravelledMeters(Double distanceTravelledMeters) { this.distanceTravelledMeters = distanceTravelledMeters; }
+  public List<StopEtaDTO> getStops() { return stops; }
+  public void setStops(List<StopEtaDTO> stops) { this.stops = stops; }
+}
@@ -0,0 +1,22 @@
+package edu.cit.btts.dto;
+
+import java.util.List;
+
+// One page of a trip search; pass nextCursor back as the cursor parameter to get the next page
+public class TripPageResponse {
+  private List<TripResponse> trips;
+  private String nextCursor; // null on the last page
+
+  public TripPageResponse() {}
+
+  public TripPageResponse(List<TripResponse> trips, String nextCursor) {
+    this.trips = trips;
+    this.nextCursor = nextCursor;
+  }
+
+  // Getters and Setters
+  public List<TripResponse> getTrips() { return trips; }
+  public void setTrips(List<TripResponse> trips) { this.trips = trips; }
+  public String getNextCursor() { return nextCursor; }
+  public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
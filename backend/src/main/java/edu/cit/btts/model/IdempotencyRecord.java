@@ -0,0 +1,112 @@
+package edu.cit.btts.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// The outcome of a request sent with an Idempotency-Key, kept so that retries can be answered with it
+@Entity
+@Table(name = "idempotency_records",
+       uniqueConstraints = @UniqueConstraint(name = "uk_idempotency_records_caller_endpoint_key",
+                                             columnNames = {"caller", "endpoint", "idempotency_key"}),
+       indexes = @Index(name = "idx_idempotency_records_created_at", columnList = "created_at"))
+public class IdempotencyRecord {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(name = "idempotency_key", nullable = false, length = 100)
+  private String idempotencyKey;
+
+  @Column(nullable = false, length = 100) // Keys are scoped per authenticated user
+  private String caller;
+
+  @Column(nullable = false, length = 100)
+  private String endpoint;
+
+  @Column(name = "request_hash", nullable = false, length = 64) // SHA-256 of the request body, hex
+  private String requestHash;
+
+  @Column(name = "response_status") // null while the original request is still running
+  private Integer responseStatus;
+
+  @Lob
+  @Column(name = "response_body")
+  private String responseBody;
+
+  @Column(name = "created_at", nullable = false)
+  private LocalDateTime createdAt;
+
+  public IdempotencyRecord() {
+    this.createdAt = LocalDateTime.now();
+  }
+
+  public IdempotencyRecord(String idempotencyKey, String caller, String endpoint, String requestHash) {
+    this();
+    this.idempotencyKey = idempotencyKey;
+    this.caller = caller;
+    this.endpoint = endpoint;
+    this.requestHash = requestHash;
+  }
+
+  // Getters and Setters
+  public Long getId() {
+    return id;
+  }
+
+  public String getIdempotencyKey() {
+    return idempotencyKey;
+  }
+
+  public void setIdempotencyKey(String idempotencyKey) {
+    this.idempotencyKey = idempotencyKey;
+  }
+
+  public String getCaller() {
+    return caller;
+  }
+
+  public void setCaller(String caller) {
+    this.caller = caller;
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  public void setEndpoint(String endpoint) {
+    this.endpoint = endpoint;
+  }
+
+  public String getRequestHash() {
+    return requestHash;
+  }
+
+  public void setRequestHash(String requestHash) {
+    this.requestHash = requestHash;
+  }
+
+  public Integer getResponseStatus() {
+    return responseStatus;
+  }
+
+  public void setResponseStatus(Integer responseStatus) {
+    this.responseStatus = responseStatus;
+  }
+
+  public String getResponseBody() {
+    return responseBody;
+  }
+
+  public void setResponseBody(String responseBody) {
+    this.responseBody = responseBody;
+  }
+
+  public LocalDateTime getCreatedAt() {
+    return createdAt;
+  }
+
+  public void setCreatedAt(LocalDateTime createdAt) {
+    this.createdAt = createdAt;
+  }
+}
@@ -5,7 +5,12 @@ import java.math.BigDecimal; // Use BigDecimal for currency to avoid precision i
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "payments") // Pluralize table name as per common convention
+@Table(name = "payments", // Pluralize table name as per common convention
+        indexes = {
+                @Index(name = "idx_payments_status_hold_expires_at", columnList = "status, hold_expires_at"),
+                // The review queue: pending payments, oldest first
+                @Index(name = "idx_payments_status_date", columnList = "status, date")
+        })
 public class Payment {
 
   @Id
@@ -30,9 +35,26 @@ public class Payment {
   @Column(nullable = false)
   private LocalDateTime date;
 
-  @Lob // Large Object annotation for potentially large binary data
-  @Column(name = "online_receipt")
-  private byte[] onlineReceipt;
+  // The online receipt lives in the ReceiptStore; the payment points at it by SHA-256 digest
+  @Column(name = "receipt_digest", length = 64)
+  private String receiptDigest;
+
+  @Column(name = "receipt_size")
+  private Long receiptSize;
+
+  @Column(name = "receipt_content_type", length = 100)
+  private String receiptContentType;
+
+  // When an unreviewed online payment stops holding its RESERVED seat (null means no hold)
+  @Column(name = "hold_expires_at")
+  private LocalDateTime holdExpiresAt;
+
+  // The staff member reviewing the payment and until when they hold it (see PaymentService.claimPendingPayments)
+  @Column(name = "claimed_by")
+  private String claimedBy;
+
+  @Column(name = "claim_expires_at")
+  private LocalDateTime claimExpiresAt;
 
   @ManyToOne(fetch = FetchType.LAZY) // Many payments to one ticket
   @JoinColumn(name = "ticket_id", nullable = false) // Foreign key column
@@ -44,12 +66,11 @@ public class Payment {
     this.date = LocalDateTime.now(); // Default date to current time
   }
 
-  public Payment(BigDecimal amount, PaymentType type, PaymentPurpose purpose, byte[] onlineReceipt, Ticket ticket) {
+  public Payment(BigDecimal amount, PaymentType type, PaymentPurpose purpose, Ticket ticket) {
     this(); // Call default constructor to set default status and date
     this.amount = amount;
     this.type = type;
     this.purpose = purpose;
-    this.onlineReceipt = onlineReceipt;
     this.ticket = ticket;
   }
 
@@ -102,12 +123,45 @@ public class Payment {
     this.date = date;
   }
 
-  public byte[] getOnlineReceipt() {
-    return onlineReceipt;
+  public String getReceiptDigest() {
+    return receiptDigest;
+  }
+
+  public Long getReceiptSize() {
+    return receiptSize;
+  }
+
+  public String getReceiptContentType() {
+    return receiptContentType;
+  }
+
+  // The three receipt columns only change together
+  public void setReceipt(String receiptDigest, Long receiptSize, String receiptContentType) {
+    this.receiptDigest = receiptDigest;
+    this.receiptSize = receiptSize;
+    this.receiptContentType = receiptContentType;
+  }
+
+  public LocalDateTime getHoldExpiresAt() {
+    return holdExpiresAt;
+  }
+
+  public void setHoldExpiresAt(LocalDateTime holdExpiresAt) {
+    this.holdExpiresAt = holdExpiresAt;
+  }
+
+  public String getClaimedBy() {
+    return claimedBy;
+  }
+
+  public LocalDateTime getClaimExpiresAt() {
+    return claimExpiresAt;
   }
 
-  public void setOnlineReceipt(byte[] onlineReceipt) {
-    this.onlineReceipt = onlineReceipt;
+  // The two claim columns only change together; null, null releases the claim
+  public void setClaim(String claimedBy, LocalDateTime claimExpiresAt) {
+    this.claimedBy = claimedBy;
+    this.claimExpiresAt = claimExpiresAt;
   }
 
   public Ticket getTicket() {
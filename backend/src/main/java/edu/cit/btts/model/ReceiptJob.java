@@ -0,0 +1,123 @@
+package edu.cit.btts.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// One run of the receipt image pipeline over a stored receipt (see ReceiptImagePipeline): the durable
+// work queue entry, and once DONE, what was learned about the image
+@Entity
+@Table(name = "receipt_jobs",
+       indexes = {
+           @Index(name = "idx_receipt_jobs_status_next_attempt_at", columnList = "status, next_attempt_at"),
+           @Index(name = "idx_receipt_jobs_digest", columnList = "digest")
+       })
+public class ReceiptJob {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(nullable = false, length = 64) // SHA-256 of the receipt, hex (see ReceiptStore)
+  private String digest;
+
+  @Enumerated(EnumType.STRING)
+  @Column(nullable = false, length = 20)
+  private ReceiptJobStatus status;
+
+  @Column(nullable = false)
+  private Integer attempts;
+
+  @Column(name = "next_attempt_at", nullable = false)
+  private LocalDateTime nextAttemptAt;
+
+  @Column(name = "started_at") // When the current (or last) attempt was claimed
+  private LocalDateTime startedAt;
+
+  @Column(name = "created_at", nullable = false)
+  private LocalDateTime createdAt;
+
+  @Column(name = "completed_at")
+  private LocalDateTime completedAt;
+
+  @Column(name = "last_error", length = 500)
+  private String lastError;
+
+  // Size of the original image, in pixels
+  @Column(name = "width")
+  private Integer width;
+
+  @Column(name = "height")
+  private Integer height;
+
+  // 64-bit difference hash: near-identical images (a re-saved screenshot) differ in only a few bits
+  @Column(name = "perceptual_hash")
+  private Long perceptualHash;
+
+  public ReceiptJob() {
+  }
+
+  public ReceiptJob(String digest) {
+    this.digest = digest;
+    this.status = ReceiptJobStatus.PENDING;
+    this.attempts = 0;
+    this.createdAt = LocalDateTime.now();
+    this.nextAttemptAt = this.createdAt;
+  }
+
+  // Getters and Setters
+  public Long getId() {
+    return id;
+  }
+
+  public String getDigest() {
+    return digest;
+  }
+
+  public ReceiptJobStatus getStatus() {
+    return status;
+  }
+
+  public void setStatus(ReceiptJobStatus status) {
+    this.status = status;
+  }
+
+  public Integer getAttempts() {
+    return attempts;
+  }
+
+  public LocalDateTime getNextAttemptAt() {
+    return nextAttemptAt;
+  }
+
+  public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+    this.nextAttemptAt = nextAttemptAt;
+  }
+
+  public LocalDateTime getStartedAt() {
+    return startedAt;
+  }
+
+  public LocalDateTime getCreatedAt() {
+    return createdAt;
+  }
+
+  public LocalDateTime getCompletedAt() {
+    return completedAt;
+  }
+
+  public String getLastError() {
+    return lastError;
+  }
+
+  public Integer getWidth() {
+    return width;
+  }
+
+  public Integer getHeight() {
+    return height;
+  }
+
+  public Long getPerceptualHash() {
+    return perceptualHash;
+  }
+}
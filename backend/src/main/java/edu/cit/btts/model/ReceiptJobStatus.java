@@ -0,0 +1,8 @@
+package edu.cit.btts.model;
+
+public enum ReceiptJobStatus {
+    PENDING,
+    RUNNING,
+    DONE,
+    FAILED
+}
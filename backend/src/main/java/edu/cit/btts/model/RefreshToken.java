@@ -0,0 +1,86 @@
+package edu.cit.btts.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// A refresh token, stored only as its SHA-256 hash (see RefreshTokenService). Each renewal spends the token
+// and issues its successor in the same family; a spent token presented again revokes the whole family.
+@Entity
+@Table(name = "refresh_tokens",
+       indexes = {
+           @Index(name = "idx_refresh_tokens_family_id", columnList = "family_id"),
+           @Index(name = "idx_refresh_tokens_user_id", columnList = "user_id")
+       })
+public class RefreshToken {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(name = "token_hash", nullable = false, unique = true, length = 64) // SHA-256 of the token, hex
+  private String tokenHash;
+
+  // Shared by every token descended from the same sign-in
+  @Column(name = "family_id", nullable = false, length = 36)
+  private String familyId;
+
+  @ManyToOne(fetch = FetchType.LAZY)
+  @JoinColumn(name = "user_id", nullable = false)
+  private User user;
+
+  @Column(name = "created_at", nullable = false)
+  private LocalDateTime createdAt;
+
+  @Column(name = "expires_at", nullable = false)
+  private LocalDateTime expiresAt;
+
+  @Column(name = "rotated_at") // When it was exchanged for its successor
+  private LocalDateTime rotatedAt;
+
+  @Column(name = "revoked_at")
+  private LocalDateTime revokedAt;
+
+  public RefreshToken() {
+  }
+
+  public RefreshToken(String tokenHash, String familyId, User user, LocalDateTime expiresAt) {
+    this.tokenHash = tokenHash;
+    this.familyId = familyId;
+    this.user = user;
+    this.createdAt = LocalDateTime.now();
+    this.expiresAt = expiresAt;
+  }
+
+  // Getters
+  public Long getId() {
+    return id;
+  }
+
+  public String getTokenHash() {
+    return tokenHash;
+  }
+
+  public String getFamilyId() {
+    return familyId;
+  }
+
+  public User getUser() {
+    return user;
+  }
+
+  public LocalDateTime getCreatedAt() {
+    return createdAt;
+  }
+
+  public LocalDateTime getExpiresAt() {
+    return expiresAt;
+  }
+
+  public LocalDateTime getRotatedAt() {
+    return rotatedAt;
+  }
+
+  public LocalDateTime getRevokedAt() {
+    return revokedAt;
+  }
+}
@@ -0,0 +1,63 @@
+package edu.cit.btts.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// An access token turned away before its expiry (see TokenRevocationList), by its jti claim. Only needed
+// until the token would have expired anyway, after which the row is purged.
+@Entity
+@Table(name = "revoked_tokens",
+       indexes = {
+           @Index(name = "idx_revoked_tokens_revoked_at", columnList = "revoked_at"),
+           @Index(name = "idx_revoked_tokens_expires_at", columnList = "expires_at")
+       })
+public class RevokedToken {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(nullable = false, unique = true, length = 36)
+  private String jti;
+
+  // Not a foreign key: a deleted user's revoked tokens stay revoked
+  @Column(name = "user_id")
+  private Long userId;
+
+  @Column(name = "expires_at", nullable = false)
+  private LocalDateTime expiresAt;
+
+  @Column(name = "revoked_at", nullable = false)
+  private LocalDateTime revokedAt;
+
+  public RevokedToken() {
+  }
+
+  public RevokedToken(String jti, Long userId, LocalDateTime expiresAt) {
+    this.jti = jti;
+    this.userId = userId;
+    this.expiresAt = expiresAt;
+    this.revokedAt = LocalDateTime.now();
+  }
+
+  // Getters
+  public Long getId() {
+    return id;
+  }
+
+  public String getJti() {
+    return jti;
+  }
+
+  public Long getUserId() {
+    return userId;
+  }
+
+  public LocalDateTime getExpiresAt() {
+    return expiresAt;
+  }
+
+  public LocalDateTime getRevokedAt() {
+    return revokedAt;
+  }
+}
@@ -0,0 +1,46 @@
+package edu.cit.btts.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// A deleted user whose access tokens are turned away (see TokenVersionRegistry). The user row and its
+// token version are gone, so this is what other nodes and a restarted node load. Only needed until every
+// access token issued before the deletion has expired, after which the row is purged.
+@Entity
+@Table(name = "revoked_users",
+       indexes = @Index(name = "idx_revoked_users_expires_at", columnList = "expires_at"))
+public class RevokedUser {
+
+  // Not a foreign key: the user is deleted
+  @Id
+  @Column(name = "user_id")
+  private Long userId;
+
+  @Column(name = "expires_at", nullable = false)
+  private LocalDateTime expiresAt;
+
+  @Column(name = "revoked_at", nullable = false)
+  private LocalDateTime revokedAt;
+
+  public RevokedUser() {
+  }
+
+  public RevokedUser(Long userId, LocalDateTime expiresAt) {
+    this.userId = userId;
+    this.expiresAt = expiresAt;
+    this.revokedAt = LocalDateTime.now();
+  }
+
+  // Getters
+  public Long getUserId() {
+    return userId;
+  }
+
+  public LocalDateTime getExpiresAt() {
+    return expiresAt;
+  }
+
+  public LocalDateTime getRevokedAt() {
+    return revokedAt;
+  }
+}
@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.Objects;
 
 @Entity
+@Table(indexes = @Index(name = "idx_route_origin_destination", columnList = "origin, destination")) // Trip search filters
 public class Route {
 
     @Id
@@ -23,6 +24,12 @@ public class Route {
     @CollectionTable(name = "route_stops", joinColumns = @JoinColumn(name = "route_id")) // Defines the join table
     @Column(name = "stop_name", length = 100) // Column in the route_stops table
     private List<String> stops = new ArrayList<>(); // Initialize to prevent NullPointerException
+
+    // The path of the route, in travel order (used for live ETAs, see TripEtaEngine)
+    @ElementCollection(fetch = FetchType.LAZY)
+    @CollectionTable(name = "route_waypoints", joinColumns = @JoinColumn(name = "route_id"))
+    @OrderColumn(name = "sequence")
+    private List<RouteWaypoint> waypoints = new ArrayList<>();
     
     @Column(name = "base_price", nullable = false)
     private Double basePrice; // Base fare for this route
@@ -74,6 +81,14 @@ public class Route {
         this.stops = stops != null ? new ArrayList<>(stops) : new ArrayList<>(); // Defensive copy
     }
 
+    public List<RouteWaypoint> getWaypoints() {
+        return waypoints;
+    }
+
+    public void setWaypoints(List<RouteWaypoint> waypoints) {
+        this.waypoints = waypoints != null ? new ArrayList<>(waypoints) : new ArrayList<>(); // Defensive copy
+    }
+
     public Double getBasePrice() {
         return basePrice;
     }
@@ -0,0 +1,64 @@
+package edu.cit.btts.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// The typical speed buses drive between two waypoints, learned from completed traversals
+// (see TripEtaEngine). Keyed by the rounded coordinates of both ends, so every route that
+// shares a stretch of road shares its history.
+@Entity
+@Table(name = "route_segment_speeds")
+public class RouteSegmentSpeed {
+
+  @Id
+  @Column(name = "segment_key", length = 64)
+  private String segmentKey;
+
+  @Column(name = "speed_kmh", nullable = false)
+  private Double speedKmh;
+
+  @Column(name = "samples", nullable = false) // Traversals folded into the average
+  private Integer samples;
+
+  @Column(name = "updated_at", nullable = false)
+  private LocalDateTime updatedAt;
+
+  public RouteSegmentSpeed() {
+  }
+
+  public RouteSegmentSpeed(String segmentKey, Double speedKmh, Integer samples) {
+    this.segmentKey = segmentKey;
+    this.speedKmh = speedKmh;
+    this.samples = samples;
+    this.updatedAt = LocalDateTime.now();
+  }
+
+  // Getters and Setters
+  public String getSegmentKey() {
+    return segmentKey;
+  }
+
+  public Double getSpeedKmh() {
+    return speedKmh;
+  }
+
+  public void setSpeedKmh(Double speedKmh) {
+    this.speedKmh = speedKmh;
+  }
+
+  public Integer getSamples() {
+    return samples;
+  }
+
+  public void setSamples(Integer samples) {
+    this.samples = samples;
+  }
+
+  public LocalDateTime getUpdatedAt() {
+    return updatedAt;
+  }
+
+  public void setUpdatedAt(LocalDateTime updatedAt) {
+    this.updatedAt = updatedAt;
+  }
+}
@@ -0,0 +1,53 @@
+package edu.cit.btts.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+
+// A point of a route's path. Named waypoints are the places passengers board or get off
+// (origin, stops, destination); unnamed ones only shape the path between them.
+@Embeddable
+public class RouteWaypoint {
+
+    @Column(name = "name", length = 100)
+    private String name;
+
+    @Column(name = "latitude", nullable = false)
+    private Double latitude;
+
+    @Column(name = "longitude", nullable = false)
+    private Double longitude;
+
+    public RouteWaypoint() {
+    }
+
+    public RouteWaypoint(String name, Double latitude, Double longitude) {
+        this.name = name;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    // Getters and Setters
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+}
@@ -13,8 +13,9 @@ public class Ticket {
 
     // A Ticket will have 1 Seat only
     // A Seat will belong to 1 Ticket only
+    // Null once the booking gave its seat up (rejected or expired) and the seat was booked again
     @OneToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "seat_id", unique = true, nullable = false) // Foreign key to Seat, must be unique
+    @JoinColumn(name = "seat_id", unique = true) // Foreign key to Seat, must be unique
     private Seat seat;
 
     // A Ticket will belong to only 1 Trip
@@ -6,7 +6,11 @@ import java.util.Objects;
 import java.util.Set; // For one-to-many relationship with Seat and Ticket
 
 @Entity
-@Table(name = "trips")
+@Table(name = "trips", indexes = {
+        // Keyset pagination of trip searches (see TripRepository.searchIds)
+        @Index(name = "idx_trips_departure_time_id", columnList = "departure_time, id"),
+        @Index(name = "idx_trips_status_departure_time_id", columnList = "status, departure_time, id")
+})
 public class Trip {
 
     @Id
@@ -20,6 +24,11 @@ public class Trip {
     @Column(name = "status", nullable = false, length = 20)
     private TripStatus status;
 
+    // Seats left to sell: bus capacity minus RESERVED and BOOKED seats. Maintained by the services with
+    // conditional bulk updates (see TripAvailabilityCounter), so entity saves never write it back.
+    @Column(name = "available_seats", updatable = false)
+    private Integer availableSeats;
+
     // Relationships:
     
     // A Trip will use only one Bus
@@ -50,6 +59,9 @@ public class Trip {
         this.status = TripStatus.SCHEDULED; // Default status for new trips
         this.bus = bus;
         this.route = route;
+        if (bus != null && bus.getRowCount() != null && bus.getColumnCount() != null) {
+            this.availableSeats = bus.getRowCount() * bus.getColumnCount(); // A new trip has every seat available
+        }
         // Crucially, set the inverse side here
         if (this.route != null) {
             this.route.setTrip(this);
@@ -81,6 +93,14 @@ public class Trip {
         this.status = status;
     }
 
+    public Integer getAvailableSeats() {
+        return availableSeats;
+    }
+
+    public void setAvailableSeats(Integer availableSeats) {
+        this.availableSeats = availableSeats;
+    }
+
     public Bus getBus() {
         return bus;
     }
@@ -24,6 +24,10 @@ public class User {
   @Column(nullable = false)
   private Role role; // New field for user role
 
+  // Raised whenever the role changes; tokens issued with an older version are no longer accepted
+  @Column(name = "token_version", nullable = false)
+  private int tokenVersion;
+
   // Default constructor for JPA
   public User() {
     // Default role for new users if not specified, e.g., PASSENGER
@@ -83,6 +87,14 @@ public class User {
     this.role = role;
   }
 
+  public int getTokenVersion() {
+    return tokenVersion;
+  }
+
+  public void setTokenVersion(int tokenVersion) {
+    this.tokenVersion = tokenVersion;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -2,12 +2,17 @@ package edu.cit.btts.repository;
 
 import edu.cit.btts.model.Bus;
 
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface BusRepository extends JpaRepository<Bus, Long> {
   Optional<Bus> findByPlateNumber(String plateNumber);
+
+  @Query("SELECT b.id FROM Bus b")
+  List<Long> findAllIds();
 }
\ No newline at end of file
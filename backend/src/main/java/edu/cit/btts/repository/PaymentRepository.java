@@ -2,11 +2,24 @@ package edu.cit.btts.repository;
 
 import edu.cit.btts.model.Payment;
 import edu.cit.btts.model.PaymentStatus;
+import edu.cit.btts.model.SeatStatus;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
@@ -15,4 +28,96 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
     List<Payment> findByStatusOrderByDateAsc(PaymentStatus status);
     // Find payments by their status AND associated ticket's user ID (for passenger security)
     List<Payment> findByStatusAndTicket_UserIdOrderByDateAsc(PaymentStatus status, Long userId);
-}
\ No newline at end of file
+    // Whether a stored receipt file is still in use
+    boolean existsByReceiptDigest(String receiptDigest);
+
+    // A payment locked for the caller, so a review and a hold expiry of the same payment run one after the
+    // other and the later one sees what the earlier one wrote
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Payment p WHERE p.id = :id")
+    Optional<Payment> findByIdForUpdate(@Param("id") Long id);
+
+    // Payments with their tickets and seats in one query (bulk status updates touch all three), locked as
+    // in findByIdForUpdate. A ticket whose seat went to another booking comes back without one
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Payment p JOIN FETCH p.ticket t LEFT JOIN FETCH t.seat WHERE p.id IN :ids")
+    List<Payment> findWithSeatsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Every reservation hold that is still running (used to rebuild the expiry queue on startup)
+    @Query("SELECT p.id AS paymentId, p.holdExpiresAt AS holdExpiresAt FROM Payment p " +
+           "WHERE p.status = :status AND p.holdExpiresAt IS NOT NULL")
+    List<ReservationHold> findReservationHolds(@Param("status") PaymentStatus status);
+
+    // The seats still held by the given payments whose holds have run out, with the payment and seat rows
+    // locked for the caller, so a review racing the expiry either lands first (and the hold is skipped)
+    // or waits for it
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p.id AS paymentId, s.id AS seatId, s.trip.id AS tripId, " +
+           "s.rowPosition AS rowPosition, s.columnPosition AS columnPosition " +
+           "FROM Payment p JOIN p.ticket t JOIN t.seat s " +
+           "WHERE p.id IN :paymentIds AND p.status = :status AND p.holdExpiresAt <= :now " +
+           "AND s.status = :seatStatus")
+    List<ExpiredHold> findExpiredHolds(@Param("paymentIds") Collection<Long> paymentIds,
+                                       @Param("status") PaymentStatus status,
+                                       @Param("seatStatus") SeatStatus seatStatus,
+                                       @Param("now") LocalDateTime now);
+
+    // Conditional on the current status, so a payment reviewed in the meantime is left alone
+    @Modifying
+    @Query("UPDATE Payment p SET p.status = :newStatus, p.holdExpiresAt = NULL " +
+           "WHERE p.id IN :ids AND p.status = :currentStatus")
+    int updateStatusByIdIn(@Param("ids") Collection<Long> ids,
+                           @Param("currentStatus") PaymentStatus currentStatus,
+                           @Param("newStatus") PaymentStatus newStatus);
+
+    // Replaces the receipt of a payment that has not been reviewed yet
+    @Transactional
+    @Modifying
+    @Query("UPDATE Payment p SET p.receiptDigest = :digest, p.receiptSize = :size, p.receiptContentType = :contentType " +
+           "WHERE p.id = :id AND p.status = :status")
+    int updateReceipt(@Param("id") Long id,
+                      @Param("status") PaymentStatus status,
+                      @Param("digest") String digest,
+                      @Param("size") Long size,
+                      @Param("contentType") String contentType);
+
+    // The oldest payments with the given status that nobody holds a live review claim on, locked for the
+    // caller. Lock timeout -2 is SKIP LOCKED: rows another reviewer is claiming right now are passed over
+    // instead of waited for, so concurrent reviewers each get different payments.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT p FROM Payment p WHERE p.status = :status " +
+           "AND (p.claimExpiresAt IS NULL OR p.claimExpiresAt <= :now) ORDER BY p.date ASC, p.id ASC")
+    List<Payment> findClaimable(@Param("status") PaymentStatus status,
+                                @Param("now") LocalDateTime now,
+                                Pageable pageable);
+
+    // Extends a review claim, only while the reviewer still holds it and the payment is unreviewed
+    @Transactional
+    @Modifying
+    @Query("UPDATE Payment p SET p.claimExpiresAt = :expiresAt WHERE p.id = :id AND p.claimedBy = :reviewer " +
+           "AND p.status = :status AND p.claimExpiresAt > :now")
+    int renewClaim(@Param("id") Long id,
+                   @Param("reviewer") String reviewer,
+                   @Param("status") PaymentStatus status,
+                   @Param("now") LocalDateTime now,
+                   @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Payment p SET p.claimedBy = NULL, p.claimExpiresAt = NULL WHERE p.id = :id AND p.claimedBy = :reviewer")
+    int releaseClaim(@Param("id") Long id, @Param("reviewer") String reviewer);
+
+    interface ReservationHold {
+        Long getPaymentId();
+        LocalDateTime getHoldExpiresAt();
+    }
+
+    interface ExpiredHold {
+        Long getPaymentId();
+        Long getSeatId();
+        Long getTripId();
+        Integer getRowPosition();
+        Integer getColumnPosition();
+    }
+}
@@ -0,0 +1,65 @@
+package edu.cit.btts.repository;
+
+import edu.cit.btts.model.ReceiptJob;
+import edu.cit.btts.model.ReceiptJobStatus;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ReceiptJobRepository extends JpaRepository<ReceiptJob, Long> {
+    boolean existsByDigestAndStatusIn(String digest, Collection<ReceiptJobStatus> statuses);
+    List<ReceiptJob> findByDigest(String digest);
+
+    // Jobs that are due, oldest first
+    @Query("SELECT j.id FROM ReceiptJob j WHERE j.status = :status AND j.nextAttemptAt <= :now ORDER BY j.id")
+    List<Long> findDueIds(@Param("status") ReceiptJobStatus status, @Param("now") LocalDateTime now, Pageable pageable);
+
+    // Takes a due job for one worker; 0 if another worker (or node) already has it
+    @Transactional
+    @Modifying
+    @Query("UPDATE ReceiptJob j SET j.status = :running, j.startedAt = :now, j.attempts = j.attempts + 1 " +
+           "WHERE j.id = :id AND j.status = :pending")
+    int claim(@Param("id") Long id,
+              @Param("pending") ReceiptJobStatus pending,
+              @Param("running") ReceiptJobStatus running,
+              @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ReceiptJob j SET j.status = :done, j.completedAt = :now, j.lastError = NULL, " +
+           "j.width = :width, j.height = :height, j.perceptualHash = :perceptualHash WHERE j.id = :id")
+    int complete(@Param("id") Long id,
+                 @Param("done") ReceiptJobStatus done,
+                 @Param("now") LocalDateTime now,
+                 @Param("width") Integer width,
+                 @Param("height") Integer height,
+                 @Param("perceptualHash") Long perceptualHash);
+
+    // Back to the queue for a later attempt, or FAILED for good
+    @Transactional
+    @Modifying
+    @Query("UPDATE ReceiptJob j SET j.status = :status, j.nextAttemptAt = :nextAttemptAt, j.lastError = :error " +
+           "WHERE j.id = :id")
+    int fail(@Param("id") Long id,
+             @Param("status") ReceiptJobStatus status,
+             @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+             @Param("error") String error);
+
+    // Jobs whose worker died (a restart mid-job) are handed out again
+    @Transactional
+    @Modifying
+    @Query("UPDATE ReceiptJob j SET j.status = :pending WHERE j.status = :running AND j.startedAt < :cutoff")
+    int requeueStale(@Param("running") ReceiptJobStatus running,
+                     @Param("pending") ReceiptJobStatus pending,
+                     @Param("cutoff") LocalDateTime cutoff);
+}
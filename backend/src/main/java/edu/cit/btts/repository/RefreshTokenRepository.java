@@ -0,0 +1,42 @@
+package edu.cit.btts.repository;
+
+import edu.cit.btts.model.RefreshToken;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+
+  // The token with its user, in one query on the unique hash index
+  @Query("SELECT r FROM RefreshToken r JOIN FETCH r.user WHERE r.tokenHash = :tokenHash")
+  Optional<RefreshToken> findByTokenHashWithUser(@Param("tokenHash") String tokenHash);
+
+  // Spends a token, only if it is still live; 0 means it was spent or revoked in the meantime
+  @Modifying
+  @Query("UPDATE RefreshToken r SET r.rotatedAt = :now " +
+         "WHERE r.id = :id AND r.rotatedAt IS NULL AND r.revokedAt IS NULL AND r.expiresAt > :now")
+  int markRotated(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+  @Modifying
+  @Query("UPDATE RefreshToken r SET r.revokedAt = :now WHERE r.familyId = :familyId AND r.revokedAt IS NULL")
+  int revokeFamily(@Param("familyId") String familyId, @Param("now") LocalDateTime now);
+
+  @Transactional
+  @Modifying
+  @Query("DELETE FROM RefreshToken r WHERE r.user.id = :userId")
+  int deleteByUserId(@Param("userId") Long userId);
+
+  // Removes tokens past their expiry in one statement
+  @Transactional
+  @Modifying
+  @Query("DELETE FROM RefreshToken r WHERE r.expiresAt < :cutoff")
+  int deleteExpiredBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -0,0 +1,32 @@
+package edu.cit.btts.repository;
+
+import edu.cit.btts.model.RevokedToken;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, Long> {
+
+  boolean existsByJti(String jti);
+
+  @Query("SELECT r.jti FROM RevokedToken r WHERE r.expiresAt > :now")
+  List<String> findLiveJtis(@Param("now") LocalDateTime now);
+
+  // Tokens revoked since the given time that have not expired yet
+  @Query("SELECT r.jti FROM RevokedToken r WHERE r.revokedAt > :since AND r.expiresAt > :now")
+  List<String> findLiveJtisRevokedAfter(@Param("since") LocalDateTime since, @Param("now") LocalDateTime now);
+
+  // Removes entries for tokens that have expired anyway, in one statement
+  @Transactional
+  @Modifying
+  @Query("DELETE FROM RevokedToken r WHERE r.expiresAt < :cutoff")
+  int deleteExpiredBefore(@Param("cutoff") LocalDateTime cutoff);
+}
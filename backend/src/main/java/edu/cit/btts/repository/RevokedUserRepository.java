@@ -0,0 +1,27 @@
+package edu.cit.btts.repository;
+
+import edu.cit.btts.model.RevokedUser;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface RevokedUserRepository extends JpaRepository<RevokedUser, Long> {
+
+  // Deleted users that may still hold an unexpired access token
+  @Query("SELECT r.userId FROM RevokedUser r WHERE r.expiresAt > :now")
+  List<Long> findLiveUserIds(@Param("now") LocalDateTime now);
+
+  // Removes entries whose users' tokens have all expired, in one statement
+  @Transactional
+  @Modifying
+  @Query("DELETE FROM RevokedUser r WHERE r.expiresAt < :cutoff")
+  int deleteExpiredBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -0,0 +1,10 @@
+package edu.cit.btts.repository;
+
+import edu.cit.btts.model.RouteSegmentSpeed;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface RouteSegmentSpeedRepository extends JpaRepository<RouteSegmentSpeed, String> {
+}
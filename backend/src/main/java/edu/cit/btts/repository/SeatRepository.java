@@ -1,19 +1,46 @@
 package edu.cit.btts.repository;
 
 import edu.cit.btts.model.Seat;
+import edu.cit.btts.model.SeatStatus;
 import edu.cit.btts.model.Trip;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 public interface SeatRepository extends JpaRepository<Seat, Long> {
   // Custom method to find a seat by trip, row, and column position
   // This leverages the unique constraint you already have on the Seat entity
   Optional<Seat> findByTripAndRowPositionAndColumnPosition(Trip trip, Integer rowPosition, Integer columnPosition);
+  // The same, with the seat row locked until the transaction ends, so its status cannot change under the caller
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT s FROM Seat s WHERE s.trip = :trip AND s.rowPosition = :rowPosition AND s.columnPosition = :columnPosition")
+  Optional<Seat> findByPositionForUpdate(@Param("trip") Trip trip,
+                                         @Param("rowPosition") Integer rowPosition,
+                                         @Param("columnPosition") Integer columnPosition);
   // Find all seats associated with a specific trip ID
   List<Seat> findByTripId(Long tripId);
+  // The committed seats of a trip, read in a transaction of its own so the caller's snapshot (REPEATABLE
+  // READ) or uncommitted writes never leak into SeatOccupancyIndex
+  @Transactional(propagation = Propagation.REQUIRES_NEW, isolation = Isolation.READ_COMMITTED, readOnly = true)
+  @Query("SELECT s FROM Seat s WHERE s.trip.id = :tripId")
+  List<Seat> findCommittedByTripId(@Param("tripId") Long tripId);
+  // Moves the given seats to a new status, skipping any whose status has changed in the meantime
+  @Modifying
+  @Query("UPDATE Seat s SET s.status = :newStatus WHERE s.id IN :ids AND s.status = :currentStatus")
+  int updateStatusByIdIn(@Param("ids") Collection<Long> ids,
+                         @Param("currentStatus") SeatStatus currentStatus,
+                         @Param("newStatus") SeatStatus newStatus);
 }
\ No newline at end of file
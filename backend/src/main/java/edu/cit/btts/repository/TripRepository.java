@@ -1,11 +1,19 @@
 package edu.cit.btts.repository;
 
+import edu.cit.btts.model.SeatStatus;
 import edu.cit.btts.model.Trip;
+import edu.cit.btts.model.TripStatus;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -14,4 +22,115 @@ public interface TripRepository extends JpaRepository<Trip, Long> {
   List<Trip> findAllByOrderByDepartureTimeAsc(); 
   // Find trips where departureTime is between startOfDay and endOfDay
   List<Trip> findByDepartureTimeBetweenOrderByDepartureTimeAsc(LocalDateTime startOfDay, LocalDateTime endOfDay);
-}
\ No newline at end of file
+
+  // Listing read path: fetches each trip together with its bus, route and route stops in a single query
+  // so that mapping a whole list to TripResponse does not lazily load them one trip at a time.
+  @Query("SELECT t FROM Trip t JOIN FETCH t.bus JOIN FETCH t.route r LEFT JOIN FETCH r.stops " +
+         "ORDER BY t.departureTime ASC")
+  List<Trip> findAllWithBusAndRouteOrderByDepartureTimeAsc();
+
+  @Query("SELECT t FROM Trip t JOIN FETCH t.bus JOIN FETCH t.route r LEFT JOIN FETCH r.stops " +
+         "WHERE t.departureTime BETWEEN :startOfDay AND :endOfDay ORDER BY t.departureTime ASC")
+  List<Trip> findWithBusAndRouteByDepartureTimeBetween(@Param("startOfDay") LocalDateTime startOfDay,
+                                                       @Param("endOfDay") LocalDateTime endOfDay);
+
+  // Trip search, first step: one page of matching IDs in (departureTime, id) order. Pages are addressed by
+  // the last (departureTime, id) already returned instead of an offset, so each page is a range scan on
+  // idx_trips_departure_time_id (or idx_trips_status_departure_time_id) no matter how deep it is.
+  // Null filters are ignored.
+  @Query("SELECT t.id FROM Trip t JOIN t.route r WHERE " +
+         "(:departFrom IS NULL OR t.departureTime >= :departFrom) " +
+         "AND (:departBefore IS NULL OR t.departureTime < :departBefore) " +
+         "AND (:origin IS NULL OR r.origin = :origin) " +
+         "AND (:destination IS NULL OR r.destination = :destination) " +
+         "AND (:status IS NULL OR t.status = :status) " +
+         "AND (:minAvailableSeats IS NULL OR t.availableSeats >= :minAvailableSeats) " +
+         "AND (:afterDepartureTime IS NULL OR t.departureTime > :afterDepartureTime " +
+         "     OR (t.departureTime = :afterDepartureTime AND t.id > :afterId)) " +
+         "ORDER BY t.departureTime ASC, t.id ASC")
+  List<Long> searchIds(@Param("departFrom") LocalDateTime departFrom,
+                       @Param("departBefore") LocalDateTime departBefore,
+                       @Param("origin") String origin,
+                       @Param("destination") String destination,
+                       @Param("status") TripStatus status,
+                       @Param("minAvailableSeats") Integer minAvailableSeats,
+                       @Param("afterDepartureTime") LocalDateTime afterDepartureTime,
+                       @Param("afterId") Long afterId,
+                       Limit limit);
+
+  // Trip search, second step: the page's trips with bus, route and stops (the fetch joins cannot be
+  // combined with a row limit in one query without Hibernate paging in memory)
+  @Query("SELECT t FROM Trip t JOIN FETCH t.bus JOIN FETCH t.route r LEFT JOIN FETCH r.stops " +
+         "WHERE t.id IN :ids ORDER BY t.departureTime ASC, t.id ASC")
+  List<Trip> findWithBusAndRouteByIdIn(@Param("ids") Collection<Long> ids);
+
+  // Fetches a trip together with its bus (seat layout) in one query
+  @Query("SELECT t FROM Trip t JOIN FETCH t.bus WHERE t.id = :id")
+  Optional<Trip> findWithBusById(@Param("id") Long id);
+
+  // Trips with the route path the ETA engine needs (see TripEtaEngine)
+  @Query("SELECT t FROM Trip t JOIN FETCH t.bus JOIN FETCH t.route r LEFT JOIN FETCH r.waypoints " +
+         "WHERE t.status IN :statuses")
+  List<Trip> findWithBusAndWaypointsByStatusIn(@Param("statuses") Collection<TripStatus> statuses);
+
+  @Query("SELECT t FROM Trip t JOIN FETCH t.bus JOIN FETCH t.route r LEFT JOIN FETCH r.waypoints " +
+         "WHERE t.id = :id")
+  Optional<Trip> findWithBusAndWaypointsById(@Param("id") Long id);
+
+  // Which bus to follow for a live position stream (see LivePositionBroadcaster)
+  @Query("SELECT t.bus.id FROM Trip t WHERE t.id = :id")
+  Optional<Long> findBusIdById(@Param("id") Long id);
+
+  @Query("SELECT t.id AS tripId, t.bus.id AS busId FROM Trip t WHERE t.route.id = :routeId")
+  Optional<TripBus> findTripBusByRouteId(@Param("routeId") Long routeId);
+
+  @Query("SELECT t.id FROM Trip t WHERE t.bus.id = :busId")
+  List<Long> findIdsByBusId(@Param("busId") Long busId);
+
+  // --- Available seat counter ---
+
+  // Takes seats only if enough are left, so the counter can never go below zero
+  @Modifying
+  @Query("UPDATE Trip t SET t.availableSeats = t.availableSeats - :count " +
+         "WHERE t.id = :id AND t.availableSeats >= :count")
+  int decrementAvailableSeats(@Param("id") Long id, @Param("count") int count);
+
+  @Modifying
+  @Query("UPDATE Trip t SET t.availableSeats = t.availableSeats + :count " +
+         "WHERE t.id = :id AND t.availableSeats IS NOT NULL")
+  int incrementAvailableSeats(@Param("id") Long id, @Param("count") int count);
+
+  // Reads the counter straight from the database, bypassing any trip already loaded in the persistence context
+  @Query("SELECT t.availableSeats FROM Trip t WHERE t.id = :id")
+  Integer findAvailableSeatsById(@Param("id") Long id);
+
+  // Trips whose counter is missing or differs from bus capacity minus their taken seats
+  @Query("SELECT t.id AS tripId, t.availableSeats AS storedAvailableSeats, " +
+         "(b.rowCount * b.columnCount - (SELECT COUNT(s) FROM Seat s WHERE s.trip = t AND s.status IN :takenStatuses)) " +
+         "AS actualAvailableSeats FROM Trip t JOIN t.bus b " +
+         "WHERE t.availableSeats IS NULL OR t.availableSeats <> " +
+         "(b.rowCount * b.columnCount - (SELECT COUNT(s) FROM Seat s WHERE s.trip = t AND s.status IN :takenStatuses))")
+  List<AvailableSeatDrift> findAvailableSeatDrift(@Param("takenStatuses") Collection<SeatStatus> takenStatuses);
+
+  // Recomputes the counter from the seats table in the same statement, so it cannot race a booking
+  @Modifying
+  @Query("UPDATE Trip t SET t.availableSeats = " +
+         "(SELECT b.rowCount * b.columnCount FROM Bus b WHERE b = t.bus) - " +
+         "(SELECT COUNT(s) FROM Seat s WHERE s.trip = t AND s.status IN :takenStatuses) " +
+         "WHERE t.id IN :ids")
+  int recomputeAvailableSeats(@Param("ids") Collection<Long> ids,
+                              @Param("takenStatuses") Collection<SeatStatus> takenStatuses);
+
+  // Projection for findAvailableSeatDrift
+  interface AvailableSeatDrift {
+    Long getTripId();
+    Integer getStoredAvailableSeats();
+    Integer getActualAvailableSeats();
+  }
+
+  // Projection for findTripBusByRouteId
+  interface TripBus {
+    Long getTripId();
+    Long getBusId();
+  }
+}
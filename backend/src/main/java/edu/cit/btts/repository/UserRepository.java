@@ -2,8 +2,10 @@ package edu.cit.btts.repository;
 
 import edu.cit.btts.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository // Marks this as a Spring repository component
@@ -12,4 +14,13 @@ public interface UserRepository extends JpaRepository<User, Long> {
   // Custom method to find a user by email. Spring Data JPA automatically implements this.
   Optional<User> findByEmail(String email);
   Optional<User> findByEmailIgnoreCase(String email); // Optional: for case-insensitive lookup
+
+  // Users whose tokens were ever invalidated (most users keep version 0 and are not listed)
+  @Query("SELECT u.id AS userId, u.tokenVersion AS tokenVersion FROM User u WHERE u.tokenVersion > 0")
+  List<TokenVersion> findRaisedTokenVersions();
+
+  interface TokenVersion {
+    Long getUserId();
+    Integer getTokenVersion();
+  }
 }
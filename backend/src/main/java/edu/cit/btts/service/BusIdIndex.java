@@ -0,0 +1,113 @@
+package edu.cit.btts.service;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Per-bus state for the GPS hot path, looked up by bus ID without boxing it.
+ * Reads are a binary search in a sorted long[] snapshot; adding or removing a bus (rare) copies the
+ * snapshot, so lookups take no lock and allocate nothing.
+ *
+ * @param <T> The per-bus state.
+ */
+final class BusIdIndex<T> {
+
+  private volatile Snapshot snapshot = new Snapshot(new long[0], new Object[0]);
+
+  /**
+   * @return The state of a bus, or null if it has none.
+   */
+  @SuppressWarnings("unchecked")
+  T get(long busId) {
+    Snapshot current = snapshot;
+    int index = Arrays.binarySearch(current.ids, busId);
+    return index >= 0 ? (T) current.values[index] : null;
+  }
+
+  /**
+   * @return The state of a bus, creating it first if it has none.
+   */
+  @SuppressWarnings("unchecked")
+  synchronized T computeIfAbsent(long busId, LongFunction<T> factory) {
+    Snapshot current = snapshot;
+    int index = Arrays.binarySearch(current.ids, busId);
+    if (index >= 0) return (T) current.values[index];
+
+    T value = factory.apply(busId);
+    int insertAt = -index - 1;
+    long[] ids = new long[current.ids.length + 1];
+    Object[] values = new Object[ids.length];
+    System.arraycopy(current.ids, 0, ids, 0, insertAt);
+    System.arraycopy(current.values, 0, values, 0, insertAt);
+    ids[insertAt] = busId;
+    values[insertAt] = value;
+    System.arraycopy(current.ids, insertAt, ids, insertAt + 1, current.ids.length - insertAt);
+    System.arraycopy(current.values, insertAt, values, insertAt + 1, current.ids.length - insertAt);
+    snapshot = new Snapshot(ids, values);
+    return value;
+  }
+
+  /**
+   * Sets the state of a bus, replacing any it had.
+   */
+  synchronized void put(long busId, T value) {
+    Snapshot current = snapshot;
+    int index = Arrays.binarySearch(current.ids, busId);
+    if (index < 0) {
+      computeIfAbsent(busId, id -> value);
+      return;
+    }
+    Object[] values = current.values.clone();
+    values[index] = value;
+    snapshot = new Snapshot(current.ids, values);
+  }
+
+  /**
+   * @return The removed state of a bus, or null if it had none.
+   */
+  @SuppressWarnings("unchecked")
+  synchronized T remove(long busId) {
+    Snapshot current = snapshot;
+    int index = Arrays.binarySearch(current.ids, busId);
+    if (index < 0) return null;
+
+    long[] ids = new long[current.ids.length - 1];
+    Object[] values = new Object[ids.length];
+    System.arraycopy(current.ids, 0, ids, 0, index);
+    System.arraycopy(current.values, 0, values, 0, index);
+    System.arraycopy(current.ids, index + 1, ids, index, ids.length - index);
+    System.arraycopy(current.values, index + 1, values, index, ids.length - index);
+    snapshot = new Snapshot(ids, values);
+    return (T) current.values[index];
+  }
+
+  /**
+   * @return The IDs of the buses that have state, ascending.
+   */
+  long[] ids() {
+    return snapshot.ids.clone();
+  }
+
+  /**
+   * Runs an action for the state of every bus, in bus ID order.
+   */
+  @SuppressWarnings("unchecked")
+  void forEach(Consumer<T> action) {
+    for (Object value : snapshot.values) {
+      action.accept((T) value);
+    }
+  }
+
+  // Sorted bus IDs and the state of each (values[i] belongs to ids[i])
+  private static final class Snapshot {
+
+    private final long[] ids;
+    private final Object[] values;
+
+    Snapshot(long[] ids, Object[] values) {
+      this.ids = ids;
+      this.values = values;
+    }
+  }
+}
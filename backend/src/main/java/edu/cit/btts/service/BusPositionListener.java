@@ -0,0 +1,11 @@
+package edu.cit.btts.service;
+
+/**
+ * Receives every GPS sample BusPositionTracker accepts, in time order per bus.
+ * Called on the ingest thread while the bus's ring is locked, so implementations must be fast, must not
+ * allocate per sample and must not throw.
+ */
+public interface BusPositionListener {
+
+  void onPosition(long busId, long timestamp, double latitude, double longitude, float speed, float heading);
+}
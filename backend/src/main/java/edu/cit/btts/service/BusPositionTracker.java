@@ -0,0 +1,293 @@
+package edu.cit.btts.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.cit.btts.dto.BusPositionDTO;
+import edu.cit.btts.dto.PositionIngestResponse;
+import edu.cit.btts.repository.BusRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live GPS positions of every bus, kept in memory.
+ * Each bus has a fixed-size ring buffer of its most recent samples, stored column-wise in primitive arrays,
+ * so recording a sample allocates nothing and the heap does not grow with the ping rate. Buses are looked
+ * up without boxing their ID (see BusIdIndex).
+ *
+ * Samples older than a bus's latest sample (retransmits, out-of-order batches) are dropped as stale, so
+ * each ring is in time order. Accepted samples are passed on to every BusPositionListener bean.
+ */
+@Component
+public class BusPositionTracker {
+
+  // Results of record()
+  public static final int ACCEPTED = 0;
+  public static final int STALE = 1;
+  public static final int REJECTED = 2;
+
+  private static final int MAX_UNKNOWN_BUS_IDS = 1024;
+
+  private final BusRepository busRepository;
+  private final ObjectMapper objectMapper;
+  private final ObjectProvider<BusPositionListener> listenerProvider;
+  private volatile BusPositionListener[] listeners; // Resolved on first use to avoid bean cycles
+  private final int ringCapacity;
+  private final long maxClockSkewMs;
+  private final long unknownBusRecheckMs;
+
+  private final BusIdIndex<PositionRing> buses = new BusIdIndex<>();
+  // Bus IDs devices reported that do not exist, with when to check the database again
+  private final Map<Long, Long> unknownBusIds = new ConcurrentHashMap<>();
+
+  private final LongAdder accepted = new LongAdder();
+  private final LongAdder stale = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+
+  public BusPositionTracker(BusRepository busRepository,
+                            ObjectMapper objectMapper,
+                            ObjectProvider<BusPositionListener> listenerProvider,
+                            @Value("${tracking.ring-capacity:1024}") int ringCapacity,
+                            @Value("${tracking.max-clock-skew-ms:300000}") long maxClockSkewMs,
+                            @Value("${tracking.unknown-bus-recheck-ms:60000}") long unknownBusRecheckMs) {
+    this.busRepository = busRepository;
+    this.objectMapper = objectMapper;
+    this.listenerProvider = listenerProvider;
+    this.ringCapacity = ringCapacity;
+    this.maxClockSkewMs = maxClockSkewMs;
+    this.unknownBusRecheckMs = unknownBusRecheckMs;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void loadBuses() {
+    busRepository.findAllIds().forEach(this::registerBus);
+  }
+
+  /**
+   * Starts tracking a bus (called when a bus is created; unknown IDs are also checked lazily).
+   */
+  public void registerBus(long busId) {
+    unknownBusIds.remove(busId);
+    buses.computeIfAbsent(busId, id -> new PositionRing(ringCapacity));
+  }
+
+  /**
+   * Stops tracking a bus and drops its positions (called when a bus is deleted).
+   */
+  public void unregisterBus(long busId) {
+    buses.remove(busId);
+  }
+
+  /**
+   * Records a batch of samples sent by on-board devices.
+   * The body is a JSON array of {"busId", "timestamp" (epoch milliseconds), "latitude", "longitude",
+   * "speed" (km/h), "heading" (degrees)} objects. It is parsed as a stream straight into the ring
+   * buffers, without building an object per sample.
+   *
+   * @param body The request body.
+   * @return How many samples were accepted, dropped as stale or rejected.
+   * @throws ResponseStatusException (400) if the body is not such an array.
+   */
+  public PositionIngestResponse ingest(InputStream body) {
+    int batchAccepted = 0;
+    int batchStale = 0;
+    int batchRejected = 0;
+    try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+      if (parser.nextToken() != JsonToken.START_ARRAY) {
+        throw badBatch("a JSON array of samples");
+      }
+      JsonToken token;
+      while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+        long busId = -1;
+        long timestamp = -1;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        float speed = 0f;
+        float heading = 0f;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String field = parser.currentName(); // Canonicalized by the parser, not allocated per sample
+          parser.nextToken();
+          switch (field) {
+            case "busId" -> busId = parser.getLongValue();
+            case "timestamp" -> timestamp = parser.getLongValue();
+            case "latitude" -> latitude = parser.getDoubleValue();
+            case "longitude" -> longitude = parser.getDoubleValue();
+            case "speed" -> speed = parser.getFloatValue();
+            case "heading" -> heading = parser.getFloatValue();
+            default -> parser.skipChildren();
+          }
+        }
+        switch (record(busId, timestamp, latitude, longitude, speed, heading)) {
+          case ACCEPTED -> batchAccepted++;
+          case STALE -> batchStale++;
+          default -> batchRejected++;
+        }
+      }
+      if (token != JsonToken.END_ARRAY) {
+        throw badBatch("only sample objects in the array");
+      }
+    } catch (IOException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed position batch: " + e.getMessage());
+    }
+    return new PositionIngestResponse(batchAccepted, batchStale, batchRejected);
+  }
+
+  /**
+   * Records one sample. Allocates nothing for a known bus.
+   *
+   * @return ACCEPTED, STALE (older than the bus's latest sample) or REJECTED (unknown bus or invalid values).
+   */
+  public int record(long busId, long timestamp, double latitude, double longitude, float speed, float heading) {
+    if (timestamp <= 0 || timestamp > System.currentTimeMillis() + maxClockSkewMs
+            || !(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)
+            || !(speed >= 0) || !(heading >= 0 && heading < 360)) {
+      rejected.increment();
+      return REJECTED;
+    }
+    PositionRing ring = ringOf(busId);
+    if (ring == null) {
+      rejected.increment();
+      return REJECTED;
+    }
+    synchronized (ring) { // Listeners see each bus's samples in the order the ring accepted them
+      if (!ring.append(timestamp, latitude, longitude, speed, heading)) {
+        stale.increment();
+        return STALE;
+      }
+      for (BusPositionListener listener : listeners()) {
+        listener.onPosition(busId, timestamp, latitude, longitude, speed, heading);
+      }
+    }
+    accepted.increment();
+    return ACCEPTED;
+  }
+
+  /**
+   * @return The latest position of a bus, or null if it has not reported one.
+   * @throws ResponseStatusException (404) if the bus does not exist.
+   */
+  public BusPositionDTO getLatestPosition(long busId) {
+    List<BusPositionDTO> latest = getRecentPositions(busId, 1);
+    return latest.isEmpty() ? null : latest.get(0);
+  }
+
+  /**
+   * @param limit Maximum number of positions (the ring holds the last ringCapacity of them).
+   * @return The most recent positions of a bus, newest first.
+   * @throws ResponseStatusException (404) if the bus does not exist.
+   */
+  public List<BusPositionDTO> getRecentPositions(long busId, int limit) {
+    PositionRing ring = ringOf(busId);
+    if (ring == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Bus not found with ID: " + busId);
+    }
+    return ring.recent(busId, limit);
+  }
+
+  /**
+   * @return The IDs of the buses being tracked.
+   */
+  public long[] getTrackedBusIds() {
+    return buses.ids();
+  }
+
+  public long getAcceptedCount() { return accepted.sum(); }
+  public long getStaleCount() { return stale.sum(); }
+  public long getRejectedCount() { return rejected.sum(); }
+
+  // --- Helper Methods ---
+
+  private BusPositionListener[] listeners() {
+    BusPositionListener[] resolved = listeners;
+    if (resolved == null) {
+      resolved = listenerProvider.orderedStream().toArray(BusPositionListener[]::new);
+      listeners = resolved;
+    }
+    return resolved;
+  }
+
+  private PositionRing ringOf(long busId) {
+    PositionRing ring = buses.get(busId);
+    if (ring != null) return ring;
+    return (busId > 0 && busExists(busId)) ? buses.get(busId) : null;
+  }
+
+  // First sample of a bus created outside BusService (or of a bogus ID): asks the database, at most
+  // once per recheck interval per ID
+  private boolean busExists(long busId) {
+    Long recheckAt = unknownBusIds.get(busId);
+    long now = System.currentTimeMillis();
+    if (recheckAt != null && now < recheckAt) return false;
+    if (busRepository.existsById(busId)) {
+      registerBus(busId);
+      return true;
+    }
+    if (unknownBusIds.size() >= MAX_UNKNOWN_BUS_IDS) unknownBusIds.clear();
+    unknownBusIds.put(busId, now + unknownBusRecheckMs);
+    return false;
+  }
+
+  private static ResponseStatusException badBatch(String expected) {
+    return new ResponseStatusException(HttpStatus.BAD_REQUEST, "Position batch must contain " + expected + ".");
+  }
+
+  /**
+   * The last N samples of one bus, one primitive array per field.
+   */
+  static final class PositionRing {
+
+    private final long[] timestamps;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final float[] speeds;
+    private final float[] headings;
+    private long count; // Samples written so far; the next one goes to count % capacity
+
+    PositionRing(int capacity) {
+      timestamps = new long[capacity];
+      latitudes = new double[capacity];
+      longitudes = new double[capacity];
+      speeds = new float[capacity];
+      headings = new float[capacity];
+    }
+
+    synchronized boolean append(long timestamp, double latitude, double longitude, float speed, float heading) {
+      int capacity = timestamps.length;
+      if (count > 0 && timestamp <= timestamps[(int) ((count - 1) % capacity)]) {
+        return false;
+      }
+      int slot = (int) (count % capacity);
+      timestamps[slot] = timestamp;
+      latitudes[slot] = latitude;
+      longitudes[slot] = longitude;
+      speeds[slot] = speed;
+      headings[slot] = heading;
+      count++;
+      return true;
+    }
+
+    synchronized List<BusPositionDTO> recent(long busId, int limit) {
+      int capacity = timestamps.length;
+      int size = (int) Math.min(Math.min(count, capacity), Math.max(limit, 0));
+      List<BusPositionDTO> positions = new ArrayList<>(size);
+      for (long i = count - 1; i >= count - size; i--) {
+        int slot = (int) (i % capacity);
+        positions.add(new BusPositionDTO(busId, timestamps[slot], latitudes[slot], longitudes[slot], speeds[slot], headings[slot]));
+      }
+      return positions;
+    }
+  }
+}
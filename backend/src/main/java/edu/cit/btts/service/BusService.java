@@ -3,11 +3,13 @@ package edu.cit.btts.service;
 import edu.cit.btts.dto.BusDTO;
 import edu.cit.btts.model.Bus;
 import edu.cit.btts.repository.BusRepository;
+import edu.cit.btts.repository.TripRepository;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -15,10 +17,22 @@ import java.util.stream.Collectors;
 public class BusService {
 
     private final BusRepository busRepository;
+    private final TripRepository tripRepository;
+    private final SeatOccupancyIndex seatOccupancyIndex;
+    private final TripAvailabilityCounter tripAvailabilityCounter;
+    private final TripCache tripCache;
+    private final BusPositionTracker busPositionTracker;
 
     // Constructor Injection for BusRepository
-    public BusService(BusRepository busRepository) {
+    public BusService(BusRepository busRepository, TripRepository tripRepository,
+                      SeatOccupancyIndex seatOccupancyIndex, TripAvailabilityCounter tripAvailabilityCounter,
+                      TripCache tripCache, BusPositionTracker busPositionTracker) {
         this.busRepository = busRepository;
+        this.tripRepository = tripRepository;
+        this.seatOccupancyIndex = seatOccupancyIndex;
+        this.tripAvailabilityCounter = tripAvailabilityCounter;
+        this.tripCache = tripCache;
+        this.busPositionTracker = busPositionTracker;
     }
 
     /**
@@ -39,6 +53,7 @@ public class BusService {
         mapDtoToEntity(busDTO, bus); // Map DTO fields to the new Bus entity
 
         Bus savedBus = busRepository.save(bus); // Save to database
+        busPositionTracker.registerBus(savedBus.getId()); // Accept its GPS samples
         return mapEntityToDto(savedBus); // Map saved entity back to DTO for response
     }
 
@@ -90,9 +105,28 @@ public class BusService {
             }
         }
 
+        boolean sizeChanged = !Objects.equals(existingBus.getRowCount(), busDTO.getRowCount()) ||
+                              !Objects.equals(existingBus.getColumnCount(), busDTO.getColumnCount());
+        String previousRowLabel = existingBus.getRowLabel();
+        String previousColumnLabel = existingBus.getColumnLabel();
+
         mapDtoToEntity(busDTO, existingBus); // Map updated DTO fields to the existing entity
 
-        Bus updatedBus = busRepository.save(existingBus); // Save changes
+        Bus updatedBus = busRepository.save(existingBus); // Save changes (labels are settled on save)
+        boolean labelsChanged = !Objects.equals(previousRowLabel, updatedBus.getRowLabel()) ||
+                                !Objects.equals(previousColumnLabel, updatedBus.getColumnLabel());
+
+        // Trips using this bus show its details
+        List<Long> tripIds = tripRepository.findIdsByBusId(id);
+        tripCache.evictTrips(tripIds);
+        if (sizeChanged || labelsChanged) {
+            // The seat maps of trips using this bus carry its grid and labels, and their ETags with them
+            tripIds.forEach(seatOccupancyIndex::invalidate);
+        }
+        if (sizeChanged) {
+            // Trips using this bus get a new capacity
+            tripAvailabilityCounter.recompute(tripIds);
+        }
         return mapEntityToDto(updatedBus); // Map updated entity back to DTO
     }
 
@@ -108,6 +142,7 @@ public class BusService {
                     "Bus not found with ID: " + id);
         }
         busRepository.deleteById(id);
+        busPositionTracker.unregisterBus(id);
     }
 
     // --- Helper Methods for DTO <-> Entity Mapping (private to the service) ---
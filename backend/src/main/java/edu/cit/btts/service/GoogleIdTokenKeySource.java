@@ -0,0 +1,25 @@
+package edu.cit.btts.service;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Where {@link GoogleTokenVerifierService} gets the keys Google ID tokens are signed with, and who may
+ * issue them. Selected by google.id-token.key-source: "google" (the default) for Google's published
+ * certificates, "local" for the in-process {@link LocalIdTokenIssuer} used by tests and load runs.
+ */
+public interface GoogleIdTokenKeySource {
+
+  /**
+   * The keys currently valid for signing ID tokens. Expected to be cached; called on every login.
+   */
+  List<PublicKey> getPublicKeys() throws GeneralSecurityException, IOException;
+
+  /**
+   * The accepted values of the "iss" claim.
+   */
+  Collection<String> getIssuers();
+}
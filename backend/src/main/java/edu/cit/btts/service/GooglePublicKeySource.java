@@ -0,0 +1,68 @@
+package edu.cit.btts.service;
+
+import com.google.api.client.googleapis.auth.oauth2.GooglePublicKeysManager;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Google's published ID token signing certificates, fetched over one shared HTTP transport.
+ *
+ * The keys are cached for as long as Google's Cache-Control header allows. A background check refreshes
+ * them shortly before they expire (google.id-token.refresh-ahead), so logins are not held up by a
+ * certificate download; should that refresh fail, the next login fetches them itself.
+ */
+@Component
+@ConditionalOnProperty(name = "google.id-token.key-source", havingValue = "google", matchIfMissing = true)
+public class GooglePublicKeySource implements GoogleIdTokenKeySource {
+
+  private static final Logger log = LoggerFactory.getLogger(GooglePublicKeySource.class);
+
+  private static final List<String> ISSUERS = List.of("accounts.google.com", "https://accounts.google.com");
+
+  private final GooglePublicKeysManager publicKeys =
+          new GooglePublicKeysManager(new NetHttpTransport(), GsonFactory.getDefaultInstance());
+  private final long refreshAheadMillis;
+
+  public GooglePublicKeySource(@Value("${google.id-token.refresh-ahead:PT10M}") Duration refreshAhead) {
+    this.refreshAheadMillis = refreshAhead.toMillis();
+  }
+
+  @Override
+  public List<PublicKey> getPublicKeys() throws GeneralSecurityException, IOException {
+    return publicKeys.getPublicKeys(); // Refreshes under the manager's lock if the cache has expired
+  }
+
+  @Override
+  public Collection<String> getIssuers() {
+    return ISSUERS;
+  }
+
+  /**
+   * Loads the keys on startup and refreshes them before they expire.
+   */
+  @Scheduled(fixedDelayString = "${google.id-token.refresh-check-interval-ms:60000}")
+  public void refreshBeforeExpiry() {
+    // Zero until the first load
+    if (publicKeys.getExpirationTimeMilliseconds() - System.currentTimeMillis() > refreshAheadMillis) {
+      return;
+    }
+    try {
+      publicKeys.refresh();
+    } catch (GeneralSecurityException | IOException e) {
+      log.warn("Could not refresh Google's ID token signing keys; logins will fetch them on demand", e);
+    }
+  }
+}
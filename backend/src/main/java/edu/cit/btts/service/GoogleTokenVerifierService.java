@@ -1,34 +1,62 @@
 package edu.cit.btts.service;
 
+import com.google.api.client.auth.openidconnect.IdTokenVerifier;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
-import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.security.PublicKey;
 import java.util.Collections;
+import java.util.List;
 
+/**
+ * Verifies the Google ID tokens the frontend signs in with. One instance serves every login: the signing
+ * keys come from the configured {@link GoogleIdTokenKeySource}, which keeps them cached between logins.
+ */
 @Service
 public class GoogleTokenVerifierService {
 
-  @Value("${google.client.id}")
-  private String googleClientId;
+  private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
 
+  private final GoogleIdTokenKeySource keySource;
+  // If you have multiple clients (Android, iOS), add them to the audience
+  private final List<String> audience;
+
+  public GoogleTokenVerifierService(GoogleIdTokenKeySource keySource,
+                                    @Value("${google.client.id}") String googleClientId) {
+    this.keySource = keySource;
+    this.audience = Collections.singletonList(googleClientId);
+  }
+
+  /**
+   * Checks a token's issuer, audience, lifetime and signature.
+   *
+   * @param idTokenString The ID token as the frontend received it.
+   * @return The token's payload, or null if it is not a valid ID token for this app.
+   */
   public GoogleIdToken.Payload verify(String idTokenString) throws GeneralSecurityException, IOException {
-    GoogleIdTokenVerifier verifier = new GoogleIdTokenVerifier.Builder(new NetHttpTransport(), GsonFactory.getDefaultInstance())
-            .setAudience(Collections.singletonList(googleClientId))
-            // If you have multiple clients (Android, iOS), you can add them to .setAudience
-            // Or you can specify setAcceptedIssuers for flexibility
-            .build();
-
-    GoogleIdToken idToken = verifier.verify(idTokenString);
-    if (idToken != null) {
+    GoogleIdToken idToken;
+    try {
+      idToken = GoogleIdToken.parse(JSON_FACTORY, idTokenString);
+    } catch (IllegalArgumentException e) {
+      return null; // Not a JWT at all
+    }
+
+    // The cheap claim checks first, so a token for another app never costs a key lookup
+    if (!idToken.verifyIssuer(keySource.getIssuers())
+            || !idToken.verifyAudience(audience)
+            || !idToken.verifyTime(System.currentTimeMillis(), IdTokenVerifier.DEFAULT_TIME_SKEW_SECONDS)) {
+      return null;
+    }
+    for (PublicKey publicKey : keySource.getPublicKeys()) {
+      if (idToken.verifySignature(publicKey)) {
         return idToken.getPayload();
-    } else {
-        return null;
+      }
     }
+    return null;
   }
 }
@@ -0,0 +1,245 @@
+package edu.cit.btts.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.cit.btts.dto.ApiResponse;
+import edu.cit.btts.model.IdempotencyRecord;
+import edu.cit.btts.repository.IdempotencyRecordRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Makes creation endpoints safe to retry with an Idempotency-Key header.
+ * The first request with a key runs normally and its response is stored, together with a SHA-256
+ * fingerprint of its body, in the idempotency_records table. A retry with the same key and body gets
+ * the stored response back without running the request again; the same key with a different body is
+ * rejected. Keys are scoped to the authenticated user and the endpoint.
+ *
+ * Recently completed keys are also kept in a bounded in-memory LRU map, so most retries are answered
+ * without touching the database.
+ *
+ * A claimed key is only released when the request failed. Once the request has run, its booking may be
+ * committed even if storing the response fails, so the claim is kept until retention: this node still
+ * replays the response from memory, and anywhere else the key answers 409 instead of booking again.
+ */
+@Service
+public class IdempotencyService {
+
+  private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+
+  public static final String HEADER = "Idempotency-Key";
+  public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+  private static final int MAX_KEY_LENGTH = 100;
+
+  private final IdempotencyRecordRepository idempotencyRecordRepository;
+  private final ObjectMapper objectMapper;
+  private final Duration retention;
+  private final Duration inProgressTimeout;
+  private final Map<String, CompletedRequest> completedRequests;
+
+  public IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository,
+                            ObjectMapper objectMapper,
+                            @Value("${booking.idempotency.cache-size:10000}") int cacheSize,
+                            @Value("${booking.idempotency.retention:PT24H}") Duration retention,
+                            @Value("${booking.idempotency.in-progress-timeout:PT5M}") Duration inProgressTimeout) {
+    this.idempotencyRecordRepository = idempotencyRecordRepository;
+    this.objectMapper = objectMapper;
+    this.retention = retention;
+    this.inProgressTimeout = inProgressTimeout;
+    this.completedRequests = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CompletedRequest> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * Runs a creation request at most once per Idempotency-Key.
+   *
+   * @param idempotencyKey The Idempotency-Key header (null runs the request without idempotency).
+   * @param endpoint The endpoint the key is scoped to, e.g. "POST /api/tickets/online".
+   * @param request The request body (fingerprinted to detect a key reused for a different request).
+   * @param action Runs the request; only called when there is no stored response for the key.
+   * @return The response of the action, or the stored response of the original request.
+   * @throws ResponseStatusException 422 if the key was used for a different request, 409 if the
+   *         original request is still running or its response was never stored.
+   */
+  public ResponseEntity<ApiResponse> execute(String idempotencyKey, String endpoint, Object request,
+                                             Supplier<ResponseEntity<ApiResponse>> action) {
+    if (idempotencyKey == null || idempotencyKey.isBlank()) {
+      return action.get();
+    }
+    if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+              HEADER + " must be at most " + MAX_KEY_LENGTH + " characters long.");
+    }
+
+    String caller = getCaller();
+    String requestHash = fingerprint(request);
+    String cacheKey = caller + "|" + endpoint + "|" + idempotencyKey;
+
+    // 1. Hot path: a recently completed request
+    CompletedRequest completed;
+    synchronized (completedRequests) {
+      completed = completedRequests.get(cacheKey);
+    }
+    if (completed != null) {
+      return replay(completed, requestHash);
+    }
+
+    // 2. The durable record, if the key has been seen before
+    Optional<IdempotencyRecord> existing = idempotencyRecordRepository.findByCallerAndEndpointAndIdempotencyKey(caller, endpoint, idempotencyKey);
+    if (existing.isPresent()) {
+      IdempotencyRecord record = existing.get();
+      if (isExpired(record)) {
+        idempotencyRecordRepository.delete(record); // Past retention: start over
+      } else if (record.getResponseStatus() != null) {
+        completed = new CompletedRequest(record.getRequestHash(), record.getResponseStatus(), readBody(record.getResponseBody()));
+        remember(cacheKey, completed);
+        return replay(completed, requestHash);
+      } else {
+        throw stillRunning(record, requestHash);
+      }
+    }
+
+    // 3. Claim the key; the unique constraint makes concurrent retries of the same key lose here
+    IdempotencyRecord record;
+    try {
+      record = idempotencyRecordRepository.saveAndFlush(new IdempotencyRecord(idempotencyKey, caller, endpoint, requestHash));
+    } catch (DataIntegrityViolationException e) {
+      throw stillRunning();
+    }
+
+    // 4. Run the request. Only a failed request releases the key so the client can retry it.
+    ResponseEntity<ApiResponse> response;
+    try {
+      response = action.get();
+    } catch (RuntimeException e) {
+      idempotencyRecordRepository.delete(record);
+      throw e;
+    }
+
+    // 5. Store the response. The booking is already committed, so a failure here keeps the claim.
+    try {
+      record.setResponseStatus(response.getStatusCode().value());
+      record.setResponseBody(writeBody(response.getBody()));
+      idempotencyRecordRepository.save(record);
+    } catch (RuntimeException e) {
+      log.warn("Could not store the response for {} {}; the key stays claimed until retention", endpoint, idempotencyKey, e);
+    }
+    remember(cacheKey, new CompletedRequest(requestHash, response.getStatusCode().value(), response.getBody()));
+    return response;
+  }
+
+  // Deletes records past their retention (the in-memory map is bounded by size on its own)
+  @Scheduled(fixedDelayString = "${booking.idempotency.purge-interval-ms:3600000}")
+  public void purgeExpiredRecords() {
+    idempotencyRecordRepository.deleteCreatedBefore(LocalDateTime.now().minus(retention));
+  }
+
+  // --- Helper Methods ---
+
+  private ResponseEntity<ApiResponse> replay(CompletedRequest completed, String requestHash) {
+    if (!completed.requestHash.equals(requestHash)) {
+      throw keyReused();
+    }
+    return ResponseEntity.status(completed.status)
+            .header(REPLAYED_HEADER, "true")
+            .body(completed.body);
+  }
+
+  private boolean isExpired(IdempotencyRecord record) {
+    return record.getCreatedAt().isBefore(LocalDateTime.now().minus(retention));
+  }
+
+  private ResponseStatusException stillRunning(IdempotencyRecord record, String requestHash) {
+    if (!record.getRequestHash().equals(requestHash)) {
+      return keyReused();
+    }
+    if (record.getCreatedAt().isBefore(LocalDateTime.now().minus(inProgressTimeout))) {
+      // The request may have booked without its response being stored; running it again could book twice
+      return new ResponseStatusException(HttpStatus.CONFLICT,
+              "The original request with this " + HEADER + " did not report its result. Check your bookings before retrying with a new key.");
+    }
+    return stillRunning();
+  }
+
+  private ResponseStatusException stillRunning() {
+    return new ResponseStatusException(HttpStatus.CONFLICT,
+            "A request with this " + HEADER + " is still being processed. Please retry shortly.");
+  }
+
+  private ResponseStatusException keyReused() {
+    return new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+            "This " + HEADER + " was already used for a different request.");
+  }
+
+  private void remember(String cacheKey, CompletedRequest completed) {
+    synchronized (completedRequests) {
+      completedRequests.put(cacheKey, completed);
+    }
+  }
+
+  private String getCaller() {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    return (authentication != null) ? authentication.getName() : "anonymous";
+  }
+
+  private String fingerprint(Object request) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(objectMapper.writeValueAsBytes(request)));
+    } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+      throw new IllegalStateException("Could not fingerprint request", e);
+    }
+  }
+
+  private String writeBody(ApiResponse body) {
+    try {
+      return objectMapper.writeValueAsString(body);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Could not store response", e);
+    }
+  }
+
+  private ApiResponse readBody(String body) {
+    try {
+      return objectMapper.readValue(body, ApiResponse.class);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Could not read stored response", e);
+    }
+  }
+
+  private static final class CompletedRequest {
+
+    private final String requestHash;
+    private final int status;
+    private final ApiResponse body;
+
+    CompletedRequest(String requestHash, int status, ApiResponse body) {
+      this.requestHash = requestHash;
+      this.status = status;
+      this.body = body;
+    }
+  }
+}
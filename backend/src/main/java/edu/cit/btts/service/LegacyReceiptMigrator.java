@@ -0,0 +1,109 @@
+package edu.cit.btts.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.List;
+
+/**
+ * Moves receipts saved before the ReceiptStore existed out of the payments.online_receipt column.
+ *
+ * Runs on startup while that column still exists (ddl-auto=update leaves it in place). Payments are taken
+ * one at a time and each blob is streamed from the result set into the store, so the heap never holds more
+ * than one receipt. The column is emptied as each payment is moved; dropping it is left to a DBA once no
+ * rows are left.
+ */
+@Component
+public class LegacyReceiptMigrator {
+
+  private static final Logger log = LoggerFactory.getLogger(LegacyReceiptMigrator.class);
+
+  private static final String LEGACY_COLUMN = "online_receipt";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final ReceiptStore receiptStore;
+
+  public LegacyReceiptMigrator(JdbcTemplate jdbcTemplate, ReceiptStore receiptStore) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.receiptStore = receiptStore;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void migrateOnStartup() {
+    int migrated = migrate();
+    if (migrated > 0) {
+      log.info("Moved {} payment receipt(s) from the database to the receipt store", migrated);
+    }
+  }
+
+  /**
+   * @return The number of receipts moved.
+   */
+  public int migrate() {
+    if (!hasLegacyColumn()) return 0;
+    int migrated = 0;
+    long lastId = 0;
+    while (true) {
+      List<Long> ids = jdbcTemplate.queryForList(
+              "SELECT id FROM payments WHERE id > ? AND online_receipt IS NOT NULL ORDER BY id LIMIT 100", Long.class, lastId);
+      if (ids.isEmpty()) return migrated;
+      for (Long id : ids) {
+        lastId = id;
+        try {
+          migrated += migrateOne(id);
+        } catch (ResponseStatusException | UncheckedIOException | DataAccessException e) {
+          log.warn("Could not move the receipt of payment {}; it stays in the database", id, e);
+        }
+      }
+    }
+  }
+
+  // --- Helper Methods ---
+
+  private int migrateOne(long id) {
+    ReceiptStore.StoredReceipt receipt = jdbcTemplate.query("SELECT online_receipt FROM payments WHERE id = ?", (ResultSet resultSet) -> {
+      if (!resultSet.next()) return null;
+      try (InputStream content = resultSet.getBinaryStream(1)) {
+        if (content == null) return null;
+        return receiptStore.store(content, Long.MAX_VALUE); // Already accepted once, so no size limit
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }, id);
+    if (receipt == null) return 0;
+    // A receipt uploaded to the store in the meantime wins over the legacy one
+    jdbcTemplate.update("UPDATE payments SET receipt_digest = COALESCE(receipt_digest, ?), "
+                    + "receipt_size = COALESCE(receipt_size, ?), receipt_content_type = COALESCE(receipt_content_type, ?), "
+                    + "online_receipt = NULL WHERE id = ?",
+            receipt.getDigest(), receipt.getSize(), receipt.getContentType(), id);
+    return 1;
+  }
+
+  private boolean hasLegacyColumn() {
+    Boolean exists = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+      DatabaseMetaData metaData = connection.getMetaData();
+      // Identifier case depends on the database (MySQL keeps it, H2 upper-cases it)
+      for (String table : List.of("payments", "PAYMENTS")) {
+        try (ResultSet columns = metaData.getColumns(connection.getCatalog(), null, table, null)) {
+          while (columns.next()) {
+            if (LEGACY_COLUMN.equalsIgnoreCase(columns.getString("COLUMN_NAME"))) return true;
+          }
+        }
+      }
+      return false;
+    });
+    return Boolean.TRUE.equals(exists);
+  }
+}
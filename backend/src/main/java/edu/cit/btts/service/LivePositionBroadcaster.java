@@ -0,0 +1,315 @@
+package edu.cit.btts.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.cit.btts.dto.BusPositionDTO;
+import edu.cit.btts.repository.TripRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pushes live bus positions to Server-Sent Events subscribers of a trip or a route (dispatch screens and
+ * passengers waiting for their bus).
+ *
+ * Positions are coalesced: each watched bus keeps only its latest sample, and every interval-ms one frame
+ * per bus that moved is serialized once and shared by all of its subscribers. Buses nobody watches cost a
+ * single lookup per sample. As with seat changes, idle subscribers hold no thread and a small pool of
+ * dispatcher threads writes to the connections. A subscriber has room for a single pending frame: when a
+ * newer position arrives before a slow client took the previous one, the stale frame is dropped, so slow
+ * clients see fewer updates instead of growing queues or holding up everyone else.
+ */
+@Component
+public class LivePositionBroadcaster implements BusPositionListener {
+
+  private final TripRepository tripRepository;
+  private final BusPositionTracker busPositionTracker;
+  private final ObjectMapper objectMapper;
+  private final int maxSubscribers;
+  private final long timeoutMs;
+
+  private final BusIdIndex<WatchedBus> watchedBuses = new BusIdIndex<>();
+  private final AtomicInteger subscriberCount = new AtomicInteger();
+  private final LongAdder framesSent = new LongAdder();
+  private final LongAdder framesDropped = new LongAdder();
+  private final ExecutorService dispatcher;
+  private final ScheduledExecutorService ticker;
+  private final Set<DataWithMediaType> heartbeatFrame = SseEmitter.event().comment("keep-alive").build();
+
+  public LivePositionBroadcaster(TripRepository tripRepository,
+                                 BusPositionTracker busPositionTracker,
+                                 ObjectMapper objectMapper,
+                                 @Value("${tracking.live.interval-ms:1000}") long intervalMs,
+                                 @Value("${tracking.live.max-subscribers:20000}") int maxSubscribers,
+                                 @Value("${tracking.live.dispatcher-threads:4}") int dispatcherThreads,
+                                 @Value("${tracking.live.timeout-ms:1800000}") long timeoutMs,
+                                 @Value("${tracking.live.heartbeat-ms:25000}") long heartbeatMs) {
+    this.tripRepository = tripRepository;
+    this.busPositionTracker = busPositionTracker;
+    this.objectMapper = objectMapper;
+    this.maxSubscribers = maxSubscribers;
+    this.timeoutMs = timeoutMs;
+    this.dispatcher = Executors.newFixedThreadPool(dispatcherThreads, daemonThreads("live-position-dispatcher"));
+    this.ticker = Executors.newSingleThreadScheduledExecutor(daemonThreads("live-position-ticker"));
+    ticker.scheduleAtFixedRate(this::flush, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    ticker.scheduleAtFixedRate(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Opens a live position stream of the bus running a trip.
+   *
+   * @throws ResponseStatusException (404) if the trip does not exist, (503) if the subscriber limit has been reached.
+   */
+  public SseEmitter subscribeToTrip(long tripId) {
+    long busId = tripRepository.findBusIdById(tripId)
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Trip not found with ID: " + tripId));
+    return subscribe(busId, tripId, new SseEmitter(timeoutMs));
+  }
+
+  /**
+   * Opens a live position stream of the bus running a route's trip.
+   *
+   * @throws ResponseStatusException (404) if the route has no trip, (503) if the subscriber limit has been reached.
+   */
+  public SseEmitter subscribeToRoute(long routeId) {
+    TripRepository.TripBus tripBus = tripRepository.findTripBusByRouteId(routeId)
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No trip found for route ID: " + routeId));
+    return subscribe(tripBus.getBusId(), tripBus.getTripId(), new SseEmitter(timeoutMs));
+  }
+
+  /**
+   * Streams a bus's positions to an emitter: a "position" event (a BusPositionDTO) with the latest known
+   * position, then one per interval in which the bus moved.
+   *
+   * @param tripId The trip the subscriber follows (its stream moves along if the trip changes bus).
+   */
+  public SseEmitter subscribe(long busId, long tripId, SseEmitter emitter) {
+    if (subscriberCount.incrementAndGet() > maxSubscribers) {
+      subscriberCount.decrementAndGet();
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+              "Too many live position subscribers. Please poll /api/positions/bus/" + busId + " instead.");
+    }
+    Subscriber subscriber = new Subscriber(tripId, emitter);
+    attach(subscriber, busId);
+    emitter.onCompletion(subscriber::close);
+    emitter.onTimeout(subscriber::close);
+    emitter.onError(error -> subscriber.close());
+
+    BusPositionDTO latest = latestPosition(busId);
+    if (latest != null) {
+      subscriber.offer(positionFrame(latest));
+    }
+    return emitter;
+  }
+
+  /**
+   * Moves the subscribers of a trip to the bus now running it.
+   */
+  public synchronized void reassignTrip(long tripId, long busId) {
+    watchedBuses.forEach(watched -> {
+      if (watched.busId == busId) return;
+      watched.subscribers.forEach(subscriber -> {
+        if (subscriber.tripId == tripId) {
+          detach(subscriber);
+          attach(subscriber, busId);
+        }
+      });
+    });
+  }
+
+  @Override
+  public void onPosition(long busId, long timestamp, double latitude, double longitude, float speed, float heading) {
+    WatchedBus watched = watchedBuses.get(busId);
+    if (watched != null) {
+      watched.update(timestamp, latitude, longitude, speed, heading);
+    }
+  }
+
+  /**
+   * @return The number of open live position streams.
+   */
+  public int getSubscriberCount() {
+    return subscriberCount.get();
+  }
+
+  public long getFramesSent() { return framesSent.sum(); }
+  public long getFramesDropped() { return framesDropped.sum(); }
+
+  @PreDestroy
+  public void shutdown() {
+    ticker.shutdownNow();
+    dispatcher.shutdownNow();
+    watchedBuses.forEach(watched -> watched.subscribers.forEach(subscriber -> subscriber.emitter.complete()));
+  }
+
+  // --- Helper Methods ---
+
+  // One frame per bus that moved since the last tick, shared by all of its subscribers
+  private void flush() {
+    watchedBuses.forEach(watched -> {
+      BusPositionDTO position = watched.takeIfMoved();
+      if (position != null) {
+        Set<DataWithMediaType> frame = positionFrame(position);
+        watched.subscribers.forEach(subscriber -> subscriber.offer(frame));
+      }
+    });
+  }
+
+  // Comments keep proxies from closing the streams of buses that are not moving
+  private void heartbeat() {
+    watchedBuses.forEach(watched -> watched.subscribers.forEach(Subscriber::offerHeartbeat));
+  }
+
+  private Set<DataWithMediaType> positionFrame(BusPositionDTO position) {
+    try {
+      String json = objectMapper.writeValueAsString(position);
+      return SseEmitter.event().name("position").data(json, MediaType.APPLICATION_JSON).build();
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Could not serialize bus position", e);
+    }
+  }
+
+  private BusPositionDTO latestPosition(long busId) {
+    try {
+      return busPositionTracker.getLatestPosition(busId);
+    } catch (ResponseStatusException e) {
+      return null; // Not tracked yet; the first sample registers it
+    }
+  }
+
+  private synchronized void attach(Subscriber subscriber, long busId) {
+    subscriber.busId = busId;
+    watchedBuses.computeIfAbsent(busId, WatchedBus::new).subscribers.add(subscriber);
+  }
+
+  // Buses nobody watches any more are dropped, so their samples are ignored again
+  private synchronized void detach(Subscriber subscriber) {
+    WatchedBus watched = watchedBuses.get(subscriber.busId);
+    if (watched != null && watched.subscribers.remove(subscriber) && watched.subscribers.isEmpty()) {
+      watchedBuses.remove(watched.busId);
+    }
+  }
+
+  private static ThreadFactory daemonThreads(String name) {
+    AtomicInteger counter = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * The latest sample of a bus someone is watching, and who is watching it.
+   */
+  private static final class WatchedBus {
+
+    private final long busId;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private long timestamp;
+    private double latitude;
+    private double longitude;
+    private float speed;
+    private float heading;
+    private boolean moved;
+
+    WatchedBus(long busId) {
+      this.busId = busId;
+    }
+
+    synchronized void update(long timestamp, double latitude, double longitude, float speed, float heading) {
+      this.timestamp = timestamp;
+      this.latitude = latitude;
+      this.longitude = longitude;
+      this.speed = speed;
+      this.heading = heading;
+      this.moved = true;
+    }
+
+    synchronized BusPositionDTO takeIfMoved() {
+      if (!moved) return null;
+      moved = false;
+      return new BusPositionDTO(busId, timestamp, latitude, longitude, speed, heading);
+    }
+  }
+
+  private final class Subscriber implements Runnable {
+
+    private final long tripId;
+    private final SseEmitter emitter;
+    private volatile long busId;
+    // The next frame to send; a newer one replaces it if the client has not taken it yet
+    private final AtomicReference<Set<DataWithMediaType>> pending = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    Subscriber(long tripId, SseEmitter emitter) {
+      this.tripId = tripId;
+      this.emitter = emitter;
+    }
+
+    void offer(Set<DataWithMediaType> frame) {
+      if (closed.get()) return;
+      if (pending.getAndSet(frame) != null) {
+        framesDropped.increment(); // The client is behind: it skips the stale position
+      }
+      schedule();
+    }
+
+    void offerHeartbeat() {
+      if (!closed.get() && pending.compareAndSet(null, heartbeatFrame)) {
+        schedule();
+      }
+    }
+
+    private void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        dispatcher.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        Set<DataWithMediaType> frame;
+        while (!closed.get() && (frame = pending.getAndSet(null)) != null) {
+          emitter.send(frame);
+          framesSent.increment();
+        }
+      } catch (IOException | IllegalStateException e) {
+        close(); // Connection went away (or the emitter already completed)
+      } finally {
+        scheduled.set(false);
+      }
+      // A frame may have arrived after the last poll but before the flag was cleared
+      if (!closed.get() && pending.get() != null) {
+        schedule();
+      }
+    }
+
+    void close() {
+      if (!closed.compareAndSet(false, true)) return;
+      pending.set(null);
+      detach(this);
+      subscriberCount.decrementAndGet();
+    }
+  }
+}
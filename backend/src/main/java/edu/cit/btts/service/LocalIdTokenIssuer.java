@@ -0,0 +1,88 @@
+package edu.cit.btts.service;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.json.webtoken.JsonWebSignature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A stand-in for Google's sign-in, for tests and load runs that must not depend on the network: it holds
+ * an RSA key pair generated at startup and mints ID tokens in the same format Google does, which
+ * {@link GoogleTokenVerifierService} then accepts in place of Google's. Only active with
+ * google.id-token.key-source=local; never enable it in production.
+ */
+@Component
+@ConditionalOnProperty(name = "google.id-token.key-source", havingValue = "local")
+public class LocalIdTokenIssuer implements GoogleIdTokenKeySource {
+
+  private static final Logger log = LoggerFactory.getLogger(LocalIdTokenIssuer.class);
+
+  private static final long TOKEN_LIFETIME_SECONDS = 3600;
+
+  private final KeyPair keyPair;
+  private final String keyId = UUID.randomUUID().toString();
+  private final String issuer;
+  private final String audience;
+
+  public LocalIdTokenIssuer(@Value("${google.id-token.local-issuer:https://local-issuer.btts}") String issuer,
+                            @Value("${google.client.id}") String audience) {
+    this.issuer = issuer;
+    this.audience = audience;
+    try {
+      KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+      generator.initialize(2048);
+      this.keyPair = generator.generateKeyPair();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // Every JVM has RSA
+    }
+    log.warn("Google sign-in is served by the local ID token issuer {}; tokens from Google are not accepted", issuer);
+  }
+
+  @Override
+  public List<PublicKey> getPublicKeys() {
+    return List.of(keyPair.getPublic());
+  }
+
+  @Override
+  public Collection<String> getIssuers() {
+    return List.of(issuer);
+  }
+
+  /**
+   * Mints a signed ID token for the given account, valid for an hour.
+   *
+   * @param email The account's (verified) email address.
+   * @param givenName The given_name claim.
+   * @param familyName The family_name claim.
+   * @return The compact token, as the frontend would get it from Google.
+   */
+  public String issue(String email, String givenName, String familyName) throws GeneralSecurityException, IOException {
+    long now = System.currentTimeMillis() / 1000;
+    GoogleIdToken.Payload payload = new GoogleIdToken.Payload()
+            .setIssuer(issuer)
+            .setAudience(audience)
+            .setSubject(email) // Stable per account, like Google's numeric subject
+            .setIssuedAtTimeSeconds(now)
+            .setExpirationTimeSeconds(now + TOKEN_LIFETIME_SECONDS)
+            .setEmail(email)
+            .setEmailVerified(true);
+    payload.set("given_name", givenName);
+    payload.set("family_name", familyName);
+    JsonWebSignature.Header header = new JsonWebSignature.Header().setAlgorithm("RS256").setKeyId(keyId);
+    return JsonWebSignature.signUsingRsaSha256(keyPair.getPrivate(), GsonFactory.getDefaultInstance(), header, payload);
+  }
+}
@@ -1,7 +1,10 @@
 package edu.cit.btts.service;
 
+import edu.cit.btts.dto.PaymentClaimResponse;
 import edu.cit.btts.dto.PaymentRequest;
 import edu.cit.btts.dto.PaymentResponse;
+import edu.cit.btts.dto.PaymentStatusUpdateRequest;
+import edu.cit.btts.dto.PaymentStatusUpdateResult;
 import edu.cit.btts.model.Payment;
 import edu.cit.btts.model.PaymentStatus;
 import edu.cit.btts.model.PaymentType;
@@ -13,6 +16,8 @@ import edu.cit.btts.repository.PaymentRepository;
 import edu.cit.btts.repository.SeatRepository;
 import edu.cit.btts.repository.TicketRepository;
 import edu.cit.btts.repository.UserRepository; // For user lookup
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -20,8 +25,18 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects; // For Objects.equals
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -31,12 +46,29 @@ public class PaymentService {
   private final TicketRepository ticketRepository;
   private final UserRepository userRepository; // To get User ID for security checks
   private final SeatRepository seatRepository;
+  private final SeatOccupancyIndex seatOccupancyIndex;
+  private final TripAvailabilityCounter tripAvailabilityCounter;
+  private final SeatLockManager seatLockManager;
+  private final ReceiptStore receiptStore;
+  private final Duration reviewLease;
+  private final int maxClaim;
+  private final int maxStatusBatch;
 
-  public PaymentService(PaymentRepository paymentRepository, TicketRepository ticketRepository, UserRepository userRepository, SeatRepository seatRepository) {
+  public PaymentService(PaymentRepository paymentRepository, TicketRepository ticketRepository, UserRepository userRepository, SeatRepository seatRepository, SeatOccupancyIndex seatOccupancyIndex, TripAvailabilityCounter tripAvailabilityCounter, SeatLockManager seatLockManager, ReceiptStore receiptStore,
+                        @Value("${booking.payment-review.lease:PT5M}") Duration reviewLease,
+                        @Value("${booking.payment-review.max-claim:50}") int maxClaim,
+                        @Value("${booking.payment-review.max-status-batch:500}") int maxStatusBatch) {
     this.paymentRepository = paymentRepository;
     this.ticketRepository = ticketRepository;
     this.userRepository = userRepository;
     this.seatRepository = seatRepository;
+    this.seatOccupancyIndex = seatOccupancyIndex;
+    this.tripAvailabilityCounter = tripAvailabilityCounter;
+    this.seatLockManager = seatLockManager;
+    this.receiptStore = receiptStore;
+    this.reviewLease = reviewLease;
+    this.maxClaim = maxClaim;
+    this.maxStatusBatch = maxStatusBatch;
   }
 
   /**
@@ -49,25 +81,50 @@ public class PaymentService {
    */
   @Transactional
   public PaymentResponse createPayment(PaymentRequest request) {
+    if (request.getType() == PaymentType.ONLINE && (request.getOnlineReceipt() == null || request.getOnlineReceipt().length == 0)) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Online receipt is required for online payments.");
+    }
+    // A cash payment has no use for a receipt, so one sent along is not stored
+    ReceiptStore.StoredReceipt receipt = (request.getType() == PaymentType.ONLINE) ? receiptStore.store(request.getOnlineReceipt()) : null;
+    request.setOnlineReceipt(null);
+    return createPayment(request, receipt);
+  }
+
+  /**
+   * Creates a new payment for a given ticket, with an online receipt that was already streamed into the
+   * ReceiptStore (multipart uploads).
+   *
+   * @param request The PaymentRequest DTO containing payment details (without receipt bytes).
+   * @param receipt The stored online receipt (ignored for CASH payments).
+   * @return The created PaymentResponse DTO.
+   * @throws ResponseStatusException if the associated ticket is not found.
+   * @throws ResponseStatusException if online receipt is missing for ONLINE payment type.
+   */
+  @Transactional
+  public PaymentResponse createPayment(PaymentRequest request, ReceiptStore.StoredReceipt receipt) {
     Ticket ticket = ticketRepository.findById(request.getTicketId())
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Ticket not found with ID: " + request.getTicketId()));
+    if (ticket.getSeat() == null) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT, "Ticket with ID " + ticket.getId() + " no longer holds a seat.");
+    }
 
-    if (request.getType() == PaymentType.ONLINE && (request.getOnlineReceipt() == null || request.getOnlineReceipt().length == 0)) {
+    if (request.getType() == PaymentType.ONLINE && receipt == null) {
       throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Online receipt is required for online payments.");
     }
-    if (request.getType() == PaymentType.CASH && request.getOnlineReceipt() != null && request.getOnlineReceipt().length > 0) {
-      // Optionally, clear the receipt if cash payment to prevent storing unnecessary data
-      request.setOnlineReceipt(null);
+    if (request.getOnlineReceipt() != null) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Send the online receipt as the receipt part only.");
     }
 
     Payment payment = new Payment(
       request.getAmount(),
       request.getType(),
       request.getPurpose(),
-      request.getOnlineReceipt(),
       ticket
     );
     // Default status (PENDING) and date (now()) are set in Payment entity's constructor
+    if (request.getType() == PaymentType.ONLINE) {
+      payment.setReceipt(receipt.getDigest(), receipt.getSize(), receipt.getContentType());
+    }
 
     Payment savedPayment = paymentRepository.save(payment);
     return mapEntityToDto(savedPayment);
@@ -82,16 +139,47 @@ public class PaymentService {
    * @throws ResponseStatusException if payment not found, or user is forbidden to view it.
    */
   public PaymentResponse getPaymentById(Long id) {
-    Payment payment = paymentRepository.findById(id)
-            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Payment not found with ID: " + id));
+    return mapEntityToDto(findViewablePayment(id));
+  }
 
-    // Security check: If current user is PASSENGER, ensure the payment belongs to them
-    if (isCurrentUserPassenger()) {
-      User currentUser = getAuthenticatedUser();
-      if (!Objects.equals(payment.getTicket().getUser().getId(), currentUser.getId())) {
-        throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access Denied: You can only view your own payments.");
-      }
+  /**
+   * Looks up where a payment's online receipt is stored.
+   * Includes security check: Passengers can only view their own receipts.
+   *
+   * @param id The ID of the payment.
+   * @return The stored receipt.
+   * @throws ResponseStatusException if payment not found, user is forbidden to view it, or it has no receipt.
+   */
+  public ReceiptStore.StoredReceipt getReceipt(Long id) {
+    Payment payment = findViewablePayment(id);
+    if (payment.getReceiptDigest() == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Payment with ID " + id + " has no receipt.");
     }
+    return new ReceiptStore.StoredReceipt(payment.getReceiptDigest(), payment.getReceiptSize(), payment.getReceiptContentType());
+  }
+
+  /**
+   * Replaces the online receipt of a payment that is still waiting for review, streaming the new one
+   * into the ReceiptStore. Not transactional on purpose: no database connection is held while the upload
+   * is read.
+   * Includes security check: Passengers can only replace their own receipts.
+   *
+   * @param id The ID of the payment.
+   * @param content The new receipt's bytes.
+   * @return The updated PaymentResponse DTO.
+   * @throws ResponseStatusException if payment not found, user is forbidden to change it, or it is not a pending online payment.
+   */
+  public PaymentResponse replaceReceipt(Long id, InputStream content) {
+    Payment payment = findViewablePayment(id);
+    if (payment.getType() != PaymentType.ONLINE || payment.getStatus() != PaymentStatus.PENDING) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT, "Only the receipt of a pending online payment can be replaced.");
+    }
+    ReceiptStore.StoredReceipt receipt = receiptStore.store(content);
+    // Conditional on the status, so a payment reviewed during the upload keeps the receipt it was reviewed with
+    if (paymentRepository.updateReceipt(id, PaymentStatus.PENDING, receipt.getDigest(), receipt.getSize(), receipt.getContentType()) == 0) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT, "Payment with ID " + id + " was reviewed in the meantime.");
+    }
+    payment.setReceipt(receipt.getDigest(), receipt.getSize(), receipt.getContentType());
     return mapEntityToDto(payment);
   }
 
@@ -157,6 +245,67 @@ public class PaymentService {
             .collect(Collectors.toList());
   }
 
+  /**
+   * Hands the current reviewer the oldest pending payments nobody else is reviewing, and holds them for
+   * the reviewer until the lease runs out (renewClaim extends it). Payments another reviewer is claiming
+   * at the same moment are skipped rather than waited for, and a claim that runs out makes its payment
+   * claimable again, so reviewers never work on the same payment and never load the whole backlog.
+   * Restricted to TRANSIT_ADMIN and TICKET_STAFF roles.
+   *
+   * @param limit How many payments to claim (1 to booking.payment-review.max-claim).
+   * @return The claimed payments, oldest first, with the lease expiry (fewer than limit when the queue runs low).
+   * @throws ResponseStatusException if limit is out of range.
+   */
+  @Transactional
+  public PaymentClaimResponse claimPendingPayments(int limit) {
+    if (limit < 1 || limit > maxClaim) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be between 1 and " + maxClaim + ".");
+    }
+    String reviewer = getAuthenticatedUsername();
+    LocalDateTime now = LocalDateTime.now();
+    LocalDateTime leaseExpiresAt = now.plus(reviewLease);
+    List<Payment> claimed = paymentRepository.findClaimable(PaymentStatus.PENDING, now, PageRequest.of(0, limit));
+    claimed.forEach(payment -> payment.setClaim(reviewer, leaseExpiresAt)); // Written when the transaction commits
+    return new PaymentClaimResponse(claimed.stream().map(this::mapEntityToDto).collect(Collectors.toList()), leaseExpiresAt);
+  }
+
+  /**
+   * Extends the current reviewer's claim on a payment by another lease period.
+   * Restricted to TRANSIT_ADMIN and TICKET_STAFF roles.
+   *
+   * @param id The ID of the claimed payment.
+   * @return The payment with the new lease expiry.
+   * @throws ResponseStatusException if payment not found, or the reviewer no longer holds a claim on it.
+   */
+  public PaymentClaimResponse renewClaim(Long id) {
+    LocalDateTime now = LocalDateTime.now();
+    LocalDateTime leaseExpiresAt = now.plus(reviewLease);
+    if (paymentRepository.renewClaim(id, getAuthenticatedUsername(), PaymentStatus.PENDING, now, leaseExpiresAt) == 0) {
+      Payment payment = paymentRepository.findById(id)
+              .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Payment not found with ID: " + id));
+      throw new ResponseStatusException(HttpStatus.CONFLICT, payment.getStatus() != PaymentStatus.PENDING
+              ? "Payment with ID " + id + " was already reviewed."
+              : "Your claim on payment with ID " + id + " has expired; claim it again.");
+    }
+    Payment payment = paymentRepository.findById(id)
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Payment not found with ID: " + id));
+    return new PaymentClaimResponse(List.of(mapEntityToDto(payment)), leaseExpiresAt);
+  }
+
+  /**
+   * Gives up the current reviewer's claim on a payment, so it goes back to the queue right away.
+   * Releasing a claim that already ran out is not an error.
+   * Restricted to TRANSIT_ADMIN and TICKET_STAFF roles.
+   *
+   * @param id The ID of the claimed payment.
+   * @throws ResponseStatusException if payment not found.
+   */
+  public void releaseClaim(Long id) {
+    if (paymentRepository.releaseClaim(id, getAuthenticatedUsername()) == 0 && !paymentRepository.existsById(id)) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Payment not found with ID: " + id);
+    }
+  }
+
   /**
    * Updates the status of a payment.
    * Restricted to TRANSIT_ADMIN and TICKET_STAFF roles.
@@ -164,57 +313,163 @@ public class PaymentService {
    * @param id The ID of the payment to update.
    * @param newStatus The new status for the payment.
    * @return The updated PaymentResponse DTO.
-   * @throws ResponseStatusException if payment not found, or invalid status transition.
+   * @throws ResponseStatusException if payment not found, invalid status transition, another reviewer holds a claim on it,
+   *         or its seat was given up and has been booked again.
    */
   @Transactional
   public PaymentResponse updatePaymentStatus(Long id, PaymentStatus newStatus) {
-    Payment payment = paymentRepository.findById(id)
+    Payment payment = paymentRepository.findByIdForUpdate(id)
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Payment not found with ID: " + id));
 
-    // Add business logic for status transitions if needed
-    // For example: Cannot change from APPROVED to PENDING
-    if (payment.getStatus() == PaymentStatus.APPROVED && newStatus == PaymentStatus.PENDING) {
-      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cannot change status from APPROVED to PENDING.");
-    }
-    // If payment status is APPROVED or REJECTED, and new status is the same, no action needed
-    if ((payment.getStatus() == PaymentStatus.APPROVED || payment.getStatus() == PaymentStatus.REJECTED) && payment.getStatus() == newStatus) {
+    if (!isStatusChange(payment, newStatus, getAuthenticatedUsername(), LocalDateTime.now())) {
       return mapEntityToDto(payment); // No actual change, return current state
     }
-
-    payment.setStatus(newStatus); // Set the new payment status
+    applyStatus(payment, newStatus);
 
     Payment updatedPayment = paymentRepository.save(payment); // Save payment status change
 
     // --- LOGIC TO UPDATE SEAT STATUS BASED ON PAYMENT STATUS ---
     Ticket associatedTicket = updatedPayment.getTicket();
+    if (associatedTicket != null && associatedTicket.getSeat() == null && TripAvailabilityCounter.isTaken(seatStatusFor(newStatus))) {
+      throw seatRebooked(updatedPayment);
+    }
     if (associatedTicket != null && associatedTicket.getSeat() != null) {
       Seat associatedSeat = associatedTicket.getSeat();
       SeatStatus currentSeatStatus = associatedSeat.getStatus();
-      SeatStatus desiredSeatStatus = currentSeatStatus; // Initialize with current to avoid unnecessary updates
-
-      switch (newStatus) {
-        case APPROVED:
-          desiredSeatStatus = SeatStatus.BOOKED;
-          break;
-        case REJECTED:
-          desiredSeatStatus = SeatStatus.OPEN; // Make seat available again if payment rejected
-          break;
-        case PENDING:
-          desiredSeatStatus = SeatStatus.RESERVED; // Seat is reserved while payment is pending
-          break;
-        // No default needed if enum covers all cases, or handle other statuses if they exist
-      }
+      SeatStatus desiredSeatStatus = seatStatusFor(newStatus);
 
       // Only update if the status is actually changing to avoid unnecessary DB writes
       if (desiredSeatStatus != currentSeatStatus) {
+        if (!TripAvailabilityCounter.isTaken(currentSeatStatus) && TripAvailabilityCounter.isTaken(desiredSeatStatus)) {
+          lockSeatCell(associatedSeat);
+          takeReleasedSeat(updatedPayment, associatedSeat, desiredSeatStatus);
+        }
+        tripAvailabilityCounter.onSeatStatusChange(associatedSeat.getTrip(), currentSeatStatus, desiredSeatStatus);
         associatedSeat.setStatus(desiredSeatStatus);
         seatRepository.save(associatedSeat); // Save the updated seat status
+        seatOccupancyIndex.recordSeat(associatedSeat);
       }
     }
 
     return mapEntityToDto(updatedPayment);
   }
 
+  /**
+   * Updates the status of many payments at once, with the same rules as updatePaymentStatus. The payments
+   * and their tickets and seats are loaded with one query, and the changes are written in JDBC batches
+   * when the transaction commits. An item that breaks a rule (unknown payment, invalid transition, claimed
+   * by another reviewer, no seat left to take back) fails on its own; the other items are still applied.
+   * Restricted to TRANSIT_ADMIN and TICKET_STAFF roles.
+   *
+   * @param updates The (payment ID, new status) pairs; a payment may appear only once.
+   * @return One result per item, in the order given.
+   * @throws ResponseStatusException if there are more than booking.payment-review.max-status-batch items.
+   */
+  @Transactional
+  public List<PaymentStatusUpdateResult> updatePaymentStatuses(List<PaymentStatusUpdateRequest> updates) {
+    if (updates.size() > maxStatusBatch) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + maxStatusBatch + " payments can be updated at once.");
+    }
+    Set<Long> ids = updates.stream().map(PaymentStatusUpdateRequest::getPaymentId).collect(Collectors.toSet());
+    Map<Long, Payment> payments = paymentRepository.findWithSeatsByIdIn(ids).stream()
+            .collect(Collectors.toMap(Payment::getId, Function.identity()));
+    String reviewer = getAuthenticatedUsername();
+    LocalDateTime now = LocalDateTime.now();
+
+    List<PaymentStatusUpdateResult> results = new ArrayList<>(updates.size());
+    Set<Long> seen = new HashSet<>();
+    Map<Long, Integer> releasedSeatsByTrip = new HashMap<>();
+    for (PaymentStatusUpdateRequest update : updates) {
+      Long id = update.getPaymentId();
+      PaymentStatus newStatus = update.getStatus();
+      Payment payment = payments.get(id);
+      if (!seen.add(id)) {
+        results.add(new PaymentStatusUpdateResult(id, newStatus, false, "Payment with ID " + id + " appears more than once.", null));
+        continue;
+      }
+      if (payment == null) {
+        results.add(new PaymentStatusUpdateResult(id, newStatus, false, "Payment not found with ID: " + id, null));
+        continue;
+      }
+      try {
+        if (isStatusChange(payment, newStatus, reviewer, now)) {
+          Seat seat = payment.getTicket().getSeat();
+          SeatStatus desiredSeatStatus = seatStatusFor(newStatus);
+          if (seat == null) {
+            // Its seat went to another booking, so only a status that does not take a seat applies
+            if (TripAvailabilityCounter.isTaken(desiredSeatStatus)) throw seatRebooked(payment);
+            applyStatus(payment, newStatus);
+          } else {
+            SeatStatus currentSeatStatus = seat.getStatus();
+            boolean wasTaken = TripAvailabilityCounter.isTaken(currentSeatStatus);
+            boolean isTaken = TripAvailabilityCounter.isTaken(desiredSeatStatus);
+            // Taking a seat back can fail, so it happens before anything else about this item changes
+            if (!wasTaken && isTaken) {
+              lockSeatCell(seat);
+              tripAvailabilityCounter.takeSeats(seat.getTrip(), 1);
+              try {
+                takeReleasedSeat(payment, seat, desiredSeatStatus);
+              } catch (ResponseStatusException e) {
+                tripAvailabilityCounter.releaseSeats(seat.getTrip(), 1);
+                throw e;
+              }
+            }
+            applyStatus(payment, newStatus);
+            if (desiredSeatStatus != currentSeatStatus) {
+              seat.setStatus(desiredSeatStatus);
+              seatOccupancyIndex.recordSeat(seat);
+            }
+            if (wasTaken && !isTaken) {
+              releasedSeatsByTrip.merge(seat.getTrip().getId(), 1, Integer::sum);
+            }
+          }
+        }
+        results.add(new PaymentStatusUpdateResult(id, newStatus, true, null, mapEntityToDto(payment)));
+      } catch (ResponseStatusException e) {
+        results.add(new PaymentStatusUpdateResult(id, newStatus, false, e.getReason(), null));
+      }
+    }
+    // Give the released seats back to their trips, one update per trip
+    releasedSeatsByTrip.forEach(tripAvailabilityCounter::releaseSeats);
+    return results;
+  }
+
+  /**
+   * Releases the seats of online payments whose reservation hold has run out without a review.
+   * Follows the same rule as a rejection: the payment becomes REJECTED and its seat OPEN. Payments that
+   * were reviewed, or whose seat is no longer RESERVED, are skipped.
+   *
+   * @param paymentIds The IDs of the payments whose holds are due.
+   * @return The number of seats released.
+   */
+  @Transactional
+  public int expireReservationHolds(Collection<Long> paymentIds) {
+    List<PaymentRepository.ExpiredHold> expiredHolds = paymentRepository.findExpiredHolds(
+            paymentIds, PaymentStatus.PENDING, SeatStatus.RESERVED, LocalDateTime.now());
+    if (expiredHolds.isEmpty()) return 0;
+
+    // The rows are locked until this transaction ends, so both updates change exactly these holds and the
+    // index and availability below follow what was written
+    List<Long> expiredPaymentIds = expiredHolds.stream().map(PaymentRepository.ExpiredHold::getPaymentId).collect(Collectors.toList());
+    List<Long> seatIds = expiredHolds.stream().map(PaymentRepository.ExpiredHold::getSeatId).collect(Collectors.toList());
+    int rejected = paymentRepository.updateStatusByIdIn(expiredPaymentIds, PaymentStatus.PENDING, PaymentStatus.REJECTED);
+    int reopened = seatRepository.updateStatusByIdIn(seatIds, SeatStatus.RESERVED, SeatStatus.OPEN);
+    if (rejected != expiredHolds.size() || reopened != expiredHolds.size()) {
+      // Cannot happen while the rows are locked; roll back rather than let the index and counter drift
+      throw new IllegalStateException("Expired " + expiredHolds.size() + " hold(s) but changed " + rejected +
+              " payment(s) and " + reopened + " seat(s)");
+    }
+
+    for (PaymentRepository.ExpiredHold hold : expiredHolds) {
+      seatOccupancyIndex.recordSeat(hold.getTripId(), hold.getRowPosition(), hold.getColumnPosition(), hold.getSeatId(), SeatStatus.OPEN);
+    }
+    // Give the released seats back to their trips, one update per trip
+    expiredHolds.stream()
+            .collect(Collectors.groupingBy(PaymentRepository.ExpiredHold::getTripId, Collectors.counting()))
+            .forEach((tripId, released) -> tripAvailabilityCounter.releaseSeats(tripId, released.intValue()));
+    return expiredHolds.size();
+  }
+
   /**
    * Deletes a payment by its ID.
    * Restricted to TRANSIT_ADMIN and TICKET_STAFF roles.
@@ -232,6 +487,74 @@ public class PaymentService {
 
   // --- Helper Methods ---
 
+  // Checks a status change against the transition rules; false when the payment already has that final status
+  private boolean isStatusChange(Payment payment, PaymentStatus newStatus, String reviewer, LocalDateTime now) {
+    // A payment claimed from the review queue is decided by the reviewer holding it
+    if (payment.getClaimExpiresAt() != null && payment.getClaimExpiresAt().isAfter(now)
+            && !Objects.equals(payment.getClaimedBy(), reviewer)) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT, "Payment with ID " + payment.getId() + " is being reviewed by another staff member.");
+    }
+    // Add business logic for status transitions if needed
+    // For example: Cannot change from APPROVED to PENDING
+    if (payment.getStatus() == PaymentStatus.APPROVED && newStatus == PaymentStatus.PENDING) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cannot change status from APPROVED to PENDING.");
+    }
+    // If payment status is APPROVED or REJECTED, and new status is the same, no action needed
+    return !((payment.getStatus() == PaymentStatus.APPROVED || payment.getStatus() == PaymentStatus.REJECTED) && payment.getStatus() == newStatus);
+  }
+
+  // A released (OPEN) seat may be booked by a passenger while a review takes it back, so the review holds
+  // the seat's cell lock like a booking does
+  private void lockSeatCell(Seat seat) {
+    seatLockManager.holdUntilTransactionEnds(
+            seatLockManager.lock(seat.getTrip().getId(), seat.getRowPosition(), seat.getColumnPosition()));
+  }
+
+  // Moves a released seat to its new status only while it is still OPEN in the database; a booking on
+  // another node may have given the cell to someone else in the meantime
+  private void takeReleasedSeat(Payment payment, Seat seat, SeatStatus desiredStatus) {
+    if (seatRepository.updateStatusByIdIn(List.of(seat.getId()), SeatStatus.OPEN, desiredStatus) == 0) {
+      throw seatRebooked(payment);
+    }
+  }
+
+  private static ResponseStatusException seatRebooked(Payment payment) {
+    return new ResponseStatusException(HttpStatus.CONFLICT,
+            "The seat of payment with ID " + payment.getId() + " was released and has been booked by another passenger.");
+  }
+
+  private static void applyStatus(Payment payment, PaymentStatus newStatus) {
+    payment.setStatus(newStatus); // Set the new payment status
+    payment.setHoldExpiresAt(null); // Reviewed by staff, so the reservation hold no longer applies
+    payment.setClaim(null, null);
+  }
+
+  // The seat status that goes with a payment status
+  private static SeatStatus seatStatusFor(PaymentStatus status) {
+    switch (status) {
+      case APPROVED:
+        return SeatStatus.BOOKED;
+      case REJECTED:
+        return SeatStatus.OPEN; // Make seat available again if payment rejected
+      default:
+        return SeatStatus.RESERVED; // Seat is reserved while payment is pending
+    }
+  }
+
+  private Payment findViewablePayment(Long id) {
+    Payment payment = paymentRepository.findById(id)
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Payment not found with ID: " + id));
+
+    // Security check: If current user is PASSENGER, ensure the payment belongs to them
+    if (isCurrentUserPassenger()) {
+      User currentUser = getAuthenticatedUser();
+      if (!Objects.equals(payment.getTicket().getUser().getId(), currentUser.getId())) {
+        throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access Denied: You can only view your own payments.");
+      }
+    }
+    return payment;
+  }
+
   private PaymentResponse mapEntityToDto(Payment payment) {
     if (payment == null) return null;
     return new PaymentResponse(
@@ -241,7 +564,10 @@ public class PaymentService {
             payment.getType(),
             payment.getPurpose(),
             payment.getDate(),
-            payment.getOnlineReceipt(),
+            payment.getReceiptDigest() != null ? "/api/payments/" + payment.getId() + "/receipt" : null,
+            ReceiptImagePipeline.hasPreview(payment.getReceiptContentType()) ? "/api/payments/" + payment.getId() + "/receipt?variant=thumbnail" : null,
+            payment.getReceiptSize(),
+            payment.getReceiptContentType(),
             payment.getTicket() != null ? payment.getTicket().getId() : null
     );
   }
@@ -252,6 +578,11 @@ public class PaymentService {
             .anyMatch(a -> a.getAuthority().equals("ROLE_PASSENGER"));
   }
 
+  private String getAuthenticatedUsername() {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    return authentication != null ? authentication.getName() : null;
+  }
+
   private User getAuthenticatedUser() {
     Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
     String username = authentication.getName(); // Assuming username (e.g., email) is the principal name
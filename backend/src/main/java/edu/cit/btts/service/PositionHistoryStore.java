@@ -0,0 +1,523 @@
+package edu.cit.btts.service;
+
+import edu.cit.btts.dto.BusPositionDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Position history of every bus, in append-only segment files instead of database rows.
+ *
+ * Layout: {dir}/{busId}/{UTC day}/{first timestamp}.open while a segment is written, renamed to .seg once
+ * it is sealed. A segment covers the samples from its first timestamp up to the first timestamp of the
+ * next segment of the day. It is a 28-byte header (magic, bus ID, first timestamp, first latitude and
+ * longitude in microdegrees) followed by records of
+ *   [payload length][varint timestamp delta][zigzag varint latitude and longitude deltas]
+ *   [varint speed in 0.1 km/h][varint heading in 0.1 degrees][CRC-8 of the payload]
+ * where deltas are taken against the previous record, so a record is typically 8 to 12 bytes.
+ *
+ * Segments are written through a memory-mapped file (the length byte goes in last, so a record only
+ * exists once it is complete) and rolled over when full, older than segment-max-age or on a new day.
+ * Range reads decode straight from read-only mappings of the files. On startup, segments that were still
+ * open are scanned up to their last intact record and sealed. A scheduled job removes days past
+ * retention and compacts each past day's segments into one file.
+ */
+@Component
+public class PositionHistoryStore implements BusPositionListener {
+
+  private static final Logger log = LoggerFactory.getLogger(PositionHistoryStore.class);
+
+  private static final int MAGIC = 0x42505331; // "BPS1"
+  private static final int HEADER_SIZE = 28;
+  private static final int MAX_RECORD_SIZE = 1 + 10 + 5 + 5 + 5 + 5 + 1;
+  private static final long MS_PER_DAY = 86_400_000L;
+  private static final long FAILURE_BACKOFF_MS = 60_000L;
+  private static final String OPEN_SUFFIX = ".open";
+  private static final String SEALED_SUFFIX = ".seg";
+  private static final String COMPACTING_SUFFIX = ".tmp";
+
+  private final Path directory;
+  private final int segmentSize;
+  private final long segmentMaxAgeMs;
+  private final Duration retention;
+  private final boolean compactionEnabled;
+  private final BusIdIndex<SegmentWriter> writers = new BusIdIndex<>();
+
+  public PositionHistoryStore(@Value("${tracking.history.dir:data/positions}") String directory,
+                              @Value("${tracking.history.segment-size:4194304}") int segmentSize,
+                              @Value("${tracking.history.segment-max-age:PT6H}") Duration segmentMaxAge,
+                              @Value("${tracking.history.retention:P30D}") Duration retention,
+                              @Value("${tracking.history.compaction-enabled:true}") boolean compactionEnabled) {
+    this.directory = Paths.get(directory);
+    this.segmentSize = segmentSize;
+    this.segmentMaxAgeMs = segmentMaxAge.toMillis();
+    this.retention = retention;
+    this.compactionEnabled = compactionEnabled;
+  }
+
+  // Seals the segments a crash left open and removes unfinished compactions
+  @PostConstruct
+  public void recover() throws IOException {
+    Files.createDirectories(directory);
+    List<Path> leftovers;
+    try (Stream<Path> files = Files.walk(directory)) {
+      leftovers = files.filter(path -> path.toString().endsWith(OPEN_SUFFIX) || path.toString().endsWith(COMPACTING_SUFFIX)).toList();
+    }
+    for (Path path : leftovers) {
+      if (path.toString().endsWith(COMPACTING_SUFFIX)) {
+        Files.deleteIfExists(path); // The originals are still there
+        continue;
+      }
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        int validLength = channel.size() < HEADER_SIZE ? 0
+                : decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), Long.MIN_VALUE, Long.MAX_VALUE, null);
+        if (validLength == 0) {
+          channel.close();
+          Files.delete(path); // Not even a header made it to disk
+          continue;
+        }
+        channel.truncate(validLength); // Drops a torn last record and the unused space
+      }
+      Files.move(path, sibling(path, SEALED_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+      log.info("Recovered position segment {}", path);
+    }
+  }
+
+  @Override
+  public void onPosition(long busId, long timestamp, double latitude, double longitude, float speed, float heading) {
+    SegmentWriter writer = writers.get(busId);
+    if (writer == null) {
+      writer = writers.computeIfAbsent(busId, SegmentWriter::new);
+    }
+    writer.append(timestamp, latitude, longitude, speed, heading);
+  }
+
+  /**
+   * Reads a bus's positions in a time range, oldest first.
+   *
+   * @param busId The ID of the bus.
+   * @param from Start of the range (epoch milliseconds, inclusive).
+   * @param to End of the range (epoch milliseconds, inclusive).
+   * @param limit Maximum number of positions.
+   * @return The positions in the range.
+   */
+  public List<BusPositionDTO> read(long busId, long from, long to, int limit) {
+    if (to < from) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The end of the range must not be before its start.");
+    }
+    List<BusPositionDTO> positions = new ArrayList<>();
+    Path busDirectory = directory.resolve(Long.toString(busId));
+    if (!Files.isDirectory(busDirectory)) return positions;
+
+    RecordVisitor collect = (timestamp, latitude, longitude, speed, heading) -> {
+      positions.add(new BusPositionDTO(busId, timestamp, latitude, longitude, speed, heading));
+      return positions.size() < limit;
+    };
+    try {
+      for (Path dayDirectory : listDays(busDirectory, Math.floorDiv(from, MS_PER_DAY), Math.floorDiv(to, MS_PER_DAY))) {
+        if (positions.size() >= limit) break;
+        List<Path> segments = listSegments(dayDirectory);
+        for (int i = 0; i < segments.size() && positions.size() < limit; i++) {
+          long end = (i + 1 < segments.size()) ? firstTimestamp(segments.get(i + 1)) - 1 : Long.MAX_VALUE;
+          if (firstTimestamp(segments.get(i)) > to || end < from) continue;
+          ByteBuffer segment = mapForReading(segments.get(i));
+          if (segment != null) decode(segment, from, Math.min(to, end), collect);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read position history of bus " + busId, e);
+    }
+    return positions;
+  }
+
+  /**
+   * Seals idle segments, deletes days past retention and compacts the segments of past days.
+   */
+  @Scheduled(fixedDelayString = "${tracking.history.maintenance-interval-ms:3600000}",
+             initialDelayString = "${tracking.history.maintenance-interval-ms:3600000}")
+  public void maintain() {
+    long now = System.currentTimeMillis();
+    writers.forEach(writer -> writer.sealIfIdle(now));
+
+    LocalDate today = LocalDate.ofEpochDay(Math.floorDiv(now, MS_PER_DAY));
+    LocalDate oldestKept = LocalDate.ofEpochDay(Math.floorDiv(now - retention.toMillis(), MS_PER_DAY));
+    try (Stream<Path> busDirectories = Files.list(directory)) {
+      for (Path busDirectory : busDirectories.filter(Files::isDirectory).toList()) {
+        try (Stream<Path> dayDirectories = Files.list(busDirectory)) {
+          for (Path dayDirectory : dayDirectories.filter(Files::isDirectory).toList()) {
+            LocalDate day = LocalDate.parse(dayDirectory.getFileName().toString());
+            if (day.isBefore(oldestKept)) {
+              deleteDirectory(dayDirectory);
+            } else if (compactionEnabled && day.isBefore(today)) {
+              compact(dayDirectory);
+            }
+          }
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn("Position history maintenance failed", e);
+    }
+  }
+
+  @PreDestroy
+  public void close() {
+    writers.forEach(SegmentWriter::seal);
+  }
+
+  // --- Segment format ---
+
+  @FunctionalInterface
+  private interface RecordVisitor {
+    // Returns false to stop decoding
+    boolean visit(long timestamp, double latitude, double longitude, float speed, float heading);
+  }
+
+  /**
+   * Decodes a segment, passing records with from <= timestamp <= to to the visitor (if any).
+   *
+   * @return The length of the segment's intact part (0 if the header is not intact).
+   */
+  private static int decode(ByteBuffer segment, long from, long to, RecordVisitor visitor) {
+    int limit = segment.limit();
+    if (limit < HEADER_SIZE || segment.getInt(0) != MAGIC) return 0;
+    long timestamp = segment.getLong(12);
+    int latitude = segment.getInt(20);
+    int longitude = segment.getInt(24);
+
+    int position = HEADER_SIZE;
+    int[] cursor = new int[1];
+    while (position < limit) {
+      int length = segment.get(position) & 0xFF;
+      if (length == 0 || position + length + 2 > limit
+              || crc8(segment, position + 1, length) != segment.get(position + 1 + length)) {
+        break; // End of the written part, or a torn record
+      }
+      cursor[0] = position + 1;
+      timestamp += readVarLong(segment, cursor);
+      latitude += unzigzag((int) readVarLong(segment, cursor));
+      longitude += unzigzag((int) readVarLong(segment, cursor));
+      int speed = (int) readVarLong(segment, cursor);
+      int heading = (int) readVarLong(segment, cursor);
+      position += length + 2;
+
+      if (timestamp > to) break;
+      if (visitor != null && timestamp >= from
+              && !visitor.visit(timestamp, latitude / 1e6, longitude / 1e6, speed / 10f, heading / 10f)) {
+        break;
+      }
+    }
+    return position;
+  }
+
+  // Writes a record at position and returns the position after it; the length byte is written last
+  private static int writeRecord(ByteBuffer segment, int position, long timestampDelta, int latitudeDelta,
+                                 int longitudeDelta, int speed, int heading) {
+    int end = position + 1;
+    end = writeVarLong(segment, end, timestampDelta);
+    end = writeVarLong(segment, end, zigzag(latitudeDelta));
+    end = writeVarLong(segment, end, zigzag(longitudeDelta));
+    end = writeVarLong(segment, end, speed);
+    end = writeVarLong(segment, end, heading);
+    int length = end - position - 1;
+    segment.put(end, crc8(segment, position + 1, length));
+    segment.put(position, (byte) length);
+    return end + 1;
+  }
+
+  private static void writeHeader(ByteBuffer segment, long busId, long timestamp, int latitude, int longitude) {
+    segment.putInt(0, MAGIC);
+    segment.putLong(4, busId);
+    segment.putLong(12, timestamp);
+    segment.putInt(20, latitude);
+    segment.putInt(24, longitude);
+  }
+
+  private static int writeVarLong(ByteBuffer buffer, int position, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put(position++, (byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put(position++, (byte) value);
+    return position;
+  }
+
+  private static long readVarLong(ByteBuffer buffer, int[] cursor) {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get(cursor[0]++);
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+
+  private static long zigzag(int value) {
+    return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+  }
+
+  private static int unzigzag(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static byte crc8(ByteBuffer buffer, int offset, int length) {
+    int crc = 0;
+    for (int i = offset; i < offset + length; i++) {
+      crc ^= buffer.get(i) & 0xFF;
+      for (int bit = 0; bit < 8; bit++) {
+        crc = ((crc & 0x80) != 0) ? ((crc << 1) ^ 0x07) & 0xFF : (crc << 1) & 0xFF;
+      }
+    }
+    return (byte) crc;
+  }
+
+  // --- Files ---
+
+  // Day directories of a bus from firstDay to lastDay (epoch days), oldest first. Only the days that exist
+  // are visited, however wide the requested range is
+  private static List<Path> listDays(Path busDirectory, long firstDay, long lastDay) throws IOException {
+    try (Stream<Path> days = Files.list(busDirectory)) {
+      return days.filter(Files::isDirectory)
+              .filter(path -> {
+                long day = LocalDate.parse(path.getFileName().toString()).toEpochDay();
+                return day >= firstDay && day <= lastDay;
+              })
+              .sorted(Comparator.comparingLong(path -> LocalDate.parse(path.getFileName().toString()).toEpochDay()))
+              .toList();
+    }
+  }
+
+  // Open and sealed segments of a day, oldest first
+  private static List<Path> listSegments(Path dayDirectory) throws IOException {
+    if (!Files.isDirectory(dayDirectory)) return List.of();
+    try (Stream<Path> files = Files.list(dayDirectory)) {
+      return files.filter(path -> path.toString().endsWith(SEALED_SUFFIX) || path.toString().endsWith(OPEN_SUFFIX))
+              .sorted(Comparator.comparingLong(PositionHistoryStore::firstTimestamp))
+              .toList();
+    }
+  }
+
+  private static long firstTimestamp(Path segment) {
+    String name = segment.getFileName().toString();
+    return Long.parseLong(name.substring(0, name.lastIndexOf('.')));
+  }
+
+  private static Path sibling(Path segment, String suffix) {
+    return segment.resolveSibling(firstTimestamp(segment) + suffix);
+  }
+
+  // Maps a segment read-only; records are decoded straight from the page cache
+  private static ByteBuffer mapForReading(Path segment) throws IOException {
+    Path path = segment;
+    for (int attempt = 0; attempt < 2; attempt++) {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      } catch (NoSuchFileException e) {
+        path = sibling(segment, OPEN_SUFFIX.equals(suffixOf(segment)) ? SEALED_SUFFIX : OPEN_SUFFIX); // Sealed meanwhile
+      }
+    }
+    return null; // Compacted or removed meanwhile
+  }
+
+  private static String suffixOf(Path segment) {
+    String name = segment.getFileName().toString();
+    return name.substring(name.lastIndexOf('.'));
+  }
+
+  // Rewrites the sealed segments of a past day into a single one
+  private void compact(Path dayDirectory) throws IOException {
+    List<Path> segments = listSegments(dayDirectory);
+    if (segments.size() < 2 || segments.stream().anyMatch(path -> path.toString().endsWith(OPEN_SUFFIX))) return;
+
+    long busId = -1;
+    List<ByteBuffer> sources = new ArrayList<>();
+    int capacity = 0;
+    for (Path segment : segments) {
+      ByteBuffer source = mapForReading(segment);
+      int length = (source != null) ? decode(source, Long.MIN_VALUE, Long.MAX_VALUE, null) : 0;
+      if (length == 0) return; // Leaves a day it cannot read intact as it is
+      busId = source.getLong(4);
+      sources.add(source);
+      capacity += length + MAX_RECORD_SIZE; // A segment's first record may need more bytes as a delta
+    }
+
+    ByteBuffer compacted = ByteBuffer.allocate(capacity);
+    long[] last = new long[3]; // timestamp, latitude, longitude of the previous record
+    int[] position = {0};
+    long compactedBusId = busId;
+    for (int i = 0; i < sources.size(); i++) {
+      long end = (i + 1 < segments.size()) ? firstTimestamp(segments.get(i + 1)) - 1 : Long.MAX_VALUE;
+      decode(sources.get(i), Long.MIN_VALUE, end, (timestamp, latitude, longitude, speed, heading) -> {
+        int latitudeE6 = (int) Math.round(latitude * 1e6);
+        int longitudeE6 = (int) Math.round(longitude * 1e6);
+        if (position[0] == 0) {
+          writeHeader(compacted, compactedBusId, timestamp, latitudeE6, longitudeE6);
+          position[0] = HEADER_SIZE;
+          last[0] = timestamp;
+          last[1] = latitudeE6;
+          last[2] = longitudeE6;
+        }
+        position[0] = writeRecord(compacted, position[0], timestamp - last[0], latitudeE6 - (int) last[1],
+                longitudeE6 - (int) last[2], Math.round(speed * 10), Math.round(heading * 10));
+        last[0] = timestamp;
+        last[1] = latitudeE6;
+        last[2] = longitudeE6;
+        return true;
+      });
+    }
+
+    // The compacted file replaces the first segment; until the others are deleted, their records are
+    // still read from them only (a segment ends where the next one starts)
+    Path target = segments.get(0);
+    Path temporary = sibling(target, COMPACTING_SUFFIX);
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      compacted.limit(position[0]);
+      while (compacted.hasRemaining()) channel.write(compacted);
+      channel.force(true);
+    }
+    Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    for (Path segment : segments.subList(1, segments.size())) {
+      Files.deleteIfExists(segment);
+    }
+  }
+
+  private static void deleteDirectory(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.deleteIfExists(path);
+      }
+    }
+  }
+
+  /**
+   * The open segment of one bus. Appends come from BusPositionTracker with the bus's ring locked, so in
+   * time order; the lock here only guards against maintenance sealing the segment.
+   */
+  private final class SegmentWriter {
+
+    private final long busId;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private Path path;
+    private int position;
+    private long day;
+    private long firstTimestamp;
+    private long lastTimestamp;
+    private int lastLatitude;
+    private int lastLongitude;
+    private long failedUntil;
+
+    SegmentWriter(long busId) {
+      this.busId = busId;
+      this.lastTimestamp = lastStoredTimestamp(busId);
+    }
+
+    synchronized void append(long timestamp, double latitude, double longitude, float speed, float heading) {
+      if (timestamp <= lastTimestamp) return; // Already stored (e.g. resent after a restart)
+      int latitudeE6 = (int) Math.round(latitude * 1e6);
+      int longitudeE6 = (int) Math.round(longitude * 1e6);
+      long sampleDay = Math.floorDiv(timestamp, MS_PER_DAY);
+      if (segment == null || sampleDay != day || timestamp - firstTimestamp > segmentMaxAgeMs
+              || segmentSize - position < MAX_RECORD_SIZE) {
+        if (!roll(timestamp, sampleDay, latitudeE6, longitudeE6)) return;
+      }
+      position = writeRecord(segment, position, timestamp - lastTimestamp, latitudeE6 - lastLatitude,
+              longitudeE6 - lastLongitude, Math.round(speed * 10), Math.round(heading * 10));
+      lastTimestamp = timestamp;
+      lastLatitude = latitudeE6;
+      lastLongitude = longitudeE6;
+    }
+
+    synchronized void sealIfIdle(long now) {
+      if (segment != null && (now - lastTimestamp > segmentMaxAgeMs || Math.floorDiv(now, MS_PER_DAY) != day)) {
+        seal();
+      }
+    }
+
+    synchronized void seal() {
+      if (segment == null) return;
+      try {
+        segment.force();
+        channel.close();
+        Files.move(path, sibling(path, SEALED_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        log.warn("Could not seal position segment {}", path, e); // Recovered on the next start
+      }
+      segment = null;
+      channel = null;
+    }
+
+    private boolean roll(long timestamp, long sampleDay, int latitudeE6, int longitudeE6) {
+      if (System.currentTimeMillis() < failedUntil) return false;
+      seal();
+      try {
+        Path dayDirectory = directory.resolve(Long.toString(busId)).resolve(LocalDate.ofEpochDay(sampleDay).toString());
+        Files.createDirectories(dayDirectory);
+        path = dayDirectory.resolve(timestamp + OPEN_SUFFIX);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize); // Sparse until written
+      } catch (IOException e) {
+        log.error("Could not open a position segment for bus {}; dropping its history for a minute", busId, e);
+        failedUntil = System.currentTimeMillis() + FAILURE_BACKOFF_MS;
+        segment = null;
+        return false;
+      }
+      writeHeader(segment, busId, timestamp, latitudeE6, longitudeE6);
+      position = HEADER_SIZE;
+      day = sampleDay;
+      firstTimestamp = timestamp;
+      lastTimestamp = timestamp;
+      lastLatitude = latitudeE6;
+      lastLongitude = longitudeE6;
+      return true;
+    }
+
+    // Timestamp of the bus's last stored record, so samples resent after a restart are not stored twice
+    private long lastStoredTimestamp(long busId) {
+      Path busDirectory = directory.resolve(Long.toString(busId));
+      if (!Files.isDirectory(busDirectory)) return Long.MIN_VALUE;
+      try (Stream<Path> days = Files.list(busDirectory)) {
+        Path lastDay = days.filter(Files::isDirectory).max(Comparator.naturalOrder()).orElse(null);
+        List<Path> segments = (lastDay != null) ? listSegments(lastDay) : List.of();
+        if (segments.isEmpty()) return Long.MIN_VALUE;
+        ByteBuffer lastSegment = mapForReading(segments.get(segments.size() - 1));
+        long[] last = {Long.MIN_VALUE};
+        if (lastSegment != null) {
+          decode(lastSegment, Long.MIN_VALUE, Long.MAX_VALUE, (timestamp, latitude, longitude, speed, heading) -> {
+            last[0] = timestamp;
+            return true;
+          });
+        }
+        return last[0];
+      } catch (IOException e) {
+        log.warn("Could not read the position history of bus {}", busId, e);
+        return Long.MIN_VALUE;
+      }
+    }
+  }
+}
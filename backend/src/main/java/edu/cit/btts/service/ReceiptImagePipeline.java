@@ -0,0 +1,326 @@
+package edu.cit.btts.service;
+
+import edu.cit.btts.model.ReceiptJob;
+import edu.cit.btts.model.ReceiptJobStatus;
+import edu.cit.btts.repository.ReceiptJobRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prepares stored receipt images for review in the background: a downscaled, recompressed copy for
+ * viewing (staff otherwise load full-resolution phone screenshots), a small thumbnail for the pending
+ * payments queue, and a perceptual hash that stays nearly the same when a screenshot is re-saved.
+ *
+ * Work is queued durably in the receipt_jobs table. A job is added as soon as a receipt is stored, which
+ * happens before the payment referencing it is saved (uploads are read with no transaction open), so a
+ * booking that fails afterwards still leaves its job behind; the job is cheap, and the ReceiptStore sweep
+ * removes the unreferenced receipt together with its derived images. A job is handed to a bounded worker
+ * pool right away, or after commit when the receipt was stored inside a transaction. Workers claim a job with a conditional update, so each runs once even if it
+ * is handed out twice or on several nodes. A poller hands out jobs the pool had no room for, retries
+ * failed ones with a growing delay, and takes back jobs whose worker died; it also runs on startup, so a
+ * restart loses nothing.
+ *
+ * Images are decoded with subsampling when they are far larger than needed and shrunk in halving steps,
+ * which keeps memory per job bounded and small text legible. Non-image receipts (PDF) and formats ImageIO
+ * cannot read (WebP) get no job and are always served as uploaded.
+ */
+@Component
+public class ReceiptImagePipeline {
+
+  private static final Logger log = LoggerFactory.getLogger(ReceiptImagePipeline.class);
+
+  private static final Set<String> PREVIEW_TYPES = Set.of("image/jpeg", "image/png", "image/gif");
+  private static final long MAX_PIXELS = 50_000_000L; // Refuse decompression bombs before decoding
+  private static final float NORMALIZED_QUALITY = 0.82f;
+  private static final float THUMBNAIL_QUALITY = 0.75f;
+  private static final int MAX_ERROR_LENGTH = 500;
+
+  private final ReceiptJobRepository receiptJobRepository;
+  private final ReceiptStore receiptStore;
+  private final int normalizedMaxEdge;
+  private final int thumbnailMaxEdge;
+  private final int maxAttempts;
+  private final Duration retryDelay;
+  private final Duration staleAfter;
+  private final ThreadPoolExecutor workers;
+
+  public ReceiptImagePipeline(ReceiptJobRepository receiptJobRepository,
+                              ReceiptStore receiptStore,
+                              @Value("${booking.receipts.normalized-max-edge:1600}") int normalizedMaxEdge,
+                              @Value("${booking.receipts.thumbnail-max-edge:240}") int thumbnailMaxEdge,
+                              @Value("${booking.receipts.pipeline.workers:2}") int workerCount,
+                              @Value("${booking.receipts.pipeline.queue-capacity:100}") int queueCapacity,
+                              @Value("${booking.receipts.pipeline.max-attempts:3}") int maxAttempts,
+                              @Value("${booking.receipts.pipeline.retry-delay:PT1M}") Duration retryDelay,
+                              @Value("${booking.receipts.pipeline.stale-after:PT10M}") Duration staleAfter) {
+    this.receiptJobRepository = receiptJobRepository;
+    this.receiptStore = receiptStore;
+    this.normalizedMaxEdge = normalizedMaxEdge;
+    this.thumbnailMaxEdge = thumbnailMaxEdge;
+    this.maxAttempts = maxAttempts;
+    this.retryDelay = retryDelay;
+    this.staleAfter = staleAfter;
+    this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), daemonThreads("receipt-image-worker"));
+    ImageIO.setUseCache(false); // Encode and decode in memory rather than through temporary files
+  }
+
+  /**
+   * @return Whether receipts of this content type get a normalized copy and a thumbnail.
+   */
+  public static boolean hasPreview(String contentType) {
+    return contentType != null && PREVIEW_TYPES.contains(contentType);
+  }
+
+  // Published by ReceiptStore for every stored receipt, in the thread that stored it and before its payment is saved
+  @EventListener
+  public void onReceiptStored(ReceiptStore.StoredReceipt receipt) {
+    if (!hasPreview(receipt.getContentType())) return;
+    String digest = receipt.getDigest();
+    // The same image was stored before: nothing to do while its job is queued or its derived images exist
+    if (receiptJobRepository.existsByDigestAndStatusIn(digest, EnumSet.of(ReceiptJobStatus.PENDING, ReceiptJobStatus.RUNNING))) return;
+    if (receiptJobRepository.existsByDigestAndStatusIn(digest, EnumSet.of(ReceiptJobStatus.DONE))
+            && Files.exists(receiptStore.locateDerived(digest, ReceiptStore.THUMBNAIL))) return;
+
+    long jobId = receiptJobRepository.save(new ReceiptJob(digest)).getId();
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          dispatch(jobId);
+        }
+      });
+    } else {
+      dispatch(jobId);
+    }
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void resumeOnStartup() {
+    int resumed = poll();
+    if (resumed > 0) {
+      log.info("Resumed {} queued receipt image job(s)", resumed);
+    }
+  }
+
+  /**
+   * Hands due jobs to the workers, as many as the pool has room for, after taking back jobs whose worker
+   * stopped before finishing.
+   *
+   * @return The number of jobs handed out.
+   */
+  @Scheduled(fixedDelayString = "${booking.receipts.pipeline.poll-interval-ms:30000}")
+  public int poll() {
+    LocalDateTime now = LocalDateTime.now();
+    receiptJobRepository.requeueStale(ReceiptJobStatus.RUNNING, ReceiptJobStatus.PENDING, now.minus(staleAfter));
+    int room = workers.getQueue().remainingCapacity();
+    if (room == 0) return 0;
+    List<Long> due = receiptJobRepository.findDueIds(ReceiptJobStatus.PENDING, now, PageRequest.of(0, room));
+    due.forEach(this::dispatch);
+    return due.size();
+  }
+
+  /**
+   * Runs one job in the calling thread (the workers call this; it is public for tests and tools).
+   */
+  public void process(long jobId) {
+    if (receiptJobRepository.claim(jobId, ReceiptJobStatus.PENDING, ReceiptJobStatus.RUNNING, LocalDateTime.now()) == 0) {
+      return; // Already taken, finished or gone
+    }
+    ReceiptJob job = receiptJobRepository.findById(jobId).orElse(null);
+    if (job == null) return;
+    try {
+      Rendered rendered = render(job.getDigest());
+      receiptJobRepository.complete(jobId, ReceiptJobStatus.DONE, LocalDateTime.now(),
+              rendered.width, rendered.height, rendered.perceptualHash);
+    } catch (IOException | RuntimeException e) {
+      boolean retry = job.getAttempts() < maxAttempts;
+      String error = String.valueOf(e.getMessage());
+      receiptJobRepository.fail(jobId, retry ? ReceiptJobStatus.PENDING : ReceiptJobStatus.FAILED,
+              LocalDateTime.now().plus(retryDelay.multipliedBy(job.getAttempts())),
+              error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+      log.warn("Receipt image job {} failed (attempt {} of {}): {}", jobId, job.getAttempts(), maxAttempts, error);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    workers.shutdownNow(); // Interrupted jobs stay RUNNING and are taken back once stale
+  }
+
+  // --- Helper Methods ---
+
+  private void dispatch(long jobId) {
+    try {
+      workers.execute(() -> process(jobId));
+    } catch (RejectedExecutionException e) {
+      // The pool is full (or shutting down); the job stays PENDING for the poller
+    }
+  }
+
+  private Rendered render(String digest) throws IOException {
+    Path original = receiptStore.locate(digest);
+    BufferedImage image;
+    int width;
+    int height;
+    try (ImageInputStream in = ImageIO.createImageInputStream(original.toFile())) {
+      if (in == null) throw new IOException("Receipt file is missing");
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+      if (!readers.hasNext()) throw new IOException("Unsupported image format");
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(in, true, true);
+        width = reader.getWidth(0);
+        height = reader.getHeight(0);
+        if ((long) width * height > MAX_PIXELS) {
+          throw new IOException("Image of " + width + "x" + height + " pixels is too large");
+        }
+        // Decoding at no less than twice the normalized size is enough, so huge photos skip most pixels
+        int step = Math.max(1, Math.max(width, height) / (2 * normalizedMaxEdge));
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(step, step, 0, 0);
+        image = reader.read(0, param);
+      } finally {
+        reader.dispose();
+      }
+    }
+
+    BufferedImage normalized = fit(image, normalizedMaxEdge);
+    byte[] normalizedJpeg = writeJpeg(normalized, NORMALIZED_QUALITY);
+    if (normalizedJpeg.length < Files.size(original)) {
+      receiptStore.saveDerived(digest, ReceiptStore.NORMALIZED, normalizedJpeg); // Otherwise the original is served
+    }
+    BufferedImage thumbnail = fit(normalized, thumbnailMaxEdge);
+    receiptStore.saveDerived(digest, ReceiptStore.THUMBNAIL, writeJpeg(thumbnail, THUMBNAIL_QUALITY));
+    return new Rendered(width, height, differenceHash(thumbnail));
+  }
+
+  // Scales an image down (never up) so its longer edge is at most maxEdge, as opaque RGB
+  private static BufferedImage fit(BufferedImage image, int maxEdge) {
+    double scale = Math.min(1.0, (double) maxEdge / Math.max(image.getWidth(), image.getHeight()));
+    return shrink(image, Math.max(1, (int) Math.round(image.getWidth() * scale)),
+            Math.max(1, (int) Math.round(image.getHeight() * scale)));
+  }
+
+  // One bilinear step from far above the target skips pixels (and breaks up text), so halve first
+  private static BufferedImage shrink(BufferedImage image, int targetWidth, int targetHeight) {
+    BufferedImage current = image;
+    int width = image.getWidth();
+    int height = image.getHeight();
+    while (width / 2 >= targetWidth && height / 2 >= targetHeight) {
+      width /= 2;
+      height /= 2;
+      current = draw(current, width, height);
+    }
+    if (width != targetWidth || height != targetHeight || current.getType() != BufferedImage.TYPE_INT_RGB) {
+      current = draw(current, targetWidth, targetHeight);
+    }
+    return current;
+  }
+
+  private static BufferedImage draw(BufferedImage source, int width, int height) {
+    BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = target.createGraphics();
+    try {
+      graphics.setColor(Color.WHITE); // Transparent areas of a PNG become white, not black
+      graphics.fillRect(0, 0, width, height);
+      graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      graphics.drawImage(source, 0, 0, width, height, null);
+    } finally {
+      graphics.dispose();
+    }
+    return target;
+  }
+
+  private static byte[] writeJpeg(BufferedImage image, float quality) throws IOException {
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(quality);
+      writer.setOutput(out);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+    return bytes.toByteArray();
+  }
+
+  // dHash: each bit says whether a pixel of a 9x8 grayscale copy is brighter than its right neighbour
+  private static long differenceHash(BufferedImage image) {
+    BufferedImage small = shrink(image, 9, 8);
+    long hash = 0;
+    for (int y = 0; y < 8; y++) {
+      for (int x = 0; x < 8; x++) {
+        hash = (hash << 1) | (luminance(small.getRGB(x, y)) > luminance(small.getRGB(x + 1, y)) ? 1 : 0);
+      }
+    }
+    return hash;
+  }
+
+  private static int luminance(int rgb) {
+    return (((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000;
+  }
+
+  private static ThreadFactory daemonThreads(String name) {
+    AtomicInteger counter = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private static final class Rendered {
+
+    private final int width;
+    private final int height;
+    private final long perceptualHash;
+
+    Rendered(int width, int height, long perceptualHash) {
+      this.width = width;
+      this.height = height;
+      this.perceptualHash = perceptualHash;
+    }
+  }
+}
@@ -0,0 +1,398 @@
+package edu.cit.btts.service;
+
+import edu.cit.btts.repository.PaymentRepository;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Online payment receipts, kept as files instead of database blobs.
+ *
+ * Receipts are content-addressed: a receipt is stored once under the SHA-256 of its bytes, at
+ * {dir}/{first 2 hex digits}/{next 2}/{digest}, and a payment only keeps the digest, size and content type.
+ * Uploads are streamed to a temporary file while the digest is computed and the size limit is enforced,
+ * then moved into place, so a receipt is never held in memory in full. The same image uploaded twice (a
+ * group booking, a retried request) is stored once. The content type is taken from the file's leading
+ * bytes rather than from the client.
+ *
+ * After a receipt is stored it is published as an application event (a StoredReceipt), which starts its
+ * ReceiptImagePipeline job. Derived images of a receipt are kept next to it as {digest}.{variant}.jpg.
+ *
+ * Downloads support single byte ranges and conditional requests. The file is handed to Tomcat's sendfile
+ * when the connector supports it, and otherwise copied with FileChannel.transferTo, so neither path reads
+ * the receipt into the heap. Files no payment points at any more are removed by a scheduled sweep once
+ * they are older than the grace period (uploads of payments that are still being saved are younger).
+ */
+@Component
+public class ReceiptStore {
+
+  private static final Logger log = LoggerFactory.getLogger(ReceiptStore.class);
+
+  public static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+  public static final String NORMALIZED = "normalized";
+  public static final String THUMBNAIL = "thumbnail";
+  private static final String DERIVED_CONTENT_TYPE = "image/jpeg";
+  private static final Pattern DIGEST = Pattern.compile("[0-9a-f]{64}");
+  private static final String TEMP_DIRECTORY = "tmp";
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int SNIFF_LENGTH = 12;
+  private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+  private final PaymentRepository paymentRepository;
+  private final ApplicationEventPublisher eventPublisher;
+  private final Path directory;
+  private final long maxSize;
+  private final Duration orphanGrace;
+
+  public ReceiptStore(PaymentRepository paymentRepository,
+                      ApplicationEventPublisher eventPublisher,
+                      @Value("${booking.receipts.dir:data/receipts}") String directory,
+                      @Value("${booking.receipts.max-size:10485760}") long maxSize,
+                      @Value("${booking.receipts.orphan-grace:P1D}") Duration orphanGrace) {
+    this.paymentRepository = paymentRepository;
+    this.eventPublisher = eventPublisher;
+    this.directory = Paths.get(directory);
+    this.maxSize = maxSize;
+    this.orphanGrace = orphanGrace;
+  }
+
+  /**
+   * Stores a receipt that is already in memory (receipts sent inside a JSON request).
+   *
+   * @see #store(InputStream)
+   */
+  public StoredReceipt store(byte[] receipt) {
+    return store(new ByteArrayInputStream(receipt));
+  }
+
+  /**
+   * Stores a receipt uploaded as a multipart file part. The servlet container spools parts to disk, so
+   * this streams from the spooled file without loading it.
+   *
+   * @see #store(InputStream)
+   */
+  public StoredReceipt store(MultipartFile receipt) {
+    if (receipt.getSize() > maxSize) {
+      throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+              "Online receipt must not be larger than " + maxSize + " bytes.");
+    }
+    try (InputStream content = receipt.getInputStream()) {
+      return store(content);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read uploaded receipt", e);
+    }
+  }
+
+  /**
+   * Streams a receipt into the store.
+   *
+   * @param content The receipt's bytes; read to the end but not closed.
+   * @return Where the receipt was stored.
+   * @throws ResponseStatusException (400) if the receipt is empty, (413) if it is larger than max-size.
+   */
+  public StoredReceipt store(InputStream content) {
+    return store(content, maxSize);
+  }
+
+  // Without the size limit for receipts that are already in the database (see LegacyReceiptMigrator)
+  StoredReceipt store(InputStream content, long sizeLimit) {
+    Path temporary = null;
+    try {
+      Path temporaryDirectory = Files.createDirectories(directory.resolve(TEMP_DIRECTORY));
+      temporary = Files.createTempFile(temporaryDirectory, "upload-", ".part");
+      MessageDigest digest = sha256();
+      byte[] buffer = new byte[BUFFER_SIZE];
+      byte[] head = new byte[SNIFF_LENGTH];
+      int headLength = 0;
+      long size = 0;
+      try (OutputStream out = Files.newOutputStream(temporary)) {
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+          size += read;
+          if (size > sizeLimit) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Online receipt must not be larger than " + sizeLimit + " bytes.");
+          }
+          if (headLength < SNIFF_LENGTH) {
+            int copied = Math.min(read, SNIFF_LENGTH - headLength);
+            System.arraycopy(buffer, 0, head, headLength, copied);
+            headLength += copied;
+          }
+          digest.update(buffer, 0, read);
+          out.write(buffer, 0, read);
+        }
+      }
+      if (size == 0) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Online receipt must not be empty.");
+      }
+
+      String hex = HexFormat.of().formatHex(digest.digest());
+      Path target = locate(hex);
+      if (Files.exists(target)) {
+        // Already stored; refreshing its age keeps the sweep off it until the new payment is saved
+        Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+      } else {
+        Files.createDirectories(target.getParent());
+        try {
+          Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+          temporary = null;
+        } catch (FileAlreadyExistsException e) {
+          // The same receipt was stored concurrently
+        }
+      }
+      StoredReceipt stored = new StoredReceipt(hex, size, sniffContentType(head, headLength));
+      eventPublisher.publishEvent(stored);
+      return stored;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not store receipt", e);
+    } finally {
+      if (temporary != null) {
+        try {
+          Files.deleteIfExists(temporary);
+        } catch (IOException e) {
+          log.warn("Could not delete temporary receipt {}", temporary, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return The file of a stored receipt (which may not exist).
+   * @throws ResponseStatusException (404) if the digest is not a SHA-256 hex string.
+   */
+  public Path locate(String digest) {
+    if (digest == null || !DIGEST.matcher(digest).matches()) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Receipt not found.");
+    }
+    return directory.resolve(digest.substring(0, 2)).resolve(digest.substring(2, 4)).resolve(digest);
+  }
+
+  /**
+   * @return The file of an image derived from a stored receipt (which may not exist).
+   */
+  public Path locateDerived(String digest, String variant) {
+    Path original = locate(digest);
+    return original.resolveSibling(digest + "." + variant + ".jpg");
+  }
+
+  /**
+   * Saves a JPEG derived from a stored receipt, replacing any earlier one.
+   */
+  public void saveDerived(String digest, String variant, byte[] jpeg) {
+    Path target = locateDerived(digest, variant);
+    try {
+      Path temporary = Files.createTempFile(Files.createDirectories(directory.resolve(TEMP_DIRECTORY)), "derived-", ".part");
+      try {
+        Files.write(temporary, jpeg);
+        Files.createDirectories(target.getParent());
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(temporary);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not save derived receipt image", e);
+    }
+  }
+
+  /**
+   * Writes a stored receipt to an HTTP response: the whole file, or a single byte range (206) when the
+   * request has a satisfiable Range header. The ETag is the digest (plus the variant), so a matching
+   * If-None-Match gets a 304 and an If-Range that does not match gets the whole file.
+   *
+   * @param variant NORMALIZED or THUMBNAIL for a derived JPEG, null for the original. Until the derived
+   *                image exists (or if the receipt has none) the original is sent.
+   * @throws ResponseStatusException (404) if the receipt file is missing.
+   */
+  public void send(StoredReceipt receipt, String variant, HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Path file = locate(receipt.getDigest());
+    String etag = "\"" + receipt.getDigest() + "\"";
+    String contentType = receipt.getContentType();
+    if (variant != null) {
+      Path derived = locateDerived(receipt.getDigest(), variant);
+      if (Files.isRegularFile(derived)) {
+        file = derived;
+        etag = "\"" + receipt.getDigest() + "-" + variant + "\"";
+        contentType = DERIVED_CONTENT_TYPE;
+      }
+    }
+    if (!Files.isRegularFile(file)) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Receipt file is missing.");
+    }
+    long size = Files.size(file);
+    response.setHeader(HttpHeaders.ETAG, etag);
+    // The content behind a digest never changes, but it is a passenger's payment proof
+    response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=31536000, immutable");
+    response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+    String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+      response.setStatus(HttpStatus.NOT_MODIFIED.value());
+      return;
+    }
+
+    long start = 0;
+    long end = size - 1;
+    String range = request.getHeader(HttpHeaders.RANGE);
+    String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+    if (range != null && (ifRange == null || ifRange.equals(etag))) {
+      try {
+        List<HttpRange> ranges = HttpRange.parseRanges(range);
+        // Several ranges would need a multipart body; the whole file is a valid answer to those
+        if (ranges.size() == 1) {
+          start = ranges.get(0).getRangeStart(size);
+          end = ranges.get(0).getRangeEnd(size);
+          if (start >= size || end < start) {
+            throw new IllegalArgumentException("Range starts past the end of the receipt");
+          }
+          response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+          response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+        }
+      } catch (IllegalArgumentException e) {
+        response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+        return;
+      }
+    }
+
+    response.setContentType(contentType);
+    response.setHeader("X-Content-Type-Options", "nosniff");
+    response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline");
+    long length = end - start + 1;
+    response.setContentLengthLong(length);
+
+    if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+      // Tomcat writes the file straight from the page cache to the socket once the request is done
+      request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+      request.setAttribute(SENDFILE_START, start);
+      request.setAttribute(SENDFILE_END, end + 1);
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+      long position = start;
+      while (position <= end) {
+        long transferred = channel.transferTo(position, end + 1 - position, out);
+        if (transferred <= 0) break;
+        position += transferred;
+      }
+    }
+  }
+
+  /**
+   * Removes receipt files that no payment points at (deleted payments, uploads whose booking failed)
+   * once they are older than the grace period.
+   *
+   * @return The number of files removed.
+   */
+  @Scheduled(fixedDelayString = "${booking.receipts.sweep-interval-ms:86400000}",
+             initialDelayString = "${booking.receipts.sweep-interval-ms:86400000}")
+  public int removeUnreferenced() {
+    if (!Files.isDirectory(directory)) return 0;
+    Instant cutoff = Instant.now().minus(orphanGrace);
+    int removed = 0;
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+        if (Files.getLastModifiedTime(file).toInstant().isAfter(cutoff)) continue;
+        // Receipts are named by their digest, derived images start with it
+        String name = file.getFileName().toString();
+        String digest = name.length() >= 64 ? name.substring(0, 64) : name;
+        boolean abandonedUpload = file.getParent().getFileName().toString().equals(TEMP_DIRECTORY);
+        if (abandonedUpload || (DIGEST.matcher(digest).matches() && !paymentRepository.existsByReceiptDigest(digest))) {
+          Files.deleteIfExists(file);
+          removed++;
+        }
+      }
+    } catch (IOException e) {
+      log.warn("Could not sweep unreferenced receipts", e);
+    }
+    if (removed > 0) {
+      log.info("Removed {} unreferenced receipt files", removed);
+    }
+    return removed;
+  }
+
+  // --- Helper Methods ---
+
+  private static String sniffContentType(byte[] head, int length) {
+    if (startsWith(head, length, 0x89, 'P', 'N', 'G')) return "image/png";
+    if (startsWith(head, length, 0xFF, 0xD8, 0xFF)) return "image/jpeg";
+    if (startsWith(head, length, 'G', 'I', 'F', '8')) return "image/gif";
+    if (startsWith(head, length, '%', 'P', 'D', 'F')) return "application/pdf";
+    if (startsWith(head, length, 'R', 'I', 'F', 'F') && length >= 12
+            && head[8] == 'W' && head[9] == 'E' && head[10] == 'B' && head[11] == 'P') return "image/webp";
+    return DEFAULT_CONTENT_TYPE;
+  }
+
+  private static boolean startsWith(byte[] head, int length, int... prefix) {
+    if (length < prefix.length) return false;
+    for (int i = 0; i < prefix.length; i++) {
+      if ((head[i] & 0xFF) != prefix[i]) return false;
+    }
+    return true;
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  /**
+   * A receipt in the store: its SHA-256 digest (hex), size in bytes and detected content type.
+   */
+  public static final class StoredReceipt {
+
+    private final String digest;
+    private final long size;
+    private final String contentType;
+
+    public StoredReceipt(String digest, long size, String contentType) {
+      this.digest = digest;
+      this.size = size;
+      this.contentType = contentType;
+    }
+
+    public String getDigest() { return digest; }
+    public long getSize() { return size; }
+    public String getContentType() { return contentType; }
+  }
+}
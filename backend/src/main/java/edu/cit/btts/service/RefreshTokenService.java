@@ -0,0 +1,203 @@
+package edu.cit.btts.service;
+
+import edu.cit.btts.dto.TokenRefreshResponse;
+import edu.cit.btts.model.RefreshToken;
+import edu.cit.btts.model.User;
+import edu.cit.btts.repository.RefreshTokenRepository;
+import edu.cit.btts.util.JwtUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Issues and rotates refresh tokens, so a client renews its short-lived access token at /api/auth/refresh
+ * instead of signing in with Google again.
+ *
+ * A refresh token is 256 random bits; only its SHA-256 hash is stored. Every renewal spends the token and
+ * hands out a successor in the same family. Presenting a spent token means it was copied: the whole
+ * family is revoked and both the thief and the rightful client have to sign in again.
+ *
+ * Recently issued tokens are kept in a bounded in-memory hot set together with their user, so a renewal
+ * normally needs no read at all: one conditional update spends the token (which is what makes rotation
+ * safe across nodes), one insert stores its successor, and one HMAC signs the new access token. On a
+ * miss, the token and its user come from one query on the hash index.
+ */
+@Service
+public class RefreshTokenService {
+
+  private static final Logger log = LoggerFactory.getLogger(RefreshTokenService.class);
+
+  private final RefreshTokenRepository refreshTokenRepository;
+  private final JwtUtil jwtUtil;
+  private final TokenVersionRegistry tokenVersionRegistry;
+  private final Duration lifetime;
+  private final SecureRandom random = new SecureRandom();
+  private final Map<String, HotToken> hotTokens;
+
+  public RefreshTokenService(RefreshTokenRepository refreshTokenRepository,
+                             JwtUtil jwtUtil,
+                             TokenVersionRegistry tokenVersionRegistry,
+                             @Value("${jwt.refresh-token.lifetime:P30D}") Duration lifetime,
+                             @Value("${jwt.refresh-token.hot-set-size:10000}") int hotSetSize) {
+    this.refreshTokenRepository = refreshTokenRepository;
+    this.jwtUtil = jwtUtil;
+    this.tokenVersionRegistry = tokenVersionRegistry;
+    this.lifetime = lifetime;
+    this.hotTokens = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, HotToken> eldest) {
+        return size() > hotSetSize;
+      }
+    };
+  }
+
+  /**
+   * Starts a new token family for a user who just signed in.
+   *
+   * @param user The signed-in user.
+   * @return The refresh token, to be handed to the client; it is not stored anywhere in this form.
+   */
+  public String issue(User user) {
+    return store(user, UUID.randomUUID().toString(), LocalDateTime.now());
+  }
+
+  /**
+   * Spends a refresh token for a new access token and the refresh token that replaces it.
+   *
+   * @param presented The refresh token the client holds.
+   * @return The new access and refresh tokens.
+   * @throws ResponseStatusException 401 if the token is unknown, expired, revoked or already spent (the
+   *         last of which also revokes every token of its family).
+   */
+  @Transactional(noRollbackFor = ResponseStatusException.class) // A reuse still revokes the family
+  public TokenRefreshResponse refresh(String presented) {
+    String tokenHash = hash(presented);
+    LocalDateTime now = LocalDateTime.now();
+
+    HotToken token;
+    synchronized (hotTokens) {
+      token = hotTokens.remove(tokenHash);
+    }
+    // The user's role changed (or they were deleted) since the token was cached: read them again
+    if (token != null && !tokenVersionRegistry.isCurrent(token.user.getId(), token.user.getTokenVersion())) {
+      token = null;
+    }
+    if (token == null) {
+      RefreshToken stored = refreshTokenRepository.findByTokenHashWithUser(tokenHash)
+              .orElseThrow(() -> invalid("Invalid refresh token."));
+      if (stored.getRevokedAt() != null) {
+        throw invalid("Refresh token has been revoked. Please sign in again.");
+      }
+      if (stored.getRotatedAt() != null) {
+        throw reused(stored.getFamilyId(), now);
+      }
+      token = new HotToken(stored.getId(), stored.getFamilyId(), stored.getUser(), stored.getExpiresAt());
+    }
+    if (!token.expiresAt.isAfter(now)) {
+      throw invalid("Refresh token has expired. Please sign in again.");
+    }
+
+    // Conditional, so of two renewals racing with the same token (or a revocation), only one wins
+    if (refreshTokenRepository.markRotated(token.id, now) == 0) {
+      throw reused(token.familyId, now);
+    }
+    String successor = store(token.user, token.familyId, now);
+    return new TokenRefreshResponse(jwtUtil.generateToken(token.user), successor);
+  }
+
+  /**
+   * Revokes a refresh token and every token of its family, e.g. on sign-out. Unknown tokens are ignored.
+   */
+  @Transactional
+  public void revoke(String presented) {
+    refreshTokenRepository.findByTokenHashWithUser(hash(presented)).ifPresent(token -> {
+      refreshTokenRepository.revokeFamily(token.getFamilyId(), LocalDateTime.now());
+      synchronized (hotTokens) {
+        hotTokens.values().removeIf(hot -> hot.familyId.equals(token.getFamilyId()));
+      }
+    });
+  }
+
+  /**
+   * Deletes every refresh token of a user, e.g. before the user is deleted.
+   */
+  public void revokeAll(Long userId) {
+    refreshTokenRepository.deleteByUserId(userId);
+    synchronized (hotTokens) {
+      hotTokens.values().removeIf(token -> token.user.getId().equals(userId));
+    }
+  }
+
+  // Deletes tokens past their expiry (the hot set is bounded by size on its own)
+  @Scheduled(fixedDelayString = "${jwt.refresh-token.purge-interval-ms:3600000}")
+  public void purgeExpiredTokens() {
+    refreshTokenRepository.deleteExpiredBefore(LocalDateTime.now());
+  }
+
+  // --- Helper Methods ---
+
+  private String store(User user, String familyId, LocalDateTime now) {
+    byte[] bytes = new byte[32];
+    random.nextBytes(bytes);
+    String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    String tokenHash = hash(token);
+    RefreshToken saved = refreshTokenRepository.save(new RefreshToken(tokenHash, familyId, user, now.plus(lifetime)));
+    synchronized (hotTokens) {
+      hotTokens.put(tokenHash, new HotToken(saved.getId(), familyId, user, saved.getExpiresAt()));
+    }
+    return token;
+  }
+
+  private ResponseStatusException reused(String familyId, LocalDateTime now) {
+    int revoked = refreshTokenRepository.revokeFamily(familyId, now);
+    synchronized (hotTokens) {
+      hotTokens.values().removeIf(token -> token.familyId.equals(familyId));
+    }
+    log.warn("Spent refresh token presented again; revoked {} token(s) of family {}", revoked, familyId);
+    return invalid("Refresh token has already been used. Please sign in again.");
+  }
+
+  private static ResponseStatusException invalid(String reason) {
+    return new ResponseStatusException(HttpStatus.UNAUTHORIZED, reason);
+  }
+
+  private static String hash(String token) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // Every JVM has SHA-256
+    }
+  }
+
+  // A live token as last seen by this node, with the (detached) user its access tokens are issued for
+  private static final class HotToken {
+    private final Long id;
+    private final String familyId;
+    private final User user;
+    private final LocalDateTime expiresAt;
+
+    private HotToken(Long id, String familyId, User user, LocalDateTime expiresAt) {
+      this.id = id;
+      this.familyId = familyId;
+      this.user = user;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,160 @@
+package edu.cit.btts.service;
+
+import edu.cit.btts.model.Payment;
+import edu.cit.btts.model.PaymentStatus;
+import edu.cit.btts.repository.PaymentRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Releases seats that an online booking has RESERVED when its payment is not reviewed in time.
+ * Every online TICKET_FARE payment holds its seat until Payment.holdExpiresAt. Running holds are kept
+ * in a DelayQueue, so the worker thread sleeps until the next one is due instead of polling the
+ * database; due holds are then released together in one transaction of up to the configured batch size.
+ *
+ * The queue only lives in memory. It is rebuilt from the payments table when the application starts,
+ * and holds that ran out while it was down are released right away.
+ */
+@Component
+public class ReservationHoldScheduler {
+
+  private static final Logger log = LoggerFactory.getLogger(ReservationHoldScheduler.class);
+
+  // How long a failed batch waits before it is retried
+  private static final Duration RETRY_DELAY = Duration.ofMinutes(1);
+
+  private final PaymentRepository paymentRepository;
+  private final PaymentService paymentService;
+  private final Duration holdTtl;
+  private final int batchSize;
+  private final DelayQueue<Hold> holds = new DelayQueue<>();
+  private volatile Thread worker;
+
+  public ReservationHoldScheduler(PaymentRepository paymentRepository,
+                                  PaymentService paymentService,
+                                  @Value("${booking.reservation-hold.ttl:PT30M}") Duration holdTtl,
+                                  @Value("${booking.reservation-hold.batch-size:100}") int batchSize) {
+    this.paymentRepository = paymentRepository;
+    this.paymentService = paymentService;
+    this.holdTtl = holdTtl;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Starts a reservation hold on a new online payment. Call before the payment is saved.
+   *
+   * @param payment The unsaved payment.
+   */
+  public void startHold(Payment payment) {
+    payment.setHoldExpiresAt(LocalDateTime.now().plus(holdTtl));
+  }
+
+  /**
+   * Schedules the release of a saved payment's hold once the transaction commits.
+   *
+   * @param payment The saved payment (must have an ID and holdExpiresAt).
+   */
+  public void track(Payment payment) {
+    Hold hold = new Hold(payment.getId(), payment.getHoldExpiresAt());
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      holds.add(hold);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        holds.add(hold);
+      }
+    });
+  }
+
+  /**
+   * @return The number of holds currently waiting to expire.
+   */
+  public int getPendingHoldCount() {
+    return holds.size();
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    for (PaymentRepository.ReservationHold hold : paymentRepository.findReservationHolds(PaymentStatus.PENDING)) {
+      holds.add(new Hold(hold.getPaymentId(), hold.getHoldExpiresAt()));
+    }
+    log.info("Reservation hold scheduler started with {} running holds (TTL {})", holds.size(), holdTtl);
+
+    worker = new Thread(this::releaseDueHolds, "reservation-hold-expiry");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  @PreDestroy
+  public void stop() {
+    Thread current = worker;
+    worker = null;
+    if (current != null) {
+      current.interrupt();
+    }
+  }
+
+  private void releaseDueHolds() {
+    while (worker != null) {
+      List<Hold> due = new ArrayList<>();
+      try {
+        due.add(holds.take()); // Blocks until the earliest hold is due
+      } catch (InterruptedException e) {
+        return;
+      }
+      holds.drainTo(due, batchSize - 1); // Only takes holds that are due as well
+
+      try {
+        List<Long> paymentIds = due.stream().map(hold -> hold.paymentId).collect(Collectors.toList());
+        int released = paymentService.expireReservationHolds(paymentIds);
+        if (released > 0) {
+          log.info("Released {} seats whose reservation hold expired", released);
+        }
+      } catch (RuntimeException e) {
+        log.warn("Could not release {} expired reservation holds, retrying in {}", due.size(), RETRY_DELAY, e);
+        LocalDateTime retryAt = LocalDateTime.now().plus(RETRY_DELAY);
+        due.forEach(hold -> holds.add(new Hold(hold.paymentId, retryAt)));
+      }
+    }
+  }
+
+  private static final class Hold implements Delayed {
+
+    private final Long paymentId;
+    private final long expiresAtMillis;
+
+    Hold(Long paymentId, LocalDateTime expiresAt) {
+      this.paymentId = paymentId;
+      this.expiresAtMillis = expiresAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(expiresAtMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(expiresAtMillis, ((Hold) other).expiresAtMillis);
+    }
+  }
+}
@@ -1,10 +1,13 @@
 package edu.cit.btts.service;
 
 import edu.cit.btts.dto.RouteDTO;
+import edu.cit.btts.dto.RouteWaypointDTO;
 import edu.cit.btts.model.Route;
+import edu.cit.btts.model.RouteWaypoint;
 import edu.cit.btts.repository.RouteRepository;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
@@ -15,10 +18,14 @@ import java.util.stream.Collectors;
 public class RouteService {
 
     private final RouteRepository routeRepository;
+    private final TripCache tripCache;
+    private final TripEtaEngine tripEtaEngine;
 
     // Constructor Injection
-    public RouteService(RouteRepository routeRepository) {
+    public RouteService(RouteRepository routeRepository, TripCache tripCache, TripEtaEngine tripEtaEngine) {
         this.routeRepository = routeRepository;
+        this.tripCache = tripCache;
+        this.tripEtaEngine = tripEtaEngine;
     }
 
     /**
@@ -98,9 +105,57 @@ public class RouteService {
         mapDtoToEntity(routeDTO, existingRoute); // Map updated DTO fields to the existing entity
 
         Route updatedRoute = routeRepository.save(existingRoute); // Save changes
+        if (updatedRoute.getTrip() != null) {
+            tripCache.evictTrip(updatedRoute.getTrip().getId()); // Its trip shows the route details
+        }
         return mapEntityToDto(updatedRoute); // Map updated entity back to DTO
     }
 
+    /**
+     * Retrieves the path of a Route.
+     *
+     * @param id The ID of the route.
+     * @return The route's waypoints, in travel order.
+     * @throws ResponseStatusException if the route is not found.
+     */
+    @Transactional(readOnly = true)
+    public List<RouteWaypointDTO> getWaypoints(Long id) {
+        Route route = routeRepository.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Route not found with ID: " + id));
+        return route.getWaypoints().stream()
+                .map(waypoint -> new RouteWaypointDTO(waypoint.getName(), waypoint.getLatitude(), waypoint.getLongitude()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Replaces the path of a Route, used to predict the arrival of its trip's bus at each stop.
+     * Named waypoints are the origin, the stops and the destination; unnamed ones shape the path between them.
+     *
+     * @param id The ID of the route.
+     * @param waypoints The waypoints, in travel order (at least two).
+     * @return The route's new waypoints.
+     * @throws ResponseStatusException if the route is not found or fewer than two waypoints are given.
+     */
+    @Transactional
+    public List<RouteWaypointDTO> updateWaypoints(Long id, List<RouteWaypointDTO> waypoints) {
+        if (waypoints == null || waypoints.size() < 2) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A route path needs at least two waypoints.");
+        }
+        Route route = routeRepository.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Route not found with ID: " + id));
+
+        route.setWaypoints(waypoints.stream()
+                .map(waypoint -> new RouteWaypoint(waypoint.getName(), waypoint.getLatitude(), waypoint.getLongitude()))
+                .collect(Collectors.toList()));
+        routeRepository.save(route);
+        if (route.getTrip() != null) {
+            tripEtaEngine.refreshTrip(route.getTrip().getId(), route.getTrip().getStatus()); // Live ETAs follow the new path
+        }
+        return waypoints;
+    }
+
     /**
      * Deletes a Route record by its ID.
      *
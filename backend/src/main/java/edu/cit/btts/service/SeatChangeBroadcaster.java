@@ -0,0 +1,256 @@
+package edu.cit.btts.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.cit.btts.dto.SeatDTO;
+import edu.cit.btts.dto.SeatMapResponse;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Pushes committed seat changes to Server-Sent Events subscribers of each trip.
+ * Idle subscribers hold no thread: SseEmitter keeps the request open asynchronously. A change is
+ * serialized once and offered to every subscriber's bounded queue without blocking; a small, fixed
+ * pool of dispatcher threads drains the queues onto the connections. A subscriber whose queue is full
+ * is too slow to keep up and is disconnected (its client reconnects and starts from a fresh snapshot),
+ * so a slow connection can never hold up a booking.
+ */
+@Component
+public class SeatChangeBroadcaster {
+
+  private final ObjectMapper objectMapper;
+  private final int maxSubscribers;
+  private final int maxSubscribersPerTrip;
+  private final int queueCapacity;
+  private final long timeoutMs;
+
+  private final Map<Long, Set<Subscriber>> subscribersByTrip = new ConcurrentHashMap<>();
+  private final AtomicInteger subscriberCount = new AtomicInteger();
+  private final ExecutorService dispatcher;
+  private final ScheduledExecutorService heartbeat;
+  private final Set<DataWithMediaType> heartbeatFrame = SseEmitter.event().comment("keep-alive").build();
+
+  public SeatChangeBroadcaster(ObjectMapper objectMapper,
+                               @Value("${booking.seat-stream.max-subscribers:10000}") int maxSubscribers,
+                               @Value("${booking.seat-stream.max-subscribers-per-trip:1000}") int maxSubscribersPerTrip,
+                               @Value("${booking.seat-stream.queue-capacity:32}") int queueCapacity,
+                               @Value("${booking.seat-stream.dispatcher-threads:4}") int dispatcherThreads,
+                               @Value("${booking.seat-stream.timeout-ms:1800000}") long timeoutMs,
+                               @Value("${booking.seat-stream.heartbeat-ms:25000}") long heartbeatMs) {
+    this.objectMapper = objectMapper;
+    this.maxSubscribers = maxSubscribers;
+    this.maxSubscribersPerTrip = maxSubscribersPerTrip;
+    this.queueCapacity = queueCapacity;
+    this.timeoutMs = timeoutMs;
+    this.dispatcher = Executors.newFixedThreadPool(dispatcherThreads, daemonThreads("seat-stream-dispatcher"));
+    this.heartbeat = Executors.newSingleThreadScheduledExecutor(daemonThreads("seat-stream-heartbeat"));
+    // Comments keep proxies from closing idle streams and reveal connections that went away
+    heartbeat.scheduleAtFixedRate(() -> broadcast(heartbeatFrame, null), heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Opens a seat change stream for a trip. The first event ("snapshot") is the trip's compact seat map;
+   * every later event ("seat") is one SeatDTO whose status is null when the seat was removed.
+   *
+   * The subscriber is registered before the snapshot is taken, so no change can fall between the two.
+   * Changes published meanwhile are held back and sent after the snapshot; as each carries the seat's
+   * full state, one the snapshot already reflects is simply applied again.
+   *
+   * @param tripId The ID of the trip.
+   * @param snapshot Takes the trip's current seat map; any exception it throws is passed on.
+   * @return The emitter to return from the controller.
+   * @throws ResponseStatusException (503) if the subscriber limit has been reached.
+   */
+  public SseEmitter subscribe(Long tripId, Supplier<SeatMapResponse> snapshot) {
+    return subscribe(tripId, snapshot, new SseEmitter(timeoutMs));
+  }
+
+  /**
+   * Opens a seat change stream for a trip on the given emitter (see subscribe(Long, Supplier)).
+   */
+  public SseEmitter subscribe(Long tripId, Supplier<SeatMapResponse> snapshot, SseEmitter emitter) {
+    if (subscriberCount.incrementAndGet() > maxSubscribers) {
+      subscriberCount.decrementAndGet();
+      throw tooManySubscribers(tripId);
+    }
+    Subscriber subscriber = new Subscriber(tripId, emitter);
+    AtomicBoolean added = new AtomicBoolean();
+    // Added and removed under the map's per-key lock, so a trip's set is dropped once it is empty
+    subscribersByTrip.compute(tripId, (id, subscribers) -> {
+      Set<Subscriber> tripSubscribers = (subscribers != null) ? subscribers : ConcurrentHashMap.newKeySet();
+      if (tripSubscribers.size() < maxSubscribersPerTrip) {
+        added.set(tripSubscribers.add(subscriber));
+      }
+      return tripSubscribers.isEmpty() ? null : tripSubscribers;
+    });
+    if (!added.get()) {
+      subscriberCount.decrementAndGet();
+      throw tooManySubscribers(tripId);
+    }
+    subscriber.emitter.onCompletion(subscriber::close);
+    subscriber.emitter.onTimeout(subscriber::close);
+    subscriber.emitter.onError(error -> subscriber.close());
+
+    SeatMapResponse seatMap;
+    try {
+      seatMap = snapshot.get();
+    } catch (RuntimeException e) {
+      subscriber.close();
+      throw e;
+    }
+    subscriber.start(SseEmitter.event().name("snapshot").data(seatMap, MediaType.APPLICATION_JSON).build());
+    return subscriber.emitter;
+  }
+
+  /**
+   * Sends a committed seat change to the trip's subscribers. Never blocks.
+   *
+   * @param change The seat as it is now (status null if it was removed).
+   */
+  public void publish(SeatDTO change) {
+    Set<Subscriber> tripSubscribers = subscribersByTrip.get(change.getTripId());
+    if (tripSubscribers == null || tripSubscribers.isEmpty()) return;
+
+    String json;
+    try {
+      json = objectMapper.writeValueAsString(change);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Could not serialize seat change", e);
+    }
+    // One frame shared by every subscriber of the trip
+    broadcast(SseEmitter.event().name("seat").data(json, MediaType.APPLICATION_JSON).build(), change.getTripId());
+  }
+
+  /**
+   * @return The number of open seat change streams.
+   */
+  public int getSubscriberCount() {
+    return subscriberCount.get();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    heartbeat.shutdownNow();
+    dispatcher.shutdownNow();
+    subscribersByTrip.values().forEach(subscribers -> subscribers.forEach(subscriber -> subscriber.emitter.complete()));
+  }
+
+  // Offers a frame to the subscribers of one trip, or of every trip when tripId is null
+  private void broadcast(Set<DataWithMediaType> frame, Long tripId) {
+    if (tripId != null) {
+      Set<Subscriber> tripSubscribers = subscribersByTrip.get(tripId);
+      if (tripSubscribers != null) tripSubscribers.forEach(subscriber -> subscriber.offer(frame));
+      return;
+    }
+    subscribersByTrip.values().forEach(subscribers -> subscribers.forEach(subscriber -> subscriber.offer(frame)));
+  }
+
+  private ResponseStatusException tooManySubscribers(Long tripId) {
+    return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+            "Too many live seat map subscribers. Please poll /api/seats/by-trip/" + tripId + "/map instead.");
+  }
+
+  private static ThreadFactory daemonThreads(String name) {
+    AtomicInteger counter = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private final class Subscriber implements Runnable {
+
+    private final Long tripId;
+    private final SseEmitter emitter;
+    private final BlockingDeque<Set<DataWithMediaType>> frames = new LinkedBlockingDeque<>(queueCapacity);
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean started; // Frames are only sent once the snapshot is at the head of the queue
+
+    Subscriber(Long tripId, SseEmitter emitter) {
+      this.tripId = tripId;
+      this.emitter = emitter;
+    }
+
+    void offer(Set<DataWithMediaType> frame) {
+      if (closed.get()) return;
+      if (!frames.offer(frame)) {
+        // Queue full: the client is not keeping up, drop it instead of waiting for it
+        emitter.complete();
+        close();
+        return;
+      }
+      if (started) {
+        dispatch();
+      }
+    }
+
+    // Puts the snapshot ahead of the changes held back while it was taken, then starts sending
+    void start(Set<DataWithMediaType> snapshot) {
+      if (closed.get()) return;
+      if (!frames.offerFirst(snapshot)) {
+        emitter.complete();
+        close();
+        return;
+      }
+      started = true;
+      dispatch();
+    }
+
+    private void dispatch() {
+      if (scheduled.compareAndSet(false, true)) {
+        dispatcher.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        Set<DataWithMediaType> frame;
+        while (!closed.get() && (frame = frames.poll()) != null) {
+          emitter.send(frame);
+        }
+      } catch (IOException | IllegalStateException e) {
+        close(); // Connection went away (or the emitter already completed)
+      } finally {
+        scheduled.set(false);
+      }
+      // A frame may have arrived after the last poll but before the flag was cleared
+      if (!closed.get() && !frames.isEmpty()) {
+        dispatch();
+      }
+    }
+
+    void close() {
+      if (!closed.compareAndSet(false, true)) return;
+      frames.clear();
+      subscribersByTrip.computeIfPresent(tripId, (id, subscribers) -> {
+        subscribers.remove(this);
+        return subscribers.isEmpty() ? null : subscribers;
+      });
+      subscriberCount.decrementAndGet();
+    }
+  }
+}
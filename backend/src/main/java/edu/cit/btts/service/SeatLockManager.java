@@ -0,0 +1,139 @@
+package edu.cit.btts.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped in-JVM locks for seat cells, keyed by (tripId, row, column).
+ * Bookings for the same cell are serialized; bookings for different cells only contend when their
+ * cells happen to share a stripe. A request that cannot get its lock within the configured wait
+ * is rejected with 409 CONFLICT before it touches the database.
+ */
+@Component
+public class SeatLockManager {
+
+  private final ReentrantLock[] stripes;
+  private final long timeoutMs;
+
+  public SeatLockManager(@Value("${booking.seat-lock.stripes:1024}") int stripeCount,
+                         @Value("${booking.seat-lock.timeout-ms:250}") long timeoutMs) {
+    this.stripes = new ReentrantLock[stripeCount];
+    for (int i = 0; i < stripeCount; i++) {
+      stripes[i] = new ReentrantLock();
+    }
+    this.timeoutMs = timeoutMs;
+  }
+
+  /**
+   * Locks a single seat cell.
+   *
+   * @return The held lock; close it (or hand it to holdUntilTransactionEnds) to release it.
+   * @throws ResponseStatusException (409) if the cell is held by another booking for too long.
+   */
+  public SeatLock lock(Long tripId, int rowPosition, int columnPosition) {
+    return lockStripes(new int[] { stripeOf(tripId, rowPosition, columnPosition) });
+  }
+
+  /**
+   * Locks several seat cells of one trip at once. Stripes are always taken in ascending order,
+   * so two group bookings with overlapping cells cannot deadlock each other.
+   *
+   * @param cells The cells as {row, column} pairs.
+   * @throws ResponseStatusException (409) if any of the cells is held by another booking for too long.
+   */
+  public SeatLock lockAll(Long tripId, Collection<int[]> cells) {
+    int[] stripeIndexes = cells.stream()
+            .mapToInt(cell -> stripeOf(tripId, cell[0], cell[1]))
+            .distinct()
+            .sorted()
+            .toArray();
+    return lockStripes(stripeIndexes);
+  }
+
+  /**
+   * Keeps a lock until the current transaction has completed, so the seat rows (and the
+   * SeatOccupancyIndex) are visible to the next holder. Without an active transaction the lock
+   * is released immediately.
+   */
+  public void holdUntilTransactionEnds(SeatLock seatLock) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      seatLock.close();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCompletion(int status) {
+        seatLock.close();
+      }
+    });
+  }
+
+  private SeatLock lockStripes(int[] stripeIndexes) {
+    int locked = 0;
+    try {
+      for (int stripeIndex : stripeIndexes) {
+        if (!stripes[stripeIndex].tryLock(timeoutMs, TimeUnit.MILLISECONDS)) {
+          break;
+        }
+        locked++;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (locked < stripeIndexes.length) {
+      unlock(stripeIndexes, locked);
+      throw new ResponseStatusException(HttpStatus.CONFLICT,
+              "The selected seat is currently being booked by another request. Please try again.");
+    }
+    return new SeatLock(stripeIndexes);
+  }
+
+  private void unlock(int[] stripeIndexes, int count) {
+    for (int i = count - 1; i >= 0; i--) {
+      stripes[stripeIndexes[i]].unlock();
+    }
+  }
+
+  private int stripeOf(Long tripId, int rowPosition, int columnPosition) {
+    int hash = Long.hashCode(tripId);
+    hash = 31 * hash + rowPosition;
+    hash = 31 * hash + columnPosition;
+    hash ^= (hash >>> 16); // Spread the high bits, as HashMap does
+    return Math.floorMod(hash, stripes.length);
+  }
+
+  /**
+   * A set of held stripes. Must be closed by the thread that acquired it.
+   */
+  public final class SeatLock implements AutoCloseable {
+
+    private final int[] stripeIndexes;
+    private boolean released;
+
+    private SeatLock(int[] stripeIndexes) {
+      this.stripeIndexes = stripeIndexes;
+    }
+
+    @Override
+    public void close() {
+      if (released) return;
+      released = true;
+      unlock(stripeIndexes, stripeIndexes.length);
+    }
+
+    @Override
+    public String toString() {
+      return "SeatLock" + Arrays.toString(stripeIndexes);
+    }
+  }
+}
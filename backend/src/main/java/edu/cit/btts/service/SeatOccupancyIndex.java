@@ -0,0 +1,379 @@
+package edu.cit.btts.service;
+
+import edu.cit.btts.dto.SeatDTO;
+import edu.cit.btts.dto.SeatMapResponse;
+import edu.cit.btts.model.Bus;
+import edu.cit.btts.model.Seat;
+import edu.cit.btts.model.SeatStatus;
+import edu.cit.btts.model.Trip;
+import edu.cit.btts.repository.SeatRepository;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.CRC32;
+
+/**
+ * In-memory seat occupancy per trip.
+ * Each trip is held as a row x column grid sized from its bus layout, with one bitset of cells per
+ * SeatStatus and the id of the Seat occupying each cell. A trip is loaded from the database the first
+ * time it is needed and is then kept up to date by the services that write seats, so conflict checks
+ * and seat-map reads can be answered without a query.
+ *
+ * A trip is loaded from committed rows in a read-committed transaction of its own, never from the
+ * snapshot of the transaction that happens to ask for it first. Writes are applied after the surrounding
+ * transaction commits, and are then pushed to live subscribers through SeatChangeBroadcaster. A rolled
+ * back transaction drops the trip from the index so it is reloaded from the database on next use.
+ */
+@Component
+public class SeatOccupancyIndex {
+
+  // Writes bump the counter of their trip's stripe, so a trip that was written while it was being
+  // loaded is not cached with a stale snapshot.
+  private static final int WRITE_STRIPES = 64;
+  // A load is retried this many times while its trip keeps being written before it is used uncached
+  private static final int MAX_LOAD_ATTEMPTS = 3;
+
+  private final SeatRepository seatRepository;
+  private final SeatChangeBroadcaster seatChangeBroadcaster;
+  private final Map<Long, TripSeatMap> tripSeatMaps = new ConcurrentHashMap<>();
+  private final Map<Long, CompletableFuture<TripSeatMap>> loads = new ConcurrentHashMap<>();
+  private final AtomicLongArray writeCounters = new AtomicLongArray(WRITE_STRIPES);
+  private final Object[] stripeLocks = new Object[WRITE_STRIPES];
+
+  public SeatOccupancyIndex(SeatRepository seatRepository, SeatChangeBroadcaster seatChangeBroadcaster) {
+    this.seatRepository = seatRepository;
+    this.seatChangeBroadcaster = seatChangeBroadcaster;
+    for (int i = 0; i < WRITE_STRIPES; i++) {
+      stripeLocks[i] = new Object();
+    }
+  }
+
+  /**
+   * Returns the seat map of a trip if it is already loaded.
+   *
+   * @param tripId The ID of the trip.
+   * @return The seat map, or null if the trip has not been loaded yet.
+   */
+  public TripSeatMap getIfLoaded(Long tripId) {
+    return tripSeatMaps.get(tripId);
+  }
+
+  /**
+   * Returns the seat map of a trip, loading it from the database if needed.
+   * Only one thread loads a given trip; others asking for it at the same time wait for that load.
+   *
+   * @param trip The trip (its bus is used to size the grid).
+   * @return The seat map of the trip.
+   */
+  public TripSeatMap get(Trip trip) {
+    Long tripId = trip.getId();
+    TripSeatMap seatMap = tripSeatMaps.get(tripId);
+    for (int attempt = 1; seatMap == null; attempt++) {
+      CompletableFuture<TripSeatMap> loading = new CompletableFuture<>();
+      CompletableFuture<TripSeatMap> inFlight = loads.putIfAbsent(tripId, loading);
+      if (inFlight != null) {
+        seatMap = await(inFlight); // Null if the trip was written during that load: try again
+        continue;
+      }
+      try {
+        long writesBeforeLoad = writeCounters.get(stripe(tripId));
+        TripSeatMap loaded = load(trip);
+        seatMap = cacheIfUnchanged(tripId, writesBeforeLoad, loaded);
+        if (seatMap == null && attempt >= MAX_LOAD_ATTEMPTS) {
+          seatMap = loaded; // Written on every attempt: answer from the latest snapshot without caching it
+        }
+        loading.complete(seatMap);
+      } catch (RuntimeException e) {
+        loading.completeExceptionally(e);
+        throw e;
+      } finally {
+        loads.remove(tripId, loading);
+      }
+    }
+    return seatMap;
+  }
+
+  /**
+   * Returns the status of the seat at a position of a trip.
+   *
+   * @return The status, or null if no seat exists at that position.
+   */
+  public SeatStatus getStatus(Trip trip, int rowPosition, int columnPosition) {
+    return get(trip).getStatus(rowPosition, columnPosition);
+  }
+
+  /**
+   * Records the current position and status of a saved seat once the transaction commits.
+   *
+   * @param seat The saved seat (must have an ID and a trip).
+   */
+  public void recordSeat(Seat seat) {
+    recordSeat(seat.getTrip().getId(), seat.getRowPosition(), seat.getColumnPosition(), seat.getId(), seat.getStatus());
+  }
+
+  /**
+   * Records the position and status of a seat that was written without loading it (e.g. by a bulk update)
+   * once the transaction commits.
+   */
+  public void recordSeat(Long tripId, int rowPosition, int columnPosition, long seatId, SeatStatus status) {
+    afterCommit(tripId, () -> {
+      TripSeatMap seatMap = tripSeatMaps.get(tripId);
+      if (seatMap != null && !seatMap.set(rowPosition, columnPosition, seatId, status)) {
+        tripSeatMaps.remove(tripId); // Outside the grid; reload with a grid large enough for it
+      }
+      seatChangeBroadcaster.publish(new SeatDTO(seatId, rowPosition, columnPosition, status, tripId));
+    });
+  }
+
+  /**
+   * Removes a seat from a position once the transaction commits.
+   * Pass the position the seat had before it was moved or deleted.
+   */
+  public void removeSeat(Long tripId, int rowPosition, int columnPosition, Long seatId) {
+    afterCommit(tripId, () -> {
+      TripSeatMap seatMap = tripSeatMaps.get(tripId);
+      if (seatMap != null) {
+        seatMap.clear(rowPosition, columnPosition, seatId);
+      }
+      seatChangeBroadcaster.publish(new SeatDTO(seatId, rowPosition, columnPosition, null, tripId));
+    });
+  }
+
+  /**
+   * Drops a trip from the index (e.g. when it is deleted or its bus changes).
+   *
+   * @param tripId The ID of the trip.
+   */
+  public void invalidate(Long tripId) {
+    afterCommit(tripId, () -> tripSeatMaps.remove(tripId));
+  }
+
+  // --- Helper Methods ---
+
+  private TripSeatMap load(Trip trip) {
+    // Committed seats only, read outside the caller's transaction (see findCommittedByTripId)
+    List<Seat> seats = seatRepository.findCommittedByTripId(trip.getId());
+
+    // Size from the bus layout, growing if any existing seat lies outside of it
+    Bus bus = trip.getBus();
+    int rowCount = (bus != null && bus.getRowCount() != null) ? bus.getRowCount() : 0;
+    int columnCount = (bus != null && bus.getColumnCount() != null) ? bus.getColumnCount() : 0;
+    for (Seat seat : seats) {
+      rowCount = Math.max(rowCount, seat.getRowPosition());
+      columnCount = Math.max(columnCount, seat.getColumnPosition());
+    }
+
+    TripSeatMap seatMap = new TripSeatMap(trip.getId(), rowCount, columnCount,
+            bus != null ? bus.getRowLabel() : null, bus != null ? bus.getColumnLabel() : null);
+    for (Seat seat : seats) {
+      seatMap.set(seat.getRowPosition(), seat.getColumnPosition(), seat.getId(), seat.getStatus());
+    }
+    return seatMap;
+  }
+
+  // Caches a freshly loaded trip unless one of its seats was written since the load began. Checked
+  // under the stripe's lock, which writers also hold from bumping the counter until their change is
+  // applied, so a write can never slip in between the check and the put.
+  private TripSeatMap cacheIfUnchanged(Long tripId, long writesBeforeLoad, TripSeatMap seatMap) {
+    int stripe = stripe(tripId);
+    synchronized (stripeLocks[stripe]) {
+      if (writeCounters.get(stripe) != writesBeforeLoad) return null;
+      TripSeatMap existing = tripSeatMaps.putIfAbsent(tripId, seatMap);
+      return (existing != null) ? existing : seatMap;
+    }
+  }
+
+  private static TripSeatMap await(CompletableFuture<TripSeatMap> load) {
+    try {
+      return load.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      throw e;
+    }
+  }
+
+  private void afterCommit(Long tripId, Runnable update) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      applyWrite(tripId, true, update);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE; // Apply before SeatLockManager releases the seat's lock
+      }
+
+      @Override
+      public void afterCompletion(int status) {
+        applyWrite(tripId, status == STATUS_COMMITTED, update);
+      }
+    });
+  }
+
+  private void applyWrite(Long tripId, boolean committed, Runnable update) {
+    int stripe = stripe(tripId);
+    synchronized (stripeLocks[stripe]) {
+      writeCounters.incrementAndGet(stripe);
+      if (committed) {
+        update.run();
+      } else {
+        tripSeatMaps.remove(tripId); // Dropped defensively; it is reloaded from committed rows
+      }
+    }
+  }
+
+  private static int stripe(Long tripId) {
+    return (int) Math.floorMod(tripId, (long) WRITE_STRIPES);
+  }
+
+  /**
+   * Seat grid of a single trip. Positions are 1-based, as stored on Seat.
+   */
+  public static final class TripSeatMap {
+
+    private final Long tripId;
+    private final int rowCount;
+    private final int columnCount;
+    private final String rowLabel;
+    private final String columnLabel;
+    private final long[] seatIds; // 0 means no seat at that cell
+    private final Map<SeatStatus, BitSet> cellsByStatus = new EnumMap<>(SeatStatus.class);
+
+    // Bumped on every change; the compact seat map is only re-encoded when it has moved on
+    private long version;
+    private SeatMapResponse seatMap;
+    private long seatMapVersion = -1;
+
+    TripSeatMap(Long tripId, int rowCount, int columnCount, String rowLabel, String columnLabel) {
+      this.tripId = tripId;
+      this.rowCount = rowCount;
+      this.columnCount = columnCount;
+      this.rowLabel = rowLabel;
+      this.columnLabel = columnLabel;
+      this.seatIds = new long[rowCount * columnCount];
+      for (SeatStatus status : SeatStatus.values()) {
+        cellsByStatus.put(status, new BitSet(seatIds.length));
+      }
+    }
+
+    public int getRowCount() {
+      return rowCount;
+    }
+
+    public int getColumnCount() {
+      return columnCount;
+    }
+
+    /**
+     * @return The status of the seat at the given position, or null if there is no seat there.
+     */
+    public synchronized SeatStatus getStatus(int rowPosition, int columnPosition) {
+      int cell = cellOf(rowPosition, columnPosition);
+      if (cell < 0 || seatIds[cell] == 0) return null;
+      return statusOf(cell);
+    }
+
+    /**
+     * @return A copy of the cells that currently have the given status.
+     */
+    public synchronized BitSet getCells(SeatStatus status) {
+      return (BitSet) cellsByStatus.get(status).clone();
+    }
+
+    /**
+     * Builds the seat DTOs of this trip, in row-major order.
+     */
+    public synchronized List<SeatDTO> toSeatDTOs() {
+      List<SeatDTO> seats = new ArrayList<>();
+      for (int cell = 0; cell < seatIds.length; cell++) {
+        if (seatIds[cell] == 0) continue;
+        seats.add(new SeatDTO(
+                seatIds[cell],
+                cell / columnCount + 1,
+                cell % columnCount + 1,
+                statusOf(cell),
+                tripId));
+      }
+      return seats;
+    }
+
+    /**
+     * Returns the compact seat map (see SeatMapResponse), encoded at most once per change of the trip's
+     * seats. Its ETag is derived from the content, so it stays the same across reloads and restarts.
+     */
+    public synchronized SeatMapResponse toSeatMapResponse() {
+      if (seatMapVersion == version) return seatMap;
+
+      byte[] packed = new byte[(seatIds.length + 3) / 4];
+      packCells(packed, SeatStatus.RESERVED, 1);
+      packCells(packed, SeatStatus.BOOKED, 2);
+      packCells(packed, SeatStatus.UNAVAILABLE, 3); // OPEN and empty cells stay 0
+
+      CRC32 crc = new CRC32();
+      crc.update(packed);
+      crc.update((rowCount + "x" + columnCount + "|" + rowLabel + "|" + columnLabel).getBytes(StandardCharsets.UTF_8));
+      String etag = "\"" + tripId + "-" + Long.toHexString(crc.getValue()) + "\"";
+
+      seatMap = new SeatMapResponse(tripId, rowCount, columnCount, rowLabel, columnLabel,
+              Base64.getEncoder().encodeToString(packed), etag);
+      seatMapVersion = version;
+      return seatMap;
+    }
+
+    synchronized boolean set(int rowPosition, int columnPosition, long seatId, SeatStatus status) {
+      int cell = cellOf(rowPosition, columnPosition);
+      if (cell < 0) return false;
+      version++;
+      seatIds[cell] = seatId;
+      for (Map.Entry<SeatStatus, BitSet> entry : cellsByStatus.entrySet()) {
+        entry.getValue().set(cell, entry.getKey() == status);
+      }
+      return true;
+    }
+
+    synchronized void clear(int rowPosition, int columnPosition, Long seatId) {
+      int cell = cellOf(rowPosition, columnPosition);
+      // Only clear the cell if it still holds this seat (another seat may have taken it since)
+      if (cell < 0 || seatIds[cell] != seatId) return;
+      version++;
+      seatIds[cell] = 0;
+      for (BitSet cells : cellsByStatus.values()) {
+        cells.clear(cell);
+      }
+    }
+
+    private void packCells(byte[] packed, SeatStatus status, int code) {
+      BitSet cells = cellsByStatus.get(status);
+      for (int cell = cells.nextSetBit(0); cell >= 0; cell = cells.nextSetBit(cell + 1)) {
+        packed[cell >> 2] |= (byte) (code << ((cell & 3) * 2));
+      }
+    }
+
+    private SeatStatus statusOf(int cell) {
+      for (Map.Entry<SeatStatus, BitSet> entry : cellsByStatus.entrySet()) {
+        if (entry.getValue().get(cell)) return entry.getKey();
+      }
+      return null;
+    }
+
+    private int cellOf(int rowPosition, int columnPosition) {
+      if (rowPosition < 1 || rowPosition > rowCount || columnPosition < 1 || columnPosition > columnCount) {
+        return -1;
+      }
+      return (rowPosition - 1) * columnCount + (columnPosition - 1);
+    }
+  }
+}
@@ -1,6 +1,8 @@
 package edu.cit.btts.service;
 
 import edu.cit.btts.dto.SeatDTO;
+import edu.cit.btts.dto.SeatMapResponse;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import edu.cit.btts.model.Seat;
 import edu.cit.btts.model.SeatStatus;
 import edu.cit.btts.model.Trip;
@@ -9,7 +11,6 @@ import edu.cit.btts.repository.TripRepository;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -21,10 +22,21 @@ public class SeatService {
 
   private final SeatRepository seatRepository;
   private final TripRepository tripRepository;
-
-    public SeatService(SeatRepository seatRepository, TripRepository tripRepository) {
+  private final SeatOccupancyIndex seatOccupancyIndex;
+  private final SeatLockManager seatLockManager;
+  private final TripAvailabilityCounter tripAvailabilityCounter;
+  private final SeatChangeBroadcaster seatChangeBroadcaster;
+
+    public SeatService(SeatRepository seatRepository, TripRepository tripRepository,
+                       SeatOccupancyIndex seatOccupancyIndex, SeatLockManager seatLockManager,
+                       TripAvailabilityCounter tripAvailabilityCounter,
+                       SeatChangeBroadcaster seatChangeBroadcaster) {
         this.seatRepository = seatRepository;
         this.tripRepository = tripRepository;
+        this.seatOccupancyIndex = seatOccupancyIndex;
+        this.seatLockManager = seatLockManager;
+        this.tripAvailabilityCounter = tripAvailabilityCounter;
+        this.seatChangeBroadcaster = seatChangeBroadcaster;
     }
 
   // Method to find a seat by its ID
@@ -35,32 +47,63 @@ public class SeatService {
 
   /**
    * Retrieves all seat details for a specific trip.
+   * Served from the SeatOccupancyIndex; the database is only read the first time a trip is requested.
    *
    * @param tripId The ID of the trip for which to retrieve seats.
    * @return A list of SeatDTOs associated with the given trip.
    * @throws ResponseStatusException if the trip is not found (optional, can return empty list instead).
    */
   public List<SeatDTO> getSeatsByTripId(Long tripId) {
-      // Optional: Check if the trip itself exists. If the trip ID is invalid,
-      // you might want to throw an error rather than just returning an empty list.
-      Trip trip = tripRepository.findById(tripId)
-          .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Trip not found with ID: " + tripId));
-
-      // Retrieve seats by trip ID
-      List<Seat> seats = seatRepository.findByTripId(trip.getId()); // Use trip.getId() to be consistent
-
-      // Map entities to DTOs
-      return seats.stream()
-              .map(this::mapEntityToDto)
-              .collect(Collectors.toList());
+      return getIndexedSeatMap(tripId).toSeatDTOs();
+  }
+
+  /**
+   * Retrieves the compact seat map of a trip (2-bit status per cell plus the bus labels).
+   * Served from the SeatOccupancyIndex and only re-encoded when the trip's seats change.
+   *
+   * @param tripId The ID of the trip.
+   * @return The SeatMapResponse, carrying the ETag of its content.
+   * @throws ResponseStatusException if the trip is not found.
+   */
+  public SeatMapResponse getSeatMapByTripId(Long tripId) {
+      return getIndexedSeatMap(tripId).toSeatMapResponse();
+  }
+
+  /**
+   * Subscribes to live seat changes of a trip (Server-Sent Events).
+   * The stream starts with the compact seat map and then carries one SeatDTO per committed change; the
+   * map is taken after subscribing, so no change is missed in between.
+   *
+   * @param tripId The ID of the trip.
+   * @return The SseEmitter for the subscription.
+   * @throws ResponseStatusException if the trip is not found, or 503 if there are too many subscribers.
+   */
+  public SseEmitter subscribeToSeatChanges(Long tripId) {
+      return seatChangeBroadcaster.subscribe(tripId, () -> getSeatMapByTripId(tripId));
+  }
+
+  private SeatOccupancyIndex.TripSeatMap getIndexedSeatMap(Long tripId) {
+      SeatOccupancyIndex.TripSeatMap seatMap = seatOccupancyIndex.getIfLoaded(tripId);
+      if (seatMap == null) {
+          // Not loaded yet: check that the trip exists, then load its seats into the index (the bus layout
+          // comes with the trip, so this also works outside a request's open session)
+          Trip trip = tripRepository.findWithBusById(tripId)
+              .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Trip not found with ID: " + tripId));
+          seatMap = seatOccupancyIndex.get(trip);
+      }
+      return seatMap;
   }
 
   // Update Seat Status (only changes status, doesn't handle ticket association directly here)
   // The TicketService will manage the bidirectional link for Seat.ticket
+  @Transactional
   public Seat updateSeatStatus(Long seatId, SeatStatus newStatus) {
     Seat seat = getSeatById(seatId);
+    tripAvailabilityCounter.onSeatStatusChange(seat.getTrip(), seat.getStatus(), newStatus);
     seat.setStatus(newStatus);
-    return seatRepository.save(seat);
+    Seat savedSeat = seatRepository.save(seat);
+    seatOccupancyIndex.recordSeat(savedSeat);
+    return savedSeat;
   }
 
   /**
@@ -95,6 +138,10 @@ public class SeatService {
                                     !effectiveTrip.equals(existingSeat.getTrip());
 
     if (positionOrTripChanged) {
+      // Hold the target cell so a concurrent booking cannot take it while the seat moves there
+      seatLockManager.holdUntilTransactionEnds(
+              seatLockManager.lock(effectiveTrip.getId(), effectiveRowPosition, effectiveColumnPosition));
+
       Optional<Seat> conflictingSeat = seatRepository.findByTripAndRowPositionAndColumnPosition(
               effectiveTrip, effectiveRowPosition, effectiveColumnPosition);
 
@@ -105,12 +152,24 @@ public class SeatService {
       }
     }
 
+    // A taken seat moving to another trip moves its place in the availability counters with it
+    if (!effectiveTrip.equals(existingSeat.getTrip()) && TripAvailabilityCounter.isTaken(existingSeat.getStatus())) {
+      tripAvailabilityCounter.takeSeats(effectiveTrip, 1);
+      tripAvailabilityCounter.releaseSeats(existingSeat.getTrip(), 1);
+    }
+
+    // Free the old position in the index before moving the seat
+    seatOccupancyIndex.removeSeat(existingSeat.getTrip().getId(), existingSeat.getRowPosition(),
+            existingSeat.getColumnPosition(), existingSeat.getId());
+
     // Update the seat properties
     existingSeat.setRowPosition(effectiveRowPosition);
     existingSeat.setColumnPosition(effectiveColumnPosition);
     existingSeat.setTrip(effectiveTrip); // Update the trip association
 
-    return seatRepository.save(existingSeat);
+    Seat savedSeat = seatRepository.save(existingSeat);
+    seatOccupancyIndex.recordSeat(savedSeat);
+    return savedSeat;
   }
 
   // Map Seat Entity to SeatDTO
@@ -0,0 +1,78 @@
+package edu.cit.btts.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Lets tickets.seat_id be NULL on databases created before a ticket could give its seat up.
+ *
+ * A booking that takes a released seat keeps the ticket and payments of the booking before it, without a
+ * seat. ddl-auto=update never relaxes an existing NOT NULL column, so this runs on startup while the
+ * column still has one.
+ */
+@Component
+public class TicketSeatColumnMigrator {
+
+  private static final Logger log = LoggerFactory.getLogger(TicketSeatColumnMigrator.class);
+
+  private static final String SEAT_COLUMN = "seat_id";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public TicketSeatColumnMigrator(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void migrateOnStartup() {
+    if (migrate()) {
+      log.info("Made tickets.{} nullable", SEAT_COLUMN);
+    }
+  }
+
+  /**
+   * @return Whether the column was changed.
+   */
+  public boolean migrate() {
+    Boolean changed = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+      DatabaseMetaData metaData = connection.getMetaData();
+      if (!isNotNull(metaData, connection.getCatalog())) return false;
+      // MySQL has no DROP NOT NULL; the column is redefined with the type Hibernate gave it
+      String sql = metaData.getDatabaseProductName().toLowerCase().contains("mysql")
+              ? "ALTER TABLE tickets MODIFY seat_id BIGINT NULL"
+              : "ALTER TABLE tickets ALTER COLUMN seat_id DROP NOT NULL";
+      try (Statement statement = connection.createStatement()) {
+        statement.execute(sql);
+      }
+      return true;
+    });
+    return Boolean.TRUE.equals(changed);
+  }
+
+  // --- Helper Methods ---
+
+  private static boolean isNotNull(DatabaseMetaData metaData, String catalog) throws SQLException {
+    // Identifier case depends on the database (MySQL keeps it, H2 upper-cases it)
+    for (String table : List.of("tickets", "TICKETS")) {
+      try (ResultSet columns = metaData.getColumns(catalog, null, table, null)) {
+        while (columns.next()) {
+          if (SEAT_COLUMN.equalsIgnoreCase(columns.getString("COLUMN_NAME"))) {
+            return "NO".equals(columns.getString("IS_NULLABLE"));
+          }
+        }
+      }
+    }
+    return false;
+  }
+}
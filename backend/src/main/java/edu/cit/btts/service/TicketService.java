@@ -1,9 +1,10 @@
 package edu.cit.btts.service;
 
+import edu.cit.btts.dto.GroupTicketRequest;
+import edu.cit.btts.dto.SeatPositionRequest;
 import edu.cit.btts.dto.TicketRequest;
 import edu.cit.btts.dto.TicketResponse;
 import edu.cit.btts.dto.TicketUpdateRequest;
-import edu.cit.btts.dto.PaymentRequest;
 import edu.cit.btts.dto.PaymentResponse;
 import edu.cit.btts.dto.SeatDTO;
 import edu.cit.btts.dto.TripResponse;
@@ -21,15 +22,23 @@ import edu.cit.btts.repository.SeatRepository;
 import edu.cit.btts.repository.TicketRepository;
 import edu.cit.btts.repository.TripRepository;
 import edu.cit.btts.repository.UserRepository;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -44,6 +53,12 @@ public class TicketService {
   private final UserService userService; // For mapping User to UserDTO (assuming you have one)
   private final PaymentService paymentService;
   private final PaymentRepository paymentRepository;
+  private final SeatOccupancyIndex seatOccupancyIndex;
+  private final SeatLockManager seatLockManager;
+  private final ReservationHoldScheduler reservationHoldScheduler;
+  private final TripAvailabilityCounter tripAvailabilityCounter;
+  private final ReceiptStore receiptStore;
+  private final TransactionTemplate bookingTransaction;
 
   public TicketService(TicketRepository ticketRepository,
                         SeatRepository seatRepository,
@@ -53,7 +68,13 @@ public class TicketService {
                         TripService tripService, 
                         UserService userService,
                         PaymentService paymentService,
-                        PaymentRepository paymentRepository) {
+                        PaymentRepository paymentRepository,
+                        SeatOccupancyIndex seatOccupancyIndex,
+                        SeatLockManager seatLockManager,
+                        ReservationHoldScheduler reservationHoldScheduler,
+                        TripAvailabilityCounter tripAvailabilityCounter,
+                        ReceiptStore receiptStore,
+                        PlatformTransactionManager transactionManager) {
     this.ticketRepository = ticketRepository;
     this.seatRepository = seatRepository;
     this.tripRepository = tripRepository;
@@ -63,6 +84,12 @@ public class TicketService {
     this.userService = userService;
     this.paymentService = paymentService;
     this.paymentRepository = paymentRepository;
+    this.seatOccupancyIndex = seatOccupancyIndex;
+    this.seatLockManager = seatLockManager;
+    this.reservationHoldScheduler = reservationHoldScheduler;
+    this.tripAvailabilityCounter = tripAvailabilityCounter;
+    this.receiptStore = receiptStore;
+    this.bookingTransaction = new TransactionTemplate(transactionManager);
   }
 
 /**
@@ -71,7 +98,6 @@ public class TicketService {
    * @param request The ticket creation request data.
    * @return The created TicketResponse.
    */
-  @Transactional
   public TicketResponse createTicketForCash(TicketRequest request) {
     // Validate payment type explicitly for this method
     if (request.getPaymentType() != PaymentType.CASH) {
@@ -81,7 +107,7 @@ public class TicketService {
         throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cash payments should not include an online receipt.");
     }
 
-    return createTicketInternal(request, null); // Pass null for online receipt
+    return createTicket(request, null); // Pass null for online receipt
   }
 
   /**
@@ -90,7 +116,6 @@ public class TicketService {
    * @param request The ticket creation request data.
    * @return The created TicketResponse.
    */
-  @Transactional
   public TicketResponse createTicketForOnline(TicketRequest request) {
     // Validate payment type explicitly for this method
     if (request.getPaymentType() != PaymentType.ONLINE) {
@@ -100,17 +125,51 @@ public class TicketService {
         throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Online receipt is required for online payments.");
     }
 
-    return createTicketInternal(request, request.getOnlineReceipt());
+    // Stored before any seat is locked, so a slow write does not hold up other bookings
+    return createTicket(request, receiptStore.store(request.getOnlineReceipt()));
+  }
+
+  /**
+   * Creates a new Ticket and a new Seat, handling online payment with a receipt that was already streamed
+   * into the ReceiptStore (multipart uploads).
+   *
+   * @param request The ticket creation request data (without receipt bytes).
+   * @param receipt The stored online receipt.
+   * @return The created TicketResponse.
+   */
+  public TicketResponse createTicketForOnline(TicketRequest request, ReceiptStore.StoredReceipt receipt) {
+    if (request.getPaymentType() != PaymentType.ONLINE) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "This endpoint is for ONLINE payments only.");
+    }
+    if (request.getOnlineReceipt() != null) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Send the online receipt as the receipt part only.");
+    }
+
+    return createTicket(request, receipt);
+  }
+
+  // Locks the seat cell, then books it in a transaction of its own (see bookWhileLocked)
+  private TicketResponse createTicket(TicketRequest request, ReceiptStore.StoredReceipt receipt) {
+    SeatLockManager.SeatLock seatLock =
+            seatLockManager.lock(request.getTripId(), request.getRowPosition(), request.getColumnPosition());
+    return bookWhileLocked(seatLock, () -> createTicketInternal(request, receipt));
   }
 
   /**
    * Internal helper method for creating Ticket and Seat, and recording Payment.
+   * Runs inside the booking transaction, with the seat cell already locked.
    *
    * @param request The common ticket request data.
-   * @param onlineReceiptBytes The byte array for online receipt (null for cash).
+   * @param receipt The stored online receipt (null for cash).
    * @return The created TicketResponse.
    */
-  private TicketResponse createTicketInternal(TicketRequest request, byte[] onlineReceiptBytes) {
+  private TicketResponse createTicketInternal(TicketRequest request, ReceiptStore.StoredReceipt receipt) {
+    // If the trip's seats are already indexed, reject a taken seat before querying anything
+    SeatOccupancyIndex.TripSeatMap loadedSeatMap = seatOccupancyIndex.getIfLoaded(request.getTripId());
+    if (loadedSeatMap != null) {
+      rejectIfSeatTaken(request, loadedSeatMap.getStatus(request.getRowPosition(), request.getColumnPosition()));
+    }
+
     // 1. Fetch Trip
     Trip trip = tripRepository.findById(request.getTripId())
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
@@ -121,14 +180,13 @@ public class TicketService {
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
                     "User (passenger) not found with ID: " + request.getUserId()));
 
-    // 3. Check if a seat at this position already exists for this trip
-    seatRepository.findByTripAndRowPositionAndColumnPosition(
-                    trip, request.getRowPosition(), request.getColumnPosition())
-            .ifPresent(existingSeat -> {
-                throw new ResponseStatusException(HttpStatus.CONFLICT,
-                        "Seat at Row: " + request.getRowPosition() + ", Column: " + request.getColumnPosition() +
-                                " already exists and is " + existingSeat.getStatus() + " for Trip ID " + request.getTripId());
-            });
+    // 3. Check if a seat at this position already exists for this trip (answered by the in-memory index).
+    //    A seat that was given up (OPEN) is cleared so the cell can be booked again.
+    SeatStatus existingStatus = seatOccupancyIndex.getStatus(trip, request.getRowPosition(), request.getColumnPosition());
+    rejectIfSeatTaken(request, existingStatus);
+    if (existingStatus == SeatStatus.OPEN) {
+      clearReleasedSeat(trip, request.getRowPosition(), request.getColumnPosition());
+    }
 
     // 4. Create a new Seat
     Seat newSeat = new Seat(request.getRowPosition(), request.getColumnPosition(), trip);
@@ -141,8 +199,18 @@ public class TicketService {
       newSeat.setStatus(SeatStatus.OPEN); // Default to OPEN or throw error
     }
 
-    // 5. Save the new Seat
-    Seat savedSeat = seatRepository.save(newSeat);
+    // Take the seat from the trip's availability (409 if the trip is already full)
+    tripAvailabilityCounter.takeSeats(trip, 1);
+
+    // 5. Save the new Seat (flushed right away so a conflict from another node surfaces here as a 409)
+    Seat savedSeat;
+    try {
+      savedSeat = seatRepository.saveAndFlush(newSeat);
+    } catch (DataIntegrityViolationException e) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT,
+              "Seat at Row: " + request.getRowPosition() + ", Column: " + request.getColumnPosition() +
+                      " was just booked for Trip ID " + request.getTripId());
+    }
 
     // 6. Create Ticket entity
     Ticket ticket = new Ticket(savedSeat, trip, request.getFare(), request.getDropOff(), user);
@@ -153,21 +221,270 @@ public class TicketService {
     // 8. Update the savedSeat to link it back to the ticket (bidirectional consistency)
     savedSeat.setTicket(savedTicket);
     seatRepository.save(savedSeat);
-
-    // 9. Create Payment for the ticket
-    PaymentRequest paymentRequest = new PaymentRequest();
-    paymentRequest.setAmount(BigDecimal.valueOf(request.getFare())); // Use ticket fare as payment amount
-    paymentRequest.setType(request.getPaymentType());
-    paymentRequest.setPurpose(PaymentPurpose.TICKET_FARE); // Always Ticket Fare for initial booking
-    paymentRequest.setOnlineReceipt(onlineReceiptBytes); // Pass the receipt bytes
-    paymentRequest.setTicketId(savedTicket.getId()); // Link to the newly created ticket
-
-    paymentService.createPayment(paymentRequest); // Delegate payment creation to PaymentService
+    seatOccupancyIndex.recordSeat(savedSeat);
+
+    // 9. Create Payment for the ticket (Ticket Fare, using the ticket fare as the amount).
+    //    An online payment holds the RESERVED seat only until its reservation hold expires.
+    Payment payment = new Payment(BigDecimal.valueOf(request.getFare()), request.getPaymentType(),
+            PaymentPurpose.TICKET_FARE, savedTicket);
+    if (receipt != null) {
+      payment.setReceipt(receipt.getDigest(), receipt.getSize(), receipt.getContentType());
+    }
+    if (request.getPaymentType() == PaymentType.ONLINE) {
+      reservationHoldScheduler.startHold(payment);
+    }
+    Payment savedPayment = paymentRepository.save(payment);
+    if (savedPayment.getHoldExpiresAt() != null) {
+      reservationHoldScheduler.track(savedPayment);
+    }
 
     // 10. Return Response DTO
     return mapEntityToDto(savedTicket);
   }
 
+  /**
+   * Books several seats of one trip for one passenger, paid in cash.
+   *
+   * @param request The group booking request data.
+   * @return The created TicketResponses, in the order the seats were requested.
+   */
+  public List<TicketResponse> createGroupTicketsForCash(GroupTicketRequest request) {
+    if (request.getPaymentType() != PaymentType.CASH) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "This endpoint is for CASH payments only.");
+    }
+    if (request.getOnlineReceipt() != null && request.getOnlineReceipt().length > 0) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cash payments should not include an online receipt.");
+    }
+
+    return createGroupTickets(request, null);
+  }
+
+  /**
+   * Books several seats of one trip for one passenger, paid online.
+   *
+   * @param request The group booking request data.
+   * @return The created TicketResponses, in the order the seats were requested.
+   */
+  public List<TicketResponse> createGroupTicketsForOnline(GroupTicketRequest request) {
+    if (request.getPaymentType() != PaymentType.ONLINE) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "This endpoint is for ONLINE payments only.");
+    }
+    if (request.getOnlineReceipt() == null || request.getOnlineReceipt().length == 0) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Online receipt is required for online payments.");
+    }
+
+    // One stored receipt backs the payment of every seat in the group
+    return createGroupTickets(request, receiptStore.store(request.getOnlineReceipt()));
+  }
+
+  /**
+   * Books several seats of one trip for one passenger, paid online with a receipt that was already
+   * streamed into the ReceiptStore (multipart uploads).
+   *
+   * @param request The group booking request data (without receipt bytes).
+   * @param receipt The stored online receipt.
+   * @return The created TicketResponses, in the order the seats were requested.
+   */
+  public List<TicketResponse> createGroupTicketsForOnline(GroupTicketRequest request, ReceiptStore.StoredReceipt receipt) {
+    if (request.getPaymentType() != PaymentType.ONLINE) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "This endpoint is for ONLINE payments only.");
+    }
+    if (request.getOnlineReceipt() != null) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Send the online receipt as the receipt part only.");
+    }
+
+    return createGroupTickets(request, receipt);
+  }
+
+  // Rejects a seat requested twice, locks every requested cell, then books the group in a transaction
+  // of its own (see bookWhileLocked)
+  private List<TicketResponse> createGroupTickets(GroupTicketRequest request, ReceiptStore.StoredReceipt receipt) {
+    List<SeatPositionRequest> positions = request.getSeats();
+
+    // 1. Reject the same seat requested twice
+    Set<List<Integer>> distinctPositions = new HashSet<>();
+    for (SeatPositionRequest position : positions) {
+      if (!distinctPositions.add(List.of(position.getRowPosition(), position.getColumnPosition()))) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "Seat at Row: " + position.getRowPosition() + ", Column: " + position.getColumnPosition() +
+                        " is requested more than once.");
+      }
+    }
+
+    // 2. Lock every requested cell
+    List<int[]> cells = positions.stream()
+            .map(position -> new int[] { position.getRowPosition(), position.getColumnPosition() })
+            .collect(Collectors.toList());
+    SeatLockManager.SeatLock seatLock = seatLockManager.lockAll(request.getTripId(), cells);
+    return bookWhileLocked(seatLock, () -> createGroupTicketsInternal(request, receipt));
+  }
+
+  /**
+   * Internal helper for group bookings. All seats are validated before anything is written, the trip
+   * and user are fetched once, and seats, tickets and payments are each saved with a single saveAll.
+   * Any failure rolls back the whole group. Runs inside the booking transaction, with every requested
+   * cell already locked.
+   *
+   * @param request The group booking request data.
+   * @param receipt The stored online receipt (null for cash).
+   * @return The created TicketResponses.
+   */
+  private List<TicketResponse> createGroupTicketsInternal(GroupTicketRequest request, ReceiptStore.StoredReceipt receipt) {
+    List<SeatPositionRequest> positions = request.getSeats();
+
+    // 3. Fetch Trip (with its bus layout) and User once for the whole group
+    Trip trip = tripRepository.findWithBusById(request.getTripId())
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Trip not found with ID: " + request.getTripId()));
+    User user = userRepository.findById(request.getUserId())
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "User (passenger) not found with ID: " + request.getUserId()));
+
+    // 4. Validate all seats against the bus layout and the current occupancy
+    Integer rowCount = trip.getBus().getRowCount();
+    Integer columnCount = trip.getBus().getColumnCount();
+    SeatOccupancyIndex.TripSeatMap seatMap = seatOccupancyIndex.get(trip);
+    for (SeatPositionRequest position : positions) {
+      if (position.getRowPosition() > rowCount || position.getColumnPosition() > columnCount) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "Seat at Row: " + position.getRowPosition() + ", Column: " + position.getColumnPosition() +
+                        " is outside the " + rowCount + "x" + columnCount + " layout of the trip's bus.");
+      }
+      SeatStatus existingStatus = seatMap.getStatus(position.getRowPosition(), position.getColumnPosition());
+      if (existingStatus != null && existingStatus != SeatStatus.OPEN) {
+        throw new ResponseStatusException(HttpStatus.CONFLICT,
+                "Seat at Row: " + position.getRowPosition() + ", Column: " + position.getColumnPosition() +
+                        " already exists and is " + existingStatus + " for Trip ID " + request.getTripId());
+      }
+    }
+
+    // Clear the seats that were given up, so their cells can be booked again
+    for (SeatPositionRequest position : positions) {
+      if (seatMap.getStatus(position.getRowPosition(), position.getColumnPosition()) == SeatStatus.OPEN) {
+        clearReleasedSeat(trip, position.getRowPosition(), position.getColumnPosition());
+      }
+    }
+
+    // Take the seats from the trip's availability in one conditional update
+    tripAvailabilityCounter.takeSeats(trip, positions.size());
+
+    // 5. Save all Seats
+    SeatStatus seatStatus = (request.getPaymentType() == PaymentType.CASH) ? SeatStatus.BOOKED : SeatStatus.RESERVED;
+    List<Seat> newSeats = new ArrayList<>();
+    for (SeatPositionRequest position : positions) {
+      Seat seat = new Seat(position.getRowPosition(), position.getColumnPosition(), trip);
+      seat.setStatus(seatStatus);
+      newSeats.add(seat);
+    }
+    List<Seat> savedSeats;
+    try {
+      savedSeats = seatRepository.saveAllAndFlush(newSeats);
+    } catch (DataIntegrityViolationException e) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT,
+              "One of the selected seats was just booked for Trip ID " + request.getTripId());
+    }
+
+    // 6. Save all Tickets, linking each seat back to its ticket in memory
+    List<Ticket> newTickets = new ArrayList<>();
+    for (Seat seat : savedSeats) {
+      newTickets.add(new Ticket(seat, trip, request.getFare(), request.getDropOff(), user));
+    }
+    List<Ticket> savedTickets = ticketRepository.saveAll(newTickets);
+    for (int i = 0; i < savedSeats.size(); i++) {
+      savedSeats.get(i).setTicket(savedTickets.get(i));
+      seatOccupancyIndex.recordSeat(savedSeats.get(i));
+    }
+
+    // 7. Save one TICKET_FARE Payment per ticket (online payments hold their seats until the hold expires)
+    List<Payment> newPayments = new ArrayList<>();
+    for (Ticket ticket : savedTickets) {
+      Payment payment = new Payment(BigDecimal.valueOf(request.getFare()), request.getPaymentType(),
+              PaymentPurpose.TICKET_FARE, ticket);
+      if (receipt != null) {
+        payment.setReceipt(receipt.getDigest(), receipt.getSize(), receipt.getContentType());
+      }
+      if (request.getPaymentType() == PaymentType.ONLINE) {
+        reservationHoldScheduler.startHold(payment);
+      }
+      newPayments.add(payment);
+    }
+    List<Payment> savedPayments = paymentRepository.saveAll(newPayments);
+    for (Payment payment : savedPayments) {
+      if (payment.getHoldExpiresAt() != null) {
+        reservationHoldScheduler.track(payment);
+      }
+    }
+
+    // 8. Map responses from what was just written (trip details are computed once for the group)
+    TripResponse tripDetails = tripService.mapEntityToDto(trip);
+    UserDTO userDetails = userService.mapEntityToDto(user);
+    List<TicketResponse> responses = new ArrayList<>();
+    for (int i = 0; i < savedTickets.size(); i++) {
+      Ticket ticket = savedTickets.get(i);
+      responses.add(new TicketResponse(
+              ticket.getId(),
+              ticket.getFare(),
+              ticket.getDropOff(),
+              seatService.mapEntityToDto(savedSeats.get(i)),
+              tripDetails,
+              userDetails,
+              List.of(mapPaymentEntityToDto(savedPayments.get(i)))
+      ));
+    }
+    return responses;
+  }
+
+  /**
+   * Runs a booking in a transaction of its own while holding its seat locks, and releases them once it
+   * has committed (or rolled back) and the SeatOccupancyIndex is up to date. The locks are taken before
+   * the transaction opens, so requests queued on a busy seat do not hold a pooled connection. Called
+   * within an existing transaction, the booking joins it and the locks are kept until it ends.
+   */
+  private <T> T bookWhileLocked(SeatLockManager.SeatLock seatLock, Supplier<T> booking) {
+    if (TransactionSynchronizationManager.isActualTransactionActive()) {
+      seatLockManager.holdUntilTransactionEnds(seatLock);
+      return booking.get();
+    }
+    try (seatLock) {
+      return bookingTransaction.execute(status -> booking.get());
+    }
+  }
+
+  // A cell is free when it has no seat, or an OPEN one whose booking was rejected or whose hold expired
+  private void rejectIfSeatTaken(TicketRequest request, SeatStatus existingStatus) {
+    if (existingStatus != null && existingStatus != SeatStatus.OPEN) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT,
+              "Seat at Row: " + request.getRowPosition() + ", Column: " + request.getColumnPosition() +
+                      " already exists and is " + existingStatus + " for Trip ID " + request.getTripId());
+    }
+  }
+
+  /**
+   * Deletes the OPEN seat at a position so a new seat can take the cell (the seats unique constraint allows
+   * only one per position). The seat row is locked and checked again first, as a review may be taking it
+   * back. The ticket and payments of the booking that gave it up are kept, without a seat. Flushed right
+   * away, as Hibernate would otherwise insert the new seat before deleting this one.
+   *
+   * @throws ResponseStatusException 409 if the seat was taken again in the meantime (e.g. on another node).
+   */
+  private void clearReleasedSeat(Trip trip, int rowPosition, int columnPosition) {
+    Seat releasedSeat = seatRepository.findByPositionForUpdate(trip, rowPosition, columnPosition)
+            .orElse(null);
+    if (releasedSeat == null) return;
+    if (releasedSeat.getStatus() != SeatStatus.OPEN) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT,
+              "Seat at Row: " + rowPosition + ", Column: " + columnPosition +
+                      " already exists and is " + releasedSeat.getStatus() + " for Trip ID " + trip.getId());
+    }
+    Ticket releasedTicket = releasedSeat.getTicket();
+    if (releasedTicket != null) {
+      releasedTicket.setSeat(null);
+      releasedSeat.setTicket(null); // Otherwise the cascade would delete the ticket with the seat
+    }
+    seatRepository.delete(releasedSeat);
+    seatRepository.flush();
+  }
+
   /**
    * Retrieves all Ticket records.
    *
@@ -211,8 +528,15 @@ public class TicketService {
     boolean seatDetailsChanged = false;
     Long newTripId = null;
     Integer newRowPosition = null;
-    Integer newColumnPosition = null;            
-    
+    Integer newColumnPosition = null;
+
+    // A ticket whose seat was given up and booked by someone else has no seat left to move
+    if (existingTicket.getSeat() == null
+            && (request.getTripId() != null || request.getRowPosition() != null || request.getColumnPosition() != null)) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT,
+              "Ticket with ID " + id + " no longer holds a seat; book a new one instead.");
+    }
+
     // Check if tripId is provided and different
     if (request.getTripId() != null) {
       if (!request.getTripId().equals(existingTicket.getTrip().getId())) {
@@ -293,6 +617,11 @@ public class TicketService {
       // Remove the ticket reference from the seat before deleting if it's bidirectional
       // associatedSeat.setTicket(null);
       seatRepository.delete(associatedSeat); // Explicitly delete the seat
+      if (TripAvailabilityCounter.isTaken(associatedSeat.getStatus())) {
+        tripAvailabilityCounter.releaseSeats(associatedSeat.getTrip(), 1);
+      }
+      seatOccupancyIndex.removeSeat(associatedSeat.getTrip().getId(), associatedSeat.getRowPosition(),
+              associatedSeat.getColumnPosition(), associatedSeat.getId());
     }
   }
 
@@ -365,7 +694,10 @@ public class TicketService {
               payment.getType(),
               payment.getPurpose(),
               payment.getDate(),
-              payment.getOnlineReceipt(),
+              payment.getReceiptDigest() != null ? "/api/payments/" + payment.getId() + "/receipt" : null,
+              ReceiptImagePipeline.hasPreview(payment.getReceiptContentType()) ? "/api/payments/" + payment.getId() + "/receipt?variant=thumbnail" : null,
+              payment.getReceiptSize(),
+              payment.getReceiptContentType(),
               payment.getTicket() != null ? payment.getTicket().getId() : null
       );
   }
@@ -0,0 +1,159 @@
+package edu.cit.btts.service;
+
+import edu.cit.btts.model.RevokedToken;
+import edu.cit.btts.repository.RevokedTokenRepository;
+import edu.cit.btts.util.BloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The access tokens revoked before their expiry (e.g. on sign-out), by jti. The list is persisted in the
+ * revoked_tokens table and mirrored in an in-memory Bloom filter, so checking a token that was never
+ * revoked (nearly every request) needs no I/O. Only when the filter answers "maybe" is the table asked,
+ * and that answer is remembered in a small LRU map. A revocation is never overwritten there by an
+ * older "not revoked" answer that was read while it was being saved.
+ *
+ * Tokens revoked on other nodes are picked up by a periodic refresh. Entries for tokens that have
+ * expired anyway are purged, and the filter rebuilt without them, on a longer interval. Until the first
+ * load has finished, every check goes to the database.
+ *
+ * Role changes and deleted users are handled per user by {@link TokenVersionRegistry}, which keeps the
+ * deletions in the revoked_users table so every node turns their tokens away; this list is for turning
+ * away single tokens.
+ */
+@Component
+public class TokenRevocationList {
+
+  private static final Logger log = LoggerFactory.getLogger(TokenRevocationList.class);
+
+  // Revocations are stamped with the revoking node's clock; re-read a little of the past to allow for skew
+  private static final Duration REFRESH_OVERLAP = Duration.ofMinutes(1);
+
+  private final RevokedTokenRepository revokedTokenRepository;
+  private final int expectedEntries;
+  private final double falsePositiveRate;
+  private final Map<String, Boolean> decisions;
+  private volatile BloomFilter filter;
+  private volatile boolean loaded;
+  private LocalDateTime refreshedUpTo; // Guarded by this
+
+  public TokenRevocationList(RevokedTokenRepository revokedTokenRepository,
+                             @Value("${jwt.revocation.expected-entries:100000}") int expectedEntries,
+                             @Value("${jwt.revocation.false-positive-rate:0.001}") double falsePositiveRate,
+                             @Value("${jwt.revocation.decision-cache-size:10000}") int decisionCacheSize) {
+    this.revokedTokenRepository = revokedTokenRepository;
+    this.expectedEntries = expectedEntries;
+    this.falsePositiveRate = falsePositiveRate;
+    this.filter = new BloomFilter(expectedEntries, falsePositiveRate);
+    this.decisions = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+        return size() > decisionCacheSize;
+      }
+    };
+  }
+
+  /**
+   * @return Whether the token with this jti has been revoked.
+   */
+  public boolean isRevoked(String jti) {
+    if (loaded && !filter.mightContain(jti)) {
+      return false; // Definitely never revoked
+    }
+    Boolean decided;
+    synchronized (decisions) {
+      decided = decisions.get(jti);
+    }
+    if (decided != null) {
+      return decided;
+    }
+    boolean revoked = revokedTokenRepository.existsByJti(jti);
+    synchronized (decisions) {
+      // A revoke() during the read has stored true already; the stale false must not replace it
+      return decisions.merge(jti, revoked, Boolean::logicalOr);
+    }
+  }
+
+  /**
+   * Revokes a token until it expires.
+   *
+   * @param jti The token's jti claim.
+   * @param userId The user it was issued to, for the record.
+   * @param expiresAt The token's expiry; the entry is purged after it.
+   */
+  public synchronized void revoke(String jti, Long userId, Date expiresAt) {
+    try {
+      revokedTokenRepository.save(new RevokedToken(jti, userId, LocalDateTime.ofInstant(expiresAt.toInstant(), ZoneId.systemDefault())));
+    } catch (DataIntegrityViolationException e) {
+      // Already revoked
+    }
+    filter.add(jti);
+    remember(jti, true);
+  }
+
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void loadOnStartup() {
+    int revoked = rebuild();
+    log.info("Loaded {} revoked token(s)", revoked);
+  }
+
+  // Picks up tokens revoked on other nodes
+  @Scheduled(fixedDelayString = "${jwt.revocation.refresh-interval-ms:30000}",
+             initialDelayString = "${jwt.revocation.refresh-interval-ms:30000}")
+  public synchronized void refresh() {
+    if (!loaded) {
+      rebuild();
+      return;
+    }
+    LocalDateTime now = LocalDateTime.now();
+    for (String jti : revokedTokenRepository.findLiveJtisRevokedAfter(refreshedUpTo.minus(REFRESH_OVERLAP), now)) {
+      filter.add(jti);
+      remember(jti, true);
+    }
+    refreshedUpTo = now;
+  }
+
+  /**
+   * Purges entries of expired tokens and rebuilds the filter from the rest (a Bloom filter cannot drop
+   * entries), sized for at least twice as many as are left.
+   *
+   * @return The number of revoked tokens still live.
+   */
+  @Scheduled(fixedDelayString = "${jwt.revocation.rebuild-interval-ms:3600000}",
+             initialDelayString = "${jwt.revocation.rebuild-interval-ms:3600000}")
+  public synchronized int rebuild() {
+    LocalDateTime now = LocalDateTime.now();
+    revokedTokenRepository.deleteExpiredBefore(now);
+    List<String> live = revokedTokenRepository.findLiveJtis(now);
+    BloomFilter rebuilt = new BloomFilter(Math.max(expectedEntries, live.size() * 2), falsePositiveRate);
+    live.forEach(rebuilt::add);
+    filter = rebuilt;
+    refreshedUpTo = now;
+    loaded = true;
+    return live.size();
+  }
+
+  private void remember(String jti, boolean revoked) {
+    synchronized (decisions) {
+      decisions.put(jti, revoked);
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package edu.cit.btts.service;
+
+import edu.cit.btts.model.RevokedUser;
+import edu.cit.btts.repository.RevokedUserRepository;
+import edu.cit.btts.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The current token version of every user, kept in memory so a JWT can be checked against it without a
+ * database read. A user's version is raised when their role changes (or they are deleted), which turns
+ * away tokens issued before the change even though their role claim is still validly signed.
+ *
+ * Only users whose version was ever raised are held; everyone else is at version 0. A deleted user has
+ * no row left to carry a version, so the deletion is recorded in the revoked_users table until every
+ * access token issued before it has expired. Both tables are loaded on startup and refreshed
+ * periodically, so a change made on another node is enforced here within one refresh interval. Until the first load has finished, {@link #isLoaded()} is false and callers should
+ * check tokens against the database instead.
+ */
+@Component
+public class TokenVersionRegistry {
+
+  private static final Logger log = LoggerFactory.getLogger(TokenVersionRegistry.class);
+
+  // Version of a deleted user: no token is current for them any more
+  private static final int REVOKED = Integer.MAX_VALUE;
+
+  private final UserRepository userRepository;
+  private final RevokedUserRepository revokedUserRepository;
+  private final long accessTokenLifetimeMs;
+  private final ConcurrentMap<Long, Integer> versions = new ConcurrentHashMap<>();
+  private volatile boolean loaded;
+
+  public TokenVersionRegistry(UserRepository userRepository, RevokedUserRepository revokedUserRepository,
+                              @Value("${jwt.expiration}") long accessTokenLifetimeMs) {
+    this.userRepository = userRepository;
+    this.revokedUserRepository = revokedUserRepository;
+    this.accessTokenLifetimeMs = accessTokenLifetimeMs;
+  }
+
+  /**
+   * @return Whether a token carrying this version is still valid for the user.
+   */
+  public boolean isCurrent(Long userId, int tokenVersion) {
+    return tokenVersion >= versions.getOrDefault(userId, 0);
+  }
+
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+  /**
+   * Records a user's new version (call after raising it in the database). Never lowers a version.
+   */
+  public void record(Long userId, int tokenVersion) {
+    if (tokenVersion > 0) {
+      versions.merge(userId, tokenVersion, Math::max);
+    }
+  }
+
+  /**
+   * Turns away every token of a deleted user, on this node once the deletion commits and on the others
+   * after their next refresh.
+   */
+  public void revoke(Long userId) {
+    revokedUserRepository.save(new RevokedUser(userId, LocalDateTime.now().plus(Duration.ofMillis(accessTokenLifetimeMs))));
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          versions.put(userId, REVOKED);
+        }
+      });
+    } else {
+      versions.put(userId, REVOKED);
+    }
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void loadOnStartup() {
+    refresh();
+    log.info("Loaded token versions of {} user(s)", versions.size());
+  }
+
+  // Picks up versions raised on other nodes
+  @Scheduled(fixedDelayString = "${jwt.token-version.refresh-interval-ms:30000}",
+             initialDelayString = "${jwt.token-version.refresh-interval-ms:30000}")
+  public void refresh() {
+    userRepository.findRaisedTokenVersions().forEach(version -> record(version.getUserId(), version.getTokenVersion()));
+    revokedUserRepository.findLiveUserIds(LocalDateTime.now()).forEach(userId -> versions.put(userId, REVOKED));
+    loaded = true;
+  }
+
+  // Deletes revocations whose users' tokens have all expired (the in-memory entries stay until restart)
+  @Scheduled(fixedDelayString = "${jwt.token-version.purge-interval-ms:3600000}",
+             initialDelayString = "${jwt.token-version.purge-interval-ms:3600000}")
+  public void purgeExpiredRevocations() {
+    revokedUserRepository.deleteExpiredBefore(LocalDateTime.now());
+  }
+}
@@ -0,0 +1,155 @@
+package edu.cit.btts.service;
+
+import edu.cit.btts.dto.AvailableSeatCorrection;
+import edu.cit.btts.model.SeatStatus;
+import edu.cit.btts.model.Trip;
+import edu.cit.btts.repository.TripRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains Trip.availableSeats: the bus capacity minus the trip's RESERVED and BOOKED seats.
+ * Every change is a single conditional UPDATE on the trip row, so concurrent bookings on different
+ * nodes cannot lose updates and the counter never goes below zero. Callers must already be in the
+ * transaction that writes the seat, so the counter and the seat commit or roll back together.
+ */
+@Component
+public class TripAvailabilityCounter {
+
+  private static final Logger log = LoggerFactory.getLogger(TripAvailabilityCounter.class);
+
+  // Seat statuses that take a seat away from sale
+  private static final Set<SeatStatus> TAKEN = EnumSet.of(SeatStatus.RESERVED, SeatStatus.BOOKED);
+
+  private final TripRepository tripRepository;
+  private final TripCache tripCache;
+
+  public TripAvailabilityCounter(TripRepository tripRepository, TripCache tripCache) {
+    this.tripRepository = tripRepository;
+    this.tripCache = tripCache;
+  }
+
+  /**
+   * @return Whether a seat with this status counts against the trip's availability.
+   */
+  public static boolean isTaken(SeatStatus status) {
+    return status != null && TAKEN.contains(status);
+  }
+
+  /**
+   * Takes seats from a trip's availability.
+   *
+   * @param trip The trip (its in-memory counter is kept in step when loaded).
+   * @param count The number of seats taken.
+   * @throws ResponseStatusException (409) if the trip has fewer seats left than requested.
+   */
+  public void takeSeats(Trip trip, int count) {
+    if (tripRepository.decrementAvailableSeats(trip.getId(), count) == 0) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT,
+              "Trip ID " + trip.getId() + " does not have " + count + " available seat(s) left.");
+    }
+    if (trip.getAvailableSeats() != null) {
+      trip.setAvailableSeats(trip.getAvailableSeats() - count);
+    }
+    tripCache.evictTrip(trip.getId());
+  }
+
+  /**
+   * Gives seats back to a trip's availability.
+   *
+   * @param trip The trip (its in-memory counter is kept in step when loaded).
+   * @param count The number of seats released.
+   */
+  public void releaseSeats(Trip trip, int count) {
+    releaseSeats(trip.getId(), count);
+    if (trip.getAvailableSeats() != null) {
+      trip.setAvailableSeats(trip.getAvailableSeats() + count);
+    }
+  }
+
+  /**
+   * Gives seats back to the availability of a trip that is not loaded.
+   */
+  public void releaseSeats(Long tripId, int count) {
+    tripRepository.incrementAvailableSeats(tripId, count);
+    tripCache.evictTrip(tripId);
+  }
+
+  /**
+   * Adjusts a trip's availability for a seat moving from one status to another.
+   *
+   * @throws ResponseStatusException (409) if the seat becomes taken but the trip has no seats left.
+   */
+  public void onSeatStatusChange(Trip trip, SeatStatus oldStatus, SeatStatus newStatus) {
+    boolean wasTaken = isTaken(oldStatus);
+    boolean isTaken = isTaken(newStatus);
+    if (!wasTaken && isTaken) {
+      takeSeats(trip, 1);
+    } else if (wasTaken && !isTaken) {
+      releaseSeats(trip, 1);
+    }
+  }
+
+  /**
+   * Recomputes one trip's availability from the seats table (e.g. after its bus changed).
+   *
+   * @param trip The trip; its in-memory counter is refreshed with the recomputed value.
+   */
+  @Transactional
+  public void recompute(Trip trip) {
+    tripRepository.recomputeAvailableSeats(List.of(trip.getId()), TAKEN);
+    trip.setAvailableSeats(tripRepository.findAvailableSeatsById(trip.getId()));
+    tripCache.evictTrip(trip.getId());
+  }
+
+  /**
+   * Recomputes the availability of several trips from the seats table (e.g. after their bus layout changed).
+   */
+  @Transactional
+  public void recompute(Collection<Long> tripIds) {
+    if (tripIds.isEmpty()) return;
+    tripRepository.recomputeAvailableSeats(tripIds, TAKEN);
+    tripCache.evictTrips(tripIds);
+  }
+
+  /**
+   * Compares every trip's counter against its seats and corrects those that drifted.
+   *
+   * @return The corrections that were made (empty if every counter was right).
+   */
+  @Transactional
+  public List<AvailableSeatCorrection> reconcile() {
+    List<TripRepository.AvailableSeatDrift> drifts = tripRepository.findAvailableSeatDrift(TAKEN);
+    if (drifts.isEmpty()) return List.of();
+
+    List<Long> tripIds = drifts.stream().map(TripRepository.AvailableSeatDrift::getTripId).collect(Collectors.toList());
+    tripRepository.recomputeAvailableSeats(tripIds, TAKEN);
+    tripCache.evictTrips(tripIds);
+
+    return drifts.stream()
+            .map(drift -> new AvailableSeatCorrection(drift.getTripId(), drift.getStoredAvailableSeats(), drift.getActualAvailableSeats()))
+            .collect(Collectors.toList());
+  }
+
+  // Fills in counters of trips created before the column existed (and fixes any drift) on startup
+  @EventListener(ApplicationReadyEvent.class)
+  @Transactional
+  public void reconcileOnStartup() {
+    int corrected = reconcile().size();
+    if (corrected > 0) {
+      log.info("Corrected the available seat counter of {} trips", corrected);
+    }
+  }
+}
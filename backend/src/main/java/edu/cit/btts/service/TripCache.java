@@ -0,0 +1,200 @@
+package edu.cit.btts.service;
+
+import edu.cit.btts.dto.CacheStats;
+import edu.cit.btts.dto.TripResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory cache of TripResponses for the passenger-facing reads: the trips of a date and a single trip.
+ * Both caches are bounded LRU maps whose entries also expire after a time to live.
+ *
+ * Writes invalidate precisely: a trip's entry and the date list containing it are dropped whenever the
+ * trip, its bus, its route or its available seat counter changes. Inside a transaction the entries are
+ * dropped again once it completes, so a read racing the write cannot cache the data it replaced.
+ */
+@Component
+public class TripCache {
+
+  private final BoundedCache<Long, TripResponse> tripsById;
+  private final BoundedCache<LocalDate, DateEntry> tripsByDate;
+
+  public TripCache(@Value("${booking.trip-cache.max-trips:10000}") int maxTrips,
+                   @Value("${booking.trip-cache.max-dates:366}") int maxDates,
+                   @Value("${booking.trip-cache.ttl:PT5M}") Duration ttl) {
+    this.tripsById = new BoundedCache<>("trips-by-id", maxTrips, ttl);
+    this.tripsByDate = new BoundedCache<>("trips-by-date", maxDates, ttl);
+  }
+
+  /**
+   * @return The cached TripResponse of a trip, loading (and caching) it on a miss.
+   */
+  public TripResponse getTrip(Long tripId, Supplier<TripResponse> loader) {
+    return tripsById.get(tripId, loader);
+  }
+
+  /**
+   * @return The cached TripResponses of a date, loading (and caching) them on a miss.
+   */
+  public List<TripResponse> getTripsByDate(LocalDate date, Supplier<List<TripResponse>> loader) {
+    return tripsByDate.get(date, () -> new DateEntry(loader.get())).trips;
+  }
+
+  /**
+   * Drops a trip's entry and the date list that contains it.
+   */
+  public void evictTrip(Long tripId) {
+    evictTrips(List.of(tripId));
+  }
+
+  public void evictTrips(Collection<Long> tripIds) {
+    if (tripIds.isEmpty()) return;
+    Set<Long> ids = Set.copyOf(tripIds);
+    afterCompletion(() -> {
+      ids.forEach(tripsById::remove);
+      tripsByDate.removeIf(entry -> entry.tripIds.stream().anyMatch(ids::contains));
+    });
+  }
+
+  /**
+   * Drops the trip list of a date (e.g. a trip was scheduled on it).
+   */
+  public void evictDate(LocalDate date) {
+    afterCompletion(() -> tripsByDate.remove(date));
+  }
+
+  /**
+   * @return Hit, miss and eviction counters of both caches.
+   */
+  public List<CacheStats> getStats() {
+    return List.of(tripsById.stats(), tripsByDate.stats());
+  }
+
+  // Runs now and, inside a transaction, again once it completes
+  private void afterCompletion(Runnable eviction) {
+    eviction.run();
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCompletion(int status) {
+          eviction.run();
+        }
+      });
+    }
+  }
+
+  private static final class DateEntry {
+
+    private final List<TripResponse> trips;
+    private final Set<Long> tripIds;
+
+    DateEntry(List<TripResponse> trips) {
+      this.trips = List.copyOf(trips);
+      this.tripIds = trips.stream().map(TripResponse::getId).collect(Collectors.toUnmodifiableSet());
+    }
+  }
+
+  /**
+   * LRU map with a size bound and a time to live. A value loaded on a miss is only stored if nothing was
+   * invalidated while it was loading, since it may have been read before that write committed.
+   */
+  private static final class BoundedCache<K, V> {
+
+    private final String name;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<K, Entry<V>> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private long generation; // Bumped by every invalidation, guarded by this
+
+    BoundedCache(String name, int maxEntries, Duration ttl) {
+      this.name = name;
+      this.maxEntries = maxEntries;
+      this.ttlNanos = ttl.toNanos();
+      this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+          if (size() > BoundedCache.this.maxEntries) {
+            evictions.incrementAndGet();
+            return true;
+          }
+          return false;
+        }
+      };
+    }
+
+    V get(K key, Supplier<V> loader) {
+      long now = System.nanoTime();
+      long generationBefore;
+      synchronized (this) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && now - entry.loadedAt < ttlNanos) {
+          hits.incrementAndGet();
+          return entry.value;
+        }
+        if (entry != null) {
+          entries.remove(key);
+          evictions.incrementAndGet();
+        }
+        generationBefore = generation;
+      }
+      misses.incrementAndGet();
+
+      V value = loader.get(); // Loaded outside the lock so a slow query does not block other readers
+      synchronized (this) {
+        if (generation == generationBefore) {
+          entries.put(key, new Entry<>(value, now));
+        }
+      }
+      return value;
+    }
+
+    synchronized void remove(K key) {
+      generation++;
+      if (entries.remove(key) != null) invalidations.incrementAndGet();
+    }
+
+    synchronized void removeIf(Predicate<V> predicate) {
+      generation++;
+      for (Iterator<Entry<V>> it = entries.values().iterator(); it.hasNext(); ) {
+        if (predicate.test(it.next().value)) {
+          it.remove();
+          invalidations.incrementAndGet();
+        }
+      }
+    }
+
+    synchronized CacheStats stats() {
+      return new CacheStats(name, entries.size(), maxEntries, hits.get(), misses.get(), evictions.get(), invalidations.get());
+    }
+  }
+
+  private static final class Entry<V> {
+
+    private final V value;
+    private final long loadedAt;
+
+    Entry(V value, long loadedAt) {
+      this.value = value;
+      this.loadedAt = loadedAt;
+    }
+  }
+}
@@ -0,0 +1,447 @@
+package edu.cit.btts.service;
+
+import edu.cit.btts.dto.StopEtaDTO;
+import edu.cit.btts.dto.TripEtaResponse;
+import edu.cit.btts.model.RouteSegmentSpeed;
+import edu.cit.btts.model.RouteWaypoint;
+import edu.cit.btts.model.Trip;
+import edu.cit.btts.model.TripStatus;
+import edu.cit.btts.repository.RouteSegmentSpeedRepository;
+import edu.cit.btts.repository.TripRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Live arrival predictions for trips that are BOARDING or DEPARTED.
+ *
+ * When a trip becomes active its route's waypoints are turned into a geometry once: segment lengths and
+ * directions on a local flat projection, cumulative distances, and the expected time from each waypoint
+ * to the end of the route from the historical speed of every segment. Each GPS sample of the trip's bus
+ * is then projected onto the current segment or the next few (constant work, no allocation), which moves
+ * the bus along the route. The ETA of a stop is the time left in the current segment plus the difference
+ * of two precomputed times-to-end, so requests are answered from memory without recomputing the route.
+ *
+ * Segment speeds are learned whenever a bus is seen entering and leaving a segment, shared by every route
+ * covering the same stretch of road, and periodically saved to route_segment_speeds so they survive
+ * restarts. Delays compare the prediction with the plan made from those speeds when the trip became active.
+ */
+@Component
+public class TripEtaEngine implements BusPositionListener {
+
+  private static final Logger log = LoggerFactory.getLogger(TripEtaEngine.class);
+
+  public static final Set<TripStatus> ACTIVE_STATUSES = EnumSet.of(TripStatus.BOARDING, TripStatus.DEPARTED);
+
+  private static final double METERS_PER_DEGREE = 6_371_000 * Math.PI / 180;
+  private static final int LOOKAHEAD_SEGMENTS = 3; // Segments a sample may jump ahead without a full scan
+  private static final double SEGMENT_START_SLACK_METERS = 25; // Still "entering" (e.g. dwelling at a stop)
+  private static final double MIN_LEARNED_SPEED_MPS = 1;
+  private static final double MAX_LEARNED_SPEED_MPS = 150 / 3.6;
+
+  private final TripRepository tripRepository;
+  private final RouteSegmentSpeedRepository routeSegmentSpeedRepository;
+  private final double defaultSpeedMps;
+  private final double offRouteMeters;
+  private final double smoothing;
+  private final ZoneId zone = ZoneId.systemDefault(); // Departure times are stored as local date-times
+
+  private final BusIdIndex<ActiveTrip> tripsByBus = new BusIdIndex<>();
+  private final Map<Long, ActiveTrip> tripsById = new ConcurrentHashMap<>();
+  private final Map<String, SegmentSpeed> segmentSpeeds = new ConcurrentHashMap<>();
+
+  public TripEtaEngine(TripRepository tripRepository,
+                       RouteSegmentSpeedRepository routeSegmentSpeedRepository,
+                       @Value("${tracking.eta.default-speed-kmh:40}") double defaultSpeedKmh,
+                       @Value("${tracking.eta.off-route-meters:500}") double offRouteMeters,
+                       @Value("${tracking.eta.speed-smoothing:0.2}") double smoothing) {
+    this.tripRepository = tripRepository;
+    this.routeSegmentSpeedRepository = routeSegmentSpeedRepository;
+    this.defaultSpeedMps = defaultSpeedKmh / 3.6;
+    this.offRouteMeters = offRouteMeters;
+    this.smoothing = smoothing;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void loadActiveTrips() {
+    for (RouteSegmentSpeed stored : routeSegmentSpeedRepository.findAll()) {
+      segmentSpeeds.put(stored.getSegmentKey(),
+              new SegmentSpeed(stored.getSegmentKey(), stored.getSpeedKmh() / 3.6, stored.getSamples()));
+    }
+    tripRepository.findWithBusAndWaypointsByStatusIn(ACTIVE_STATUSES).forEach(this::track);
+    log.info("Tracking ETAs of {} active trip(s), {} learned segment speed(s)", tripsById.size(), segmentSpeeds.size());
+  }
+
+  /**
+   * Starts, updates or stops predicting a trip after its status, bus or route changed. Runs once the
+   * current transaction commits; only active trips are read back from the database.
+   */
+  public void refreshTrip(long tripId, TripStatus status) {
+    afterCommit(() -> {
+      if (!ACTIVE_STATUSES.contains(status)) {
+        untrack(tripId);
+        return;
+      }
+      tripRepository.findWithBusAndWaypointsById(tripId).ifPresentOrElse(this::track, () -> untrack(tripId));
+    });
+  }
+
+  /**
+   * Stops predicting a trip (called when it is deleted).
+   */
+  public void removeTrip(long tripId) {
+    afterCommit(() -> untrack(tripId));
+  }
+
+  @Override
+  public void onPosition(long busId, long timestamp, double latitude, double longitude, float speed, float heading) {
+    ActiveTrip trip = tripsByBus.get(busId);
+    if (trip != null) {
+      trip.advance(timestamp, latitude, longitude);
+    }
+  }
+
+  /**
+   * @param stop Only this stop (case-insensitive), or null for every named waypoint.
+   * @return The live ETAs of an active trip, read from memory.
+   * @throws ResponseStatusException (404) if the trip is not active, has no route path, or has no such stop.
+   */
+  public TripEtaResponse getTripEta(long tripId, String stop) {
+    ActiveTrip trip = tripsById.get(tripId);
+    if (trip == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+              "No live ETA for trip ID: " + tripId + " (it is not boarding or departed, or its route has no waypoints).");
+    }
+    TripEtaResponse response = trip.snapshot(stop);
+    if (response.getStops().isEmpty()) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Trip ID " + tripId + " has no stop named '" + stop + "'.");
+    }
+    return response;
+  }
+
+  // Saves the segment speeds learned since the last flush
+  @Scheduled(fixedDelayString = "${tracking.eta.flush-interval-ms:300000}")
+  public void flushSegmentSpeeds() {
+    List<RouteSegmentSpeed> changed = new ArrayList<>();
+    for (SegmentSpeed segmentSpeed : segmentSpeeds.values()) {
+      synchronized (segmentSpeed) {
+        if (!segmentSpeed.dirty) continue;
+        segmentSpeed.dirty = false;
+        changed.add(new RouteSegmentSpeed(segmentSpeed.key, segmentSpeed.metersPerSecond * 3.6, segmentSpeed.samples));
+      }
+    }
+    if (!changed.isEmpty()) {
+      routeSegmentSpeedRepository.saveAll(changed);
+    }
+  }
+
+  // --- Helper Methods ---
+
+  private synchronized void track(Trip trip) {
+    List<RouteWaypoint> waypoints = trip.getRoute().getWaypoints();
+    if (waypoints.size() < 2) {
+      untrack(trip.getId());
+      return;
+    }
+    RouteGeometry geometry = new RouteGeometry(waypoints);
+    long departure = trip.getDepartureTime().atZone(zone).toInstant().toEpochMilli();
+    ActiveTrip previous = tripsById.get(trip.getId());
+    ActiveTrip active = new ActiveTrip(trip.getId(), trip.getBus().getId(), trip.getStatus(), departure, geometry);
+    if (previous != null) {
+      if (previous.busId == active.busId && previous.geometry.samePathAs(geometry)) {
+        active.continueFrom(previous); // e.g. BOARDING -> DEPARTED: keep the bus's progress and the plan
+      }
+      removeBusMapping(previous);
+    }
+    ActiveTrip other = tripsByBus.get(active.busId);
+    if (other != null && other.tripId != active.tripId) {
+      log.warn("Bus {} is on active trips {} and {}; positions now count for trip {}",
+              active.busId, other.tripId, active.tripId, active.tripId);
+    }
+    tripsById.put(active.tripId, active);
+    tripsByBus.put(active.busId, active);
+  }
+
+  private synchronized void untrack(long tripId) {
+    ActiveTrip removed = tripsById.remove(tripId);
+    if (removed != null) {
+      removeBusMapping(removed);
+    }
+  }
+
+  private void removeBusMapping(ActiveTrip trip) {
+    if (tripsByBus.get(trip.busId) == trip) {
+      tripsByBus.remove(trip.busId);
+    }
+  }
+
+  private void afterCommit(Runnable action) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          action.run();
+        }
+      });
+    } else {
+      action.run();
+    }
+  }
+
+  private SegmentSpeed segmentSpeed(RouteWaypoint from, RouteWaypoint to) {
+    String key = String.format(Locale.ROOT, "%.4f,%.4f>%.4f,%.4f",
+            from.getLatitude(), from.getLongitude(), to.getLatitude(), to.getLongitude());
+    return segmentSpeeds.computeIfAbsent(key, k -> new SegmentSpeed(k, defaultSpeedMps, 0));
+  }
+
+  /**
+   * The learned speed of one stretch of road between two waypoints.
+   */
+  static final class SegmentSpeed {
+
+    private final String key;
+    private volatile double metersPerSecond;
+    private int samples;
+    private boolean dirty;
+
+    SegmentSpeed(String key, double metersPerSecond, int samples) {
+      this.key = key;
+      this.metersPerSecond = metersPerSecond;
+      this.samples = samples;
+    }
+
+    // A plain mean over the first traversals, then an exponential moving average
+    synchronized void learn(double observedMetersPerSecond, double smoothing) {
+      double weight = Math.max(smoothing, 1.0 / (samples + 1));
+      metersPerSecond += weight * (observedMetersPerSecond - metersPerSecond);
+      samples++;
+      dirty = true;
+    }
+  }
+
+  /**
+   * A route's path, precomputed on a local flat projection around its first waypoint.
+   */
+  final class RouteGeometry {
+
+    private final double latitude0;
+    private final double longitude0;
+    private final double metersPerDegreeLongitude;
+    private final double[] x;
+    private final double[] y;
+    private final double[] cumulativeMeters; // Distance from the origin to each waypoint
+    private final double[] lengths; // Of segment i, from waypoint i to i + 1
+    private final double[] directionX;
+    private final double[] directionY;
+    private final SegmentSpeed[] speeds;
+    private final String[] names;
+
+    RouteGeometry(List<RouteWaypoint> waypoints) {
+      int count = waypoints.size();
+      latitude0 = waypoints.get(0).getLatitude();
+      longitude0 = waypoints.get(0).getLongitude();
+      metersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude0));
+      x = new double[count];
+      y = new double[count];
+      cumulativeMeters = new double[count];
+      names = new String[count];
+      lengths = new double[count - 1];
+      directionX = new double[count - 1];
+      directionY = new double[count - 1];
+      speeds = new SegmentSpeed[count - 1];
+      for (int i = 0; i < count; i++) {
+        RouteWaypoint waypoint = waypoints.get(i);
+        x[i] = toX(waypoint.getLongitude());
+        y[i] = toY(waypoint.getLatitude());
+        names[i] = waypoint.getName();
+        if (i == 0) continue;
+        double dx = x[i] - x[i - 1];
+        double dy = y[i] - y[i - 1];
+        double length = Math.sqrt(dx * dx + dy * dy);
+        lengths[i - 1] = length;
+        directionX[i - 1] = (length > 0) ? dx / length : 0;
+        directionY[i - 1] = (length > 0) ? dy / length : 0;
+        cumulativeMeters[i] = cumulativeMeters[i - 1] + length;
+        speeds[i - 1] = segmentSpeed(waypoints.get(i - 1), waypoint);
+      }
+    }
+
+    int segmentCount() { return lengths.length; }
+
+    double toX(double longitude) { return (longitude - longitude0) * metersPerDegreeLongitude; }
+
+    double toY(double latitude) { return (latitude - latitude0) * METERS_PER_DEGREE; }
+
+    // Expected seconds from each waypoint to the end of the route, from the current segment speeds
+    void computeTimesToEnd(double[] timesToEnd) {
+      timesToEnd[timesToEnd.length - 1] = 0;
+      for (int i = lengths.length - 1; i >= 0; i--) {
+        timesToEnd[i] = timesToEnd[i + 1] + lengths[i] / speeds[i].metersPerSecond;
+      }
+    }
+
+    boolean samePathAs(RouteGeometry other) {
+      return latitude0 == other.latitude0 && longitude0 == other.longitude0
+              && Arrays.equals(x, other.x) && Arrays.equals(y, other.y);
+    }
+  }
+
+  /**
+   * Where an active trip's bus is along its route. Advanced by the ingest thread of its bus and read by
+   * ETA requests, both under the object's lock.
+   */
+  final class ActiveTrip {
+
+    private final long tripId;
+    private final long busId;
+    private final TripStatus status;
+    private final long departure; // Epoch milliseconds
+    private final RouteGeometry geometry;
+    private final double[] timesToEnd;
+    private double[] plannedOffsets; // Seconds from departure to each waypoint, as planned on activation
+
+    private int segment; // Current segment
+    private double progress; // Meters along the route
+    private long lastTimestamp; // Of the last sample on the route; 0 before the first one
+    private long segmentEnteredAt; // When the bus entered the current segment; 0 if not seen
+
+    ActiveTrip(long tripId, long busId, TripStatus status, long departure, RouteGeometry geometry) {
+      this.tripId = tripId;
+      this.busId = busId;
+      this.status = status;
+      this.departure = departure;
+      this.geometry = geometry;
+      this.timesToEnd = new double[geometry.segmentCount() + 1];
+      geometry.computeTimesToEnd(timesToEnd);
+      this.plannedOffsets = new double[timesToEnd.length];
+      for (int i = 0; i < timesToEnd.length; i++) {
+        plannedOffsets[i] = timesToEnd[0] - timesToEnd[i];
+      }
+    }
+
+    synchronized void continueFrom(ActiveTrip previous) {
+      synchronized (previous) {
+        plannedOffsets = previous.plannedOffsets;
+        segment = previous.segment;
+        progress = previous.progress;
+        lastTimestamp = previous.lastTimestamp;
+        segmentEnteredAt = previous.segmentEnteredAt;
+      }
+    }
+
+    synchronized void advance(long timestamp, double latitude, double longitude) {
+      if (timestamp <= lastTimestamp) return;
+      double px = geometry.toX(longitude);
+      double py = geometry.toY(latitude);
+
+      // Nearest point on the current segment or the next few; a full scan ahead only when off all of them
+      int last = Math.min(segment + LOOKAHEAD_SEGMENTS, geometry.segmentCount() - 1);
+      int best = nearestSegment(px, py, segment, last);
+      if (distanceSquared(best, px, py) > offRouteMeters * offRouteMeters && last < geometry.segmentCount() - 1) {
+        best = nearestSegment(px, py, segment, geometry.segmentCount() - 1);
+      }
+      if (distanceSquared(best, px, py) > offRouteMeters * offRouteMeters) {
+        return; // Off the route (detour, bad fix): keep the last prediction
+      }
+      double along = Math.max(geometry.cumulativeMeters[best] + along(best, px, py), progress);
+
+      boolean enteredNow = best > segment;
+      if (enteredNow) {
+        if (lastTimestamp > 0) {
+          long leftAt = interpolate(geometry.cumulativeMeters[segment + 1], along, timestamp);
+          if (segmentEnteredAt > 0 && leftAt > segmentEnteredAt) {
+            double observed = geometry.lengths[segment] * 1000 / (leftAt - segmentEnteredAt);
+            if (observed >= MIN_LEARNED_SPEED_MPS && observed <= MAX_LEARNED_SPEED_MPS) {
+              geometry.speeds[segment].learn(observed, smoothing);
+              geometry.computeTimesToEnd(timesToEnd); // Once per segment, not per sample
+            }
+          }
+          segmentEnteredAt = (best == segment + 1) ? interpolate(geometry.cumulativeMeters[best], along, timestamp) : 0;
+        } else {
+          segmentEnteredAt = 0;
+        }
+        segment = best;
+      }
+      if (!enteredNow && along - geometry.cumulativeMeters[segment] <= SEGMENT_START_SLACK_METERS) {
+        segmentEnteredAt = timestamp; // Not really underway yet (e.g. boarding at a stop)
+      }
+      progress = along;
+      lastTimestamp = timestamp;
+    }
+
+    synchronized TripEtaResponse snapshot(String stop) {
+      // Before the first sample the bus is at the origin, leaving at departure (or now, if that is past)
+      long base = (lastTimestamp > 0) ? lastTimestamp : Math.max(departure, System.currentTimeMillis());
+      double secondsToNextWaypoint = (lastTimestamp > 0)
+              ? (geometry.cumulativeMeters[segment + 1] - progress) / geometry.speeds[segment].metersPerSecond
+              : timesToEnd[0] - timesToEnd[1];
+      List<StopEtaDTO> stops = new ArrayList<>();
+      for (int i = 0; i < geometry.names.length; i++) {
+        String name = geometry.names[i];
+        if (name == null || (stop != null && !name.equalsIgnoreCase(stop))) continue;
+        boolean arrived = (i == geometry.names.length - 1) ? progress >= geometry.cumulativeMeters[i]
+                                                           : progress > geometry.cumulativeMeters[i];
+        if (lastTimestamp > 0 && arrived) {
+          stops.add(new StopEtaDTO(name, geometry.cumulativeMeters[i], true, null, null));
+          continue;
+        }
+        double seconds = (i <= segment) ? 0 : secondsToNextWaypoint + timesToEnd[segment + 1] - timesToEnd[i];
+        long eta = base + Math.round(seconds * 1000);
+        long planned = departure + Math.round(plannedOffsets[i] * 1000);
+        stops.add(new StopEtaDTO(name, geometry.cumulativeMeters[i], false, eta, (eta - planned) / 1000));
+      }
+      return new TripEtaResponse(tripId, busId, status, (lastTimestamp > 0) ? lastTimestamp : null, progress, stops);
+    }
+
+    private int nearestSegment(double px, double py, int from, int to) {
+      int best = from;
+      double bestDistance = Double.MAX_VALUE;
+      for (int i = from; i <= to; i++) {
+        double distance = distanceSquared(i, px, py);
+        if (distance < bestDistance) {
+          bestDistance = distance;
+          best = i;
+        }
+      }
+      return best;
+    }
+
+    // Meters along segment i to the projection of the point, clamped to the segment
+    private double along(int i, double px, double py) {
+      double t = (px - geometry.x[i]) * geometry.directionX[i] + (py - geometry.y[i]) * geometry.directionY[i];
+      return Math.max(0, Math.min(geometry.lengths[i], t));
+    }
+
+    private double distanceSquared(int i, double px, double py) {
+      double t = along(i, px, py);
+      double dx = px - (geometry.x[i] + t * geometry.directionX[i]);
+      double dy = py - (geometry.y[i] + t * geometry.directionY[i]);
+      return dx * dx + dy * dy;
+    }
+
+    // When the bus passed a point of the route, between the last sample and this one
+    private long interpolate(double pointMeters, double alongNow, long timestampNow) {
+      if (alongNow <= progress) return timestampNow;
+      double fraction = (pointMeters - progress) / (alongNow - progress);
+      return lastTimestamp + Math.round(Math.max(0, Math.min(1, fraction)) * (timestampNow - lastTimestamp));
+    }
+  }
+}
@@ -1,8 +1,11 @@
 package edu.cit.btts.service;
 
+import edu.cit.btts.dto.AvailableSeatCorrection;
 import edu.cit.btts.dto.BusDTO;
+import edu.cit.btts.dto.CacheStats;
 import edu.cit.btts.dto.RouteDTO;
 import edu.cit.btts.dto.TripCreateRequest; // New import
+import edu.cit.btts.dto.TripPageResponse;
 import edu.cit.btts.dto.TripUpdateRequest; // New import
 import edu.cit.btts.dto.TripResponse; // New import (renamed from TripDTO)
 import edu.cit.btts.model.Bus;
@@ -11,27 +14,37 @@ import edu.cit.btts.model.Trip;
 import edu.cit.btts.model.TripStatus;
 import edu.cit.btts.repository.BusRepository;
 import edu.cit.btts.repository.RouteRepository;
-import edu.cit.btts.repository.TicketRepository;
 import edu.cit.btts.repository.TripRepository;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
 import java.util.List;
 import java.util.stream.Collectors;
 
 @Service
 public class TripService {
 
+  public static final int MAX_SEARCH_PAGE_SIZE = 100;
+
   private final TripRepository tripRepository;
   private final BusRepository busRepository;
   private final RouteRepository routeRepository;
   private final BusService busService;
   private final RouteService routeService;
-  private final TicketRepository ticketRepository;
+  private final SeatOccupancyIndex seatOccupancyIndex;
+  private final TripAvailabilityCounter tripAvailabilityCounter;
+  private final TripCache tripCache;
+  private final TripEtaEngine tripEtaEngine;
+  private final LivePositionBroadcaster livePositionBroadcaster;
 
   // Constructor Injection
   public TripService(TripRepository tripRepository,
@@ -39,13 +52,21 @@ public class TripService {
                       RouteRepository routeRepository,
                       BusService busService,
                       RouteService routeService,
-                      TicketRepository ticketRepository) {
+                      SeatOccupancyIndex seatOccupancyIndex,
+                      TripAvailabilityCounter tripAvailabilityCounter,
+                      TripCache tripCache,
+                      TripEtaEngine tripEtaEngine,
+                      LivePositionBroadcaster livePositionBroadcaster) {
     this.tripRepository = tripRepository;
     this.busRepository = busRepository;
     this.routeRepository = routeRepository;
     this.busService = busService;
     this.routeService = routeService;
-    this.ticketRepository = ticketRepository;
+    this.seatOccupancyIndex = seatOccupancyIndex;
+    this.tripAvailabilityCounter = tripAvailabilityCounter;
+    this.tripCache = tripCache;
+    this.tripEtaEngine = tripEtaEngine;
+    this.livePositionBroadcaster = livePositionBroadcaster;
   }
 
   /**
@@ -83,6 +104,10 @@ public class TripService {
 
     // 4. Save Trip
     Trip savedTrip = tripRepository.save(trip);
+    tripCache.evictDate(savedTrip.getDepartureTime().toLocalDate()); // The date's cached list is missing it
+    if (TripEtaEngine.ACTIVE_STATUSES.contains(savedTrip.getStatus())) {
+      tripEtaEngine.refreshTrip(savedTrip.getId(), savedTrip.getStatus()); // Created already boarding
+    }
 
     // 5. Return DTO
     return mapEntityToDto(savedTrip);
@@ -93,43 +118,101 @@ public class TripService {
    *
    * @return A list of all TripResponses.
    */
+  @Transactional(readOnly = true)
   public List<TripResponse> getAllTrips() {
-    List<Trip> trips = tripRepository.findAllByOrderByDepartureTimeAsc();
-    return trips.stream()
-            .map(this::mapEntityToDto)
-            .collect(Collectors.toList());
+    List<Trip> trips = tripRepository.findAllWithBusAndRouteOrderByDepartureTimeAsc();
+    return mapEntitiesToDtos(trips);
   }
 
   /**
    * Retrieves all Trip records for a specific date.
+   * Served from TripCache; the list is reloaded once one of its trips changes.
    *
    * @param date The LocalDate to filter trips by.
    * @return A list of TripResponses scheduled for the given date.
    */
+  @Transactional(readOnly = true)
   public List<TripResponse> getAllTripsByDate(LocalDate date) {
+    return tripCache.getTripsByDate(date, () -> {
       // Define the start and end of the day for the given date
       LocalDateTime startOfDay = date.atStartOfDay(); // Same as date.atTime(LocalTime.MIN)
       LocalDateTime endOfDay = date.atTime(LocalTime.MAX); // Includes the last nanosecond of the day
 
-      List<Trip> trips = tripRepository.findByDepartureTimeBetweenOrderByDepartureTimeAsc(startOfDay, endOfDay);
-      System.out.println("Trips: "+ trips);
-      return trips.stream()
-              .map(this::mapEntityToDto)
-              .collect(Collectors.toList());
+      List<Trip> trips = tripRepository.findWithBusAndRouteByDepartureTimeBetween(startOfDay, endOfDay);
+      return mapEntitiesToDtos(trips);
+    });
+  }
+
+  /**
+   * Searches trips, a page at a time, in departure order (ties broken by ID).
+   * Every filter is optional. Pages are keyset paginated: the cursor encodes the departure time and ID of
+   * the last trip on the previous page, so later pages cost the same as the first one and trips added or
+   * removed meanwhile do not shift the pages.
+   *
+   * @param from Earliest departure date (inclusive).
+   * @param to Latest departure date (inclusive).
+   * @param origin Route origin.
+   * @param destination Route destination.
+   * @param status Trip status.
+   * @param minAvailableSeats Minimum number of seats still available.
+   * @param cursor The nextCursor of the previous page, or null for the first page.
+   * @param size Page size (1 to MAX_SEARCH_PAGE_SIZE).
+   * @return The page of TripResponses and the cursor of the next page.
+   * @throws ResponseStatusException (400) if the cursor or page size is invalid.
+   */
+  @Transactional(readOnly = true)
+  public TripPageResponse searchTrips(LocalDate from, LocalDate to, String origin, String destination,
+                                     TripStatus status, Integer minAvailableSeats, String cursor, int size) {
+    if (size < 1 || size > MAX_SEARCH_PAGE_SIZE) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+              "Page size must be between 1 and " + MAX_SEARCH_PAGE_SIZE + ".");
+    }
+    LocalDateTime departFrom = (from != null) ? from.atStartOfDay() : null;
+    LocalDateTime departBefore = (to != null) ? to.plusDays(1).atStartOfDay() : null;
+    LocalDateTime afterDepartureTime = null;
+    Long afterId = null;
+    if (cursor != null && !cursor.isBlank()) {
+      String[] position = decodeCursor(cursor);
+      afterDepartureTime = LocalDateTime.parse(position[0]);
+      afterId = Long.parseLong(position[1]);
+    }
+
+    // One extra ID tells whether there is a next page
+    List<Long> ids = tripRepository.searchIds(departFrom, departBefore, blankToNull(origin), blankToNull(destination),
+            status, minAvailableSeats, afterDepartureTime, afterId, Limit.of(size + 1));
+    boolean hasNext = ids.size() > size;
+    if (hasNext) ids = ids.subList(0, size);
+    if (ids.isEmpty()) return new TripPageResponse(List.of(), null);
+
+    List<Trip> trips = tripRepository.findWithBusAndRouteByIdIn(ids);
+    Trip last = trips.get(trips.size() - 1);
+    String nextCursor = hasNext ? encodeCursor(last.getDepartureTime(), last.getId()) : null;
+    return new TripPageResponse(mapEntitiesToDtos(trips), nextCursor);
   }
 
   /**
    * Retrieves a single Trip record by its ID.
+   * Served from TripCache; the entry is reloaded once the trip changes.
    *
    * @param id The ID of the trip.
    * @return The TripResponse if found.
    * @throws ResponseStatusException if the trip is not found.
    */
+  @Transactional(readOnly = true)
   public TripResponse getTripById(Long id) {
-    Trip trip = tripRepository.findById(id)
-            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
-                    "Trip not found with ID: " + id));
-    return mapEntityToDto(trip);
+    return tripCache.getTrip(id, () -> {
+      Trip trip = tripRepository.findById(id)
+              .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                      "Trip not found with ID: " + id));
+      return mapEntityToDto(trip);
+    });
+  }
+
+  /**
+   * @return Hit, miss and eviction counters of the trip caches.
+   */
+  public List<CacheStats> getCacheStats() {
+    return tripCache.getStats();
   }
 
   /**
@@ -142,6 +225,7 @@ public class TripService {
    * @return The updated TripResponse.
    * @throws ResponseStatusException if the trip, bus, or route not found, or if route conflicts.
    */
+  @Transactional
   public TripResponse updateTrip(Long id, TripUpdateRequest tripUpdateRequest) { // Changed DTO type
     Trip existingTrip = tripRepository.findById(id)
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
@@ -157,11 +241,14 @@ public class TripService {
     }
 
     // Handle Bus update if busId is provided and different
+    boolean busChanged = false;
     if (tripUpdateRequest.getBusId() != null && !existingTrip.getBus().getId().equals(tripUpdateRequest.getBusId())) {
       Bus newBus = busRepository.findById(tripUpdateRequest.getBusId())
               .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
                       "New Bus not found with ID: " + tripUpdateRequest.getBusId()));
       existingTrip.setBus(newBus);
+      seatOccupancyIndex.invalidate(id); // Seat grid is sized from the bus layout
+      busChanged = true;
     }
 
     // Handle Route update if routeId is provided and different
@@ -184,6 +271,14 @@ public class TripService {
     }
 
     Trip updatedTrip = tripRepository.save(existingTrip);
+    if (busChanged) {
+      // Capacity changed with the bus, so recompute the available seats from the new layout
+      tripAvailabilityCounter.recompute(updatedTrip);
+      livePositionBroadcaster.reassignTrip(id, updatedTrip.getBus().getId()); // Live streams follow the new bus
+    }
+    tripCache.evictTrip(id);
+    tripCache.evictDate(updatedTrip.getDepartureTime().toLocalDate()); // In case it moved to another date
+    tripEtaEngine.refreshTrip(id, updatedTrip.getStatus()); // Starts or stops live ETAs, or follows a new bus/route
     return mapEntityToDto(updatedTrip);
   }
 
@@ -199,58 +294,89 @@ public class TripService {
               "Trip not found with ID: " + id);
     }
     tripRepository.deleteById(id);
+    seatOccupancyIndex.invalidate(id);
+    tripCache.evictTrip(id);
+    tripEtaEngine.removeTrip(id);
   }
 
   /**
-   * Calculates the number of available seats for a given trip.
-   * Formula: (Bus rowCount * Bus columnCount) - total BOOKED tickets for that trip.
+   * Returns the number of available seats for a given trip.
+   * Read from the trip's counter: (Bus rowCount * Bus columnCount) - RESERVED and BOOKED seats.
    *
    * @param tripId The ID of the trip.
    * @return The number of available seats.
-   * @throws ResponseStatusException if the trip or associated bus is not found.
+   * @throws ResponseStatusException if the trip is not found.
    */
   public Integer getAvailableSeatsForTrip(Long tripId) {
     Trip trip = tripRepository.findById(tripId)
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Trip not found with ID: " + tripId));
+    return trip.getAvailableSeats();
+  }
 
-    if (trip.getBus() == null) {
-      throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Trip " + tripId + " is not associated with a bus.");
-    }
+  /**
+   * Checks every trip's available seat counter against its seats and corrects the ones that drifted.
+   *
+   * @return The corrections that were made.
+   */
+  public List<AvailableSeatCorrection> reconcileAvailableSeats() {
+    return tripAvailabilityCounter.reconcile();
+  }
+
+  // --- Helper Methods for Trip Search ---
 
-    // Get total capacity from the bus
-    Integer totalCapacity = trip.getBus().getRowCount() * trip.getBus().getColumnCount();
+  private static String blankToNull(String value) {
+    return (value == null || value.isBlank()) ? null : value.trim();
+  }
+
+  // Cursor: URL-safe Base64 of "departureTime|id" of the last trip on a page
+  private static String encodeCursor(LocalDateTime departureTime, Long id) {
+    String position = departureTime + "|" + id;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String[] decodeCursor(String cursor) {
+    try {
+      String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+      if (position.length == 2) {
+        LocalDateTime.parse(position[0]);
+        Long.parseLong(position[1]);
+        return position;
+      }
+    } catch (IllegalArgumentException | DateTimeParseException e) {
+      // Falls through to the error below
+    }
+    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid trip search cursor.");
+  }
 
-    // Count booked tickets for this trip
-    long bookedTickets = ticketRepository.countByTripId(tripId);
+  // --- Helper Methods for Entity -> Response DTO Mapping ---
 
-    return totalCapacity - (int) bookedTickets;
+  /**
+   * Maps a list of trips to TripResponses.
+   * The trips are expected to have their bus and route already fetched (see TripRepository's
+   * findAllWithBusAndRoute... / findWithBusAndRoute... queries), and availability is read from each
+   * trip's counter, so mapping a list needs no further statements.
+   *
+   * @param trips The trips to map.
+   * @return The TripResponses, in the same order as the given trips.
+   */
+  public List<TripResponse> mapEntitiesToDtos(List<Trip> trips) {
+    return trips.stream()
+            .map(this::mapEntityToDto)
+            .collect(Collectors.toList());
   }
 
-  // --- Helper Method for Entity -> Response DTO Mapping ---
   public TripResponse mapEntityToDto(Trip trip) { // Changed return type
     if (trip == null) return null;
-
     BusDTO busDetails = (trip.getBus() != null) ? busService.mapEntityToDto(trip.getBus()) : null;
     RouteDTO routeDetails = (trip.getRoute() != null) ? routeService.mapEntityToDto(trip.getRoute()) : null;
 
-    // Calculate available seats directly during mapping
-    Integer availableSeats = null;
-    if (trip.getId() != null && trip.getBus() != null && trip.getBus().getRowCount() != null && trip.getBus().getColumnCount() != null) {
-      // You need to ensure the `bus` object is loaded before accessing its properties.
-      // If FetchType.LAZY is used, this might trigger a new query or lead to LazyInitializationException
-      // if not called within a transaction or with proper fetching.
-      // The getAvailableSeatsForTrip method already handles the data fetching safely.
-      // Call the new method to get available seats.
-      availableSeats = getAvailableSeatsForTrip(trip.getId());
-    }
-
     return new TripResponse( // Changed DTO constructor call
       trip.getId(),
       trip.getDepartureTime(),
       trip.getStatus(),
       busDetails,
       routeDetails,
-      availableSeats
+      trip.getAvailableSeats()
     );
   }
-}
\ No newline at end of file
+}
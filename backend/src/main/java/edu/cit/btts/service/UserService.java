@@ -20,9 +20,14 @@ import edu.cit.btts.repository.UserRepository;
 @Service
 public class UserService {
   private final UserRepository userRepository;
+  private final TokenVersionRegistry tokenVersionRegistry;
+  private final RefreshTokenService refreshTokenService;
 
-  public UserService(UserRepository userRepository) {
+  public UserService(UserRepository userRepository, TokenVersionRegistry tokenVersionRegistry,
+                     RefreshTokenService refreshTokenService) {
     this.userRepository = userRepository;
+    this.tokenVersionRegistry = tokenVersionRegistry;
+    this.refreshTokenService = refreshTokenService;
   }
 
   /**
@@ -49,6 +54,8 @@ public class UserService {
 
   /**
    * Updates the User's role
+   * Tokens issued before a change carry the old role, so the change also raises the user's token version,
+   * which makes those tokens invalid; the user has to sign in again.
    * 
    * @param email The email of the user whose role needs to be updated
    * @param role The new role given to the user
@@ -61,8 +68,12 @@ public class UserService {
 
     // Only allow known roles
     if (role == Role.PASSENGER || role == Role.TICKET_STAFF || role == Role.TRANSIT_ADMIN) {
+        if (existing_user.getRole() != role) {
+          existing_user.setTokenVersion(existing_user.getTokenVersion() + 1);
+        }
         existing_user.setRole(role);
         userRepository.save(existing_user); // <--- Save the updated user
+        tokenVersionRegistry.record(existing_user.getId(), existing_user.getTokenVersion());
         return true;
     } else {
         return false;
@@ -144,16 +155,20 @@ public class UserService {
 
   /**
    * Deletes a User record by its ID.
+   * The user's access tokens are revoked in the same transaction, so every node turns them away.
    *
    * @param id The ID of the User to delete.
    * @throws ResponseStatusException if the User is not found.
    */
+  @Transactional
   public void deleteUser(Long id) {
     if (!userRepository.existsById(id)) {
       throw new ResponseStatusException(HttpStatus.NOT_FOUND,
               "User not found with ID: " + id);
     }
+    refreshTokenService.revokeAll(id);
     userRepository.deleteById(id);
+    tokenVersionRegistry.revoke(id); // Its tokens are otherwise still accepted until they expire
   }
 
   public UserDTO mapEntityToDto(User user) {
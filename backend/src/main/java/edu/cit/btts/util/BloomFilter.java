@@ -0,0 +1,68 @@
+package edu.cit.btts.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size Bloom filter over strings: {@link #mightContain} never misses a string that was added, and
+ * wrongly claims one that was not with about the false positive rate it was sized for. Entries cannot be
+ * removed; build a new filter to drop them. Safe for concurrent adds and lookups.
+ */
+public class BloomFilter {
+
+  private final AtomicLongArray words;
+  private final long bitCount;
+  private final int hashCount;
+
+  /**
+   * @param expectedEntries How many strings the filter is sized for.
+   * @param falsePositiveRate The false positive rate wanted at that many entries, e.g. 0.001.
+   */
+  public BloomFilter(int expectedEntries, double falsePositiveRate) {
+    long bits = (long) Math.ceil(-Math.max(expectedEntries, 1) * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+    this.words = new AtomicLongArray((int) ((Math.max(bits, 64) + 63) / 64));
+    this.bitCount = words.length() * 64L;
+    this.hashCount = Math.max(1, (int) Math.round((double) bitCount / Math.max(expectedEntries, 1) * Math.log(2)));
+  }
+
+  public void add(String value) {
+    long hash1 = fnv1a(value);
+    long hash2 = mix(hash1);
+    for (int i = 0; i < hashCount; i++) {
+      long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+      int word = (int) (bit >>> 6);
+      long mask = 1L << bit;
+      long current;
+      while (((current = words.get(word)) & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+        // Another bit of the same word was set concurrently; try again
+      }
+    }
+  }
+
+  public boolean mightContain(String value) {
+    long hash1 = fnv1a(value);
+    long hash2 = mix(hash1);
+    for (int i = 0; i < hashCount; i++) {
+      long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+      if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // 64-bit FNV-1a over the UTF-16 code units
+  private static long fnv1a(String value) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < value.length(); i++) {
+      hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  // The SplitMix64 finalizer: an independent-looking second hash for double hashing (kept odd, so nonzero)
+  private static long mix(long hash) {
+    hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+    return (hash ^ (hash >>> 31)) | 1;
+  }
+}
@@ -1,142 +1,231 @@
 package edu.cit.btts.util;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import edu.cit.btts.model.User;
 import edu.cit.btts.repository.UserRepository;
 
-import java.security.Key;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.UUID;
 import java.util.function.Function;
 
+/**
+ * Issues and verifies the application's JWTs.
+ *
+ * The signing key and the parser are built once, and a token is parsed and verified once per request into
+ * a {@link VerifiedToken} that the filter reads every claim from. Recently verified tokens are remembered
+ * by their SHA-256 digest in a small striped LRU cache (jwt.verified-cache-size, 0 turns it off), so a
+ * client sending the same token again skips the signature check and JSON parse; a cached token is still
+ * turned away once it expires.
+ */
 @Component
 public class JwtUtil {
 
-  @Value("${jwt.secret}")
-  private String secret;
-
-  @Value("${jwt.expiration}")
-  private long jwtExpirationInMs;
+  private static final int CACHE_STRIPES = 16;
 
   private final UserRepository userRepository;
+  private final long jwtExpirationInMs;
+  private final SecretKey signingKey;
+  private final JwtParser parser;
+  private final VerifiedTokenCache[] cacheStripes;
+
+  public JwtUtil(UserRepository userRepository,
+                 @Value("${jwt.secret}") String secret,
+                 @Value("${jwt.expiration}") long jwtExpirationInMs,
+                 @Value("${jwt.verified-cache-size:10000}") int verifiedCacheSize) {
+    this.userRepository = userRepository;
+    this.jwtExpirationInMs = jwtExpirationInMs;
+    this.signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret));
+    this.parser = Jwts.parser().verifyWith(signingKey).build(); // Immutable and thread-safe
+    if (verifiedCacheSize > 0) {
+      this.cacheStripes = new VerifiedTokenCache[CACHE_STRIPES];
+      for (int i = 0; i < CACHE_STRIPES; i++) {
+        cacheStripes[i] = new VerifiedTokenCache(Math.max(1, verifiedCacheSize / CACHE_STRIPES));
+      }
+    } else {
+      this.cacheStripes = null;
+    }
+  }
 
-  // Constructor injection for UserRepository
-    public JwtUtil(UserRepository userRepository) {
-        this.userRepository = userRepository;
+  /**
+   * Verifies a token's signature and expiry and reads its claims, all in one parse.
+   *
+   * @param token The compact JWT.
+   * @return The verified token.
+   * @throws io.jsonwebtoken.ExpiredJwtException if the token has expired.
+   * @throws JwtException if the token is malformed or not signed with our key.
+   * @throws IllegalArgumentException if the token is empty.
+   */
+  public VerifiedToken verify(String token) {
+    if (cacheStripes == null) {
+      return new VerifiedToken(parser.parseSignedClaims(token).getPayload());
     }
+    String digest = sha256(token);
+    VerifiedTokenCache stripe = cacheStripes[Math.floorMod(digest.hashCode(), CACHE_STRIPES)];
+    VerifiedToken cached = stripe.get(digest);
+    if (cached != null && !cached.isExpired()) {
+      return cached;
+    }
+    // A miss, or expired: the parser throws ExpiredJwtException for the latter
+    VerifiedToken verified = new VerifiedToken(parser.parseSignedClaims(token).getPayload());
+    stripe.put(digest, verified);
+    return verified;
+  }
 
   // Retrieve username from jwt token
   public String extractUsername(String token) {
-    return extractClaim(token, Claims::getSubject);
+    return verify(token).getSubject();
   }
 
   // Retrieve expiration date from jwt token
   public Date extractExpiration(String token) {
-    return extractClaim(token, Claims::getExpiration);
+    return verify(token).getExpiration();
   }
 
   // New: Extract roles from JWT claims
   public String extractRole(String token) {
-    Claims claims = extractAllClaims(token);
-    // Assuming you store roles under a claim named "role" or "roles"
-    // Adjust "role" if you use a different claim name
-    return claims.get("role", String.class);
+    return verify(token).getRole();
   }
 
   // New: Extract user ID from JWT claims
   public Long extractUserId(String token) {
-    Claims claims = extractAllClaims(token);
-    // JWT claims are typically JSON primitive types. IDs might be stored as Integer or Long.
-    // It's safer to get as Long if your User ID is Long.
-    return claims.get("userId", Long.class);
+    return verify(token).getUserId();
+  }
+
+  // Extract the token version (null for tokens issued before versions were added)
+  public Integer extractTokenVersion(String token) {
+    return verify(token).getTokenVersion();
   }
 
   // New: Extract first name from JWT claims
   public String extractFirstName(String token) {
-    Claims claims = extractAllClaims(token);
-    return claims.get("firstName", String.class);
+    return verify(token).getClaims().get("firstName", String.class);
   }
 
   // New: Extract last name from JWT claims
   public String extractLastName(String token) {
-    Claims claims = extractAllClaims(token);
-    return claims.get("lastName", String.class);
+    return verify(token).getClaims().get("lastName", String.class);
   }
 
   public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-    final Claims claims = extractAllClaims(token);
-    return claimsResolver.apply(claims);
-  }
-
-  // For retrieving any information from token we will need the secret key
-  private Claims extractAllClaims(String token) {
-    return Jwts.parser()
-            .setSigningKey(getSigningKey()) // Use the key for parsing
-            .build()
-            .parseClaimsJws(token)
-            .getBody();
-  }
-
-  // Check if the token has expired
-  private Boolean isTokenExpired(String token) {
-    return extractExpiration(token).before(new Date());
+    return claimsResolver.apply(verify(token).getClaims());
   }
 
   // Generate token for user
   public String generateToken(UserDetails userDetails) {
-    Map<String, Object> claims = new HashMap<>();
-
     // Get the full User object from the database using the email
     // This is necessary to get id, firstName, lastName etc.
     User user = userRepository.findByEmail(userDetails.getUsername())
             .orElseThrow(() -> new IllegalArgumentException("User not found for JWT generation: " + userDetails.getUsername()));
+    return generateToken(user);
+  }
 
-    // Add roles as a claim
-    // Assuming a user has only one role for now, as per your setup (PASSENGER, TICKET_STAFF, TRANSIT_ADMIN)
-    String role = userDetails.getAuthorities().stream()
-            .map(GrantedAuthority::getAuthority)
-            .filter(a -> a.startsWith("ROLE_")) // Ensure it's a role authority
-            .map(a -> a.substring(5)) // Remove "ROLE_" prefix
-            .findFirst() // Get the first role (assuming single role per user for simplicity)
-            .orElse("PASSENGER"); // Default if no role found (shouldn't happen)
+  // Generate token for a user already loaded by the caller, without another lookup
+  public String generateToken(User user) {
+    Map<String, Object> claims = new HashMap<>();
 
-    claims.put("role", role); // Add the role as a claim
+    // Add the role as a claim (a single role per user: PASSENGER, TICKET_STAFF or TRANSIT_ADMIN)
+    claims.put("role", user.getRole().name());
 
     // Add additional user details as claims
     claims.put("userId", user.getId());
     claims.put("firstName", user.getFirstName());
     claims.put("lastName", user.getLastName());
+    claims.put("ver", user.getTokenVersion()); // Checked against TokenVersionRegistry on every request
 
-    return createToken(claims, userDetails.getUsername());
+    return createToken(claims, user.getEmail());
   }
 
   private String createToken(Map<String, Object> claims, String subject) {
     return Jwts.builder()
-            .setClaims(claims) // Still valid for adding custom claims
-            .subject(subject) // New way to set subject
-            .issuedAt(new Date(System.currentTimeMillis())) // New way to set issued at
-            .expiration(new Date(System.currentTimeMillis() + jwtExpirationInMs)) // New way to set expiration
-            .signWith(getSigningKey()) // Only pass the Key, SignatureAlgorithm is inferred or handled internally by Keys
+            .claims(claims)
+            .id(UUID.randomUUID().toString()) // The jti, by which TokenRevocationList can turn this token away
+            .subject(subject)
+            .issuedAt(new Date(System.currentTimeMillis()))
+            .expiration(new Date(System.currentTimeMillis() + jwtExpirationInMs))
+            .signWith(signingKey) // The algorithm (HS256/384/512) follows from the key size
             .compact();
   }
 
   // Validate token
   public Boolean validateToken(String token, UserDetails userDetails) {
-    final String username = extractUsername(token);
-    return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+    return validateToken(verify(token), userDetails);
+  }
+
+  // Validate an already verified token against the user it should belong to
+  public boolean validateToken(VerifiedToken token, UserDetails userDetails) {
+    return token.getSubject().equals(userDetails.getUsername()) && !token.isExpired();
   }
 
-  private Key getSigningKey() {
-    byte[] keyBytes = Decoders.BASE64.decode(secret);
-    return Keys.hmacShaKeyFor(keyBytes);
+  private static String sha256(String token) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // Every JVM has SHA-256
+    }
+  }
+
+  /**
+   * The claims of a token whose signature and expiry were checked.
+   */
+  public static final class VerifiedToken {
+
+    private final Claims claims;
+
+    VerifiedToken(Claims claims) {
+      this.claims = claims;
+    }
+
+    public Claims getClaims() { return claims; }
+    public String getId() { return claims.getId(); }
+    public String getSubject() { return claims.getSubject(); }
+    public Date getExpiration() { return claims.getExpiration(); }
+    public String getRole() { return claims.get("role", String.class); }
+    public Long getUserId() { return claims.get("userId", Long.class); }
+    public Integer getTokenVersion() { return claims.get("ver", Integer.class); }
+
+    public boolean isExpired() {
+      Date expiration = claims.getExpiration();
+      return expiration != null && expiration.getTime() <= System.currentTimeMillis();
+    }
+  }
+
+  // One stripe of the verified token cache: a small LRU map behind its own lock
+  private static final class VerifiedTokenCache {
+
+    private final Map<String, VerifiedToken> entries;
+
+    VerifiedTokenCache(int maxEntries) {
+      this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, VerifiedToken> eldest) {
+          return size() > maxEntries;
+        }
+      };
+    }
+
+    synchronized VerifiedToken get(String digest) {
+      return entries.get(digest);
+    }
+
+    synchronized void put(String digest, VerifiedToken token) {
+      entries.put(digest, token);
+    }
   }
 }
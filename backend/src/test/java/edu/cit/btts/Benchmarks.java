@@ -0,0 +1,22 @@
+package edu.cit.btts;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Timing thresholds of the load and benchmark tests. They depend on the machine the tests run on, so they
+ * are only enforced with -Dbenchmarks=true (e.g. mvn test -Dbenchmarks=true); otherwise the measurements
+ * are just printed. Correctness checks in the same tests always run.
+ */
+public final class Benchmarks {
+
+    public static final boolean ENABLED = Boolean.getBoolean("benchmarks");
+
+    private Benchmarks() {
+    }
+
+    public static void assertThreshold(boolean met, String message) {
+        if (ENABLED) {
+            assertTrue(met, message);
+        }
+    }
+}
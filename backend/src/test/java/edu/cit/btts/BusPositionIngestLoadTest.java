@@ -0,0 +1,142 @@
+package edu.cit.btts;
+
+import edu.cit.btts.dto.BusPositionDTO;
+import edu.cit.btts.dto.PositionIngestResponse;
+import edu.cit.btts.model.Bus;
+import edu.cit.btts.repository.BusRepository;
+import edu.cit.btts.service.BusPositionTracker;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// History segments large enough that the allocation check never measures a rollover (opening a file)
+@SpringBootTest(properties = {
+        "tracking.ring-capacity=256",
+        "tracking.history.dir=target/test-positions",
+        "tracking.history.segment-size=33554432"
+})
+@AutoConfigureMockMvc
+public class BusPositionIngestLoadTest {
+
+    private static final int BUSES = 40;
+    private static final int DEVICES = 4; // Each simulated device reports for its own share of the buses
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private BusRepository busRepository;
+    @Autowired private BusPositionTracker busPositionTracker;
+
+    @Test
+    void sustainsTensOfThousandsOfPingsPerSecond() throws Exception {
+        long[][] busIdsPerDevice = createBuses("LOAD", BUSES, DEVICES);
+        long start = System.currentTimeMillis() - 3_600_000;
+        int batchesPerDevice = 50;
+        int samplesPerBus = 100; // Per batch: 10 buses x 100 samples = 1000 samples
+
+        // Batches are generated up front so only ingestion is timed
+        List<List<byte[]>> batches = new ArrayList<>();
+        for (long[] busIds : busIdsPerDevice) {
+            BusPositionSimulator simulator = new BusPositionSimulator(busIds, start, 10);
+            List<byte[]> deviceBatches = new ArrayList<>();
+            for (int b = 0; b < batchesPerDevice; b++) deviceBatches.add(simulator.nextBatch(samplesPerBus));
+            batches.add(deviceBatches);
+        }
+
+        ExecutorService devices = Executors.newFixedThreadPool(DEVICES);
+        long began = System.nanoTime();
+        List<Future<Integer>> results = new ArrayList<>();
+        for (List<byte[]> deviceBatches : batches) {
+            results.add(devices.submit(() -> {
+                int accepted = 0;
+                for (byte[] batch : deviceBatches) {
+                    PositionIngestResponse response = busPositionTracker.ingest(new ByteArrayInputStream(batch));
+                    assertEquals(0, response.getRejected());
+                    accepted += response.getAccepted();
+                }
+                return accepted;
+            }));
+        }
+        int accepted = 0;
+        for (Future<Integer> result : results) accepted += result.get();
+        double seconds = (System.nanoTime() - began) / 1e9;
+        devices.shutdown();
+
+        assertEquals(BUSES * batchesPerDevice * samplesPerBus, accepted);
+        double pingsPerSecond = accepted / seconds;
+        System.out.printf("Ingested %d pings in %.2f s (%.0f pings/s)%n", accepted, seconds, pingsPerSecond);
+        Benchmarks.assertThreshold(pingsPerSecond > 20_000, "Ingestion too slow: " + pingsPerSecond + " pings/s");
+
+        // Rings stay at their fixed capacity however many samples arrive
+        long busId = busIdsPerDevice[0][0];
+        assertEquals(256, busPositionTracker.getRecentPositions(busId, 10_000).size());
+        BusPositionDTO latest = busPositionTracker.getLatestPosition(busId);
+        assertEquals(start + 10L * (batchesPerDevice * samplesPerBus - 1), latest.getTimestamp());
+    }
+
+    @Test
+    void recordingASampleAllocatesNothing() {
+        long busId = createBuses("ALLOC", 1, 1)[0][0];
+        long timestamp = System.currentTimeMillis() - 3_600_000;
+        for (int i = 0; i < 200_000; i++) { // Warm up so the measurement runs compiled code
+            busPositionTracker.record(busId, timestamp++, 10.3, 123.9, 40f, 90f);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        int samples = 1_000_000;
+        for (int i = 0; i < samples; i++) {
+            busPositionTracker.record(busId, timestamp++, 10.3 + i * 1e-7, 123.9, 40f, 90f);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue(allocated < samples / 10, "Recording allocated " + allocated + " bytes for " + samples + " samples");
+    }
+
+    @Test
+    @WithMockUser(roles = "TICKET_STAFF")
+    void endpointAcceptsBatchesAndServesLatestPosition() throws Exception {
+        long busId = createBuses("POS", 1, 1)[0][0];
+        long now = System.currentTimeMillis();
+        String batch = "[{\"busId\":" + busId + ",\"timestamp\":" + (now - 2000) + ",\"latitude\":10.30,\"longitude\":123.90,\"speed\":35.5,\"heading\":90}," +
+                "{\"busId\":" + busId + ",\"timestamp\":" + (now - 1000) + ",\"latitude\":10.31,\"longitude\":123.91,\"speed\":36.0,\"heading\":91}," +
+                "{\"busId\":" + busId + ",\"timestamp\":" + (now - 1500) + ",\"latitude\":10.30,\"longitude\":123.90,\"speed\":35.5,\"heading\":90}," +
+                "{\"busId\":999999,\"timestamp\":" + now + ",\"latitude\":10.30,\"longitude\":123.90,\"speed\":35.5,\"heading\":90}]";
+
+        mockMvc.perform(post("/api/positions").contentType(MediaType.APPLICATION_JSON).content(batch))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.accepted").value(2))
+                .andExpect(jsonPath("$.data.stale").value(1))
+                .andExpect(jsonPath("$.data.rejected").value(1));
+        mockMvc.perform(get("/api/positions/bus/" + busId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.timestamp").value(now - 1000))
+                .andExpect(jsonPath("$.latitude").value(10.31));
+        mockMvc.perform(post("/api/positions").contentType(MediaType.APPLICATION_JSON).content("{\"busId\":1}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private long[][] createBuses(String platePrefix, int count, int groups) {
+        long[][] ids = new long[groups][count / groups];
+        for (int i = 0; i < count; i++) {
+            Bus bus = busRepository.save(new Bus(platePrefix + "-" + i, "Tracked Bus", "Cit Express", 10, 4));
+            ids[i % groups][i / groups] = bus.getId();
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,59 @@
+package edu.cit.btts;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Local stand-in for the on-board GPS devices: moves each bus along a straight line out of Cebu City and
+ * produces position batches in the format POST /api/positions accepts.
+ */
+public class BusPositionSimulator {
+
+    private static final double START_LATITUDE = 10.2944;
+    private static final double START_LONGITUDE = 123.9021;
+
+    private final long[] busIds;
+    private final long[] clocks; // Timestamp of each bus's next sample
+    private final double[] bearings;
+    private final long intervalMs;
+    private long samples;
+
+    /**
+     * @param busIds The buses to simulate.
+     * @param startMs Timestamp of the first sample of every bus.
+     * @param intervalMs Time between two samples of the same bus.
+     */
+    public BusPositionSimulator(long[] busIds, long startMs, long intervalMs) {
+        this.busIds = busIds.clone();
+        this.clocks = new long[busIds.length];
+        this.bearings = new double[busIds.length];
+        this.intervalMs = intervalMs;
+        for (int i = 0; i < busIds.length; i++) {
+            clocks[i] = startMs;
+            bearings[i] = (360.0 / busIds.length) * i;
+        }
+    }
+
+    /**
+     * @return A JSON batch with the next samplesPerBus samples of every bus, interleaved by bus.
+     */
+    public byte[] nextBatch(int samplesPerBus) {
+        StringBuilder json = new StringBuilder(busIds.length * samplesPerBus * 120).append('[');
+        for (int n = 0; n < samplesPerBus; n++) {
+            for (int i = 0; i < busIds.length; i++) {
+                if (json.length() > 1) json.append(',');
+                double distanceDeg = 0.0001 * (samples % 10_000); // Constant speed, back to the start every 10k samples
+                double bearing = Math.toRadians(bearings[i]);
+                json.append("{\"busId\":").append(busIds[i])
+                        .append(",\"timestamp\":").append(clocks[i])
+                        .append(",\"latitude\":").append(START_LATITUDE + distanceDeg * Math.cos(bearing))
+                        .append(",\"longitude\":").append(START_LONGITUDE + distanceDeg * Math.sin(bearing))
+                        .append(",\"speed\":").append(40.0)
+                        .append(",\"heading\":").append(bearings[i])
+                        .append('}');
+                clocks[i] += intervalMs;
+            }
+            samples++;
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
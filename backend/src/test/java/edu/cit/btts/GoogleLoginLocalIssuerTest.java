@@ -0,0 +1,91 @@
+package edu.cit.btts;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.json.webtoken.JsonWebSignature;
+import edu.cit.btts.dto.GoogleLoginRequest;
+import edu.cit.btts.repository.UserRepository;
+import edu.cit.btts.service.GoogleTokenVerifierService;
+import edu.cit.btts.service.LocalIdTokenIssuer;
+import edu.cit.btts.util.JwtUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.security.KeyPairGenerator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = "google.id-token.key-source=local")
+@AutoConfigureMockMvc
+public class GoogleLoginLocalIssuerTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private ObjectMapper objectMapper;
+    @Autowired private LocalIdTokenIssuer localIdTokenIssuer;
+    @Autowired private GoogleTokenVerifierService googleTokenVerifierService;
+    @Autowired private UserRepository userRepository;
+    @Autowired private JwtUtil jwtUtil;
+
+    @Test
+    void signsInWithATokenFromTheLocalIssuer() throws Exception {
+        String idToken = localIdTokenIssuer.issue("local.login@example.com", "Local", "Login");
+
+        String body = mockMvc.perform(post("/api/auth/google")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(login(idToken))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.user.email").value("local.login@example.com"))
+                .andExpect(jsonPath("$.role").value("PASSENGER"))
+                .andReturn().getResponse().getContentAsString();
+        assertEquals("Local", userRepository.findByEmail("local.login@example.com").orElseThrow().getFirstName());
+        assertEquals("local.login@example.com", jwtUtil.verify(objectMapper.readTree(body).get("token").asText()).getSubject());
+
+        // Signing in again finds the same account
+        mockMvc.perform(post("/api/auth/google")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(login(localIdTokenIssuer.issue("local.login@example.com", "Local", "Login")))))
+                .andExpect(status().isOk());
+        assertEquals(1, userRepository.findAll().stream().filter(u -> u.getEmail().equals("local.login@example.com")).count());
+    }
+
+    @Test
+    void rejectsTokensTheIssuerDidNotSignForThisApp() throws Exception {
+        GoogleIdToken.Payload valid = GoogleIdToken.parse(GsonFactory.getDefaultInstance(),
+                localIdTokenIssuer.issue("intruder@example.com", "In", "Truder")).getPayload();
+        assertNotNull(googleTokenVerifierService.verify(localIdTokenIssuer.issue("intruder@example.com", "In", "Truder")));
+
+        // The same claims signed with a key the issuer does not hold
+        assertNull(googleTokenVerifierService.verify(signWithStrangerKey(valid.clone())));
+        // Meant for another app, from another issuer, or long expired
+        assertNull(googleTokenVerifierService.verify(signWithStrangerKey(valid.clone().setAudience("another-app"))));
+        assertNull(googleTokenVerifierService.verify(signWithStrangerKey(valid.clone().setIssuer("https://accounts.google.com"))));
+        assertNull(googleTokenVerifierService.verify(signWithStrangerKey(valid.clone().setExpirationTimeSeconds(1L))));
+        assertNull(googleTokenVerifierService.verify("not-a-token"));
+
+        mockMvc.perform(post("/api/auth/google")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(login(signWithStrangerKey(valid.clone())))))
+                .andExpect(status().isUnauthorized());
+        assertTrue(userRepository.findByEmail("intruder@example.com").isEmpty());
+    }
+
+    private static GoogleLoginRequest login(String idToken) {
+        GoogleLoginRequest request = new GoogleLoginRequest();
+        request.setIdToken(idToken);
+        return request;
+    }
+
+    private static String signWithStrangerKey(GoogleIdToken.Payload payload) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return JsonWebSignature.signUsingRsaSha256(generator.generateKeyPair().getPrivate(), GsonFactory.getDefaultInstance(),
+                new JsonWebSignature.Header().setAlgorithm("RS256"), payload);
+    }
+}
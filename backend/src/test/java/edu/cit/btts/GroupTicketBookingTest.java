@@ -0,0 +1,165 @@
+package edu.cit.btts;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.cit.btts.dto.GroupTicketRequest;
+import edu.cit.btts.dto.SeatPositionRequest;
+import edu.cit.btts.dto.TicketRequest;
+import edu.cit.btts.model.*;
+import edu.cit.btts.repository.*;
+import edu.cit.btts.service.SeatOccupancyIndex;
+import edu.cit.btts.service.TicketService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+public class GroupTicketBookingTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private ObjectMapper objectMapper;
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private TicketService ticketService;
+    @Autowired private SeatOccupancyIndex seatOccupancyIndex;
+    @Autowired private EntityManagerFactory entityManagerFactory;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @WithMockUser(roles = "TICKET_STAFF")
+    void groupIsBookedWithOneTripAndUserFetch() throws Exception {
+        Trip trip = createTrip("GRP-1");
+        User passenger = createPassenger("group.booked@example.com");
+        seatOccupancyIndex.get(trip); // Warm, so only the booking itself is counted
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        book(group(trip, passenger, seat(1, 1), seat(1, 2), seat(1, 3), seat(1, 4)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.data.length()").value(4))
+                .andExpect(jsonPath("$.data[2].seatDetails.columnPosition").value(3))
+                .andExpect(jsonPath("$.data[3].payments[0].type").value("CASH"));
+
+        assertEquals(1, statistics.getEntityStatistics(Trip.class.getName()).getLoadCount(), "The trip is fetched once for the group.");
+        assertEquals(1, statistics.getEntityStatistics(User.class.getName()).getLoadCount(), "The user is fetched once for the group.");
+        assertEquals(4, seatCount(trip));
+        assertEquals(36, tripRepository.findAvailableSeatsById(trip.getId()));
+    }
+
+    @Test
+    @WithMockUser(roles = "TICKET_STAFF")
+    void conflictingCellRollsBackTheWholeGroup() throws Exception {
+        Trip trip = createTrip("GRP-2");
+        User passenger = createPassenger("group.conflict@example.com");
+        ticketService.createTicketForCash(single(trip, passenger, 2, 2));
+
+        book(group(trip, passenger, seat(2, 1), seat(2, 2), seat(2, 3)))
+                .andExpect(status().isConflict());
+
+        assertEquals(1, seatCount(trip), "No seat of a group with a taken cell may be written.");
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM tickets t JOIN seats s ON s.id = t.seat_id WHERE s.trip_id = ? AND s.column_position <> 2",
+                Integer.class, trip.getId()));
+        assertEquals(39, tripRepository.findAvailableSeatsById(trip.getId()));
+        assertNull(seatOccupancyIndex.get(trip).getStatus(2, 1));
+
+        // The free cells can still be booked afterwards
+        book(group(trip, passenger, seat(2, 1), seat(2, 3)))
+                .andExpect(status().isCreated());
+        assertEquals(3, seatCount(trip));
+    }
+
+    @Test
+    @WithMockUser(roles = "TICKET_STAFF")
+    void cellOutsideTheBusLayoutIsRejected() throws Exception {
+        Trip trip = createTrip("GRP-3");
+        User passenger = createPassenger("group.layout@example.com");
+
+        book(group(trip, passenger, seat(1, 1), seat(11, 1)))
+                .andExpect(status().isBadRequest());
+        book(group(trip, passenger, seat(1, 5)))
+                .andExpect(status().isBadRequest());
+
+        assertEquals(0, seatCount(trip));
+        assertEquals(40, tripRepository.findAvailableSeatsById(trip.getId()));
+    }
+
+    @Test
+    @WithMockUser(roles = "TICKET_STAFF")
+    void sameCellRequestedTwiceIsRejected() throws Exception {
+        Trip trip = createTrip("GRP-4");
+        User passenger = createPassenger("group.duplicate@example.com");
+
+        book(group(trip, passenger, seat(3, 1), seat(3, 2), seat(3, 1)))
+                .andExpect(status().isBadRequest());
+
+        assertEquals(0, seatCount(trip));
+        assertEquals(40, tripRepository.findAvailableSeatsById(trip.getId()));
+    }
+
+    private ResultActions book(GroupTicketRequest request) throws Exception {
+        return mockMvc.perform(post("/api/tickets/group/cash")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)));
+    }
+
+    private Trip createTrip(String plateNumber) {
+        // 10 x 4 layout
+        Bus bus = busRepository.save(new Bus(plateNumber, "Group Bus", "Cit Express", 10, 4));
+        Route route = routeRepository.save(new Route("Cebu City", "Moalboal", List.of(), 200.00));
+        return tripRepository.save(new Trip(LocalDateTime.now().plusDays(2), bus, route));
+    }
+
+    private User createPassenger(String email) {
+        return userRepository.save(new User(email, "Group", "Passenger", Role.PASSENGER));
+    }
+
+    private int seatCount(Trip trip) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM seats WHERE trip_id = ?", Integer.class, trip.getId());
+    }
+
+    private static SeatPositionRequest seat(int row, int column) {
+        return new SeatPositionRequest(row, column);
+    }
+
+    private static GroupTicketRequest group(Trip trip, User passenger, SeatPositionRequest... seats) {
+        GroupTicketRequest request = new GroupTicketRequest();
+        request.setTripId(trip.getId());
+        request.setUserId(passenger.getId());
+        request.setSeats(List.of(seats));
+        request.setFare(200.00);
+        request.setDropOff("Moalboal");
+        request.setPaymentType(PaymentType.CASH);
+        return request;
+    }
+
+    private static TicketRequest single(Trip trip, User passenger, int row, int column) {
+        TicketRequest request = new TicketRequest();
+        request.setTripId(trip.getId());
+        request.setUserId(passenger.getId());
+        request.setRowPosition(row);
+        request.setColumnPosition(column);
+        request.setFare(200.00);
+        request.setDropOff("Moalboal");
+        request.setPaymentType(PaymentType.CASH);
+        return request;
+    }
+}
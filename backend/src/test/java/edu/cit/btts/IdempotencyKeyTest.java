@@ -0,0 +1,130 @@
+package edu.cit.btts;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
+import edu.cit.btts.dto.ApiResponse;
+import edu.cit.btts.dto.TicketRequest;
+import edu.cit.btts.model.*;
+import edu.cit.btts.repository.*;
+import edu.cit.btts.service.IdempotencyService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class IdempotencyKeyTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private ObjectMapper objectMapper;
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private TicketRepository ticketRepository;
+    @Autowired private PaymentRepository paymentRepository;
+    @Autowired private IdempotencyRecordRepository idempotencyRecordRepository;
+    @Autowired private IdempotencyService idempotencyService;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @WithMockUser(username = "idempotent.passenger@example.com", roles = "PASSENGER")
+    void retriedBookingReplaysTheOriginalResponse() throws Exception {
+        Bus bus = busRepository.save(new Bus("IDM-1", "Retry Bus", "Cit Express", 10, 4));
+        Route route = routeRepository.save(new Route("Cebu City", "Moalboal", List.of(), 200.00));
+        Trip trip = tripRepository.save(new Trip(LocalDateTime.now().plusDays(5), bus, route));
+        User passenger = userRepository.save(new User("idempotent.passenger@example.com", "Retry", "Passenger", Role.PASSENGER));
+        long ticketsBefore = ticketRepository.count();
+        long paymentsBefore = paymentRepository.count();
+
+        String body = objectMapper.writeValueAsString(onlineRequest(trip, passenger, 4, 2));
+        MvcResult first = mockMvc.perform(post("/api/tickets/online").header("Idempotency-Key", "booking-4-2")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"))
+                .andReturn();
+        Number ticketId = JsonPath.read(first.getResponse().getContentAsString(), "$.data.id");
+
+        // Same key, same request: the stored response comes back and nothing is booked again
+        mockMvc.perform(post("/api/tickets/online").header("Idempotency-Key", "booking-4-2")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.data.id").value(ticketId.longValue()));
+        assertEquals(ticketsBefore + 1, ticketRepository.count());
+        assertEquals(paymentsBefore + 1, paymentRepository.count());
+
+        // Same key, different request: rejected instead of silently replaying the wrong booking
+        String otherBody = objectMapper.writeValueAsString(onlineRequest(trip, passenger, 4, 3));
+        mockMvc.perform(post("/api/tickets/online").header("Idempotency-Key", "booking-4-2")
+                        .contentType(MediaType.APPLICATION_JSON).content(otherBody))
+                .andExpect(status().isUnprocessableEntity());
+        assertEquals(ticketsBefore + 1, ticketRepository.count());
+    }
+
+    @Test
+    void keyWhoseResponseCouldNotBeStoredIsNeverRunAgain() {
+        AtomicInteger bookings = new AtomicInteger();
+        Supplier<ResponseEntity<ApiResponse>> booking = () -> {
+            bookings.incrementAndGet();
+            // Booked, but the response cannot be written to the idempotency record
+            return ResponseEntity.status(HttpStatus.CREATED).body(new ApiResponse(true, "Booked", new UnstorableBody()));
+        };
+        Map<String, String> request = Map.of("seat", "5-1");
+
+        assertEquals(HttpStatus.CREATED, idempotencyService.execute("unstored-5-1", "POST /api/tickets/cash", request, booking).getStatusCode());
+        // This node still replays the response it kept in memory
+        ResponseEntity<ApiResponse> replayed = idempotencyService.execute("unstored-5-1", "POST /api/tickets/cash", request, booking);
+        assertEquals("true", replayed.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+
+        // Long after the original request, another node (or a restart) must not book it again
+        jdbcTemplate.update("UPDATE idempotency_records SET created_at = ? WHERE idempotency_key = ?",
+                LocalDateTime.now().minusHours(1), "unstored-5-1");
+        IdempotencyService otherNode = new IdempotencyService(idempotencyRecordRepository, objectMapper, 100, Duration.ofHours(24), Duration.ofMinutes(5));
+        ResponseStatusException conflict = assertThrows(ResponseStatusException.class,
+                () -> otherNode.execute("unstored-5-1", "POST /api/tickets/cash", request, booking));
+        assertEquals(HttpStatus.CONFLICT, conflict.getStatusCode());
+        assertEquals(1, bookings.get());
+        assertTrue(idempotencyRecordRepository.findByCallerAndEndpointAndIdempotencyKey("anonymous", "POST /api/tickets/cash", "unstored-5-1").isPresent(),
+                "The claim is kept until retention.");
+    }
+
+    private TicketRequest onlineRequest(Trip trip, User passenger, int row, int column) {
+        TicketRequest request = new TicketRequest();
+        request.setTripId(trip.getId());
+        request.setUserId(passenger.getId());
+        request.setRowPosition(row);
+        request.setColumnPosition(column);
+        request.setFare(200.00);
+        request.setDropOff("Moalboal");
+        request.setPaymentType(PaymentType.ONLINE);
+        request.setOnlineReceipt(new byte[] { 1, 2, 3 });
+        return request;
+    }
+
+    static class UnstorableBody {
+        public String getReference() {
+            throw new IllegalStateException("not serializable");
+        }
+    }
+}
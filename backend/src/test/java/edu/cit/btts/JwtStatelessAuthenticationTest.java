@@ -0,0 +1,175 @@
+package edu.cit.btts;
+
+import edu.cit.btts.config.JwtRequestFilter;
+import edu.cit.btts.model.Role;
+import edu.cit.btts.model.User;
+import edu.cit.btts.repository.RevokedUserRepository;
+import edu.cit.btts.repository.UserRepository;
+import edu.cit.btts.service.JwtUserDetailsService;
+import edu.cit.btts.service.RefreshTokenService;
+import edu.cit.btts.service.TokenRevocationList;
+import edu.cit.btts.service.TokenVersionRegistry;
+import edu.cit.btts.service.UserService;
+import edu.cit.btts.util.JwtUtil;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+public class JwtStatelessAuthenticationTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private JwtRequestFilter jwtRequestFilter;
+    @Autowired private JwtUtil jwtUtil;
+    @Autowired private JwtUserDetailsService jwtUserDetailsService;
+    @Autowired private UserService userService;
+    @Autowired private UserRepository userRepository;
+    @Autowired private RevokedUserRepository revokedUserRepository;
+    @Autowired private RefreshTokenService refreshTokenService;
+    @Autowired private TokenVersionRegistry tokenVersionRegistry;
+    @Autowired private TokenRevocationList tokenRevocationList;
+    @Autowired private EntityManagerFactory entityManagerFactory;
+
+    @Value("${jwt.secret}")
+    private String secret;
+
+    @Value("${jwt.expiration}")
+    private long accessTokenLifetimeMs;
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void requestsAreAuthenticatedFromTheTokenAlone() throws Exception {
+        User staff = userRepository.save(new User("stateless.staff@example.com", "Stateless", "Staff", Role.TICKET_STAFF));
+        String token = tokenFor(staff);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        Authentication authentication = filter(token);
+        assertEquals(0, statistics.getPrepareStatementCount(), "Authenticating a token should not touch the database.");
+        assertNotNull(authentication);
+        assertEquals("stateless.staff@example.com", ((UserDetails) authentication.getPrincipal()).getUsername());
+        assertEquals("ROLE_TICKET_STAFF", authentication.getAuthorities().iterator().next().getAuthority());
+
+        mockMvc.perform(post("/api/payments/claims").header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void aRoleChangeTurnsAwayTokensIssuedBeforeIt() throws Exception {
+        User staff = userRepository.save(new User("demoted.staff@example.com", "Demoted", "Staff", Role.TICKET_STAFF));
+        String before = tokenFor(staff);
+
+        assertTrue(userService.updateRoleByEmail(staff.getEmail(), Role.PASSENGER));
+        assertNull(filter(before), "A token carrying the old role must no longer be accepted.");
+        mockMvc.perform(post("/api/payments/claims").header(HttpHeaders.AUTHORIZATION, "Bearer " + before))
+                .andExpect(status().isUnauthorized());
+
+        String after = tokenFor(staff);
+        assertEquals("ROLE_PASSENGER", authority(filter(after)));
+        mockMvc.perform(post("/api/payments/claims").header(HttpHeaders.AUTHORIZATION, "Bearer " + after))
+                .andExpect(status().isForbidden());
+
+        // Setting the role it already has does not sign the user out
+        assertTrue(userService.updateRoleByEmail(staff.getEmail(), Role.PASSENGER));
+        assertEquals("ROLE_PASSENGER", authority(filter(after)));
+
+        // Neither do deleted users keep access
+        userService.deleteUser(staff.getId());
+        assertNull(filter(after));
+    }
+
+    @Test
+    void aDeletionOnAnotherNodeSurvivesRefreshAndRestart() throws Exception {
+        User staff = userRepository.save(new User("deleted.elsewhere@example.com", "Deleted", "Elsewhere", Role.TICKET_STAFF));
+        String token = tokenFor(staff);
+        assertNotNull(filter(token));
+
+        // Deleted through another node, whose in-memory registry this node never sees
+        TokenVersionRegistry otherNodeRegistry = new TokenVersionRegistry(userRepository, revokedUserRepository, accessTokenLifetimeMs);
+        new UserService(userRepository, otherNodeRegistry, refreshTokenService).deleteUser(staff.getId());
+
+        tokenVersionRegistry.refresh();
+        assertNull(filter(token));
+        mockMvc.perform(post("/api/payments/claims").header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(status().isUnauthorized());
+
+        // A restarted node loads the deletion too
+        TokenVersionRegistry restarted = new TokenVersionRegistry(userRepository, revokedUserRepository, accessTokenLifetimeMs);
+        restarted.loadOnStartup();
+        assertFalse(restarted.isCurrent(staff.getId(), 0));
+        assertNull(filter(new JwtRequestFilter(jwtUserDetailsService, jwtUtil, restarted, tokenRevocationList, true), token));
+    }
+
+    @Test
+    void tokensWithoutTheClaimsAreCheckedAgainstTheDatabase() throws Exception {
+        User admin = userRepository.save(new User("legacy.admin@example.com", "Legacy", "Admin", Role.TRANSIT_ADMIN));
+        // A token as issued before the version claim existed, still naming the user's old role
+        String legacy = Jwts.builder()
+                .subject(admin.getEmail())
+                .claim("role", "PASSENGER")
+                .claim("userId", admin.getId())
+                .issuedAt(new Date())
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret)))
+                .compact();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        assertEquals("ROLE_TRANSIT_ADMIN", authority(filter(legacy)));
+        assertTrue(statistics.getPrepareStatementCount() > 0);
+    }
+
+    private String tokenFor(User user) {
+        return jwtUtil.generateToken(jwtUserDetailsService.loadUserByUsername(user.getEmail()));
+    }
+
+    private static String authority(Authentication authentication) {
+        assertNotNull(authentication);
+        return authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).findFirst().orElse(null);
+    }
+
+    private Authentication filter(String token) throws Exception {
+        return filter(jwtRequestFilter, token);
+    }
+
+    // Runs the filter on a request with the token and returns the authentication it produced
+    private static Authentication filter(JwtRequestFilter jwtRequestFilter, String token) throws Exception {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/trips");
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+        AtomicReference<Authentication> authentication = new AtomicReference<>();
+        jwtRequestFilter.doFilter(request, new MockHttpServletResponse(),
+                (req, res) -> authentication.set(SecurityContextHolder.getContext().getAuthentication()));
+        SecurityContextHolder.clearContext();
+        return authentication.get();
+    }
+}
@@ -0,0 +1,113 @@
+package edu.cit.btts;
+
+import edu.cit.btts.util.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Base64;
+import java.util.Date;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Per-request authentication CPU cost: the old three-parse path against a single parse, with and without the cache.
+// The cost ratios are only enforced with -Dbenchmarks=true (see Benchmarks)
+public class JwtVerificationBenchmarkTest {
+
+    private static final String SECRET = Base64.getEncoder().encodeToString("k".repeat(48).getBytes());
+    private static final int WARMUP = 3_000;
+    private static final int ITERATIONS = 10_000;
+
+    @Test
+    void verifyingOnceIsCheaperThanParsingPerClaim() {
+        String token = token(60_000);
+        JwtUtil uncached = new JwtUtil(null, SECRET, 60_000, 0);
+        JwtUtil cached = new JwtUtil(null, SECRET, 60_000, 100);
+
+        long legacy = cpuNanosPerCall(token, JwtVerificationBenchmarkTest::legacyAuthenticate);
+        long singleParse = cpuNanosPerCall(token, t -> readClaims(uncached.verify(t)));
+        long cacheHit = cpuNanosPerCall(token, t -> readClaims(cached.verify(t)));
+        System.out.printf("JWT auth CPU per request: legacy %d ns, single parse %d ns, cached %d ns%n",
+                legacy, singleParse, cacheHit);
+
+        Benchmarks.assertThreshold(singleParse * 1.5 < legacy, "Single parse " + singleParse + " ns vs legacy " + legacy + " ns");
+        Benchmarks.assertThreshold(cacheHit * 3 < legacy, "Cache hit " + cacheHit + " ns vs legacy " + legacy + " ns");
+    }
+
+    @Test
+    void theCacheNeverAcceptsWhatTheParserWouldNot() throws Exception {
+        JwtUtil jwtUtil = new JwtUtil(null, SECRET, 60_000, 100);
+        String token = token(60_000);
+        assertEquals("bench@example.com", jwtUtil.verify(token).getSubject());
+        assertEquals(7L, jwtUtil.verify(token).getUserId());
+
+        // A tampered copy of a cached token has a different digest and fails the signature check
+        String[] parts = token.split("\\.");
+        String forged = parts[0] + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(
+                "{\"sub\":\"bench@example.com\",\"role\":\"TRANSIT_ADMIN\",\"userId\":7,\"ver\":0}".getBytes()) + "." + parts[2];
+        assertThrows(JwtException.class, () -> jwtUtil.verify(forged));
+        assertThrows(JwtException.class, () -> jwtUtil.verify(token.substring(0, token.length() - 2)));
+        assertThrows(IllegalArgumentException.class, () -> jwtUtil.verify(""));
+
+        // A token cached while valid is turned away once it expires
+        String shortLived = token(1_200);
+        assertFalse(jwtUtil.verify(shortLived).isExpired());
+        Thread.sleep(1_500);
+        assertThrows(ExpiredJwtException.class, () -> jwtUtil.verify(shortLived));
+    }
+
+    // What a request used to cost: the key decoded and a parser built for each of the three claim reads
+    private static void legacyAuthenticate(String token) {
+        Claims claims = legacyParse(token);
+        claims.getSubject();
+        Claims all = legacyParse(token);
+        all.get("role", String.class);
+        all.get("userId", Long.class);
+        all.get("ver", Integer.class);
+        legacyParse(token).getExpiration();
+    }
+
+    private static Claims legacyParse(String token) {
+        return Jwts.parser().verifyWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET))).build()
+                .parseSignedClaims(token).getPayload();
+    }
+
+    private static void readClaims(JwtUtil.VerifiedToken token) {
+        token.getSubject();
+        token.getRole();
+        token.getUserId();
+        token.getTokenVersion();
+        token.isExpired();
+    }
+
+    private static long cpuNanosPerCall(String token, Consumer<String> authenticate) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < WARMUP; i++) {
+            authenticate.accept(token);
+        }
+        long start = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            authenticate.accept(token);
+        }
+        return (threads.getCurrentThreadCpuTime() - start) / ITERATIONS;
+    }
+
+    private static String token(long validForMs) {
+        return Jwts.builder()
+                .subject("bench@example.com")
+                .claim("role", "TICKET_STAFF")
+                .claim("userId", 7L)
+                .claim("ver", 0)
+                .issuedAt(new Date())
+                .expiration(new Date(System.currentTimeMillis() + validForMs))
+                .signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET)))
+                .compact();
+    }
+}
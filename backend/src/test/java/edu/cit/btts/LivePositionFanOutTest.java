@@ -0,0 +1,204 @@
+package edu.cit.btts;
+
+import edu.cit.btts.model.Bus;
+import edu.cit.btts.model.Route;
+import edu.cit.btts.model.Trip;
+import edu.cit.btts.repository.BusRepository;
+import edu.cit.btts.repository.RouteRepository;
+import edu.cit.btts.repository.TripRepository;
+import edu.cit.btts.service.BusPositionTracker;
+import edu.cit.btts.service.LivePositionBroadcaster;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "tracking.live.interval-ms=50",
+        "tracking.live.dispatcher-threads=8"
+})
+@AutoConfigureMockMvc
+public class LivePositionFanOutTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private BusPositionTracker busPositionTracker;
+    @Autowired private LivePositionBroadcaster livePositionBroadcaster;
+
+    @Test
+    void fanOutToTenThousandSubscribers() throws Exception {
+        int buses = 50;
+        int subscribersPerBus = 200;
+        int rounds = 20;
+        long[] busIds = createBuses("FAN", buses);
+        long base = System.currentTimeMillis() - 600_000; // Sample timestamp base + round identifies the round
+        long[] publishedAt = new long[rounds];
+
+        List<RecordingEmitter> subscribers = new ArrayList<>();
+        for (int i = 0; i < buses * subscribersPerBus; i++) {
+            RecordingEmitter emitter = new RecordingEmitter(base, publishedAt);
+            livePositionBroadcaster.subscribe(busIds[i % buses], -1, emitter);
+            subscribers.add(emitter);
+        }
+        assertTrue(livePositionBroadcaster.getSubscriberCount() >= buses * subscribersPerBus);
+
+        for (int round = 0; round < rounds; round++) {
+            publishedAt[round] = System.nanoTime();
+            for (long busId : busIds) {
+                busPositionTracker.record(busId, base + round, 10.3 + round * 1e-4, 123.9, 35f, 0f);
+            }
+            Thread.sleep(100);
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (subscribers.stream().anyMatch(emitter -> emitter.lastRound < rounds - 1) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        // Every subscriber ends on the latest position, however many stale frames it skipped
+        assertTrue(subscribers.stream().allMatch(emitter -> emitter.lastRound == rounds - 1),
+                "Every subscriber should receive the latest position.");
+        long[] latencies = subscribers.stream().flatMapToLong(emitter -> Arrays.stream(emitter.latencies, 0, emitter.received)).sorted().toArray();
+        long p50 = latencies[latencies.length / 2] / 1_000_000;
+        long p99 = latencies[(int) (latencies.length * 0.99)] / 1_000_000;
+        long max = latencies[latencies.length - 1] / 1_000_000;
+        System.out.printf("Fan-out to %d subscribers: %d frames, latency p50 %d ms, p99 %d ms, max %d ms (50 ms coalescing)%n",
+                subscribers.size(), latencies.length, p50, p99, max);
+        Benchmarks.assertThreshold(p99 < 1000, "Fan-out too slow: p99 " + p99 + " ms");
+
+        subscribers.forEach(SseEmitter::complete);
+    }
+
+    @Test
+    void slowSubscriberSkipsStalePositionsWithoutHoldingUpOthers() throws Exception {
+        long busId = createBuses("SLOW", 1)[0];
+        long base = System.currentTimeMillis() - 600_000;
+        long[] publishedAt = new long[40];
+        RecordingEmitter fast = new RecordingEmitter(base, publishedAt);
+        RecordingEmitter slow = new RecordingEmitter(base, publishedAt) {
+            @Override
+            public synchronized void send(Set<DataWithMediaType> items) {
+                try {
+                    Thread.sleep(300); // A client on a bad connection
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(items);
+            }
+        };
+        livePositionBroadcaster.subscribe(busId, -1, fast);
+        livePositionBroadcaster.subscribe(busId, -1, slow);
+        long droppedBefore = livePositionBroadcaster.getFramesDropped();
+        int subscribersBefore = livePositionBroadcaster.getSubscriberCount();
+
+        for (int round = 0; round < 40; round++) {
+            publishedAt[round] = System.nanoTime();
+            busPositionTracker.record(busId, base + round, 10.3, 123.9 + round * 1e-4, 35f, 90f);
+            Thread.sleep(60);
+        }
+        long deadline = System.currentTimeMillis() + 5_000;
+        while ((fast.lastRound < 39 || slow.lastRound < 39) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(39, fast.lastRound);
+        assertEquals(39, slow.lastRound, "The slow subscriber still ends on the latest position.");
+        assertTrue(fast.received >= 30, "The fast subscriber should get (nearly) every update: " + fast.received);
+        assertTrue(slow.received < 20, "The slow subscriber should skip stale positions: " + slow.received);
+        assertTrue(livePositionBroadcaster.getFramesDropped() > droppedBefore);
+        assertEquals(subscribersBefore, livePositionBroadcaster.getSubscriberCount(), "Nobody is disconnected.");
+        fast.complete();
+        slow.complete();
+    }
+
+    @Test
+    @WithMockUser(roles = "PASSENGER")
+    void tripStreamPushesTheBusPosition() throws Exception {
+        Bus bus = busRepository.save(new Bus("LIVE-1", "Live Bus", "Cit Express", 10, 4));
+        Route route = routeRepository.save(new Route("Cebu City", "Carcar", List.of(), 90.00));
+        Trip trip = tripRepository.save(new Trip(LocalDateTime.now().plusHours(1), bus, route));
+
+        MvcResult stream = mockMvc.perform(get("/api/positions/trip/" + trip.getId() + "/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult routeStream = mockMvc.perform(get("/api/positions/route/" + route.getId() + "/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        long timestamp = System.currentTimeMillis() - 1000;
+        busPositionTracker.record(bus.getId(), timestamp, 10.25, 123.8, 20f, 180f);
+
+        for (MvcResult result : List.of(stream, routeStream)) {
+            MockHttpServletResponse response = result.getResponse();
+            assertTrue(awaitContent(response, "\"timestamp\":" + timestamp), "The position should be pushed.");
+            assertTrue(response.getContentAsString().contains("event:position"));
+        }
+        mockMvc.perform(get("/api/positions/trip/" + (trip.getId() + 1000) + "/stream")).andExpect(status().isNotFound());
+    }
+
+    private long[] createBuses(String prefix, int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = busRepository.save(new Bus(prefix + "-" + i, "Fan-out Bus", "Cit Express", 10, 4)).getId();
+        }
+        return ids;
+    }
+
+    private static boolean awaitContent(MockHttpServletResponse response, String expected) throws Exception {
+        for (int i = 0; i < 50; i++) {
+            if (response.getContentAsString().contains(expected)) return true;
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    // Stands in for a client connection: records which round each position frame belongs to and how long it took
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final long base;
+        private final long[] publishedAt;
+        private final long[] latencies;
+        private volatile int received;
+        private volatile int lastRound = -1;
+
+        RecordingEmitter(long base, long[] publishedAt) {
+            super(0L);
+            this.base = base;
+            this.publishedAt = publishedAt;
+            this.latencies = new long[publishedAt.length + 1];
+        }
+
+        @Override
+        public synchronized void send(Set<DataWithMediaType> items) {
+            long now = System.nanoTime();
+            for (DataWithMediaType item : items) {
+                String data = item.getData().toString();
+                int index = data.indexOf("\"timestamp\":");
+                if (index < 0) continue;
+                int start = index + "\"timestamp\":".length();
+                int end = start;
+                while (end < data.length() && Character.isDigit(data.charAt(end))) end++;
+                int round = (int) (Long.parseLong(data.substring(start, end)) - base);
+                if (received < latencies.length) latencies[received] = now - publishedAt[round];
+                received++;
+                lastRound = round;
+            }
+        }
+    }
+}
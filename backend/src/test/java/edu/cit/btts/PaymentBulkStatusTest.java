@@ -0,0 +1,164 @@
+package edu.cit.btts;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.cit.btts.dto.BulkPaymentStatusRequest;
+import edu.cit.btts.dto.PaymentStatusUpdateRequest;
+import edu.cit.btts.dto.PaymentStatusUpdateResult;
+import edu.cit.btts.dto.TicketRequest;
+import edu.cit.btts.model.*;
+import edu.cit.btts.repository.*;
+import edu.cit.btts.service.PaymentService;
+import edu.cit.btts.service.TicketService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = {
+        "booking.receipts.dir=target/test-receipts",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureMockMvc
+@WithMockUser(roles = "TICKET_STAFF")
+public class PaymentBulkStatusTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private ObjectMapper objectMapper;
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private PaymentRepository paymentRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private TicketService ticketService;
+    @Autowired private PaymentService paymentService;
+    @Autowired private EntityManagerFactory entityManagerFactory;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void eachItemFollowsTheSingleUpdateRules() throws Exception {
+        Trip trip = createTrip("BLK-1");
+        List<Long> payments = createPendingPayments(trip, "BLK-1", 6);
+        paymentService.updatePaymentStatus(payments.get(5), PaymentStatus.APPROVED);
+        int availableBefore = availableSeats(trip);
+
+        BulkPaymentStatusRequest request = new BulkPaymentStatusRequest();
+        request.setUpdates(List.of(
+                new PaymentStatusUpdateRequest(payments.get(0), PaymentStatus.APPROVED),
+                new PaymentStatusUpdateRequest(payments.get(1), PaymentStatus.APPROVED),
+                new PaymentStatusUpdateRequest(payments.get(2), PaymentStatus.REJECTED),
+                new PaymentStatusUpdateRequest(payments.get(3), PaymentStatus.REJECTED),
+                new PaymentStatusUpdateRequest(999_999L, PaymentStatus.APPROVED),
+                new PaymentStatusUpdateRequest(payments.get(0), PaymentStatus.REJECTED),
+                new PaymentStatusUpdateRequest(payments.get(5), PaymentStatus.PENDING),
+                new PaymentStatusUpdateRequest(payments.get(5), PaymentStatus.APPROVED)));
+        mockMvc.perform(patch("/api/payments/status")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.message").value("4 of 8 payment status update(s) applied."))
+                .andExpect(jsonPath("$.data[0].success").value(true))
+                .andExpect(jsonPath("$.data[0].payment.status").value("APPROVED"))
+                .andExpect(jsonPath("$.data[2].payment.status").value("REJECTED"))
+                .andExpect(jsonPath("$.data[4].success").value(false))
+                .andExpect(jsonPath("$.data[4].error").value("Payment not found with ID: 999999"))
+                .andExpect(jsonPath("$.data[5].success").value(false))
+                .andExpect(jsonPath("$.data[6].error").value("Cannot change status from APPROVED to PENDING."))
+                .andExpect(jsonPath("$.data[7].success").value(false));
+
+        assertEquals(SeatStatus.BOOKED, seatOf(payments.get(0)));
+        assertEquals(SeatStatus.BOOKED, seatOf(payments.get(1)));
+        assertEquals(SeatStatus.OPEN, seatOf(payments.get(2)));
+        assertEquals(SeatStatus.OPEN, seatOf(payments.get(3)));
+        assertEquals(SeatStatus.RESERVED, seatOf(payments.get(4)));
+        assertEquals(PaymentStatus.PENDING, paymentRepository.findById(payments.get(4)).orElseThrow().getStatus());
+        assertNull(paymentRepository.findById(payments.get(2)).orElseThrow().getHoldExpiresAt());
+        // The two rejected seats went back on sale
+        assertEquals(availableBefore + 2, availableSeats(trip));
+
+        // Re-approving a rejected payment takes its seat back
+        List<PaymentStatusUpdateResult> results = paymentService.updatePaymentStatuses(
+                List.of(new PaymentStatusUpdateRequest(payments.get(2), PaymentStatus.APPROVED)));
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(SeatStatus.BOOKED, seatOf(payments.get(2)));
+        assertEquals(availableBefore + 1, availableSeats(trip));
+
+        request.setUpdates(List.of());
+        mockMvc.perform(patch("/api/payments/status")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void statementCountDoesNotGrowWithTheBatch() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        List<Long> small = createPendingPayments(createTrip("BLK-2"), "BLK-2", 4);
+        List<Long> large = createPendingPayments(createTrip("BLK-3"), "BLK-3", 32);
+
+        statistics.clear();
+        assertTrue(paymentService.updatePaymentStatuses(rejectAll(small)).stream().allMatch(PaymentStatusUpdateResult::isSuccess));
+        long smallStatements = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        assertTrue(paymentService.updatePaymentStatuses(rejectAll(large)).stream().allMatch(PaymentStatusUpdateResult::isSuccess));
+        long largeStatements = statistics.getPrepareStatementCount();
+
+        // One query to load, one batch per table written, one availability update per trip
+        assertTrue(smallStatements <= 4, "A bulk update should need a handful of statements, but used " + smallStatements);
+        assertEquals(smallStatements, largeStatements, "Statement count should not depend on the number of payments.");
+        assertTrue(large.stream().allMatch(id -> seatOf(id) == SeatStatus.OPEN));
+    }
+
+    private static List<PaymentStatusUpdateRequest> rejectAll(List<Long> payments) {
+        return payments.stream().map(id -> new PaymentStatusUpdateRequest(id, PaymentStatus.REJECTED)).collect(Collectors.toList());
+    }
+
+    private Trip createTrip(String plateNumber) {
+        Bus bus = busRepository.save(new Bus(plateNumber, "Bulk Bus", "Cit Express", 10, 4));
+        Route route = routeRepository.save(new Route("Cebu City", "Argao", List.of(), 150.00));
+        return tripRepository.save(new Trip(LocalDateTime.now().plusDays(2), bus, route));
+    }
+
+    private List<Long> createPendingPayments(Trip trip, String plateNumber, int count) {
+        User passenger = userRepository.save(new User(plateNumber.toLowerCase() + "@example.com", "Bulk", "Passenger", Role.PASSENGER));
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            TicketRequest request = new TicketRequest();
+            request.setTripId(trip.getId());
+            request.setUserId(passenger.getId());
+            request.setRowPosition(i / 4 + 1);
+            request.setColumnPosition(i % 4 + 1);
+            request.setFare(150.00);
+            request.setDropOff("Argao");
+            request.setPaymentType(PaymentType.ONLINE);
+            request.setOnlineReceipt(("%PDF-1.7 transfer " + trip.getId() + "-" + i).getBytes());
+            ids.add(ticketService.createTicketForOnline(request).getPayments().get(0).getId());
+        }
+        return ids;
+    }
+
+    private SeatStatus seatOf(Long paymentId) {
+        return SeatStatus.valueOf(jdbcTemplate.queryForObject("SELECT s.status FROM payments p " +
+                "JOIN tickets t ON t.id = p.ticket_id JOIN seats s ON s.id = t.seat_id WHERE p.id = ?", String.class, paymentId));
+    }
+
+    private int availableSeats(Trip trip) {
+        return tripRepository.findAvailableSeatsById(trip.getId());
+    }
+}
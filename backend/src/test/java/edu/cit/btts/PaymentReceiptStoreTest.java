@@ -0,0 +1,218 @@
+package edu.cit.btts;
+
+import edu.cit.btts.dto.PaymentResponse;
+import edu.cit.btts.dto.TicketRequest;
+import edu.cit.btts.dto.TicketResponse;
+import edu.cit.btts.model.*;
+import edu.cit.btts.repository.*;
+import edu.cit.btts.service.LegacyReceiptMigrator;
+import edu.cit.btts.service.PaymentService;
+import edu.cit.btts.service.ReceiptStore;
+import edu.cit.btts.service.TicketService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = {
+        "booking.receipts.dir=target/test-receipts",
+        "booking.receipts.max-size=65536"
+})
+@AutoConfigureMockMvc
+@WithMockUser(roles = "TICKET_STAFF")
+public class PaymentReceiptStoreTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private PaymentRepository paymentRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private TicketService ticketService;
+    @Autowired private PaymentService paymentService;
+    @Autowired private ReceiptStore receiptStore;
+    @Autowired private LegacyReceiptMigrator legacyReceiptMigrator;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void receiptsAreStoredOnceAndServedInRanges() throws Exception {
+        Trip trip = createTrip("RCP-1");
+        User passenger = userRepository.save(new User("receipt.store@example.com", "Receipt", "Store", Role.PASSENGER));
+        byte[] receipt = png(20_000, 1);
+
+        PaymentResponse first = ticketService.createTicketForOnline(onlineRequest(trip, passenger, 1, 1, receipt)).getPayments().get(0);
+        PaymentResponse second = ticketService.createTicketForOnline(onlineRequest(trip, passenger, 1, 2, receipt)).getPayments().get(0);
+
+        String digest = sha256(receipt);
+        assertEquals("/api/payments/" + first.getId() + "/receipt", first.getReceiptUrl());
+        assertEquals(receipt.length, first.getReceiptSize());
+        assertEquals("image/png", first.getReceiptContentType());
+        assertEquals(digest, paymentRepository.findById(first.getId()).orElseThrow().getReceiptDigest());
+        assertEquals(digest, paymentRepository.findById(second.getId()).orElseThrow().getReceiptDigest());
+        // Content-addressed: the same image is one file, named by its digest
+        Path file = receiptStore.locate(digest);
+        assertArrayEquals(receipt, Files.readAllBytes(file));
+        try (var files = Files.list(file.getParent())) {
+            assertEquals(1, files.count());
+        }
+
+        // Payment lists carry a link, never the receipt bytes
+        mockMvc.perform(get("/api/payments/ticket/" + first.getTicketId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data[0].receiptUrl").value(first.getReceiptUrl()))
+                .andExpect(jsonPath("$.data[0].onlineReceipt").doesNotExist());
+
+        byte[] body = mockMvc.perform(get(first.getReceiptUrl()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/png"))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + digest + "\""))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, receipt.length))
+                .andExpect(header().string("X-Content-Type-Options", "nosniff"))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertArrayEquals(receipt, body);
+
+        byte[] slice = mockMvc.perform(get(first.getReceiptUrl()).header(HttpHeaders.RANGE, "bytes=1000-1999"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 1000-1999/" + receipt.length))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertArrayEquals(Arrays.copyOfRange(receipt, 1000, 2000), slice);
+        byte[] tail = mockMvc.perform(get(first.getReceiptUrl()).header(HttpHeaders.RANGE, "bytes=-100"))
+                .andExpect(status().isPartialContent())
+                .andReturn().getResponse().getContentAsByteArray();
+        assertArrayEquals(Arrays.copyOfRange(receipt, receipt.length - 100, receipt.length), tail);
+
+        mockMvc.perform(get(first.getReceiptUrl()).header(HttpHeaders.RANGE, "bytes=" + receipt.length + "-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */" + receipt.length));
+        mockMvc.perform(get(first.getReceiptUrl()).header(HttpHeaders.IF_NONE_MATCH, "\"" + digest + "\""))
+                .andExpect(status().isNotModified());
+        // A range of an older version (If-Range no longer matches) gets the whole receipt
+        mockMvc.perform(get(first.getReceiptUrl()).header(HttpHeaders.RANGE, "bytes=0-9").header(HttpHeaders.IF_RANGE, "\"stale\""))
+                .andExpect(status().isOk())
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, receipt.length));
+    }
+
+    @Test
+    void pendingReceiptCanBeReplacedByStreamingTheFile() throws Exception {
+        Trip trip = createTrip("RCP-2");
+        User passenger = userRepository.save(new User("receipt.replace@example.com", "Receipt", "Replace", Role.PASSENGER));
+        TicketResponse ticket = ticketService.createTicketForOnline(onlineRequest(trip, passenger, 2, 1, png(500, 2)));
+        Long paymentId = ticket.getPayments().get(0).getId();
+        byte[] pdf = "%PDF-1.7 bank transfer confirmation".getBytes();
+
+        mockMvc.perform(put("/api/payments/" + paymentId + "/receipt").contentType("application/pdf").content(pdf))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.receiptContentType").value("application/pdf"))
+                .andExpect(jsonPath("$.data.receiptSize").value(pdf.length));
+        byte[] body = mockMvc.perform(get("/api/payments/" + paymentId + "/receipt"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        assertArrayEquals(pdf, body);
+
+        // The size limit is enforced while the upload is read
+        mockMvc.perform(put("/api/payments/" + paymentId + "/receipt").contentType("image/png").content(png(70_000, 3)))
+                .andExpect(status().isPayloadTooLarge());
+
+        // A reviewed payment keeps the receipt it was reviewed with
+        paymentService.updatePaymentStatus(paymentId, PaymentStatus.APPROVED);
+        mockMvc.perform(put("/api/payments/" + paymentId + "/receipt").contentType("image/png").content(png(100, 4)))
+                .andExpect(status().isConflict());
+        assertEquals(sha256(pdf), paymentRepository.findById(paymentId).orElseThrow().getReceiptDigest());
+    }
+
+    @Test
+    void legacyReceiptsAreMovedOutOfTheDatabase() throws Exception {
+        Trip trip = createTrip("RCP-3");
+        User passenger = userRepository.save(new User("receipt.legacy@example.com", "Receipt", "Legacy", Role.PASSENGER));
+        Long paymentId = ticketService.createTicketForOnline(onlineRequest(trip, passenger, 3, 1, png(300, 5))).getPayments().get(0).getId();
+        byte[] legacy = png(3_000, 6);
+        // A row as the old schema left it: the receipt in the blob column, no pointer
+        jdbcTemplate.execute("ALTER TABLE payments ADD COLUMN online_receipt BLOB");
+        try {
+            jdbcTemplate.update("UPDATE payments SET online_receipt = ?, receipt_digest = NULL, receipt_size = NULL, " +
+                    "receipt_content_type = NULL WHERE id = ?", legacy, paymentId);
+
+            assertEquals(1, legacyReceiptMigrator.migrate());
+            Payment migrated = paymentRepository.findById(paymentId).orElseThrow();
+            assertEquals(sha256(legacy), migrated.getReceiptDigest());
+            assertEquals("image/png", migrated.getReceiptContentType());
+            assertArrayEquals(legacy, Files.readAllBytes(receiptStore.locate(migrated.getReceiptDigest())));
+            assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM payments WHERE online_receipt IS NOT NULL", Integer.class));
+            assertEquals(0, legacyReceiptMigrator.migrate());
+        } finally {
+            jdbcTemplate.execute("ALTER TABLE payments DROP COLUMN online_receipt");
+        }
+    }
+
+    @Test
+    void sweepRemovesOnlyOldUnreferencedFiles() throws Exception {
+        Trip trip = createTrip("RCP-4");
+        User passenger = userRepository.save(new User("receipt.sweep@example.com", "Receipt", "Sweep", Role.PASSENGER));
+        byte[] kept = png(400, 7);
+        ticketService.createTicketForOnline(onlineRequest(trip, passenger, 4, 1, kept));
+        Path referenced = receiptStore.locate(sha256(kept));
+        Path orphan = receiptStore.locate(receiptStore.store(png(400, 8)).getDigest());
+        Path recentOrphan = receiptStore.locate(receiptStore.store(png(400, 9)).getDigest());
+        FileTime old = FileTime.from(Instant.now().minus(2, ChronoUnit.DAYS));
+        Files.setLastModifiedTime(referenced, old);
+        Files.setLastModifiedTime(orphan, old);
+
+        assertTrue(receiptStore.removeUnreferenced() >= 1);
+        assertFalse(Files.exists(orphan));
+        assertTrue(Files.exists(referenced), "A receipt a payment points at is kept.");
+        assertTrue(Files.exists(recentOrphan), "A new upload may belong to a booking that is still being saved.");
+    }
+
+    private Trip createTrip(String plateNumber) {
+        Bus bus = busRepository.save(new Bus(plateNumber, "Receipt Bus", "Cit Express", 10, 4));
+        Route route = routeRepository.save(new Route("Cebu City", "Moalboal", List.of(), 200.00));
+        return tripRepository.save(new Trip(LocalDateTime.now().plusDays(2), bus, route));
+    }
+
+    private TicketRequest onlineRequest(Trip trip, User passenger, int row, int column, byte[] receipt) {
+        TicketRequest request = new TicketRequest();
+        request.setTripId(trip.getId());
+        request.setUserId(passenger.getId());
+        request.setRowPosition(row);
+        request.setColumnPosition(column);
+        request.setFare(200.00);
+        request.setDropOff("Moalboal");
+        request.setPaymentType(PaymentType.ONLINE);
+        request.setOnlineReceipt(receipt);
+        return request;
+    }
+
+    // Random bytes behind a PNG signature
+    private static byte[] png(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        byte[] signature = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+        System.arraycopy(signature, 0, bytes, 0, signature.length);
+        return bytes;
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+}
@@ -0,0 +1,204 @@
+package edu.cit.btts;
+
+import edu.cit.btts.dto.PaymentClaimResponse;
+import edu.cit.btts.dto.PaymentResponse;
+import edu.cit.btts.dto.TicketRequest;
+import edu.cit.btts.model.*;
+import edu.cit.btts.repository.*;
+import edu.cit.btts.service.PaymentService;
+import edu.cit.btts.service.TicketService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = "booking.receipts.dir=target/test-receipts")
+@AutoConfigureMockMvc
+@WithMockUser(roles = "TICKET_STAFF")
+public class PaymentReviewQueueTest {
+
+    private static final int REVIEWERS = 4;
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private PaymentRepository paymentRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private TicketService ticketService;
+    @Autowired private PaymentService paymentService;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void releaseClaims() {
+        jdbcTemplate.update("UPDATE payments SET claimed_by = NULL, claim_expires_at = NULL");
+    }
+
+    @Test
+    void concurrentReviewersNeverClaimTheSamePayment() throws Exception {
+        List<Long> pending = createPendingPayments("REV-1", 16);
+
+        // Every reviewer keeps claiming small batches until the queue is empty
+        Set<Long> claimedTwice = ConcurrentHashMap.newKeySet();
+        Set<Long> claimed = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(REVIEWERS);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < REVIEWERS; i++) {
+            String reviewer = "reviewer" + i + "@example.com";
+            results.add(executor.submit(() -> {
+                start.await();
+                return as(reviewer, () -> {
+                    int total = 0;
+                    List<PaymentResponse> batch;
+                    while (!(batch = paymentService.claimPendingPayments(3).getPayments()).isEmpty()) {
+                        for (PaymentResponse payment : batch) {
+                            if (!claimed.add(payment.getId())) claimedTwice.add(payment.getId());
+                        }
+                        total += batch.size();
+                    }
+                    return total;
+                });
+            }));
+        }
+        start.countDown();
+        int total = 0;
+        for (Future<Integer> result : results) {
+            total += result.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertTrue(claimedTwice.isEmpty(), "Claimed by more than one reviewer: " + claimedTwice);
+        assertEquals(claimed.size(), total);
+        assertTrue(claimed.containsAll(pending));
+        // Every claim is on record with its reviewer
+        for (Long id : pending) {
+            Payment payment = paymentRepository.findById(id).orElseThrow();
+            assertTrue(payment.getClaimedBy().startsWith("reviewer"));
+            assertTrue(payment.getClaimExpiresAt().isAfter(LocalDateTime.now()));
+        }
+    }
+
+    @Test
+    void leasesAreRenewedReleasedAndExpire() throws Exception {
+        List<Long> pending = createPendingPayments("REV-2", 3);
+        // Pending payments left by other tests are under someone else's review for now
+        jdbcTemplate.update("UPDATE payments SET claimed_by = 'other@example.com', claim_expires_at = ? " +
+                "WHERE status = 'PENDING' AND id < ?", LocalDateTime.now().plusHours(1), pending.get(0));
+        assertEquals(pending, claimedIds("ana@example.com", 50));
+        Long first = pending.get(0);
+        LocalDateTime lease = paymentRepository.findById(first).orElseThrow().getClaimExpiresAt();
+
+        // Only the holder renews or decides
+        Thread.sleep(20);
+        PaymentClaimResponse renewed = as("ana@example.com", () -> paymentService.renewClaim(first));
+        assertTrue(renewed.getLeaseExpiresAt().isAfter(lease));
+        assertEquals(HttpStatus.CONFLICT, conflict("ben@example.com", () -> paymentService.renewClaim(first)));
+        assertEquals(HttpStatus.CONFLICT, conflict("ben@example.com", () -> paymentService.updatePaymentStatus(first, PaymentStatus.APPROVED)));
+        assertTrue(as("ben@example.com", () -> paymentService.claimPendingPayments(5).getPayments()).isEmpty());
+
+        // Released: straight back to the queue
+        as("ana@example.com", () -> { paymentService.releaseClaim(first); return null; });
+        assertEquals(List.of(first), claimedIds("ben@example.com", 5));
+
+        // Expired: anyone may claim it, and the old holder can no longer renew it
+        Long second = pending.get(1);
+        jdbcTemplate.update("UPDATE payments SET claim_expires_at = ? WHERE id = ?", LocalDateTime.now().minusSeconds(1), second);
+        assertEquals(HttpStatus.CONFLICT, conflict("ana@example.com", () -> paymentService.renewClaim(second)));
+        assertEquals(List.of(second), claimedIds("ben@example.com", 5));
+
+        // A decision clears the claim and takes the payment out of the queue for good
+        Long third = pending.get(2);
+        PaymentResponse approved = as("ana@example.com", () -> paymentService.updatePaymentStatus(third, PaymentStatus.APPROVED));
+        assertEquals(PaymentStatus.APPROVED, approved.getStatus());
+        assertNull(paymentRepository.findById(third).orElseThrow().getClaimedBy());
+        assertFalse(claimedIds("ben@example.com", 50).contains(third));
+        assertEquals(HttpStatus.CONFLICT, conflict("ana@example.com", () -> paymentService.renewClaim(third)));
+    }
+
+    @Test
+    void claimSizeIsBounded() throws Exception {
+        mockMvc.perform(post("/api/payments/claims").param("limit", "0")).andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/payments/claims").param("limit", "51")).andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/payments/claims").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.leaseExpiresAt").isString())
+                .andExpect(jsonPath("$.data.payments").isArray());
+    }
+
+    @Test
+    @WithMockUser(roles = "PASSENGER")
+    void passengersCannotClaim() throws Exception {
+        mockMvc.perform(post("/api/payments/claims")).andExpect(status().isForbidden());
+    }
+
+    private List<Long> createPendingPayments(String plateNumber, int count) {
+        Bus bus = busRepository.save(new Bus(plateNumber, "Review Bus", "Cit Express", 10, 4));
+        Route route = routeRepository.save(new Route("Cebu City", "Danao", List.of(), 90.00));
+        Trip trip = tripRepository.save(new Trip(LocalDateTime.now().plusDays(2), bus, route));
+        User passenger = userRepository.save(new User(plateNumber.toLowerCase() + "@example.com", "Review", "Passenger", Role.PASSENGER));
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            TicketRequest request = new TicketRequest();
+            request.setTripId(trip.getId());
+            request.setUserId(passenger.getId());
+            request.setRowPosition(i / 4 + 1);
+            request.setColumnPosition(i % 4 + 1);
+            request.setFare(90.00);
+            request.setDropOff("Danao");
+            request.setPaymentType(PaymentType.ONLINE);
+            request.setOnlineReceipt(new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) i });
+            ids.add(ticketService.createTicketForOnline(request).getPayments().get(0).getId());
+        }
+        return ids;
+    }
+
+    private List<Long> claimedIds(String reviewer, int limit) {
+        return as(reviewer, () -> paymentService.claimPendingPayments(limit).getPayments())
+                .stream().map(PaymentResponse::getId).collect(Collectors.toList());
+    }
+
+    private static HttpStatus conflict(String reviewer, Supplier<?> action) {
+        ResponseStatusException error = assertThrows(ResponseStatusException.class, () -> as(reviewer, action));
+        return HttpStatus.valueOf(error.getStatusCode().value());
+    }
+
+    // Runs the action as the given staff member, on the calling thread
+    private static <T> T as(String reviewer, Supplier<T> action) {
+        var previous = SecurityContextHolder.getContext();
+        SecurityContextHolder.setContext(SecurityContextHolder.createEmptyContext());
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                reviewer, null, AuthorityUtils.createAuthorityList("ROLE_TICKET_STAFF")));
+        try {
+            return action.get();
+        } finally {
+            SecurityContextHolder.setContext(previous);
+        }
+    }
+}
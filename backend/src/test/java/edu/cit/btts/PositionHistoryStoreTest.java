@@ -0,0 +1,131 @@
+package edu.cit.btts;
+
+import edu.cit.btts.dto.BusPositionDTO;
+import edu.cit.btts.service.PositionHistoryStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PositionHistoryStoreTest {
+
+    private static final long DAY_MS = 86_400_000L;
+
+    @TempDir Path directory;
+
+    @Test
+    void rangeReadsSpanRolledOverSegments() throws IOException {
+        PositionHistoryStore store = open(256); // A handful of records per segment
+        long start = (System.currentTimeMillis() / DAY_MS) * DAY_MS + 1_000;
+        for (int i = 0; i < 100; i++) {
+            store.onPosition(7, start + i * 1000L, 10.3 + i * 0.0001, 123.9 - i * 0.0001, 40.5f, 180.2f);
+        }
+
+        assertTrue(segments(7).size() > 5, "Segments should roll over when full.");
+        List<BusPositionDTO> all = store.read(7, start, start + 99_000, 1000);
+        assertEquals(100, all.size());
+        for (int i = 0; i < 100; i++) {
+            BusPositionDTO position = all.get(i);
+            assertEquals(start + i * 1000L, position.getTimestamp());
+            assertEquals(10.3 + i * 0.0001, position.getLatitude(), 1e-6);
+            assertEquals(123.9 - i * 0.0001, position.getLongitude(), 1e-6);
+            assertEquals(40.5f, position.getSpeed(), 0.05f);
+            assertEquals(180.2f, position.getHeading(), 0.05f);
+        }
+
+        List<BusPositionDTO> middle = store.read(7, start + 10_000, start + 19_500, 1000);
+        assertEquals(10, middle.size());
+        assertEquals(start + 10_000, middle.get(0).getTimestamp());
+        assertEquals(3, store.read(7, start, start + 99_000, 3).size());
+        assertTrue(store.read(8, start, start + 99_000, 1000).isEmpty());
+        // Only the days that exist are visited, so an unbounded range returns right away
+        assertEquals(100, store.read(7, 0, Long.MAX_VALUE, 1000).size());
+    }
+
+    @Test
+    void openSegmentIsRecoveredAfterACrash() throws IOException {
+        PositionHistoryStore store = open(4096);
+        long start = System.currentTimeMillis() - 60_000;
+        for (int i = 0; i < 20; i++) {
+            store.onPosition(3, start + i * 100L, 10.3, 123.9, 30f, 90f);
+        }
+        // Crash: the store is never closed, and a torn record follows the last complete one
+        Path openSegment = segments(3).get(0);
+        assertTrue(openSegment.toString().endsWith(".open"));
+        long validRecords = store.read(3, start, start + 10_000, 1000).size();
+        try (RandomAccessFile file = new RandomAccessFile(openSegment.toFile(), "rw")) {
+            long end = 28;
+            while (true) { // Skip the intact records: [length][payload][crc]
+                file.seek(end);
+                int length = file.read();
+                if (length == 0) break;
+                end += length + 2;
+            }
+            file.seek(end);
+            file.write(new byte[] { 9, 1, 2, 3 }); // Length 9, payload cut short
+        }
+
+        PositionHistoryStore restarted = open(4096);
+        assertTrue(segments(3).stream().allMatch(path -> path.toString().endsWith(".seg")));
+        assertEquals(validRecords, restarted.read(3, start, start + 10_000, 1000).size());
+
+        // Samples resent after the restart are not stored twice; new ones are
+        restarted.onPosition(3, start + 1_900, 10.3, 123.9, 30f, 90f);
+        restarted.onPosition(3, start + 2_000, 10.4, 123.9, 30f, 90f);
+        List<BusPositionDTO> after = restarted.read(3, start, start + 10_000, 1000);
+        assertEquals(21, after.size());
+        assertEquals(10.4, after.get(20).getLatitude(), 1e-6);
+    }
+
+    @Test
+    void maintenanceCompactsPastDaysAndDropsExpiredOnes() throws IOException {
+        PositionHistoryStore store = open(256);
+        long today = System.currentTimeMillis() / DAY_MS * DAY_MS;
+        long twoDaysAgo = today - 2 * DAY_MS + 3_600_000;
+        long fortyDaysAgo = today - 40 * DAY_MS + 3_600_000;
+        for (int i = 0; i < 60; i++) {
+            store.onPosition(5, fortyDaysAgo + i * 1000L, 10.0, 124.0, 20f, 10f);
+        }
+        for (int i = 0; i < 60; i++) {
+            store.onPosition(5, twoDaysAgo + i * 1000L, 10.0 + i * 0.001, 124.0, 20f, 10f);
+        }
+        store.close();
+        assertTrue(segments(5, twoDaysAgo).size() > 1);
+
+        store.maintain();
+
+        assertFalse(Files.exists(directory.resolve("5").resolve(LocalDate.ofEpochDay(fortyDaysAgo / DAY_MS).toString())));
+        assertEquals(1, segments(5, twoDaysAgo).size(), "A past day should be compacted into one segment.");
+        List<BusPositionDTO> compacted = store.read(5, twoDaysAgo, twoDaysAgo + 59_000, 1000);
+        assertEquals(60, compacted.size());
+        assertEquals(10.059, compacted.get(59).getLatitude(), 1e-6);
+    }
+
+    private PositionHistoryStore open(int segmentSize) throws IOException {
+        PositionHistoryStore store = new PositionHistoryStore(directory.toString(), segmentSize,
+                Duration.ofHours(6), Duration.ofDays(30), true);
+        store.recover();
+        return store;
+    }
+
+    private List<Path> segments(long busId) throws IOException {
+        try (Stream<Path> files = Files.walk(directory.resolve(Long.toString(busId)))) {
+            return files.filter(Files::isRegularFile).sorted().toList();
+        }
+    }
+
+    private List<Path> segments(long busId, long day) throws IOException {
+        try (Stream<Path> files = Files.list(directory.resolve(Long.toString(busId)).resolve(LocalDate.ofEpochDay(day / DAY_MS).toString()))) {
+            return files.toList();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package edu.cit.btts;
+
+import edu.cit.btts.dto.PaymentResponse;
+import edu.cit.btts.dto.TicketRequest;
+import edu.cit.btts.model.*;
+import edu.cit.btts.repository.*;
+import edu.cit.btts.service.ReceiptImagePipeline;
+import edu.cit.btts.service.ReceiptStore;
+import edu.cit.btts.service.TicketService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = {
+        "booking.receipts.dir=target/test-receipts",
+        "booking.receipts.pipeline.retry-delay=PT0S",
+        "booking.receipts.pipeline.poll-interval-ms=3600000"
+})
+@AutoConfigureMockMvc
+@WithMockUser(roles = "TICKET_STAFF")
+public class ReceiptImagePipelineTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private ReceiptJobRepository receiptJobRepository;
+    @Autowired private TicketService ticketService;
+    @Autowired private ReceiptStore receiptStore;
+    @Autowired private ReceiptImagePipeline receiptImagePipeline;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void screenshotsGetANormalizedCopyAThumbnailAndAPerceptualHash() throws Exception {
+        Trip trip = createTrip("IMG-1");
+        User passenger = userRepository.save(new User("receipt.images@example.com", "Receipt", "Images", Role.PASSENGER));
+        BufferedImage screenshot = screenshot(1080, 2400, 1);
+        byte[] png = encode(screenshot, "png");
+
+        PaymentResponse payment = ticketService.createTicketForOnline(onlineRequest(trip, passenger, 1, 1, png)).getPayments().get(0);
+        assertEquals("/api/payments/" + payment.getId() + "/receipt?variant=thumbnail", payment.getReceiptThumbnailUrl());
+        ReceiptJob job = awaitJob(digestOf(payment), ReceiptJobStatus.DONE);
+        assertEquals(1080, job.getWidth());
+        assertEquals(2400, job.getHeight());
+
+        BufferedImage thumbnail = download(payment.getReceiptThumbnailUrl());
+        assertEquals(108, thumbnail.getWidth());
+        assertEquals(240, thumbnail.getHeight());
+        byte[] normalized = mockMvc.perform(get(payment.getReceiptUrl()).param("variant", "normalized"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/jpeg"))
+                .andReturn().getResponse().getContentAsByteArray();
+        BufferedImage normalizedImage = ImageIO.read(new ByteArrayInputStream(normalized));
+        assertEquals(720, normalizedImage.getWidth());
+        assertEquals(1600, normalizedImage.getHeight());
+        assertTrue(normalized.length < png.length);
+        // The original stays available as uploaded
+        byte[] original = mockMvc.perform(get(payment.getReceiptUrl()))
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/png"))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertArrayEquals(png, original);
+        mockMvc.perform(get(payment.getReceiptUrl()).param("variant", "huge")).andExpect(status().isBadRequest());
+
+        // The same screenshot re-saved as a JPEG hashes almost the same; another one does not
+        long hash = job.getPerceptualHash();
+        String resaved = receiptStore.store(encode(screenshot, "jpg")).getDigest();
+        String other = receiptStore.store(encode(darkMode(screenshot(1080, 2400, 2)), "png")).getDigest();
+        long resavedHash = awaitJob(resaved, ReceiptJobStatus.DONE).getPerceptualHash();
+        long otherHash = awaitJob(other, ReceiptJobStatus.DONE).getPerceptualHash();
+        assertTrue(Long.bitCount(hash ^ resavedHash) <= 6, "Re-saved screenshot hash distance " + Long.bitCount(hash ^ resavedHash));
+        assertTrue(Long.bitCount(hash ^ otherHash) > 20, "Different screenshot hash distance " + Long.bitCount(hash ^ otherHash));
+
+        // Storing it again does not queue a second job
+        receiptStore.store(png);
+        assertEquals(1, receiptJobRepository.findByDigest(job.getDigest()).size());
+    }
+
+    @Test
+    void queuedJobsSurviveARestartAndBrokenImagesFailAfterRetries() throws Exception {
+        // A job whose worker died mid-run, and one the pool never picked up
+        String interrupted = receiptStore.store(encode(screenshot(600, 900, 3), "png")).getDigest();
+        awaitJob(interrupted, ReceiptJobStatus.DONE);
+        jdbcTemplate.update("UPDATE receipt_jobs SET status = 'RUNNING', started_at = ? WHERE digest = ?",
+                LocalDateTime.now().minusHours(1), interrupted);
+        String neverDispatched = receiptStore.store(encode(screenshot(600, 900, 4), "png")).getDigest();
+        awaitJob(neverDispatched, ReceiptJobStatus.DONE);
+        receiptJobRepository.save(new ReceiptJob(neverDispatched));
+
+        assertTrue(receiptImagePipeline.poll() >= 2);
+        awaitJob(interrupted, ReceiptJobStatus.DONE);
+        assertTrue(receiptJobRepository.findByDigest(neverDispatched).stream().allMatch(job -> job.getStatus() == ReceiptJobStatus.DONE));
+
+        // A PNG signature on garbage: three attempts, then FAILED, and the original is what gets served
+        Trip trip = createTrip("IMG-2");
+        User passenger = userRepository.save(new User("receipt.broken@example.com", "Receipt", "Broken", Role.PASSENGER));
+        byte[] broken = new byte[2_000];
+        new Random(5).nextBytes(broken);
+        System.arraycopy(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' }, 0, broken, 0, 8);
+        PaymentResponse payment = ticketService.createTicketForOnline(onlineRequest(trip, passenger, 1, 1, broken)).getPayments().get(0);
+        String digest = digestOf(payment);
+        for (int i = 0; i < 50 && receiptJobRepository.findByDigest(digest).get(0).getStatus() != ReceiptJobStatus.FAILED; i++) {
+            receiptImagePipeline.poll();
+            Thread.sleep(100);
+        }
+        ReceiptJob failed = receiptJobRepository.findByDigest(digest).get(0);
+        assertEquals(ReceiptJobStatus.FAILED, failed.getStatus());
+        assertEquals(3, failed.getAttempts());
+        assertNotNull(failed.getLastError());
+        byte[] served = mockMvc.perform(get(payment.getReceiptThumbnailUrl()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/png"))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertArrayEquals(broken, served);
+    }
+
+    private ReceiptJob awaitJob(String digest, ReceiptJobStatus status) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            List<ReceiptJob> jobs = receiptJobRepository.findByDigest(digest);
+            if (!jobs.isEmpty() && jobs.stream().allMatch(job -> job.getStatus() == status)) return jobs.get(0);
+            Thread.sleep(100);
+        }
+        fail("Receipt job for " + digest + " did not reach " + status);
+        return null;
+    }
+
+    private String digestOf(PaymentResponse payment) {
+        return jdbcTemplate.queryForObject("SELECT receipt_digest FROM payments WHERE id = ?", String.class, payment.getId());
+    }
+
+    private BufferedImage download(String url) throws Exception {
+        byte[] body = mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/jpeg"))
+                .andReturn().getResponse().getContentAsByteArray();
+        return ImageIO.read(new ByteArrayInputStream(body));
+    }
+
+    private Trip createTrip(String plateNumber) {
+        Bus bus = busRepository.save(new Bus(plateNumber, "Image Bus", "Cit Express", 10, 4));
+        Route route = routeRepository.save(new Route("Cebu City", "Bogo", List.of(), 220.00));
+        return tripRepository.save(new Trip(LocalDateTime.now().plusDays(2), bus, route));
+    }
+
+    private TicketRequest onlineRequest(Trip trip, User passenger, int row, int column, byte[] receipt) {
+        TicketRequest request = new TicketRequest();
+        request.setTripId(trip.getId());
+        request.setUserId(passenger.getId());
+        request.setRowPosition(row);
+        request.setColumnPosition(column);
+        request.setFare(220.00);
+        request.setDropOff("Bogo");
+        request.setPaymentType(PaymentType.ONLINE);
+        request.setOnlineReceipt(receipt);
+        return request;
+    }
+
+    // A phone photo of a payment screen of sorts: sensor noise, a coloured header, blocks of "text" and an amount box
+    private static BufferedImage screenshot(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int grey = 225 + random.nextInt(30);
+                image.setRGB(x, y, grey << 16 | grey << 8 | grey);
+            }
+        }
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(random.nextInt(0x1000000)));
+        graphics.fillRect(0, 0, width, height / 8);
+        for (int line = 0; line < 40; line++) {
+            int y = height / 6 + line * (height / 50);
+            int x = random.nextInt(width / 4);
+            graphics.setColor(new Color(random.nextInt(0x1000000)).darker());
+            graphics.fillRect(x, y, width / 3 + random.nextInt(width / 2), height / 120);
+        }
+        graphics.setColor(new Color(random.nextInt(0x1000000)));
+        graphics.fillOval(random.nextInt(width / 2), height / 2 + random.nextInt(height / 3), width / 3, width / 3);
+        graphics.dispose();
+        return image;
+    }
+
+    private static BufferedImage darkMode(BufferedImage image) {
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, ~image.getRGB(x, y));
+            }
+        }
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (format.equals("png")) {
+            ImageIO.write(image, format, bytes);
+            return bytes.toByteArray();
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(0.6f);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return Arrays.copyOf(bytes.toByteArray(), bytes.size());
+    }
+}
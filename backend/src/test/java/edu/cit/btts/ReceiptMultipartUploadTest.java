@@ -0,0 +1,238 @@
+package edu.cit.btts;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.cit.btts.dto.GroupTicketRequest;
+import edu.cit.btts.dto.PaymentRequest;
+import edu.cit.btts.dto.SeatPositionRequest;
+import edu.cit.btts.dto.TicketRequest;
+import edu.cit.btts.model.*;
+import edu.cit.btts.repository.*;
+import edu.cit.btts.service.ReceiptStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = {
+        "booking.receipts.dir=target/test-receipts",
+        "booking.receipts.max-size=16777216"
+})
+@AutoConfigureMockMvc
+@WithMockUser(roles = "PASSENGER")
+public class ReceiptMultipartUploadTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private ObjectMapper objectMapper;
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private PaymentRepository paymentRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private ReceiptStore receiptStore;
+
+    @Test
+    void onlineBookingsTakeTheReceiptAsAFilePart() throws Exception {
+        Trip trip = createTrip("MPU-1");
+        User passenger = userRepository.save(new User("multipart.upload@example.com", "Multipart", "Upload", Role.PASSENGER));
+        byte[] receipt = jpeg(50_000, 1);
+
+        TicketRequest request = ticketRequest(trip, passenger);
+        String booked = mockMvc.perform(multipart("/api/tickets/online")
+                        .file(jsonPart(request))
+                        .file(new MockMultipartFile("receipt", "gcash.jpg", "image/jpeg", receipt)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.data.payments[0].receiptContentType").value("image/jpeg"))
+                .andExpect(jsonPath("$.data.payments[0].receiptSize").value(receipt.length))
+                .andReturn().getResponse().getContentAsString();
+        Payment payment = paymentRepository.findByTicketId(objectMapper.readTree(booked).path("data").path("id").asLong()).get(0);
+        assertEquals(sha256(receipt), payment.getReceiptDigest());
+        assertArrayEquals(receipt, Files.readAllBytes(receiptStore.locate(payment.getReceiptDigest())));
+
+        // A group booking shares one uploaded receipt
+        GroupTicketRequest group = new GroupTicketRequest();
+        group.setTripId(trip.getId());
+        group.setUserId(passenger.getId());
+        group.setSeats(List.of(seat(2, 1), seat(2, 2)));
+        group.setFare(180.00);
+        group.setDropOff("Toledo");
+        group.setPaymentType(PaymentType.ONLINE);
+        mockMvc.perform(multipart("/api/tickets/group/online")
+                        .file(jsonPart(group))
+                        .file(new MockMultipartFile("receipt", "gcash.jpg", "image/jpeg", jpeg(8_000, 2))))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.data.length()").value(2))
+                .andExpect(jsonPath("$.data[1].payments[0].receiptSize").value(8_000));
+
+        // The receipt part is required, and the bytes may not come twice
+        request.setRowPosition(3);
+        mockMvc.perform(multipart("/api/tickets/online").file(jsonPart(request)))
+                .andExpect(status().isBadRequest());
+        request.setOnlineReceipt(new byte[] { 1, 2, 3 });
+        mockMvc.perform(multipart("/api/tickets/online")
+                        .file(jsonPart(request))
+                        .file(new MockMultipartFile("receipt", "gcash.jpg", "image/jpeg", receipt)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser(roles = "TICKET_STAFF")
+    void paymentsTakeTheReceiptAsAFilePart() throws Exception {
+        Trip trip = createTrip("MPU-2");
+        User passenger = userRepository.save(new User("multipart.payment@example.com", "Multipart", "Payment", Role.PASSENGER));
+        TicketRequest booking = ticketRequest(trip, passenger);
+        booking.setPaymentType(PaymentType.CASH);
+        Long ticketId = ticketId(booking);
+
+        PaymentRequest payment = new PaymentRequest();
+        payment.setTicketId(ticketId);
+        payment.setAmount(BigDecimal.valueOf(50));
+        payment.setType(PaymentType.ONLINE);
+        payment.setPurpose(PaymentPurpose.REBOOKING_FEE);
+        byte[] receipt = jpeg(4_000, 3);
+        mockMvc.perform(multipart("/api/payments")
+                        .file(jsonPart(payment))
+                        .file(new MockMultipartFile("receipt", "gcash.jpg", "image/jpeg", receipt)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.data.receiptSize").value(receipt.length))
+                .andExpect(jsonPath("$.data.receiptUrl").isString());
+        mockMvc.perform(multipart("/api/payments").file(jsonPart(payment)))
+                .andExpect(status().isBadRequest());
+
+        payment.setType(PaymentType.CASH);
+        mockMvc.perform(multipart("/api/payments").file(jsonPart(payment)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.data.receiptUrl").doesNotExist());
+    }
+
+    @Test
+    void storingAReceiptDoesNotBufferItInTheHeap() {
+        int size = 12 * 1024 * 1024;
+        receiptStore.store(new GeneratedReceipt(size, 10)); // Warm up
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        ReceiptStore.StoredReceipt stored = receiptStore.store(new GeneratedReceipt(size, 11));
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(size, stored.getSize());
+        assertEquals("image/jpeg", stored.getContentType());
+        System.out.printf("Storing a %d MB receipt allocated %d KB%n", size >> 20, allocated >> 10);
+        assertTrue(allocated < 1024 * 1024, "Receipt should be streamed, but storing it allocated " + allocated + " bytes");
+
+        // The limit is enforced while reading, long before an oversized upload is consumed
+        GeneratedReceipt oversized = new GeneratedReceipt(Integer.MAX_VALUE, 12);
+        ResponseStatusException error = assertThrows(ResponseStatusException.class, () -> receiptStore.store(oversized));
+        assertEquals(413, error.getStatusCode().value());
+        assertTrue(oversized.remaining > Integer.MAX_VALUE - 20 * 1024 * 1024);
+    }
+
+    private Trip createTrip(String plateNumber) {
+        Bus bus = busRepository.save(new Bus(plateNumber, "Upload Bus", "Cit Express", 10, 4));
+        Route route = routeRepository.save(new Route("Cebu City", "Toledo", List.of(), 180.00));
+        return tripRepository.save(new Trip(LocalDateTime.now().plusDays(2), bus, route));
+    }
+
+    private TicketRequest ticketRequest(Trip trip, User passenger) {
+        TicketRequest request = new TicketRequest();
+        request.setTripId(trip.getId());
+        request.setUserId(passenger.getId());
+        request.setRowPosition(1);
+        request.setColumnPosition(1);
+        request.setFare(180.00);
+        request.setDropOff("Toledo");
+        request.setPaymentType(PaymentType.ONLINE);
+        return request;
+    }
+
+    private Long ticketId(TicketRequest booking) throws Exception {
+        String body = mockMvc.perform(post("/api/tickets/cash")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(booking)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body).path("data").path("id").asLong();
+    }
+
+    private MockMultipartFile jsonPart(Object request) throws Exception {
+        return new MockMultipartFile("request", "", MediaType.APPLICATION_JSON_VALUE, objectMapper.writeValueAsBytes(request));
+    }
+
+    private static SeatPositionRequest seat(int row, int column) {
+        SeatPositionRequest seat = new SeatPositionRequest();
+        seat.setRowPosition(row);
+        seat.setColumnPosition(column);
+        return seat;
+    }
+
+    // Random bytes behind a JPEG signature
+    private static byte[] jpeg(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        bytes[0] = (byte) 0xFF;
+        bytes[1] = (byte) 0xD8;
+        bytes[2] = (byte) 0xFF;
+        return bytes;
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+
+    // A large "JPEG" produced on the fly, like a request body arriving from the network
+    private static class GeneratedReceipt extends InputStream {
+
+        private long remaining;
+        private long state;
+        private boolean started;
+
+        GeneratedReceipt(long size, long seed) {
+            this.remaining = size;
+            this.state = seed;
+        }
+
+        @Override
+        public int read() {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (remaining == 0) return -1;
+            int count = (int) Math.min(length, remaining);
+            for (int i = 0; i < count; i++) {
+                state = state * 6364136223846793005L + 1442695040888963407L;
+                buffer[offset + i] = (byte) (state >>> 56);
+            }
+            if (!started && count >= 3) {
+                buffer[offset] = (byte) 0xFF;
+                buffer[offset + 1] = (byte) 0xD8;
+                buffer[offset + 2] = (byte) 0xFF;
+                started = true;
+            }
+            remaining -= count;
+            return count;
+        }
+    }
+}
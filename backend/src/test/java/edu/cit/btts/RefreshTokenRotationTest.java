@@ -0,0 +1,118 @@
+package edu.cit.btts;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.cit.btts.dto.GoogleLoginRequest;
+import edu.cit.btts.dto.TokenRefreshRequest;
+import edu.cit.btts.model.Role;
+import edu.cit.btts.service.LocalIdTokenIssuer;
+import edu.cit.btts.service.UserService;
+import edu.cit.btts.util.JwtUtil;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = {
+        "google.id-token.key-source=local",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureMockMvc
+public class RefreshTokenRotationTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private ObjectMapper objectMapper;
+    @Autowired private LocalIdTokenIssuer localIdTokenIssuer;
+    @Autowired private UserService userService;
+    @Autowired private JwtUtil jwtUtil;
+    @Autowired private EntityManagerFactory entityManagerFactory;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void renewalsRotateTheTokenWithoutAnotherSignIn() throws Exception {
+        JsonNode login = signIn("rotating.rider@example.com");
+        String first = login.get("refreshToken").asText();
+        assertEquals("rotating.rider@example.com", jwtUtil.verify(login.get("token").asText()).getSubject());
+
+        // Only the hash is on record
+        assertEquals(0, count("SELECT COUNT(*) FROM refresh_tokens WHERE token_hash = ?", first));
+        assertEquals(1, count("SELECT COUNT(*) FROM refresh_tokens WHERE token_hash = ?", sha256(first)));
+
+        // A renewal on the node that issued the token: spend it, store the successor, nothing else
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        JsonNode renewed = body(refresh(first).andExpect(status().isOk()));
+        assertTrue(statistics.getPrepareStatementCount() <= 2, "Renewal used " + statistics.getPrepareStatementCount() + " statements");
+        String second = renewed.get("refreshToken").asText();
+        assertNotEquals(first, second);
+        JwtUtil.VerifiedToken access = jwtUtil.verify(renewed.get("token").asText());
+        assertEquals("rotating.rider@example.com", access.getSubject());
+        assertEquals("PASSENGER", access.getRole());
+
+        // A role change is picked up by the next renewal
+        userService.updateRoleByEmail("rotating.rider@example.com", Role.TICKET_STAFF);
+        JsonNode promoted = body(refresh(second).andExpect(status().isOk()));
+        assertEquals("TICKET_STAFF", jwtUtil.verify(promoted.get("token").asText()).getRole());
+
+        refresh("never-issued").andExpect(status().isUnauthorized());
+        refresh("").andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void aSpentTokenPresentedAgainRevokesTheWholeFamily() throws Exception {
+        String stolen = signIn("copied.rider@example.com").get("refreshToken").asText();
+        String current = body(refresh(stolen).andExpect(status().isOk())).get("refreshToken").asText();
+        String otherDevice = signIn("copied.rider@example.com").get("refreshToken").asText();
+
+        refresh(stolen).andExpect(status().isUnauthorized());
+        // The rightful client is signed out too, but not the user's other sign-ins
+        refresh(current).andExpect(status().isUnauthorized());
+        assertEquals(0, count("SELECT COUNT(*) FROM refresh_tokens WHERE family_id = " +
+                "(SELECT family_id FROM refresh_tokens WHERE token_hash = ?) AND revoked_at IS NULL", sha256(stolen)));
+        refresh(otherDevice).andExpect(status().isOk());
+    }
+
+    private JsonNode signIn(String email) throws Exception {
+        GoogleLoginRequest request = new GoogleLoginRequest();
+        request.setIdToken(localIdTokenIssuer.issue(email, "Refresh", "Rider"));
+        return body(mockMvc.perform(post("/api/auth/google")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk()));
+    }
+
+    private ResultActions refresh(String refreshToken) throws Exception {
+        TokenRefreshRequest request = new TokenRefreshRequest();
+        request.setRefreshToken(refreshToken);
+        return mockMvc.perform(post("/api/auth/refresh")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)));
+    }
+
+    private JsonNode body(ResultActions result) throws Exception {
+        return objectMapper.readTree(result.andReturn().getResponse().getContentAsString());
+    }
+
+    private int count(String sql, String arg) {
+        return jdbcTemplate.queryForObject(sql, Integer.class, arg);
+    }
+
+    private static String sha256(String token) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
@@ -0,0 +1,203 @@
+package edu.cit.btts;
+
+import edu.cit.btts.dto.TicketRequest;
+import edu.cit.btts.dto.TicketResponse;
+import edu.cit.btts.model.*;
+import edu.cit.btts.repository.*;
+import edu.cit.btts.service.PaymentService;
+import edu.cit.btts.service.SeatOccupancyIndex;
+import edu.cit.btts.service.TicketService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "booking.reservation-hold.ttl=PT1S")
+public class ReservationHoldExpiryTest {
+
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private SeatRepository seatRepository;
+    @Autowired private PaymentRepository paymentRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private TicketService ticketService;
+    @Autowired private PaymentService paymentService;
+    @Autowired private SeatOccupancyIndex seatOccupancyIndex;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void unreviewedOnlineBookingReleasesItsSeat() throws Exception {
+        Trip trip = createTrip("HLD-1");
+        User passenger = userRepository.save(new User("hold.expiry@example.com", "Hold", "Expiry", Role.PASSENGER));
+
+        TicketResponse expiring = ticketService.createTicketForOnline(onlineRequest(trip, passenger, 1, 1));
+        TicketResponse reviewed = ticketService.createTicketForOnline(onlineRequest(trip, passenger, 1, 2));
+        Long reviewedPaymentId = reviewed.getPayments().get(0).getId();
+        paymentService.updatePaymentStatus(reviewedPaymentId, PaymentStatus.APPROVED);
+
+        Seat expiredSeat = awaitSeatStatus(expiring.getSeatDetails().getId(), SeatStatus.OPEN);
+        assertEquals(SeatStatus.OPEN, expiredSeat.getStatus(), "Seat of an unreviewed online booking should be released.");
+        Payment expiredPayment = paymentRepository.findById(expiring.getPayments().get(0).getId()).orElseThrow();
+        assertEquals(PaymentStatus.REJECTED, expiredPayment.getStatus());
+        assertNull(expiredPayment.getHoldExpiresAt());
+
+        // The approved booking keeps its seat even though its hold has run out as well
+        assertEquals(SeatStatus.BOOKED, seatRepository.findById(reviewed.getSeatDetails().getId()).orElseThrow().getStatus());
+        assertEquals(PaymentStatus.APPROVED, paymentRepository.findById(reviewedPaymentId).orElseThrow().getStatus());
+        assertEquals(39, tripRepository.findAvailableSeatsById(trip.getId()), "Only the approved seat should stay taken.");
+    }
+
+    @Test
+    void expiredSeatCanBeBookedAgain() throws Exception {
+        Trip trip = createTrip("HLD-2");
+        User first = userRepository.save(new User("hold.first@example.com", "Hold", "First", Role.PASSENGER));
+        User second = userRepository.save(new User("hold.second@example.com", "Hold", "Second", Role.PASSENGER));
+
+        TicketResponse expiring = ticketService.createTicketForOnline(onlineRequest(trip, first, 2, 3));
+        awaitSeatStatus(expiring.getSeatDetails().getId(), SeatStatus.OPEN);
+        assertEquals(40, tripRepository.findAvailableSeatsById(trip.getId()));
+
+        TicketRequest rebooking = onlineRequest(trip, second, 2, 3);
+        rebooking.setPaymentType(PaymentType.CASH);
+        rebooking.setOnlineReceipt(null);
+        TicketResponse rebooked = ticketService.createTicketForCash(rebooking);
+
+        assertEquals(SeatStatus.BOOKED, seatRepository.findById(rebooked.getSeatDetails().getId()).orElseThrow().getStatus());
+        assertEquals(SeatStatus.BOOKED, seatOccupancyIndex.get(trip).getStatus(2, 3));
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM seats WHERE trip_id = ? AND row_position = 2 AND column_position = 3",
+                Integer.class, trip.getId()));
+        // The given-up booking is kept as a record, without a seat
+        Payment expiredPayment = paymentRepository.findById(expiring.getPayments().get(0).getId()).orElseThrow();
+        assertEquals(PaymentStatus.REJECTED, expiredPayment.getStatus());
+        assertNotNull(expiredPayment.getReceiptDigest());
+        assertNull(jdbcTemplate.queryForObject("SELECT seat_id FROM tickets WHERE id = ?", Long.class, expiring.getId()));
+        assertEquals(39, tripRepository.findAvailableSeatsById(trip.getId()));
+
+        // Its payment can no longer take the seat back
+        ResponseStatusException conflict = assertThrows(ResponseStatusException.class,
+                () -> paymentService.updatePaymentStatus(expiredPayment.getId(), PaymentStatus.APPROVED));
+        assertEquals(HttpStatus.CONFLICT, conflict.getStatusCode());
+        assertEquals(PaymentStatus.REJECTED, paymentRepository.findById(expiredPayment.getId()).orElseThrow().getStatus());
+        assertEquals(39, tripRepository.findAvailableSeatsById(trip.getId()));
+    }
+
+    @Test
+    void approvalTakingTheSeatBackBlocksARebooking() throws Exception {
+        Trip trip = createTrip("HLD-4");
+        User first = userRepository.save(new User("hold.back@example.com", "Hold", "Back", Role.PASSENGER));
+        User second = userRepository.save(new User("hold.late@example.com", "Hold", "Late", Role.PASSENGER));
+        TicketResponse expiring = ticketService.createTicketForOnline(onlineRequest(trip, first, 4, 2));
+        Long paymentId = expiring.getPayments().get(0).getId();
+        awaitSeatStatus(expiring.getSeatDetails().getId(), SeatStatus.OPEN);
+
+        // The reviewer approves the rejected payment late, and its transaction is still open when the rebooking comes
+        CountDownLatch approving = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> approval = executor.submit(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                paymentService.updatePaymentStatus(paymentId, PaymentStatus.APPROVED);
+                approving.countDown();
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            approving.await(10, TimeUnit.SECONDS);
+            TicketRequest rebooking = onlineRequest(trip, second, 4, 2);
+            Future<TicketResponse> rebooked = executor.submit(() -> ticketService.createTicketForOnline(rebooking));
+            approval.get(10, TimeUnit.SECONDS);
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> rebooked.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(ResponseStatusException.class, failure.getCause());
+            assertEquals(HttpStatus.CONFLICT, ((ResponseStatusException) failure.getCause()).getStatusCode());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(PaymentStatus.APPROVED, paymentRepository.findById(paymentId).orElseThrow().getStatus());
+        assertEquals(SeatStatus.BOOKED, seatRepository.findById(expiring.getSeatDetails().getId()).orElseThrow().getStatus());
+        assertEquals(SeatStatus.BOOKED, seatOccupancyIndex.get(trip).getStatus(4, 2));
+        assertEquals(39, tripRepository.findAvailableSeatsById(trip.getId()));
+    }
+
+    @Test
+    void approvalRacingTheExpiryKeepsTheSeat() throws Exception {
+        Trip trip = createTrip("HLD-3");
+        User passenger = userRepository.save(new User("hold.race@example.com", "Hold", "Race", Role.PASSENGER));
+        TicketResponse booking = ticketService.createTicketForOnline(onlineRequest(trip, passenger, 3, 1));
+        Long paymentId = booking.getPayments().get(0).getId();
+        Thread.sleep(1100); // The hold is due from here on
+
+        // The reviewer's transaction holds the payment while the expiry runs
+        CountDownLatch approving = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> approval = executor.submit(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                paymentService.updatePaymentStatus(paymentId, PaymentStatus.APPROVED);
+                approving.countDown();
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            approving.await(10, TimeUnit.SECONDS);
+            Future<Integer> expiry = executor.submit(() -> paymentService.expireReservationHolds(List.of(paymentId)));
+            approval.get(10, TimeUnit.SECONDS);
+            assertEquals(0, expiry.get(10, TimeUnit.SECONDS), "The approved payment's hold must not expire.");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(PaymentStatus.APPROVED, paymentRepository.findById(paymentId).orElseThrow().getStatus());
+        assertEquals(SeatStatus.BOOKED, seatRepository.findById(booking.getSeatDetails().getId()).orElseThrow().getStatus());
+        assertEquals(SeatStatus.BOOKED, seatOccupancyIndex.get(trip).getStatus(3, 1));
+        assertEquals(39, tripRepository.findAvailableSeatsById(trip.getId()));
+    }
+
+    private Trip createTrip(String plateNumber) {
+        Bus bus = busRepository.save(new Bus(plateNumber, "Hold Bus", "Cit Express", 10, 4));
+        Route route = routeRepository.save(new Route("Cebu City", "Oslob", List.of(), 250.00));
+        return tripRepository.save(new Trip(LocalDateTime.now().plusDays(3), bus, route));
+    }
+
+    private TicketRequest onlineRequest(Trip trip, User passenger, int row, int column) {
+        TicketRequest request = new TicketRequest();
+        request.setTripId(trip.getId());
+        request.setUserId(passenger.getId());
+        request.setRowPosition(row);
+        request.setColumnPosition(column);
+        request.setFare(250.00);
+        request.setDropOff("Oslob");
+        request.setPaymentType(PaymentType.ONLINE);
+        request.setOnlineReceipt(new byte[] { 1, 2, 3 });
+        return request;
+    }
+
+    private Seat awaitSeatStatus(Long seatId, SeatStatus expected) throws InterruptedException {
+        Seat seat = seatRepository.findById(seatId).orElseThrow();
+        for (int i = 0; i < 100 && seat.getStatus() != expected; i++) {
+            Thread.sleep(100);
+            seat = seatRepository.findById(seatId).orElseThrow();
+        }
+        return seat;
+    }
+}
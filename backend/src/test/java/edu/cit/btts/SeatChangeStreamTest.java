@@ -0,0 +1,126 @@
+package edu.cit.btts;
+
+import edu.cit.btts.dto.SeatDTO;
+import edu.cit.btts.dto.SeatMapResponse;
+import edu.cit.btts.dto.TicketRequest;
+import edu.cit.btts.model.*;
+import edu.cit.btts.repository.*;
+import edu.cit.btts.service.SeatChangeBroadcaster;
+import edu.cit.btts.service.SeatService;
+import edu.cit.btts.service.TicketService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class SeatChangeStreamTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private TicketService ticketService;
+    @Autowired private SeatChangeBroadcaster seatChangeBroadcaster;
+    @Autowired private SeatService seatService;
+
+    @Test
+    @WithMockUser(roles = "PASSENGER")
+    void committedBookingIsPushedToSubscribers() throws Exception {
+        Bus bus = busRepository.save(new Bus("SSE-1", "Stream Bus", "Cit Express", 10, 4));
+        Route route = routeRepository.save(new Route("Cebu City", "Toledo", List.of(), 150.00));
+        Trip trip = tripRepository.save(new Trip(LocalDateTime.now().plusDays(4), bus, route));
+        User passenger = userRepository.save(new User("stream.test@example.com", "Stream", "Test", Role.PASSENGER));
+
+        int subscribersBefore = seatChangeBroadcaster.getSubscriberCount();
+        MvcResult stream = mockMvc.perform(get("/api/seats/by-trip/" + trip.getId() + "/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MockHttpServletResponse response = stream.getResponse();
+        assertEquals(subscribersBefore + 1, seatChangeBroadcaster.getSubscriberCount());
+        assertTrue(awaitContent(response, "event:snapshot"), "The stream should start with a snapshot.");
+
+        TicketRequest request = new TicketRequest();
+        request.setTripId(trip.getId());
+        request.setUserId(passenger.getId());
+        request.setRowPosition(2);
+        request.setColumnPosition(3);
+        request.setFare(150.00);
+        request.setDropOff("Toledo");
+        request.setPaymentType(PaymentType.CASH);
+        ticketService.createTicketForCash(request);
+
+        assertTrue(awaitContent(response, "event:seat"), "The booking should be pushed to the subscriber.");
+        String content = response.getContentAsString();
+        assertTrue(content.contains("\"rowPosition\":2"), content);
+        assertTrue(content.contains("\"columnPosition\":3"), content);
+        assertTrue(content.contains("\"status\":\"BOOKED\""), content);
+    }
+
+    @Test
+    void changeCommittedWhileTheSnapshotIsTakenFollowsIt() throws Exception {
+        Bus bus = busRepository.save(new Bus("SSE-2", "Stream Bus", "Cit Express", 10, 4));
+        Route route = routeRepository.save(new Route("Cebu City", "Toledo", List.of(), 150.00));
+        Trip trip = tripRepository.save(new Trip(LocalDateTime.now().plusDays(4), bus, route));
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        seatChangeBroadcaster.subscribe(trip.getId(), () -> {
+            SeatMapResponse seatMap = seatService.getSeatMapByTripId(trip.getId());
+            // A booking commits after the map was read but before the stream has started
+            seatChangeBroadcaster.publish(new SeatDTO(4242L, 1, 2, SeatStatus.BOOKED, trip.getId()));
+            return seatMap;
+        }, emitter);
+
+        for (int i = 0; i < 50 && emitter.frames.size() < 2; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(2, emitter.frames.size(), "The change must not be lost between the snapshot and the stream.");
+        assertTrue(emitter.frames.get(0).startsWith("event:snapshot"), emitter.frames.get(0));
+        assertTrue(emitter.frames.get(1).startsWith("event:seat"), emitter.frames.get(1));
+        assertTrue(emitter.frames.get(1).contains("\"id\":4242"), emitter.frames.get(1));
+        emitter.complete();
+    }
+
+    private static boolean awaitContent(MockHttpServletResponse response, String expected) throws Exception {
+        for (int i = 0; i < 50; i++) {
+            if (response.getContentAsString().contains(expected)) return true;
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    // Stands in for a client connection: records every frame sent, in order
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final List<String> frames = new CopyOnWriteArrayList<>();
+
+        RecordingEmitter() {
+            super(0L);
+        }
+
+        @Override
+        public synchronized void send(Set<DataWithMediaType> items) {
+            StringBuilder frame = new StringBuilder();
+            items.forEach(item -> frame.append(item.getData()));
+            if (!frame.toString().startsWith(":")) {
+                frames.add(frame.toString()); // Heartbeat comments are left out
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package edu.cit.btts;
+
+import edu.cit.btts.service.SeatLockManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SeatLockManagerStressTest {
+
+    private static final long TRIP_ID = 42L;
+    private static final int ROWS = 15;
+    private static final int COLUMNS = 5;
+    private static final int THREADS = 32;
+
+    @Test
+    void sameCellIsNeverBookedTwice() throws Exception {
+        SeatLockManager seatLockManager = new SeatLockManager(1024, 250);
+
+        // Plain (non-thread-safe) check-then-insert, exactly like the booking flow
+        int[][] bookings = new int[ROWS + 1][COLUMNS + 1];
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger alreadyTaken = new AtomicInteger();
+        AtomicInteger lockConflicts = new AtomicInteger();
+
+        runConcurrently(THREADS, 200, (thread, attempt) -> {
+            // Every thread hammers every seat of the same trip
+            int row = attempt % ROWS + 1;
+            int column = (attempt / ROWS) % COLUMNS + 1;
+            try (SeatLockManager.SeatLock ignored = seatLockManager.lock(TRIP_ID, row, column)) {
+                if (bookings[row][column] > 0) {
+                    alreadyTaken.incrementAndGet();
+                    return;
+                }
+                Thread.yield(); // Widen the window between the check and the insert
+                bookings[row][column]++;
+                booked.incrementAndGet();
+            } catch (ResponseStatusException e) {
+                assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+                lockConflicts.incrementAndGet();
+            }
+        });
+
+        for (int row = 1; row <= ROWS; row++) {
+            for (int column = 1; column <= COLUMNS; column++) {
+                assertEquals(1, bookings[row][column], "Seat " + row + "," + column + " should be booked exactly once.");
+            }
+        }
+        assertEquals(ROWS * COLUMNS, booked.get());
+        assertEquals(THREADS * 200 - ROWS * COLUMNS, alreadyTaken.get() + lockConflicts.get());
+    }
+
+    @Test
+    void losingRequestFailsFastWithConflict() throws Exception {
+        SeatLockManager seatLockManager = new SeatLockManager(1024, 50);
+        SeatLockManager.SeatLock held = seatLockManager.lock(TRIP_ID, 1, 1);
+        try {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            Future<ResponseStatusException> loser = executor.submit(() -> assertThrows(ResponseStatusException.class,
+                    () -> seatLockManager.lock(TRIP_ID, 1, 1)));
+            assertEquals(HttpStatus.CONFLICT, loser.get(5, TimeUnit.SECONDS).getStatusCode());
+            executor.shutdown();
+        } finally {
+            held.close();
+        }
+    }
+
+    @Test
+    void differentCellsProceedInParallel() throws Exception {
+        // Zero wait: any contention between different cells would show up as a conflict
+        SeatLockManager seatLockManager = new SeatLockManager(1 << 16, 0);
+        CountDownLatch allHolding = new CountDownLatch(ROWS);
+        AtomicInteger conflicts = new AtomicInteger();
+
+        runConcurrently(ROWS, 1, (thread, attempt) -> {
+            try (SeatLockManager.SeatLock ignored = seatLockManager.lock(TRIP_ID, thread + 1, 1)) {
+                allHolding.countDown();
+                // Every thread holds its own cell while all the others acquire theirs
+                assertTrue(allHolding.await(5, TimeUnit.SECONDS), "All cells should be held at the same time.");
+            } catch (ResponseStatusException e) {
+                conflicts.incrementAndGet();
+                allHolding.countDown();
+            }
+        });
+
+        assertEquals(0, conflicts.get(), "Different cells should not block each other.");
+    }
+
+    @Test
+    void overlappingGroupLocksDoNotDeadlock() throws Exception {
+        SeatLockManager seatLockManager = new SeatLockManager(64, 1000);
+        AtomicInteger acquired = new AtomicInteger();
+
+        runConcurrently(THREADS, 100, (thread, attempt) -> {
+            // Threads ask for the same cells in opposite orders
+            List<int[]> cells = new ArrayList<>();
+            for (int column = 1; column <= COLUMNS; column++) {
+                cells.add(thread % 2 == 0 ? new int[] { 1, column } : new int[] { 1, COLUMNS - column + 1 });
+            }
+            try (SeatLockManager.SeatLock ignored = seatLockManager.lockAll(TRIP_ID, cells)) {
+                acquired.incrementAndGet();
+            }
+        });
+
+        assertEquals(THREADS * 100, acquired.get());
+    }
+
+    private interface Attempt {
+        void run(int thread, int attempt) throws Exception;
+    }
+
+    private static void runConcurrently(int threads, int attemptsPerThread, Attempt attempt) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    attempt.run(thread, i);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS); // Rethrows assertion failures from worker threads
+        }
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,123 @@
+package edu.cit.btts;
+
+import com.jayway.jsonpath.JsonPath;
+import edu.cit.btts.dto.BusDTO;
+import edu.cit.btts.model.*;
+import edu.cit.btts.repository.*;
+import edu.cit.btts.service.BusService;
+import edu.cit.btts.service.SeatService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class SeatMapEndpointTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private SeatRepository seatRepository;
+    @Autowired private SeatService seatService;
+    @Autowired private BusService busService;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @WithMockUser(roles = "PASSENGER")
+    void seatMapIsPackedAndRevalidatedWithETag() throws Exception {
+        // 15 x 5 layout
+        Bus bus = busRepository.save(new Bus("MAP-1", "Map Bus", "Cit Express", 15, 5));
+        Route route = routeRepository.save(new Route("Cebu City", "Danao", List.of(), 120.00));
+        Trip trip = tripRepository.save(new Trip(LocalDateTime.now().plusDays(2), bus, route));
+        saveSeat(trip, 1, 1, SeatStatus.BOOKED);
+        saveSeat(trip, 1, 2, SeatStatus.RESERVED);
+        saveSeat(trip, 15, 5, SeatStatus.UNAVAILABLE);
+        saveSeat(trip, 2, 1, SeatStatus.OPEN);
+
+        String url = "/api/seats/by-trip/" + trip.getId() + "/map";
+        MvcResult first = mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(jsonPath("$.rowCount").value(15))
+                .andExpect(jsonPath("$.columnCount").value(5))
+                .andExpect(jsonPath("$.rowLabel").value(bus.getRowLabel()))
+                .andExpect(jsonPath("$.columnLabel").value("A,B,C,D,E"))
+                .andExpect(jsonPath("$.etag").doesNotExist())
+                .andReturn();
+        String etag = first.getResponse().getHeader("ETag");
+
+        // 75 cells at 2 bits each
+        String cells = JsonPath.read(first.getResponse().getContentAsString(), "$.cells");
+        byte[] packed = Base64.getDecoder().decode(cells);
+        assertEquals(19, packed.length);
+        assertEquals(2, code(packed, 0), "Row 1 column 1 is BOOKED.");
+        assertEquals(1, code(packed, 1), "Row 1 column 2 is RESERVED.");
+        assertEquals(0, code(packed, 5), "An OPEN seat is 0.");
+        assertEquals(0, code(packed, 6), "A cell without a seat is 0.");
+        assertEquals(3, code(packed, 74), "Row 15 column 5 is UNAVAILABLE.");
+
+        // Unchanged map: the poll is answered with 304 and no body
+        mockMvc.perform(get(url).header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        // A seat change produces a new ETag
+        Seat seat = saveSeat(trip, 3, 3, SeatStatus.BOOKED);
+        seatService.updateSeatStatus(seat.getId(), SeatStatus.BOOKED); // Records the seat in the index
+        MvcResult changed = mockMvc.perform(get(url).header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertNotEquals(etag, changed.getResponse().getHeader("ETag"));
+    }
+
+    @Test
+    @WithMockUser(roles = "PASSENGER")
+    void labelChangeRefreshesTheSeatMap() throws Exception {
+        Bus bus = busRepository.save(new Bus("MAP-2", "Label Bus", "Cit Express", 3, 2));
+        Route route = routeRepository.save(new Route("Cebu City", "Carcar", List.of(), 80.00));
+        Trip trip = tripRepository.save(new Trip(LocalDateTime.now().plusDays(2), bus, route));
+        // Labels written before they were generated from the layout
+        jdbcTemplate.update("UPDATE bus SET row_label = 'X,Y,Z', column_label = 'L,R' WHERE id = ?", bus.getId());
+
+        String url = "/api/seats/by-trip/" + trip.getId() + "/map";
+        String etag = mockMvc.perform(get(url))
+                .andExpect(jsonPath("$.columnLabel").value("L,R"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        // Same layout, but saving the bus regenerates its labels
+        BusDTO renamed = busService.getBusById(bus.getId());
+        renamed.setName("Label Bus 2");
+        busService.updateBus(bus.getId(), renamed);
+
+        MvcResult refreshed = mockMvc.perform(get(url).header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rowLabel").value("1,2,3"))
+                .andExpect(jsonPath("$.columnLabel").value("A,B"))
+                .andReturn();
+        assertNotEquals(etag, refreshed.getResponse().getHeader("ETag"));
+    }
+
+    private Seat saveSeat(Trip trip, int row, int column, SeatStatus status) {
+        Seat seat = new Seat(row, column, trip);
+        seat.setStatus(status);
+        return seatRepository.save(seat);
+    }
+
+    private static int code(byte[] packed, int cell) {
+        return (packed[cell >> 2] >> ((cell & 3) * 2)) & 3;
+    }
+}
@@ -0,0 +1,167 @@
+package edu.cit.btts;
+
+import edu.cit.btts.dto.SeatDTO;
+import edu.cit.btts.dto.TicketRequest;
+import edu.cit.btts.model.*;
+import edu.cit.btts.repository.*;
+import edu.cit.btts.service.SeatOccupancyIndex;
+import edu.cit.btts.service.TicketService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class SeatOccupancyIndexTest {
+
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private SeatRepository seatRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private SeatOccupancyIndex seatOccupancyIndex;
+    @Autowired private TicketService ticketService;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void tripIsLoadedOnFirstUseAndThenServedFromMemory() {
+        Trip trip = createTrip("IDX-1");
+        seatRepository.save(seat(trip, 1, 1, SeatStatus.BOOKED));
+        assertNull(seatOccupancyIndex.getIfLoaded(trip.getId()), "A trip is not loaded before it is needed.");
+
+        SeatOccupancyIndex.TripSeatMap seatMap = seatOccupancyIndex.get(trip);
+        assertEquals(SeatStatus.BOOKED, seatMap.getStatus(1, 1));
+        assertNull(seatMap.getStatus(1, 2));
+        assertSame(seatMap, seatOccupancyIndex.getIfLoaded(trip.getId()));
+        assertSame(seatMap, seatOccupancyIndex.get(trip));
+    }
+
+    @Test
+    void rolledBackWriteDropsTheTripAndIsNeverSeen() {
+        Trip trip = createTrip("IDX-2");
+        seatOccupancyIndex.get(trip);
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            Seat seat = seatRepository.saveAndFlush(seat(trip, 2, 2, SeatStatus.RESERVED));
+            seatOccupancyIndex.recordSeat(seat);
+            // Neither applied before the commit nor loaded from the uncommitted row
+            assertNull(seatOccupancyIndex.get(trip).getStatus(2, 2));
+            status.setRollbackOnly();
+        });
+
+        assertNull(seatOccupancyIndex.getIfLoaded(trip.getId()), "A rollback drops the trip from the index.");
+        assertNull(seatOccupancyIndex.get(trip).getStatus(2, 2));
+    }
+
+    @Test
+    void loadIgnoresTheSnapshotOfTheAskingTransaction() throws Exception {
+        Trip trip = createTrip("IDX-3");
+        ExecutorService otherNode = Executors.newSingleThreadExecutor();
+        try {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+            transaction.executeWithoutResult(status -> {
+                // Pin this transaction's snapshot before the seat is booked elsewhere
+                assertEquals(0, seatRepository.findByTripId(trip.getId()).size());
+                try {
+                    otherNode.submit(() -> jdbcTemplate.update(
+                            "INSERT INTO seats (row_position, column_position, status, trip_id) VALUES (1, 3, 'BOOKED', ?)",
+                            trip.getId())).get();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                assertEquals(SeatStatus.BOOKED, seatOccupancyIndex.get(trip).getStatus(1, 3),
+                        "The index must be loaded from committed rows, not from this transaction's snapshot.");
+            });
+        } finally {
+            otherNode.shutdownNow();
+        }
+        assertEquals(SeatStatus.BOOKED, seatOccupancyIndex.get(trip).getStatus(1, 3));
+    }
+
+    @Test
+    void concurrentLoadsAndBookingsLeaveTheIndexMatchingTheDatabase() throws Exception {
+        // 10 x 4 layout: every cell is booked while readers keep dropping and reloading the trip
+        Trip trip = createTrip("IDX-4");
+        User passenger = userRepository.save(new User("index.race@example.com", "Index", "Race", Role.PASSENGER));
+        int writers = 8;
+        int readers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        try {
+            List<Future<?>> readerFutures = new ArrayList<>();
+            for (int r = 0; r < readers; r++) {
+                readerFutures.add(executor.submit(() -> {
+                    while (writing.get()) {
+                        seatOccupancyIndex.invalidate(trip.getId());
+                        seatOccupancyIndex.get(trip);
+                    }
+                    seatOccupancyIndex.get(trip);
+                }));
+            }
+            List<Future<?>> writerFutures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                writerFutures.add(executor.submit(() -> {
+                    for (int cell = writer; cell < 40; cell += writers) {
+                        ticketService.createTicketForCash(request(trip, passenger, cell / 4 + 1, cell % 4 + 1));
+                    }
+                }));
+            }
+            for (Future<?> future : writerFutures) future.get(60, TimeUnit.SECONDS);
+            writing.set(false);
+            for (Future<?> future : readerFutures) future.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Map<Long, SeatStatus> indexed = seatOccupancyIndex.get(trip).toSeatDTOs().stream()
+                .collect(Collectors.toMap(SeatDTO::getId, SeatDTO::getStatus));
+        Map<Long, SeatStatus> stored = seatRepository.findByTripId(trip.getId()).stream()
+                .collect(Collectors.toMap(Seat::getId, Seat::getStatus));
+        assertEquals(40, stored.size());
+        assertEquals(stored, indexed);
+    }
+
+    private Trip createTrip(String plateNumber) {
+        Bus bus = busRepository.save(new Bus(plateNumber, "Index Bus", "Cit Express", 10, 4));
+        Route route = routeRepository.save(new Route("Cebu City", "Carcar", List.of(), 90.00));
+        return tripRepository.save(new Trip(LocalDateTime.now().plusDays(2), bus, route));
+    }
+
+    private static Seat seat(Trip trip, int row, int column, SeatStatus status) {
+        Seat seat = new Seat(row, column, trip);
+        seat.setStatus(status);
+        return seat;
+    }
+
+    private static TicketRequest request(Trip trip, User passenger, int row, int column) {
+        TicketRequest request = new TicketRequest();
+        request.setTripId(trip.getId());
+        request.setUserId(passenger.getId());
+        request.setRowPosition(row);
+        request.setColumnPosition(column);
+        request.setFare(90.00);
+        request.setDropOff("Carcar");
+        request.setPaymentType(PaymentType.CASH);
+        return request;
+    }
+}
@@ -0,0 +1,98 @@
+package edu.cit.btts;
+
+import edu.cit.btts.dto.TicketRequest;
+import edu.cit.btts.model.*;
+import edu.cit.btts.repository.*;
+import edu.cit.btts.service.TicketService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Many more bookers than pooled connections (10 by default) race for one seat through the booking service
+@SpringBootTest
+public class TicketBookingStressTest {
+
+    private static final int THREADS = 64;
+
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private TicketService ticketService;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void oneBookerWinsAndTheRestAreTurnedAwayQuickly() throws Exception {
+        Bus bus = busRepository.save(new Bus("STR-1", "Stress Bus", "Cit Express", 10, 4));
+        Route route = routeRepository.save(new Route("Cebu City", "Toledo", List.of(), 150.00));
+        Trip trip = tripRepository.save(new Trip(LocalDateTime.now().plusDays(2), bus, route));
+        User passenger = userRepository.save(new User("booking.stress@example.com", "Booking", "Stress", Role.PASSENGER));
+
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+        AtomicLong slowestConflictMs = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    long startedAt = System.nanoTime();
+                    try {
+                        ticketService.createTicketForCash(request(trip, passenger));
+                        booked.incrementAndGet();
+                    } catch (ResponseStatusException e) {
+                        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+                        conflicts.incrementAndGet();
+                        slowestConflictMs.accumulateAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), Math::max);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, booked.get(), "Exactly one booking wins the seat.");
+        assertEquals(THREADS - 1, conflicts.get());
+        // Losers wait at most for the seat lock (250 ms), never for a connection held by another loser
+        assertTrue(slowestConflictMs.get() < 1000, "Slowest 409 took " + slowestConflictMs.get() + " ms");
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM seats WHERE trip_id = ? AND row_position = 1 AND column_position = 1",
+                Integer.class, trip.getId()));
+        assertEquals(39, tripRepository.findAvailableSeatsById(trip.getId()));
+    }
+
+    private static TicketRequest request(Trip trip, User passenger) {
+        TicketRequest request = new TicketRequest();
+        request.setTripId(trip.getId());
+        request.setUserId(passenger.getId());
+        request.setRowPosition(1);
+        request.setColumnPosition(1);
+        request.setFare(150.00);
+        request.setDropOff("Toledo");
+        request.setPaymentType(PaymentType.CASH);
+        return request;
+    }
+}
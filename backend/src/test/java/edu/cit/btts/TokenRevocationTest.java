@@ -0,0 +1,189 @@
+package edu.cit.btts;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.cit.btts.config.JwtRequestFilter;
+import edu.cit.btts.dto.GoogleLoginRequest;
+import edu.cit.btts.dto.TokenRefreshRequest;
+import edu.cit.btts.repository.RevokedTokenRepository;
+import edu.cit.btts.service.LocalIdTokenIssuer;
+import edu.cit.btts.service.TokenRevocationList;
+import edu.cit.btts.util.BloomFilter;
+import edu.cit.btts.util.JwtUtil;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "google.id-token.key-source=local",
+        "jwt.revocation.refresh-interval-ms=3600000",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureMockMvc
+public class TokenRevocationTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private ObjectMapper objectMapper;
+    @Autowired private LocalIdTokenIssuer localIdTokenIssuer;
+    @Autowired private JwtRequestFilter jwtRequestFilter;
+    @Autowired private JwtUtil jwtUtil;
+    @Autowired private TokenRevocationList tokenRevocationList;
+    @Autowired private RevokedTokenRepository revokedTokenRepository;
+    @Autowired private EntityManagerFactory entityManagerFactory;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void signingOutRevokesTheAccessAndRefreshTokens() throws Exception {
+        JsonNode laptop = signIn("signing.out@example.com");
+        JsonNode phone = signIn("signing.out@example.com");
+        String token = laptop.get("token").asText();
+        assertNotNull(jwtUtil.verify(token).getId());
+
+        // A token that was never revoked is let through without any I/O
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        assertNotNull(filter(token));
+        assertEquals(0, statistics.getPrepareStatementCount());
+
+        TokenRefreshRequest request = new TokenRefreshRequest();
+        request.setRefreshToken(laptop.get("refreshToken").asText());
+        mockMvc.perform(post("/api/auth/logout")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isNoContent());
+
+        assertNull(filter(token), "A signed-out token must no longer be accepted.");
+        mockMvc.perform(post("/api/auth/logout").header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(post("/api/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isUnauthorized());
+        // The other device stays signed in
+        assertNotNull(filter(phone.get("token").asText()));
+    }
+
+    @Test
+    void revocationsFromOtherNodesArePickedUpAndExpiredOnesPurged() throws Exception {
+        String token = signIn("other.node@example.com").get("token").asText();
+        JwtUtil.VerifiedToken verified = jwtUtil.verify(token);
+        // Revoked by another node: turned away here after the next refresh
+        jdbcTemplate.update("INSERT INTO revoked_tokens (jti, user_id, expires_at, revoked_at) VALUES (?, ?, ?, ?)",
+                verified.getId(), verified.getUserId(), LocalDateTime.now().plusMinutes(20), LocalDateTime.now());
+        String expired = UUID.randomUUID().toString();
+        jdbcTemplate.update("INSERT INTO revoked_tokens (jti, user_id, expires_at, revoked_at) VALUES (?, NULL, ?, ?)",
+                expired, LocalDateTime.now().minusMinutes(1), LocalDateTime.now().minusMinutes(30));
+
+        tokenRevocationList.refresh();
+        assertNull(filter(token));
+
+        // A rebuild keeps live entries and drops the rest
+        tokenRevocationList.rebuild();
+        assertNull(filter(token));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM revoked_tokens WHERE jti = ?", Integer.class, expired));
+    }
+
+    @Test
+    void aCheckReadingDuringTheRevocationDoesNotForgetIt() throws Exception {
+        // The database answer of a check is held back until the token has been revoked meanwhile
+        CountDownLatch read = new CountDownLatch(1);
+        CountDownLatch revoked = new CountDownLatch(1);
+        RevokedTokenRepository pausingRepository = (RevokedTokenRepository) Proxy.newProxyInstance(
+                RevokedTokenRepository.class.getClassLoader(), new Class<?>[] { RevokedTokenRepository.class },
+                (proxy, method, args) -> {
+                    try {
+                        Object result = method.invoke(revokedTokenRepository, args);
+                        if (method.getName().equals("existsByJti")) {
+                            read.countDown();
+                            assertTrue(revoked.await(10, TimeUnit.SECONDS));
+                        }
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        TokenRevocationList revocationList = new TokenRevocationList(pausingRepository, 1000, 0.001, 100);
+        String jti = UUID.randomUUID().toString();
+
+        ExecutorService checker = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> check = checker.submit(() -> revocationList.isRevoked(jti));
+            assertTrue(read.await(10, TimeUnit.SECONDS));
+            revocationList.revoke(jti, null, new Date(System.currentTimeMillis() + 60_000));
+            revoked.countDown();
+            check.get(10, TimeUnit.SECONDS);
+        } finally {
+            checker.shutdownNow();
+        }
+        assertTrue(revocationList.isRevoked(jti), "A stale answer must not overwrite the revocation.");
+    }
+
+    @Test
+    void bloomFilterNeverMissesAndRarelyMisfires() {
+        BloomFilter filter = new BloomFilter(10_000, 0.001);
+        String[] added = new String[10_000];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = UUID.randomUUID().toString();
+            filter.add(added[i]);
+        }
+        for (String jti : added) {
+            assertTrue(filter.mightContain(jti));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(UUID.randomUUID().toString())) falsePositives++;
+        }
+        assertTrue(falsePositives < 500, falsePositives + " false positives in 100000");
+    }
+
+    private JsonNode signIn(String email) throws Exception {
+        GoogleLoginRequest request = new GoogleLoginRequest();
+        request.setIdToken(localIdTokenIssuer.issue(email, "Signing", "Out"));
+        return objectMapper.readTree(mockMvc.perform(post("/api/auth/google")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+    }
+
+    // Runs the filter on a request with the token and returns the authentication it produced
+    private Authentication filter(String token) throws Exception {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/trips");
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+        AtomicReference<Authentication> authentication = new AtomicReference<>();
+        jwtRequestFilter.doFilter(request, new MockHttpServletResponse(),
+                (req, res) -> authentication.set(SecurityContextHolder.getContext().getAuthentication()));
+        SecurityContextHolder.clearContext();
+        return authentication.get();
+    }
+}
@@ -0,0 +1,102 @@
+package edu.cit.btts;
+
+import edu.cit.btts.dto.AvailableSeatCorrection;
+import edu.cit.btts.dto.GroupTicketRequest;
+import edu.cit.btts.dto.SeatPositionRequest;
+import edu.cit.btts.dto.TicketRequest;
+import edu.cit.btts.dto.TicketResponse;
+import edu.cit.btts.model.*;
+import edu.cit.btts.repository.*;
+import edu.cit.btts.service.PaymentService;
+import edu.cit.btts.service.TicketService;
+import edu.cit.btts.service.TripService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class TripAvailabilityCounterTest {
+
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private TicketService ticketService;
+    @Autowired private PaymentService paymentService;
+    @Autowired private TripService tripService;
+
+    @Test
+    @Transactional
+    void counterFollowsBookingsRejectionsAndReconciliation() {
+        // 2 x 3 layout: 6 seats
+        Bus bus = busRepository.save(new Bus("CNT-1", "Counter Bus", "Cit Express", 2, 3));
+        Route route = routeRepository.save(new Route("Cebu City", "Bantayan", List.of(), 300.00));
+        Trip trip = tripRepository.save(new Trip(LocalDateTime.now().plusDays(5), bus, route));
+        User passenger = userRepository.save(new User("counter.test@example.com", "Counter", "Test", Role.PASSENGER));
+        assertEquals(6, availableSeats(trip));
+
+        ticketService.createTicketForCash(request(trip, passenger, 1, 1, PaymentType.CASH));
+        assertEquals(5, availableSeats(trip), "A cash booking takes a seat.");
+
+        TicketResponse online = ticketService.createTicketForOnline(request(trip, passenger, 1, 2, PaymentType.ONLINE));
+        assertEquals(4, availableSeats(trip), "A RESERVED seat is not available.");
+
+        paymentService.updatePaymentStatus(online.getPayments().get(0).getId(), PaymentStatus.REJECTED);
+        assertEquals(5, availableSeats(trip), "A rejected payment gives its seat back.");
+
+        GroupTicketRequest group = new GroupTicketRequest();
+        group.setTripId(trip.getId());
+        group.setUserId(passenger.getId());
+        group.setSeats(List.of(new SeatPositionRequest(2, 1), new SeatPositionRequest(2, 2), new SeatPositionRequest(2, 3)));
+        group.setFare(300.00);
+        group.setDropOff("Bantayan");
+        group.setPaymentType(PaymentType.CASH);
+        ticketService.createGroupTicketsForCash(group);
+        assertEquals(2, availableSeats(trip), "A group booking takes all of its seats.");
+
+        // Knock the counter out of line, then let reconciliation repair it
+        tripRepository.decrementAvailableSeats(trip.getId(), 2);
+        assertEquals(0, availableSeats(trip));
+        List<AvailableSeatCorrection> corrections = tripService.reconcileAvailableSeats();
+        AvailableSeatCorrection correction = corrections.stream()
+                .filter(c -> c.getTripId().equals(trip.getId())).findFirst().orElseThrow();
+        assertEquals(0, correction.getPreviousAvailableSeats());
+        assertEquals(2, correction.getAvailableSeats());
+        assertEquals(2, availableSeats(trip));
+
+        // Once the counter reaches zero, further bookings are refused
+        ticketService.createTicketForCash(request(trip, passenger, 1, 3, PaymentType.CASH));
+        ticketService.createTicketForCash(request(trip, passenger, 3, 1, PaymentType.CASH));
+        assertEquals(0, availableSeats(trip));
+        ResponseStatusException full = assertThrows(ResponseStatusException.class,
+                () -> ticketService.createTicketForCash(request(trip, passenger, 3, 2, PaymentType.CASH)));
+        assertEquals(HttpStatus.CONFLICT, full.getStatusCode());
+    }
+
+    private int availableSeats(Trip trip) {
+        return tripRepository.findAvailableSeatsById(trip.getId());
+    }
+
+    private TicketRequest request(Trip trip, User passenger, int row, int column, PaymentType paymentType) {
+        TicketRequest request = new TicketRequest();
+        request.setTripId(trip.getId());
+        request.setUserId(passenger.getId());
+        request.setRowPosition(row);
+        request.setColumnPosition(column);
+        request.setFare(300.00);
+        request.setDropOff("Bantayan");
+        request.setPaymentType(paymentType);
+        if (paymentType == PaymentType.ONLINE) {
+            request.setOnlineReceipt(new byte[] { 1, 2, 3 });
+        }
+        return request;
+    }
+}
@@ -0,0 +1,80 @@
+package edu.cit.btts;
+
+import edu.cit.btts.dto.CacheStats;
+import edu.cit.btts.dto.TicketRequest;
+import edu.cit.btts.dto.TripResponse;
+import edu.cit.btts.dto.TripUpdateRequest;
+import edu.cit.btts.model.*;
+import edu.cit.btts.repository.*;
+import edu.cit.btts.service.TicketService;
+import edu.cit.btts.service.TripService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class TripCacheTest {
+
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private TripService tripService;
+    @Autowired private TicketService ticketService;
+
+    @Test
+    void readsAreCachedUntilTheTripChanges() {
+        LocalDate day = LocalDate.now().plusDays(60);
+        Bus bus = busRepository.save(new Bus("CACHE-1", "Cache Bus", "Cit Express", 10, 4));
+        Trip trip = tripRepository.save(new Trip(day.atTime(9, 0), bus, routeRepository.save(new Route("Cebu City", "Sogod", List.of(), 160.00))));
+        User passenger = userRepository.save(new User("trip.cache@example.com", "Trip", "Cache", Role.PASSENGER));
+
+        assertEquals(40, availableSeats(tripService.getAllTripsByDate(day), trip));
+        assertEquals(40, tripService.getTripById(trip.getId()).getAvailableSeats());
+        long hitsBefore = stats("trips-by-date").getHits() + stats("trips-by-id").getHits();
+        tripService.getAllTripsByDate(day);
+        tripService.getTripById(trip.getId());
+        assertEquals(hitsBefore + 2, stats("trips-by-date").getHits() + stats("trips-by-id").getHits());
+
+        // A booking changes the trip's available seats, so both entries are reloaded
+        ticketService.createTicketForCash(cashRequest(trip, passenger));
+        assertEquals(39, availableSeats(tripService.getAllTripsByDate(day), trip));
+        assertEquals(39, tripService.getTripById(trip.getId()).getAvailableSeats());
+
+        // Moving the trip to another day drops it from the old day's list and adds it to the new one
+        LocalDate nextDay = day.plusDays(1);
+        assertTrue(tripService.getAllTripsByDate(nextDay).stream().noneMatch(t -> t.getId().equals(trip.getId())));
+        TripUpdateRequest update = new TripUpdateRequest();
+        update.setDepartureTime(nextDay.atTime(9, 0));
+        tripService.updateTrip(trip.getId(), update);
+        assertTrue(tripService.getAllTripsByDate(day).stream().noneMatch(t -> t.getId().equals(trip.getId())));
+        assertEquals(39, availableSeats(tripService.getAllTripsByDate(nextDay), trip));
+        assertEquals(nextDay.atTime(9, 0), tripService.getTripById(trip.getId()).getDepartureTime());
+        assertTrue(stats("trips-by-date").getInvalidations() > 0);
+    }
+
+    private CacheStats stats(String name) {
+        return tripService.getCacheStats().stream().filter(s -> s.getName().equals(name)).findFirst().orElseThrow();
+    }
+
+    private static int availableSeats(List<TripResponse> trips, Trip trip) {
+        return trips.stream().filter(t -> t.getId().equals(trip.getId())).findFirst().orElseThrow().getAvailableSeats();
+    }
+
+    private static TicketRequest cashRequest(Trip trip, User passenger) {
+        TicketRequest request = new TicketRequest();
+        request.setTripId(trip.getId());
+        request.setUserId(passenger.getId());
+        request.setRowPosition(1);
+        request.setColumnPosition(1);
+        request.setFare(160.00);
+        request.setDropOff("Sogod");
+        request.setPaymentType(PaymentType.CASH);
+        return request;
+    }
+}
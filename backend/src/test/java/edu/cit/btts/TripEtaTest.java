@@ -0,0 +1,152 @@
+package edu.cit.btts;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.cit.btts.dto.RouteWaypointDTO;
+import edu.cit.btts.dto.TripUpdateRequest;
+import edu.cit.btts.model.*;
+import edu.cit.btts.repository.*;
+import edu.cit.btts.service.BusPositionTracker;
+import edu.cit.btts.service.TripEtaEngine;
+import edu.cit.btts.service.TripService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@WithMockUser(roles = "TRANSIT_ADMIN")
+public class TripEtaTest {
+
+    private static final double DEFAULT_SPEED_MPS = 40 / 3.6; // tracking.eta.default-speed-kmh
+    private static final double METERS_PER_DEGREE = 6_371_000 * Math.PI / 180;
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private ObjectMapper objectMapper;
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private RouteSegmentSpeedRepository routeSegmentSpeedRepository;
+    @Autowired private BusPositionTracker busPositionTracker;
+    @Autowired private TripEtaEngine tripEtaEngine;
+    @Autowired private TripService tripService;
+
+    @Test
+    void etasFollowTheBusAndLearnSegmentSpeeds() throws Exception {
+        // Due north: Origin -> Stop A -> (bend) -> Destination, about 1.1 km apart
+        double longitude = 123.9101;
+        List<RouteWaypointDTO> path = List.of(
+                new RouteWaypointDTO("Origin", 10.0, longitude),
+                new RouteWaypointDTO("Stop A", 10.01, longitude),
+                new RouteWaypointDTO(null, 10.02, longitude),
+                new RouteWaypointDTO("Destination", 10.03, longitude));
+        long start = System.currentTimeMillis() - 3_600_000;
+        Trip trip = createTrip("ETA-1", start, TripStatus.DEPARTED);
+        putWaypoints(trip, path);
+
+        // The bus drives 10 m/s, reporting every 10 s, until halfway between Stop A and the bend
+        long busId = trip.getBus().getId();
+        long timestamp = start;
+        double travelled = 0;
+        while (travelled <= 1.5 * 0.01 * METERS_PER_DEGREE) {
+            assertEquals(BusPositionTracker.ACCEPTED,
+                    busPositionTracker.record(busId, timestamp, 10.0 + travelled / METERS_PER_DEGREE, longitude, 36f, 0f));
+            timestamp += 10_000;
+            travelled += 100;
+        }
+        long lastSample = timestamp - 10_000;
+        double position = travelled - 100;
+
+        // Destination: the rest of the current segment and the last one, at the default speed (no history yet)
+        double segment = 0.01 * METERS_PER_DEGREE;
+        long expectedEta = lastSample + Math.round((3 * segment - position) / DEFAULT_SPEED_MPS * 1000);
+        // Planned when the trip became active: the whole route at the default speed
+        long plannedArrival = start + Math.round(3 * segment / DEFAULT_SPEED_MPS * 1000);
+        mockMvc.perform(get("/api/trips/" + trip.getId() + "/eta"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.updatedAt").value(lastSample))
+                .andExpect(jsonPath("$.stops", hasSize(3)))
+                .andExpect(jsonPath("$.stops[0].passed").value(true))
+                .andExpect(jsonPath("$.stops[1].name").value("Stop A"))
+                .andExpect(jsonPath("$.stops[1].passed").value(true))
+                .andExpect(jsonPath("$.stops[2].passed").value(false))
+                .andExpect(jsonPath("$.stops[2].eta", closeTo(expectedEta, 1000), Double.class))
+                .andExpect(jsonPath("$.stops[2].delaySeconds", closeTo((expectedEta - plannedArrival) / 1000.0, 1.5), Double.class));
+        mockMvc.perform(get("/api/trips/" + trip.getId() + "/eta").param("stop", "destination"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.stops", hasSize(1)));
+
+        // The first segment was driven end to end, so a later trip on the same road plans with 10 m/s there
+        Trip nextTrip = createTrip("ETA-2", System.currentTimeMillis() + 3_600_000, TripStatus.BOARDING);
+        putWaypoints(nextTrip, path);
+        long departure = nextTrip.getDepartureTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        mockMvc.perform(get("/api/trips/" + nextTrip.getId() + "/eta").param("stop", "Stop A"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.updatedAt").value(nullValue()))
+                .andExpect(jsonPath("$.stops[0].eta", closeTo(departure + segment / 10 * 1000, 1000), Double.class));
+
+        // Learned speeds are saved for the next restart
+        tripEtaEngine.flushSegmentSpeeds();
+        assertTrue(routeSegmentSpeedRepository.findAll().stream()
+                .anyMatch(speed -> speed.getSamples() == 1 && Math.abs(speed.getSpeedKmh() - 36) < 1));
+    }
+
+    @Test
+    void onlyActiveTripsHaveEtas() throws Exception {
+        Trip trip = createTrip("ETA-3", System.currentTimeMillis() + 600_000, TripStatus.SCHEDULED);
+        putWaypoints(trip, List.of(new RouteWaypointDTO("Origin", 11.0, 124.0), new RouteWaypointDTO("Destination", 11.05, 124.0)));
+        mockMvc.perform(get("/api/trips/" + trip.getId() + "/eta")).andExpect(status().isNotFound());
+
+        TripUpdateRequest boarding = new TripUpdateRequest();
+        boarding.setStatus(TripStatus.BOARDING);
+        tripService.updateTrip(trip.getId(), boarding);
+        mockMvc.perform(get("/api/trips/" + trip.getId() + "/eta"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("BOARDING"));
+        mockMvc.perform(get("/api/trips/" + trip.getId() + "/eta").param("stop", "Nowhere"))
+                .andExpect(status().isNotFound());
+
+        TripUpdateRequest cancelled = new TripUpdateRequest();
+        cancelled.setStatus(TripStatus.CANCELLED);
+        tripService.updateTrip(trip.getId(), cancelled);
+        mockMvc.perform(get("/api/trips/" + trip.getId() + "/eta")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void routePathNeedsTwoWaypoints() throws Exception {
+        Trip trip = createTrip("ETA-4", System.currentTimeMillis() + 600_000, TripStatus.SCHEDULED);
+        mockMvc.perform(put("/api/routes/" + trip.getRoute().getId() + "/waypoints")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(new RouteWaypointDTO("Origin", 11.0, 124.0)))))
+                .andExpect(status().isBadRequest());
+    }
+
+    private Trip createTrip(String plateNumber, long departure, TripStatus status) {
+        Bus bus = busRepository.save(new Bus(plateNumber, "ETA Bus", "Cit Express", 10, 4));
+        Route route = routeRepository.save(new Route("Cebu City", "Danao", List.of(), 120.00));
+        Trip trip = new Trip(LocalDateTime.ofInstant(Instant.ofEpochMilli(departure), ZoneId.systemDefault()), bus, route);
+        trip.setStatus(status);
+        return tripRepository.save(trip);
+    }
+
+    private void putWaypoints(Trip trip, List<RouteWaypointDTO> waypoints) throws Exception {
+        mockMvc.perform(put("/api/routes/" + trip.getRoute().getId() + "/waypoints")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(waypoints)))
+                .andExpect(status().isOk());
+    }
+}
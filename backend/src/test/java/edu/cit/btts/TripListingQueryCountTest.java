@@ -0,0 +1,91 @@
+package edu.cit.btts;
+
+import edu.cit.btts.dto.TripResponse;
+import edu.cit.btts.model.*;
+import edu.cit.btts.repository.*;
+import edu.cit.btts.service.TripAvailabilityCounter;
+import edu.cit.btts.service.TripService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class TripListingQueryCountTest {
+
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private SeatRepository seatRepository;
+    @Autowired private TicketRepository ticketRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private TripService tripService;
+    @Autowired private TripAvailabilityCounter tripAvailabilityCounter;
+
+    @Autowired private EntityManager entityManager;
+    @Autowired private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    @Transactional
+    void tripListingUsesConstantNumberOfStatements() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        // Use dates far in the future so existing data does not end up in the listings
+        LocalDate smallDay = LocalDate.now().plusYears(50);
+        LocalDate largeDay = smallDay.plusDays(1);
+        createTrips(smallDay, 10);
+        createTrips(largeDay, 1000);
+
+        entityManager.flush();
+        // The seats were saved directly through the repositories, so bring the counters in line with them
+        tripAvailabilityCounter.reconcile();
+        entityManager.clear();
+
+        statistics.clear();
+        List<TripResponse> smallListing = tripService.getAllTripsByDate(smallDay);
+        long smallStatements = statistics.getPrepareStatementCount();
+
+        entityManager.clear();
+
+        statistics.clear();
+        List<TripResponse> largeListing = tripService.getAllTripsByDate(largeDay);
+        long largeStatements = statistics.getPrepareStatementCount();
+
+        assertEquals(10, smallListing.size(), "Small listing should contain 10 trips.");
+        assertEquals(1000, largeListing.size(), "Large listing should contain 1000 trips.");
+        assertTrue(smallStatements <= 1, "Listing should need a single statement, but used " + smallStatements);
+        assertEquals(smallStatements, largeStatements, "Statement count should not depend on the number of trips.");
+
+        // Every trip got one BOOKED seat, so one seat is taken out of the 10x4 layout
+        TripResponse first = largeListing.get(0);
+        assertEquals(39, first.getAvailableSeats(), "Available seats should account for booked tickets.");
+        assertEquals(List.of("Stop A", "Stop B"), first.getRouteDetails().getStops(), "Route stops should be mapped.");
+        assertNotNull(first.getBusDetails(), "Bus details should be mapped.");
+    }
+
+    private void createTrips(LocalDate day, int count) {
+        User passenger = userRepository.save(
+                new User("listing." + day + "@example.com", "Listing", "Passenger", Role.PASSENGER));
+        Bus bus = busRepository.save(new Bus("LST-" + day.getDayOfYear() + "-" + day.getYear(), "Listing Bus", "Cit Express", 10, 4));
+
+        LocalDateTime departure = day.atTime(6, 0);
+        for (int i = 0; i < count; i++) {
+            Route route = routeRepository.save(new Route("Cebu City", "Moalboal", List.of("Stop A", "Stop B"), 200.00));
+            Trip trip = tripRepository.save(new Trip(departure.plusSeconds(i), bus, route));
+            Seat seat = new Seat(1, 1, trip);
+            seat.setStatus(SeatStatus.BOOKED);
+            seatRepository.save(seat);
+            ticketRepository.save(new Ticket(seat, trip, 200.00, "Moalboal", passenger));
+        }
+    }
+}
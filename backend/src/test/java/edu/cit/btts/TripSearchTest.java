@@ -0,0 +1,114 @@
+package edu.cit.btts;
+
+import edu.cit.btts.dto.TripPageResponse;
+import edu.cit.btts.dto.TripResponse;
+import edu.cit.btts.model.*;
+import edu.cit.btts.repository.*;
+import edu.cit.btts.service.TripService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class TripSearchTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private BusRepository busRepository;
+    @Autowired private RouteRepository routeRepository;
+    @Autowired private TripRepository tripRepository;
+    @Autowired private TripService tripService;
+
+    @Test
+    void pagesFollowDepartureOrderWithoutGapsOrDuplicates() {
+        LocalDate day = LocalDate.now().plusDays(30);
+        // Two trips share a departure time, so the ID has to break the tie between pages
+        List<Trip> created = List.of(
+                createTrip("SRCH-1", "Search Origin", "Bogo", day.atTime(6, 0)),
+                createTrip("SRCH-2", "Search Origin", "Bogo", day.atTime(8, 0)),
+                createTrip("SRCH-3", "Search Origin", "Bogo", day.atTime(8, 0)),
+                createTrip("SRCH-4", "Search Origin", "Bogo", day.atTime(9, 30)),
+                createTrip("SRCH-5", "Search Origin", "Bogo", day.plusDays(1).atTime(7, 0)));
+
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            TripPageResponse page = tripService.searchTrips(day, day.plusDays(1), "Search Origin", null, null, null, cursor, 2);
+            page.getTrips().forEach(trip -> seen.add(trip.getId()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(created.stream().map(Trip::getId).toList(), seen);
+    }
+
+    @Test
+    void filtersNarrowTheResults() {
+        LocalDate day = LocalDate.now().plusDays(40);
+        Trip open = createTrip("SRCH-6", "Filter Origin", "Bantayan", day.atTime(10, 0));
+        Trip otherDestination = createTrip("SRCH-7", "Filter Origin", "Malapascua", day.atTime(11, 0));
+        Trip cancelled = createTrip("SRCH-8", "Filter Origin", "Bantayan", day.atTime(12, 0));
+        cancelled.setStatus(TripStatus.CANCELLED);
+        tripRepository.save(cancelled);
+        Bus bus = busRepository.save(new Bus("SRCH-9", "Search Bus", "Cit Express", 10, 4));
+        Trip full = new Trip(day.atTime(13, 0), bus, routeRepository.save(new Route("Filter Origin", "Bantayan", List.of(), 180.00)));
+        full.setAvailableSeats(0); // Sold out
+        full = tripRepository.save(full);
+
+        List<Long> scheduledWithSeats = ids(tripService.searchTrips(day, day, "Filter Origin", "Bantayan",
+                TripStatus.SCHEDULED, 1, null, 10));
+        assertEquals(List.of(open.getId()), scheduledWithSeats);
+
+        List<Long> bantayan = ids(tripService.searchTrips(null, null, "Filter Origin", "Bantayan", null, null, null, 10));
+        assertEquals(List.of(open.getId(), cancelled.getId(), full.getId()), bantayan);
+        assertFalse(bantayan.contains(otherDestination.getId()));
+
+        assertTrue(ids(tripService.searchTrips(day.plusDays(1), null, "Filter Origin", null, null, null, null, 10)).isEmpty());
+    }
+
+    @Test
+    void invalidCursorIsRejected() {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> tripService.searchTrips(null, null, null, null, null, null, "not-a-cursor", 10));
+        assertEquals(400, e.getStatusCode().value());
+    }
+
+    @Test
+    @WithMockUser(roles = "PASSENGER")
+    void searchEndpointReturnsPageAndCursor() throws Exception {
+        LocalDate day = LocalDate.now().plusDays(50);
+        createTrip("SRCH-10", "Endpoint Origin", "Carcar", day.atTime(6, 0));
+        createTrip("SRCH-11", "Endpoint Origin", "Carcar", day.atTime(7, 0));
+
+        mockMvc.perform(get("/api/trips/search").param("origin", "Endpoint Origin").param("from", day.toString()).param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.trips.length()").value(1))
+                .andExpect(jsonPath("$.data.trips[0].routeDetails.origin").value("Endpoint Origin"))
+                .andExpect(jsonPath("$.data.nextCursor").isString());
+    }
+
+    private Trip createTrip(String plateNumber, String origin, String destination, LocalDateTime departureTime) {
+        Bus bus = busRepository.save(new Bus(plateNumber, "Search Bus", "Cit Express", 10, 4));
+        Route route = routeRepository.save(new Route(origin, destination, List.of("Stop"), 180.00));
+        return tripRepository.save(new Trip(departureTime, bus, route));
+    }
+
+    private static List<Long> ids(TripPageResponse page) {
+        return page.getTrips().stream().map(TripResponse::getId).toList();
+    }
+}